@@ -0,0 +1,63 @@
+package com.husam.cachemanager;
+
+import com.husam.storageengine.page.BasicPageGuard;
+import com.husam.storageengine.page.Page;
+import com.husam.storageengine.page.ReadPageGuard;
+import com.husam.storageengine.page.WritePageGuard;
+
+import java.nio.ByteBuffer;
+
+class BasicPageGuardImpl implements BasicPageGuard {
+
+    private final BufferPoolManager bufferPool;
+    private final Page page;
+    private boolean isDirty;
+    // set once the pin was given back or moved to another guard
+    private boolean released;
+
+    BasicPageGuardImpl(BufferPoolManager bufferPool, Page page) {
+        this.bufferPool = bufferPool;
+        this.page = page;
+    }
+
+    @Override
+    public int getPageId() {
+        return page.getPageId();
+    }
+
+    @Override
+    public ByteBuffer getBuffer() {
+        assert !released;
+        return page.getBuffer();
+    }
+
+    @Override
+    public void markDirty() {
+        isDirty = true;
+    }
+
+    @Override
+    public ReadPageGuard upgradeRead() {
+        assert !released;
+        released = true;
+        page.readLatch();
+        return new ReadPageGuardImpl(bufferPool, page, true);
+    }
+
+    @Override
+    public WritePageGuard upgradeWrite() {
+        assert !released;
+        released = true;
+        page.writeLatch();
+        return new WritePageGuardImpl(bufferPool, page);
+    }
+
+    @Override
+    public void close() {
+        if(released) {
+            return;
+        }
+        released = true;
+        bufferPool.unpinPage(page.getPageId(), isDirty);
+    }
+}
@@ -1,11 +1,15 @@
 package com.husam.cachemanager;
 
+import com.husam.cachemanager.replacers.Priority;
+import com.husam.metrics.BufferPoolMetrics;
 import com.husam.storageengine.diskmanager.DiskManager;
 import com.husam.storageengine.page.BasicPageGuard;
 import com.husam.storageengine.page.Page;
 import com.husam.storageengine.page.ReadPageGuard;
 import com.husam.storageengine.page.WritePageGuard;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface BufferPoolManager {
 
 
@@ -30,11 +34,29 @@ public interface BufferPoolManager {
      */
     BasicPageGuard newPageGuarded();
 
+    /**
+     * @return a future that completes with the new page, with null if no new pages could be created,
+     * or with the error of the write back
+     * @brief Asynchronous NewPage, a new page is never read from disk, so with a free or clean frame the future is done
+     * already. A dirty victim is written back through the disk scheduler like the one of fetchPageAsync, and the page
+     * is created on the thread that finishes the write back. The allocator may still fetch its own pages there.
+     */
+    CompletableFuture<Page> newPageAsync();
+
+    /**
+     * @param numOfPages number of contiguous pages to allocate
+     * @return the id of the first page of the extent, or the invalid page id if it could not be allocated
+     * @brief Allocates an extent of contiguous pages on disk for one object, so scanning the object reads them
+     * sequentially. The pages are not brought into the buffer pool and their content is undefined, the owner fetches
+     * and initializes each of them, and gives them back one by one with deletePage.
+     */
+    int allocateExtent(int numOfPages);
+
     /**
      * @param pageId id of page to be deleted
      * @return false if the page exists but could not be deleted, true if the page didn't exist or deletion succeeded
-     * @brief Delete a page from the buffer pool. If pageId is not in the buffer pool, do nothing and return true. If the
-     * page is pinned and cannot be deleted, return false immediately.
+     * @brief Delete a page from the buffer pool and deallocate it on disk. If pageId is not in the buffer pool, it's only
+     * deallocated and true is returned. If the page is pinned and cannot be deleted, return false immediately.
      */
     boolean deletePage(int pageId);
 
@@ -46,6 +68,37 @@ public interface BufferPoolManager {
      */
     Page fetchPage(int pageId);
 
+    /**
+     * @param pageId id of page to be fetched
+     * @return a future that completes with the pinned page, with null if pageId cannot be fetched,
+     * or with the error of the read
+     * @brief Asynchronous FetchPage, a miss queues its I/O to the disk scheduler and returns right away, the write back
+     * of a dirty victim included, so one thread can keep many fetches in flight and the I/O is done in disk order.
+     * The caller only takes latches. A hit is done already.
+     */
+    CompletableFuture<Page> fetchPageAsync(int pageId);
+
+    /**
+     * @param fromPageId id of the first page to read ahead
+     * @param count      number of pages to read ahead
+     * @brief Hint that pages [fromPageId, fromPageId + count) are going to be fetched soon. It returns right away,
+     * the pages are read in the background into free frames or victims, and they stay cold in the replacer
+     * till they are fetched, so a wrong hint doesn't push out the pages in use. Pages that are already in the
+     * buffer pool or were never allocated are skipped, and the implementation may read fewer pages than asked for.
+     */
+    void prefetch(int fromPageId, int count);
+
+    /**
+     * @param fromPageId id of the first page of the range
+     * @param toPageId   id of the page right after the range
+     * @return a scan that returns every page of [fromPageId, toPageId) once
+     * @brief Opens a sequential scan that bypasses the buffer pool. The scan reads its misses into a small private ring
+     * of frames that it recycles, instead of evicting the pages other threads use, and its fetches don't count as uses.
+     * If other scans over the same range are running, the new scan starts where they are, so it reads the pages they
+     * just read, and wraps around to the start of the range to read what it missed.
+     */
+    PageScan openScan(int fromPageId, int toPageId);
+
     /**
      * @param pageId, the id of the page to fetch
      * @return PageGuard holding the fetched page
@@ -61,10 +114,30 @@ public interface BufferPoolManager {
 
     ReadPageGuard fetchPageRead(int pageId);
 
+    /**
+     * Same as FetchPageRead, the guard unpins the page with the given retention priority, see unpinPage.
+     */
+    ReadPageGuard fetchPageRead(int pageId, Priority priority);
+
+    /**
+     * @param pageId, the id of the page to fetch
+     * @return an optimistic ReadPageGuard holding the fetched page, null if the page cannot be fetched
+     * @brief Same as FetchPageRead, but the read latch isn't taken, the guard reads the page optimistically and
+     * the reads are validated against the version of the page latch, see ReadPageGuard. Reading hot pages this way
+     * never writes to their latch, so readers on different cores don't bounce its cache line between them.
+     */
+    ReadPageGuard fetchPageOptimistic(int pageId);
+
     WritePageGuard fetchPageWrite(int pageId);
 
+    /**
+     * Same as FetchPageWrite, the guard unpins the page with the given retention priority, see unpinPage.
+     */
+    WritePageGuard fetchPageWrite(int pageId, Priority priority);
+
     /**
      * Flushes the target page to disk.
+     * If the pool logs its pages, the log is flushed up to the page LSN first, and the caller must not hold the write latch of the page.
      *
      * @param pageId id of page to be flushed, cannot be INVALID_PAGE_ID
      * @return false if the page could not be found in the page table, true otherwise
@@ -72,10 +145,18 @@ public interface BufferPoolManager {
     boolean flushPage(int pageId);
 
     /**
-     * Flushes all the pages in the buffer pool to disk.
+     * Flushes all the dirty pages in the buffer pool to disk, in page id order, and syncs the disk once.
+     * The pool stays usable meanwhile, a page that gets dirty again during the flush may stay dirty.
      */
     void flushAllPages();
 
+    /**
+     * Runs a fuzzy checkpoint, like flushAllPages but rate limited so it doesn't hurt the foreground I/O.
+     *
+     * @return the number of pages written
+     */
+    int checkpoint();
+
     /**
      * @param pageId  id of page to be unpinned
      * @param isDirty true if the page should be marked as dirty, false otherwise
@@ -86,5 +167,25 @@ public interface BufferPoolManager {
      * Decrement the pin count of a page. If the pin count reaches 0, the frame should be evictable by the replacer.
      * Also, set the dirty flag on the page to indicate if the page was modified.
      */
-    boolean unpinPage(int pageId, boolean isDirty);
+    default boolean unpinPage(int pageId, boolean isDirty) {
+        return unpinPage(pageId, isDirty, Priority.NORMAL);
+    }
+
+    /**
+     * @param priority how hard the replacer should try to keep the page once it's evictable
+     * @brief Same as UnpinPage, with a retention hint for the replacer. Unpin index roots and inner nodes and metadata
+     * pages with HIGH, so a burst of misses doesn't evict them the moment they are unpinned, the replacer only keeps
+     * a share of the pool for them (see DatabaseConfig.protectedFramesPercent). LOW makes the page one of the next victims.
+     */
+    boolean unpinPage(int pageId, boolean isDirty, Priority priority);
+
+    /**
+     * @return the hit, miss, eviction and latch wait counters of the buffer pool, use snapshot() on them to read them all at once
+     */
+    BufferPoolMetrics getMetrics();
+
+    /**
+     * Stops the background work of the buffer pool, it doesn't flush any page.
+     */
+    void shutDown();
 }
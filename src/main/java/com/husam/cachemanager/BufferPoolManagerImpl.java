@@ -1,66 +1,201 @@
 package com.husam.cachemanager;
 
 import com.husam.cachemanager.replacers.ClockReplacer;
+import com.husam.cachemanager.replacers.Priority;
+import com.husam.cachemanager.replacers.Replacer;
 import com.husam.common.DatabaseConfig;
+import com.husam.metrics.BufferPoolMetrics;
+import com.husam.metrics.MetricsRegistry;
+import com.husam.recovery.LogManager;
+import com.husam.storageengine.allocator.BitmapPageAllocator;
+import com.husam.storageengine.allocator.PageAllocator;
+import com.husam.storageengine.allocator.SequentialPageAllocator;
 import com.husam.storageengine.diskmanager.DiskManager;
+import com.husam.storageengine.diskmanager.DiskScheduler;
 import com.husam.storageengine.page.BasicPageGuard;
 import com.husam.storageengine.page.Page;
+import com.husam.storageengine.page.PageArena;
 import com.husam.storageengine.page.ReadPageGuard;
 import com.husam.storageengine.page.WritePageGuard;
 
+import javax.management.ObjectName;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
-import java.util.TreeMap;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 /***
- * buffer pool that uses coarse grain locking, there isn't any other DBMS uses lock free or any other less synchronization mechanism,
- * stability and predictability in DBMS is the most important
- * to improve performance we can use things like multiple buffer pools, pre-fetching, scan sharing and buffer pool bypass
+ * buffer pool that keeps the hit path off any global lock, the page table is striped and a hit only takes the
+ * latch of its own stripe to look up the frame and pin it, so hits on different pages don't contend
+ * the global latch is only taken by the paths that change which page a frame holds (new, delete and miss),
+ * stability and predictability in DBMS is the most important, so those paths are still coarse grained,
+ * but no disk I/O happens under it, a miss publishes its frame as "I/O in progress" and reads without the latch,
+ * and a dirty victim stays resident (pinned) while it's written back, it's only evicted if nobody fetched it meanwhile
+ * pages can be read ahead (pre-fetching), either on a prefetch hint or when a thread fetches pages sequentially,
+ * a prefetched page is installed like a miss but by a background thread, and it enters the replacer cold
+ * dirty pages are written back in disk order by fuzzy checkpoints, either in the background or by flushAllPages
+ * large scans bypass the pool, a scan recycles a small private ring of frames instead of evicting shared pages,
+ * and scans over the same page range share their reads, a new scan starts where the running one is and wraps around
+ * to improve performance further we can use things like multiple buffer pools
  * you can think of frame ids as buffer descriptors
+ * lock order is always global latch then stripe latch, and no stripe latch is held while taking another one
+ * with a write-ahead log attached a page is only written once the log is durable up to the page LSN (WAL-before-data),
+ * the data file doesn't need an fsync per write then (use DEFERRED durability for it), the log fsync makes the changes durable
+ * the pool counts its hits, misses, evictions and the waits on the global latch, see getMetrics, and publishes them over JMX
+ * fetchPageAsync does the same as a fetch but hands the I/O of a miss to a DiskScheduler, so the caller never waits on the disk,
+ * a dirty victim is written back through the scheduler too (after the log caught up with it) and the read is chained to it,
+ * the scheduler serves the queued requests in disk order, and whoever waits on the page is called back when it's in,
+ * newPageAsync queues the write back of a dirty victim the same way and creates the page once the frame is free
  * */
 
-// TODO: next step would be to implement the PageGuard functionalities and implement the object it self
 public class BufferPoolManagerImpl implements BufferPoolManager {
 
     private final DiskManager diskManager;
-    // the next page id to be allocated
-    private final AtomicInteger nextPageId;
+    // hands out the page ids, it's only called without the latch
+    private final PageAllocator pageAllocator;
+    // null if the pages aren't logged
+    private final LogManager logManager;
 
     private final int poolSize;
 
     // page table for keeping track of buffer pool pages, it maps page ids to frame ids
-    private final Map<Integer, Integer> pageTable;
+    // pin counts are only changed while holding the stripe latch of the page in the page table
+    private final PageTable pageTable;
 
     // frame ids is basically equivalent to indexes in the pages array
     private final Page[] pages;
 
     // replacer to find unpinned frames for replacement
-    private final ClockReplacer replacer;
+    private final Replacer replacer;
 
     // free list of the frame ids
     private final Queue<Integer> freeFramesQueue;
+    // the read in progress of each frame, null once the frame holds its page,
+    // a miss publishes the frame with its read pending, so it can do the I/O without the latch
+    private final AtomicReferenceArray<CompletableFuture<Void>> pendingLoads;
+    // frames holding a page that was only read ahead or read by a scan, and that no fetch used since,
+    // they go back to the replacer cold, guarded by the stripe latch of the page
+    private final boolean[] cold;
+    // set by every fetch that pins the page of the frame, a dirty victim that got fetched while it was written back
+    // isn't evicted, even if it's clean and unpinned again by then, guarded by the stripe latch of the page
+    private final boolean[] fetchedDuringWriteBack;
+    // scans that are running over each page range, so a new scan over the same range can join them
+    private final Map<Long, PageScan.SharedScan> sharedScans;
+    private final Lock sharedScansLatch;
+    private final int scanRingSize;
     private final Lock latch;
 
+    // keeps clean frames ahead of the replacer, null if it's disabled
+    private final PageCleaner pageCleaner;
+    private final Checkpointer checkpointer;
+    private final ReadAhead readAhead;
+    // does the reads of the asynchronous fetches
+    private final DiskScheduler diskScheduler;
+    private final BufferPoolMetrics metrics;
+    // null if the metrics aren't published over JMX
+    private final ObjectName metricsName;
+
+    /**
+     * Pages are allocated by a BitmapPageAllocator, its state is stored in the database file and recovered from it.
+     */
+    public BufferPoolManagerImpl(int poolSize, DiskManager diskManager) {
+        this(poolSize, diskManager, new ClockReplacer(poolSize));
+    }
+
+    /**
+     * Pages are allocated by a BitmapPageAllocator, its state is stored in the database file and recovered from it.
+     *
+     * @param replacer the replacement policy, it must track exactly poolSize frames and must not be shared
+     */
+    public BufferPoolManagerImpl(int poolSize, DiskManager diskManager, Replacer replacer) {
+        this(poolSize, diskManager, replacer, null, BitmapPageAllocator::new);
+    }
+
+    /**
+     * Pages are allocated by a BitmapPageAllocator, and written only after the log records that changed them are durable.
+     * Whoever changes a page appends its log record first and sets the page LSN to it, under the write latch of the page.
+     */
+    public BufferPoolManagerImpl(int poolSize, DiskManager diskManager, LogManager logManager) {
+        this(poolSize, diskManager, new ClockReplacer(poolSize), logManager);
+    }
+
+    /**
+     * Pages are allocated by a BitmapPageAllocator, and written only after the log records that changed them are durable.
+     * Whoever changes a page appends its log record first and sets the page LSN to it, under the write latch of the page.
+     *
+     * @param replacer the replacement policy, it must track exactly poolSize frames and must not be shared
+     */
+    public BufferPoolManagerImpl(int poolSize, DiskManager diskManager, Replacer replacer, LogManager logManager) {
+        this(poolSize, diskManager, replacer, logManager, BitmapPageAllocator::new);
+    }
+
+    /**
+     * Page ids are handed out in order starting from nextPageId and never reused, nothing is stored in the file.
+     */
     public BufferPoolManagerImpl(int poolSize, DiskManager diskManager, int nextPageId) {
+        this(poolSize, diskManager, nextPageId, new ClockReplacer(poolSize));
+    }
+
+    /**
+     * Page ids are handed out in order starting from nextPageId and never reused, nothing is stored in the file.
+     *
+     * @param replacer the replacement policy, it must track exactly poolSize frames and must not be shared
+     */
+    public BufferPoolManagerImpl(int poolSize, DiskManager diskManager, int nextPageId, Replacer replacer) {
+        this(poolSize, diskManager, replacer, null, pool -> new SequentialPageAllocator(nextPageId));
+    }
+
+    // the allocator is created last, since a persistent one fetches its pages through the pool while it recovers
+    private BufferPoolManagerImpl(int poolSize, DiskManager diskManager, Replacer replacer, LogManager logManager,
+                                  Function<BufferPoolManager, PageAllocator> allocatorFactory) {
         assert diskManager != null;
+        assert replacer != null;
         this.diskManager = diskManager;
+        this.logManager = logManager;
         this.poolSize = poolSize;
-        this.nextPageId = new AtomicInteger(nextPageId);
-        this.pageTable = new TreeMap<>();
+        this.pageTable = new PageTable(poolSize);
         this.pages = new Page[poolSize];
-        this.replacer = new ClockReplacer(poolSize);
+        this.replacer = replacer;
         this.freeFramesQueue = new LinkedList<>();
+        this.pendingLoads = new AtomicReferenceArray<>(poolSize);
+        this.cold = new boolean[poolSize];
+        this.fetchedDuringWriteBack = new boolean[poolSize];
+        this.sharedScans = new HashMap<>();
+        this.sharedScansLatch = new ReentrantLock();
         latch = new ReentrantLock();
+        DatabaseConfig conf = DatabaseConfig.getInstance();
+        PageArena arena = conf.isOffHeapFrames() ? new PageArena(poolSize) : null;
         for(int i = 0; i < poolSize; i++) {
-            this.pages[i] = new Page();
+            this.pages[i] = arena != null ? new Page(arena.slot(i)) : new Page();
             this.freeFramesQueue.offer(i);
         }
+        this.metrics = new BufferPoolMetrics();
+        this.metricsName = MetricsRegistry.register("BufferPool", metrics);
+        if(conf.getCleanerLowWatermark() > 0) {
+            this.pageCleaner = new PageCleaner(this, conf.getCleanerLowWatermark(), conf.getCleanerMaxPagesPerRound(), conf.getCleanerIntervalMillis());
+            this.pageCleaner.start();
+        } else {
+            this.pageCleaner = null;
+        }
+        this.checkpointer = new Checkpointer(this, conf.getCheckpointMaxBatchPages(), conf.getCheckpointMaxPagesPerSecond(), conf.getCheckpointIntervalMillis());
+        if(conf.getCheckpointIntervalMillis() > 0) {
+            this.checkpointer.start();
+        }
+        // a ring bigger than a quarter of the pool would be the pool trashing we are trying to avoid
+        this.scanRingSize = Math.max(1, Math.min(conf.getScanRingFrames(), poolSize / 4));
+        this.readAhead = new ReadAhead(this, conf.getPrefetchThreads(), conf.getReadAheadPages(), conf.getReadAheadTrigger());
+        this.diskScheduler = new DiskScheduler(diskManager, conf.getDiskSchedulerThreads());
+        this.pageAllocator = allocatorFactory.apply(this);
     }
 
     @Override
@@ -70,189 +205,1121 @@ public class BufferPoolManagerImpl implements BufferPoolManager {
 
     @Override
     public Page newPage() {
-        latch.lock();
+        int freeFrame;
+        lockLatch();
         try {
-            int freeFrame = getFrame();
+            freeFrame = getFrame();
             if(freeFrame == DatabaseConfig.getInstance().getInvalidFrameId()) {
                 return null;
             }
-            int newPageId = allocatePage();
-            pageTable.put(newPageId, freeFrame);
-            pages[freeFrame].setPageId(newPageId);
-            pages[freeFrame].incrementPinCount();
+        } finally {
+            latch.unlock();
+        }
+        return installNewPage(freeFrame);
+    }
+
+    @Override
+    public CompletableFuture<Page> newPageAsync() {
+        int frameId;
+        boolean dirty = false;
+        lockLatch();
+        try {
+            if(!freeFramesQueue.isEmpty()) {
+                frameId = freeFramesQueue.poll();
+            } else {
+                long claimed = claimVictim();
+                frameId = (int) (claimed >> 1);
+                if(frameId == DatabaseConfig.getInstance().getInvalidFrameId()) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                if((claimed & 1) == 1) {
+                    metrics.recordDirtyEviction();
+                    dirty = true;
+                }
+            }
+        } finally {
+            latch.unlock();
+        }
+        if(!dirty) {
+            return CompletableFuture.completedFuture(installNewPage(frameId));
+        }
+        // the victim is dirty, its write back is queued like the one of an async miss and the page is created after it
+        int victimFrameId = frameId;
+        Page oldPage = pages[victimFrameId];
+        int oldPageId = oldPage.getPageId();
+        return writeBackAsync(oldPage).handle((ticket, e) -> e).thenCompose(e -> {
+            boolean evicted;
+            lockLatch();
+            try {
+                if(e != null) {
+                    // the page is still the only copy of its changes
+                    oldPage.setDirty(true);
+                    finishWriteBack(victimFrameId, oldPageId);
+                    return CompletableFuture.failedFuture(e);
+                }
+                evicted = finishWriteBack(victimFrameId, oldPageId);
+            } finally {
+                latch.unlock();
+            }
+            if(evicted) {
+                return CompletableFuture.completedFuture(installNewPage(victimFrameId));
+            }
+            // somebody started using the victim while it was written back, look for another frame
+            return newPageAsync();
+        });
+    }
+
+    // the frame was taken out of the pool by the caller, installs a newly allocated page in it,
+    // @return the pinned page, or null if no page could be allocated
+    private Page installNewPage(int freeFrame) {
+        // nobody else can see the frame till it's installed, so the page is allocated without the latch,
+        // the allocator may have to fetch its own pages
+        int newPageId = pageAllocator.allocatePage();
+        lockLatch();
+        try {
+            if(newPageId == DatabaseConfig.getInstance().getInvalidPageId()) {
+                freeFramesQueue.offer(freeFrame);
+                return null;
+            }
+            installPage(freeFrame, newPageId);
+            // a reused page id may still have the old page on disk, the zeroed page must replace it
+            if(pageAllocator.reusesPageIds()) {
+                pages[freeFrame].setDirty(true);
+            }
             assert pages[freeFrame].getPinCount() == 1;
-            replacer.pin(freeFrame);
             return pages[freeFrame];
         } finally {
             latch.unlock();
         }
     }
 
+    @Override
+    public int allocateExtent(int numOfPages) {
+        return pageAllocator.allocateExtent(numOfPages);
+    }
+
     @Override
     public BasicPageGuard newPageGuarded() {
-        return null;
+        Page page = newPage();
+        return page == null ? null : new BasicPageGuardImpl(this, page);
     }
 
 
     @Override
     public boolean deletePage(int pageId) {
-        latch.lock();
+        lockLatch();
         try {
-            Integer frameId = pageTable.get(pageId);
-            if(frameId == null) {
-                return true;
+            int frameId;
+            Lock stripeLatch = pageTable.getLatch(pageId);
+            stripeLatch.lock();
+            try {
+                frameId = pageTable.get(pageId);
+                if(frameId != DatabaseConfig.getInstance().getInvalidFrameId()) {
+                    if(pages[frameId].getPinCount() > 0) {
+                        return false;
+                    }
+                    replacer.remove(frameId);
+                    pageTable.remove(pageId);
+                }
+            } finally {
+                stripeLatch.unlock();
             }
-            if(pages[frameId].getPinCount() > 0) {
-                return false;
+            if(frameId != DatabaseConfig.getInstance().getInvalidFrameId()) {
+                pages[frameId].resetMemory();
+                pages[frameId].setPageId(DatabaseConfig.getInstance().getInvalidPageId());
+                pages[frameId].setDirty(false);
+                pages[frameId].setPinCount(0);
+                freeFramesQueue.offer(frameId);
             }
-            replacer.remove(frameId);
-            freeFramesQueue.offer(frameId);
-            pageTable.remove(pageId);
-            pages[frameId].resetMemory();
-            pages[frameId].setPageId(DatabaseConfig.getInstance().getInvalidPageId());
-            pages[frameId].setDirty(false);
-            pages[frameId].setPinCount(0);
-            deallocatePage(pageId);
-            return true;
         } finally {
             latch.unlock();
         }
+        // a page that isn't in the buffer pool is still allocated on disk
+        pageAllocator.deallocatePage(pageId);
+        return true;
     }
 
     @Override
     public Page fetchPage(int pageId) {
-        latch.lock();
+        readAhead.onFetch(pageId);
+        return fetchPage(pageId, null);
+    }
+
+    // ring is null for a normal fetch, a scan passes its ring, takes the frame for a miss from it,
+    // and its fetches don't count as a use of the page
+    Page fetchPage(int pageId, ScanRing ring) {
+        int frameId = pinResident(pageId, ring == null);
+        if(frameId != DatabaseConfig.getInstance().getInvalidFrameId()) {
+            metrics.recordHit();
+            return awaitLoad(frameId);
+        }
+        long pinned = pinOrInstall(pageId, ring);
+        frameId = (int) (pinned >> 1);
+        if(frameId == DatabaseConfig.getInstance().getInvalidFrameId()) {
+            return null;
+        }
+        if((pinned & 1) == 0) {
+            metrics.recordHit();
+            return awaitLoad(frameId);
+        }
+        metrics.recordMiss();
+        CompletableFuture<Void> load = pendingLoads.get(frameId);
         try {
-            Integer frameId = pageTable.get(pageId);
-            if(frameId != null) {
-                pages[frameId].incrementPinCount();
-                replacer.pin(frameId);
-                return pages[frameId];
-            }
-            frameId = getFrame();
+            // a duplicate, since the disk manager moves the position, with off-heap frames the read lands in the slot directly
+            diskManager.readPage(pageId, pages[frameId].getBuffer().duplicate());
+        } catch (RuntimeException e) {
+            abandonLoad(frameId, pageId);
+            load.completeExceptionally(e);
+            throw e;
+        }
+        pendingLoads.set(frameId, null);
+        load.complete(null);
+        return pages[frameId];
+    }
+
+    @Override
+    public CompletableFuture<Page> fetchPageAsync(int pageId) {
+        readAhead.onFetch(pageId);
+        return fetchAsync(pageId);
+    }
+
+    // the caller only takes latches, a dirty victim is written back and the page is read by the disk scheduler
+    private CompletableFuture<Page> fetchAsync(int pageId) {
+        int frameId = pinResident(pageId, true);
+        if(frameId != DatabaseConfig.getInstance().getInvalidFrameId()) {
+            metrics.recordHit();
+            return whenLoaded(frameId);
+        }
+        int victimFrameId;
+        lockLatch();
+        try {
+            // another thread may have brought the page in while we were waiting for the latch
+            frameId = pinResident(pageId, true);
             if(frameId != DatabaseConfig.getInstance().getInvalidFrameId()) {
-                diskManager.readPage(pageId, pages[frameId].getData());
-                pages[frameId].setPageId(pageId);
-                pages[frameId].incrementPinCount();
-                replacer.pin(frameId);
-                pageTable.put(pageId, frameId);
-                return pages[frameId];
+                metrics.recordHit();
+                return whenLoaded(frameId);
             }
-            return null;
+            if(!freeFramesQueue.isEmpty()) {
+                return scheduleLoad(freeFramesQueue.poll(), pageId);
+            }
+            long claimed = claimVictim();
+            victimFrameId = (int) (claimed >> 1);
+            if(victimFrameId == DatabaseConfig.getInstance().getInvalidFrameId()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if((claimed & 1) == 0) {
+                return scheduleLoad(victimFrameId, pageId);
+            }
+            metrics.recordDirtyEviction();
         } finally {
             latch.unlock();
         }
+        // the victim is dirty, its write back is queued and the read of our page is chained to it
+        Page oldPage = pages[victimFrameId];
+        int oldPageId = oldPage.getPageId();
+        return writeBackAsync(oldPage).handle((ticket, e) -> e).thenCompose(e -> {
+            boolean evicted;
+            lockLatch();
+            try {
+                if(e != null) {
+                    // the page is still the only copy of its changes
+                    oldPage.setDirty(true);
+                    finishWriteBack(victimFrameId, oldPageId);
+                    return CompletableFuture.failedFuture(e);
+                }
+                evicted = finishWriteBack(victimFrameId, oldPageId);
+                if(evicted) {
+                    int residentFrameId = pinResident(pageId, true);
+                    if(residentFrameId != DatabaseConfig.getInstance().getInvalidFrameId()) {
+                        freeFramesQueue.offer(victimFrameId);
+                        metrics.recordHit();
+                        return whenLoaded(residentFrameId);
+                    }
+                    return scheduleLoad(victimFrameId, pageId);
+                }
+            } finally {
+                latch.unlock();
+            }
+            // somebody started using the victim while it was written back, look for another frame
+            return fetchAsync(pageId);
+        });
+    }
+
+    // Caller should acquire the latch before calling this function.
+    // installs the page in the frame as "I/O in progress" and queues its read,
+    // the read completes on a scheduler worker, which publishes the page like a synchronous miss does
+    private CompletableFuture<Page> scheduleLoad(int frameId, int pageId) {
+        CompletableFuture<Void> load = new CompletableFuture<>();
+        pendingLoads.set(frameId, load);
+        installPage(frameId, pageId);
+        metrics.recordMiss();
+        CompletableFuture<Void> read;
+        try {
+            read = diskScheduler.scheduleRead(pageId, pages[frameId].getBuffer().duplicate());
+        } catch (RuntimeException e) {
+            abandonLoad(frameId, pageId);
+            load.completeExceptionally(e);
+            throw e;
+        }
+        return read.handle((ignored, e) -> {
+            if(e != null) {
+                abandonLoad(frameId, pageId);
+                load.completeExceptionally(e);
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+            }
+            pendingLoads.set(frameId, null);
+            load.complete(null);
+            return pages[frameId];
+        });
+    }
+
+    // like doFlushPage, but the write is queued to the disk scheduler, after the log caught up with the page if it's logged
+    private CompletableFuture<Long> writeBackAsync(Page page) {
+        page.setDirty(false);
+        int pageId = page.getPageId();
+        if(logManager == null) {
+            return diskScheduler.scheduleWrite(pageId, page.getBuffer().duplicate());
+        }
+        ByteBuffer image = ByteBuffer.allocate(DatabaseConfig.getInstance().getPageSize());
+        int pageLSN = copyPage(page, image);
+        image.flip();
+        return logManager.whenFlushed(pageLSN).thenCompose(flushed -> diskScheduler.scheduleWrite(pageId, image));
+    }
+
+    @Override
+    public void prefetch(int fromPageId, int count) {
+        readAhead.prefetch(fromPageId, count);
     }
 
     @Override
     public BasicPageGuard fetchPageBasic(int pageId) {
-        return null;
+        Page page = fetchPage(pageId);
+        return page == null ? null : new BasicPageGuardImpl(this, page);
     }
 
     @Override
     public ReadPageGuard fetchPageRead(int pageId) {
-        return null;
+        return fetchPageRead(pageId, Priority.NORMAL);
+    }
+
+    @Override
+    public ReadPageGuard fetchPageRead(int pageId, Priority priority) {
+        Page page = fetchPage(pageId);
+        if(page == null) {
+            return null;
+        }
+        page.readLatch();
+        return new ReadPageGuardImpl(this, page, true, priority);
+    }
+
+    @Override
+    public ReadPageGuard fetchPageOptimistic(int pageId) {
+        Page page = fetchPage(pageId);
+        return page == null ? null : new ReadPageGuardImpl(this, page, false);
     }
 
     @Override
     public WritePageGuard fetchPageWrite(int pageId) {
-        return null;
+        return fetchPageWrite(pageId, Priority.NORMAL);
+    }
+
+    @Override
+    public WritePageGuard fetchPageWrite(int pageId, Priority priority) {
+        Page page = fetchPage(pageId);
+        if(page == null) {
+            return null;
+        }
+        page.writeLatch();
+        return new WritePageGuardImpl(this, page, priority);
     }
 
     // flush REGARDLESS of the dirty flag
     @Override
     public boolean flushPage(int pageId) {
-        latch.lock();
+        int frameId;
+        Lock stripeLatch = pageTable.getLatch(pageId);
+        stripeLatch.lock();
         try {
-            Integer frameId = pageTable.get(pageId);
-            if(frameId == null) {
+            frameId = pageTable.get(pageId);
+            if(frameId == DatabaseConfig.getInstance().getInvalidFrameId()) {
                 return false;
             }
-            Page page = pages[frameId];
+            // the pin keeps the frame from being given to another page while we write it without the latch,
+            // it isn't reported to the replacer, so flushing doesn't count as a use of the page
+            pages[frameId].incrementPinCount();
+        } finally {
+            stripeLatch.unlock();
+        }
+        try {
+            // a page that is still being read has nothing to flush yet, and if the read fails the page is gone
+            awaitLoad(frameId);
+        } catch (RuntimeException e) {
+            return false;
+        }
+        try {
             // we shouldn't latch the page,
             // since we are just flushing, if another thread is operating
             // on the same page, then the page will be pinned, and the BPM will synchronize
             // and the other thread will set the dirty flag to true again
-            doFlushPage(page);
-            return true;
+            doFlushPage(pages[frameId]);
         } finally {
-            latch.unlock();
+            releasePin(frameId, pageId);
         }
+        return true;
     }
 
     @Override
     public void flushAllPages() {
         // for performance issues we don't latch here, since it's fine if before complete flushing everything
         // another thread comes and uses the BPM
-        for(int i = 0; i < poolSize; i++) {
-            flushPage(pages[i].getPageId());
+        checkpointer.checkpoint(0);
+    }
+
+    @Override
+    public int checkpoint() {
+        return checkpointer.checkpoint();
+    }
+
+    @Override
+    public boolean unpinPage(int pageId, boolean pageGotDirty, Priority priority) {
+        Lock stripeLatch = pageTable.getLatch(pageId);
+        stripeLatch.lock();
+        try {
+            int frameId = pageTable.get(pageId);
+            if(frameId == DatabaseConfig.getInstance().getInvalidFrameId()) {
+                return false;
+            }
+            if(pages[frameId].getPinCount() <= 0) {
+                return false;
+            }
+            // mark it before it becomes evictable, so an eviction never sees a stale clean flag
+            if(pageGotDirty) {
+                pages[frameId].setDirty(true);
+            }
+            pages[frameId].decrementPinCount();
+            if(pages[frameId].getPinCount() == 0) {
+                replacer.unpin(frameId, priority);
+            }
+            return true;
+        } finally {
+            stripeLatch.unlock();
         }
     }
 
     @Override
-    public boolean unpinPage(int pageId, boolean pageGotDirty) {
-        Integer frameId = pageTable.get(pageId);
-        if(frameId == null) {
-            return false;
+    public void shutDown() {
+        if(pageCleaner != null) {
+            pageCleaner.stop();
         }
-        if(pages[frameId].getPinCount() <= 0) {
-            return false;
+        readAhead.stop();
+        diskScheduler.stop();
+        checkpointer.stop();
+        MetricsRegistry.unregister(metricsName);
+    }
+
+    @Override
+    public BufferPoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return how many times a miss had to write a dirty victim by itself
+     */
+    public long getForegroundFlushCount() {
+        return metrics.getDirtyEvictions();
+    }
+
+    /**
+     * @return how many pages the page cleaner wrote ahead of the replacer
+     */
+    public long getBackgroundFlushCount() {
+        return metrics.getBackgroundFlushes();
+    }
+
+    @Override
+    public PageScan openScan(int fromPageId, int toPageId) {
+        assert fromPageId <= toPageId;
+        PageScan.SharedScan shared;
+        int startPageId;
+        sharedScansLatch.lock();
+        try {
+            shared = sharedScans.computeIfAbsent(rangeKey(fromPageId, toPageId), key -> new PageScan.SharedScan(fromPageId));
+            // join the running scans where they are now, the pages behind them are read after wrapping around
+            startPageId = shared.activeScans > 0 ? shared.position : fromPageId;
+            shared.activeScans++;
+        } finally {
+            sharedScansLatch.unlock();
         }
-        pages[frameId].decrementPinCount();
-        if(pages[frameId].getPinCount() == 0) {
-            replacer.unpin(frameId);
+        return new PageScan(this, fromPageId, toPageId, startPageId, shared, new ScanRing(scanRingSize));
+    }
+
+    /**
+     * @return how many pages were read ahead into the buffer pool
+     */
+    public long getPrefetchedPageCount() {
+        return metrics.getPrefetchedPages();
+    }
+
+    int freeFrameCount() {
+        lockLatch();
+        try {
+            return freeFramesQueue.size();
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    // gives back the pin a scan took with fetchPage(pageId, ring)
+    void unpinScanPage(int pageId) {
+        int frameId;
+        Lock stripeLatch = pageTable.getLatch(pageId);
+        stripeLatch.lock();
+        try {
+            frameId = pageTable.get(pageId);
+        } finally {
+            stripeLatch.unlock();
+        }
+        // the pin of the scan keeps the page in its frame
+        assert frameId != DatabaseConfig.getInstance().getInvalidFrameId();
+        releasePin(frameId, pageId);
+    }
+
+    // the scan is done with its page range, the last one to leave forgets the range
+    void closeScan(int fromPageId, int toPageId, PageScan.SharedScan shared) {
+        sharedScansLatch.lock();
+        try {
+            if(--shared.activeScans == 0) {
+                sharedScans.remove(rangeKey(fromPageId, toPageId));
+            }
+        } finally {
+            sharedScansLatch.unlock();
         }
-        if(pageGotDirty) {
-            pages[frameId].setDirty(true);
+    }
+
+    // the pages that look dirty right now, without any latch, so the caller must check again with copyDirtyPage
+    int[] dirtyPageIds() {
+        int[] pageIds = new int[poolSize];
+        int count = 0;
+        for(int i = 0; i < poolSize; i++) {
+            int pageId = pages[i].getPageId();
+            if(pageId != DatabaseConfig.getInstance().getInvalidPageId() && pages[i].isDirty()) {
+                pageIds[count++] = pageId;
+            }
         }
+        return Arrays.copyOf(pageIds, count);
+    }
+
+    /**
+     * Copies the page into image, if it's still in the buffer pool and dirty, used by the checkpointer.
+     * The page stays pinned and dirty till releaseCopiedPages, so it can't be evicted or cleaned by someone else
+     * while its image waits to be written.
+     *
+     * @param versions versions[index] gets the version of the page latch the copy was taken at
+     * @return the LSN of the copied page, -1 if the page wasn't copied
+     */
+    int copyDirtyPage(int pageId, ByteBuffer image, long[] versions, int index) {
+        int frameId;
+        Lock stripeLatch = pageTable.getLatch(pageId);
+        stripeLatch.lock();
+        try {
+            frameId = pageTable.get(pageId);
+            if(frameId == DatabaseConfig.getInstance().getInvalidFrameId() || !pages[frameId].isDirty()) {
+                return -1;
+            }
+            // not reported to the replacer, a checkpoint isn't a use of the page
+            pages[frameId].incrementPinCount();
+        } finally {
+            stripeLatch.unlock();
+        }
+        try {
+            awaitLoad(frameId);
+        } catch (RuntimeException e) {
+            return -1;
+        }
+        Page page = pages[frameId];
+        page.readLatch();
+        try {
+            image.put(page.getBuffer().duplicate());
+            // a reader doesn't move the version, only a writer that comes after the copy does
+            versions[index] = page.tryOptimisticRead();
+            return page.getLSN();
+        } finally {
+            page.readUnlatch();
+        }
+    }
+
+    /**
+     * Gives back the pins taken by copyDirtyPage. If the images were written, a page is marked clean
+     * unless it changed since its copy (its latch version or LSN moved), then its image is already stale and it stays dirty.
+     */
+    void releaseCopiedPages(int[] pageIds, int[] lsns, long[] versions, int count, boolean written) {
+        for(int i = 0; i < count; i++) {
+            int frameId;
+            Lock stripeLatch = pageTable.getLatch(pageIds[i]);
+            stripeLatch.lock();
+            try {
+                frameId = pageTable.get(pageIds[i]);
+            } finally {
+                stripeLatch.unlock();
+            }
+            // our pin keeps the page in its frame
+            assert frameId != DatabaseConfig.getInstance().getInvalidFrameId();
+            Page page = pages[frameId];
+            if(written) {
+                // cleared before checking, so a writer that comes after the check marks it dirty again after us
+                page.setDirty(false);
+                if(!page.validate(versions[i]) || page.getLSN() != lsns[i]) {
+                    page.setDirty(true);
+                }
+            }
+            releasePin(frameId, pageIds[i]);
+        }
+    }
+
+    // writes the page images copied by copyDirtyPage with one batch write, once the log is durable up to the highest LSN among them
+    void writePages(int[] pageIds, ByteBuffer[] images, int maxLSN) {
+        if(logManager != null) {
+            logManager.flush(maxLSN);
+        }
+        diskManager.writePages(pageIds, images);
+    }
+
+    void syncDisk() {
+        diskManager.sync();
+    }
+
+    int nextVictims(int[] frameIds) {
+        return replacer.nextVictims(frameIds);
+    }
+
+    /**
+     * Flushes the frames that still hold a dirty page that nobody pinned, used by the page cleaner.
+     * The pages are written in page id order with one batch write, runs of consecutive pages with one I/O each.
+     * The global latch isn't taken, so misses keep going while the pages are written.
+     *
+     * @return the number of pages written
+     */
+    int cleanFrames(int[] frameIds, int count) {
+        // page id and index in frameIds packed together, so sorting them sorts the frames by page id
+        long[] candidates = new long[count];
+        int pinned = 0;
+        for(int i = 0; i < count; i++) {
+            Page page = pages[frameIds[i]];
+            int pageId = page.getPageId();
+            Lock stripeLatch = pageTable.getLatch(pageId);
+            stripeLatch.lock();
+            try {
+                if(pageTable.get(pageId) != frameIds[i] || page.getPinCount() > 0 || !page.isDirty()) {
+                    continue;
+                }
+                // pin it without telling the replacer, so cleaning doesn't count as a use of the page,
+                // if the frame gets chosen as a victim meanwhile, the eviction sees the pin and backs off
+                page.incrementPinCount();
+            } finally {
+                stripeLatch.unlock();
+            }
+            candidates[pinned++] = ((long) pageId << 32) | i;
+        }
+        if(pinned == 0) {
+            return 0;
+        }
+        Arrays.sort(candidates, 0, pinned);
+        int[] pageIds = new int[pinned];
+        int[] frames = new int[pinned];
+        for(int i = 0; i < pinned; i++) {
+            pageIds[i] = (int) (candidates[i] >>> 32);
+            frames[i] = frameIds[(int) candidates[i]];
+        }
+        try {
+            doFlushPages(pageIds, frames);
+            for(int i = 0; i < pinned; i++) {
+                metrics.recordBackgroundFlush();
+            }
+        } finally {
+            // a failed write left the pages dirty, so once unpinned they are written back before they are evicted
+            for(int i = 0; i < pinned; i++) {
+                releasePin(frames[i], pageIds[i]);
+            }
+        }
+        return pinned;
+    }
+
+    /**
+     * Reads the pages [fromPageId, fromPageId + count) that are not in the buffer pool yet, on behalf of the read-ahead.
+     * The pages are installed like misses, but they are never pinned in the replacer, and once read they are unpinned cold.
+     * A fetch that comes meanwhile pins its page like any other page and waits for the read, and then it's a page in use.
+     * All the pages are read with one batch read, the resident pages in between split it into runs of consecutive pages.
+     */
+    void prefetchPages(int fromPageId, int count) {
+        int last = (int) Math.min((long) fromPageId + count, pageAllocator.getNextPageId());
+        if(fromPageId >= last) {
+            return;
+        }
+        int[] pageIds = new int[last - fromPageId];
+        int[] frameIds = new int[last - fromPageId];
+        List<CompletableFuture<Void>> loads = new ArrayList<>(last - fromPageId);
+        int installed = 0;
+        lockLatch();
+        try {
+            for(int pageId = fromPageId; pageId < last; pageId++) {
+                if(isResident(pageId)) {
+                    continue;
+                }
+                int frameId = getFrame();
+                if(frameId == DatabaseConfig.getInstance().getInvalidFrameId()) {
+                    break;
+                }
+                // getFrame may have released the latch to write a dirty victim, so check again
+                if(isResident(pageId)) {
+                    freeFramesQueue.offer(frameId);
+                    continue;
+                }
+                CompletableFuture<Void> load = new CompletableFuture<>();
+                pendingLoads.set(frameId, load);
+                installColdPage(frameId, pageId);
+                pageIds[installed] = pageId;
+                frameIds[installed] = frameId;
+                loads.add(load);
+                installed++;
+            }
+        } finally {
+            latch.unlock();
+        }
+        if(installed == 0) {
+            return;
+        }
+        ByteBuffer[] buffers = new ByteBuffer[installed];
+        for(int i = 0; i < installed; i++) {
+            buffers[i] = pages[frameIds[i]].getBuffer().duplicate();
+        }
+        try {
+            diskManager.readPages(Arrays.copyOf(pageIds, installed), buffers);
+        } catch (RuntimeException e) {
+            for(int i = 0; i < installed; i++) {
+                abandonLoad(frameIds[i], pageIds[i]);
+                loads.get(i).completeExceptionally(e);
+            }
+            throw e;
+        }
+        for(int i = 0; i < installed; i++) {
+            pendingLoads.set(frameIds[i], null);
+            loads.get(i).complete(null);
+            metrics.recordPrefetchedPage();
+            releasePin(frameIds[i], pageIds[i]);
+        }
+    }
+
+    private boolean isResident(int pageId) {
+        Lock stripeLatch = pageTable.getLatch(pageId);
+        stripeLatch.lock();
+        try {
+            return pageTable.get(pageId) != DatabaseConfig.getInstance().getInvalidFrameId();
+        } finally {
+            stripeLatch.unlock();
+        }
+    }
+
+    // pins the page and returns its frame if it's in the buffer pool, the page may still be being read,
+    // use is false for the pins of scans, they leave a cold page cold
+    private int pinResident(int pageId, boolean use) {
+        Lock stripeLatch = pageTable.getLatch(pageId);
+        stripeLatch.lock();
+        try {
+            int frameId = pageTable.get(pageId);
+            if(frameId == DatabaseConfig.getInstance().getInvalidFrameId()) {
+                return frameId;
+            }
+            pages[frameId].incrementPinCount();
+            fetchedDuringWriteBack[frameId] = true;
+            // a fetch is a real use of the page, a scan pins it without telling the replacer like cleanFrames does,
+            // so it sets no use bit and records no access, if the frame gets chosen as a victim meanwhile,
+            // the eviction sees the pin and backs off, and releasePin re-admits it once the last pin is gone
+            if(use) {
+                replacer.pin(frameId);
+                cold[frameId] = false;
+            }
+            return frameId;
+        } finally {
+            stripeLatch.unlock();
+        }
+    }
+
+    // the miss path of a fetch, under the global latch it pins the page if another thread brought it in meanwhile,
+    // or installs it in a new frame published as "I/O in progress", the caller then reads it and completes pendingLoads
+    // @return the frame id and a miss flag packed together, frame id << 1 | 1 if the caller has to read the page,
+    // the frame id is the invalid frame id if there is no frame for the page
+    private long pinOrInstall(int pageId, ScanRing ring) {
+        lockLatch();
+        try {
+            // another thread may have brought the page in while we were waiting for the latch
+            int frameId = pinResident(pageId, ring == null);
+            if(frameId != DatabaseConfig.getInstance().getInvalidFrameId()) {
+                return (long) frameId << 1;
+            }
+            frameId = ring == null ? getFrame() : getRingFrame(ring);
+            if(frameId == DatabaseConfig.getInstance().getInvalidFrameId()) {
+                return (long) frameId << 1;
+            }
+            // getFrame may have released the latch to write a dirty victim, so check again
+            int residentFrameId = pinResident(pageId, ring == null);
+            if(residentFrameId != DatabaseConfig.getInstance().getInvalidFrameId()) {
+                freeFramesQueue.offer(frameId);
+                return (long) residentFrameId << 1;
+            }
+            // fetchers of the same page pin it and wait for our read
+            pendingLoads.set(frameId, new CompletableFuture<>());
+            if(ring == null) {
+                installPage(frameId, pageId);
+            } else {
+                installColdPage(frameId, pageId);
+            }
+            return (long) frameId << 1 | 1;
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    // Caller should hold a pin on the frame, like awaitLoad but doesn't wait, the future completes once the page is read
+    private CompletableFuture<Page> whenLoaded(int frameId) {
+        CompletableFuture<Void> load = pendingLoads.get(frameId);
+        if(load == null) {
+            return CompletableFuture.completedFuture(pages[frameId]);
+        }
+        return load.handle((ignored, e) -> {
+            if(e != null) {
+                releaseAbandonedFrame(frameId);
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+            }
+            return pages[frameId];
+        });
+    }
+
+    // Caller should hold a pin on the frame, waits till the read of its page is done,
+    // if the read failed the pin is given back and the error of the read is thrown
+    private Page awaitLoad(int frameId) {
+        CompletableFuture<Void> load = pendingLoads.get(frameId);
+        if(load != null) {
+            try {
+                load.join();
+            } catch (CompletionException e) {
+                releaseAbandonedFrame(frameId);
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        return pages[frameId];
+    }
+
+    // the read of pageId into frameId failed, take the page out of the page table, the frame goes back to the
+    // free list once the threads that are waiting on it give their pins back
+    private void abandonLoad(int frameId, int pageId) {
+        lockLatch();
+        try {
+            Lock stripeLatch = pageTable.getLatch(pageId);
+            stripeLatch.lock();
+            try {
+                pageTable.remove(pageId);
+                pages[frameId].setPageId(DatabaseConfig.getInstance().getInvalidPageId());
+                cold[frameId] = false;
+            } finally {
+                stripeLatch.unlock();
+            }
+            releaseAbandonedFrame(frameId);
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    // the frame is no longer in the page table, so its pin count is guarded by the global latch
+    private void releaseAbandonedFrame(int frameId) {
+        lockLatch();
+        try {
+            pages[frameId].decrementPinCount();
+            if(pages[frameId].getPinCount() == 0) {
+                // the failed read stays published till the last waiter saw it
+                pendingLoads.set(frameId, null);
+                pages[frameId].resetMemory();
+                pages[frameId].setDirty(false);
+                freeFramesQueue.offer(frameId);
+            }
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    // gives back a pin that wasn't taken by a fetch, a cold page goes back to the replacer cold
+    private void releasePin(int frameId, int pageId) {
+        Lock stripeLatch = pageTable.getLatch(pageId);
+        stripeLatch.lock();
+        try {
+            pages[frameId].decrementPinCount();
+            if(pages[frameId].getPinCount() == 0) {
+                if(cold[frameId]) {
+                    replacer.unpinCold(frameId);
+                } else {
+                    replacer.unpin(frameId);
+                }
+            }
+        } finally {
+            stripeLatch.unlock();
+        }
+    }
+
+    // takes the global latch, only an acquisition that has to wait pays for reading the clock
+    private void lockLatch() {
+        if(latch.tryLock()) {
+            metrics.recordLatchAcquisition();
+            return;
+        }
+        long start = System.nanoTime();
+        latch.lock();
+        metrics.recordLatchWait(System.nanoTime() - start);
+    }
+
+    private static long rangeKey(int fromPageId, int toPageId) {
+        return ((long) fromPageId << 32) | (toPageId & 0xffffffffL);
+    }
+
+    // Caller should acquire the latch before calling this function.
+    // publishes the frame as holding pageId, pinned once for the caller
+    private void installPage(int frameId, int pageId) {
+        Lock stripeLatch = pageTable.getLatch(pageId);
+        stripeLatch.lock();
+        try {
+            pages[frameId].setPageId(pageId);
+            pages[frameId].incrementPinCount();
+            replacer.recordPage(frameId, pageId);
+            replacer.pin(frameId);
+            cold[frameId] = false;
+            pageTable.put(pageId, frameId);
+        } finally {
+            stripeLatch.unlock();
+        }
+    }
+
+    // Caller should acquire the latch before calling this function.
+    // like installPage, but the pin isn't reported to the replacer, the page is cold till a fetch uses it
+    private void installColdPage(int frameId, int pageId) {
+        Lock stripeLatch = pageTable.getLatch(pageId);
+        stripeLatch.lock();
+        try {
+            pages[frameId].setPageId(pageId);
+            pages[frameId].incrementPinCount();
+            replacer.recordPage(frameId, pageId);
+            cold[frameId] = true;
+            pageTable.put(pageId, frameId);
+        } finally {
+            stripeLatch.unlock();
+        }
+    }
+
+    // Caller should acquire the latch before calling this function.
+    // once the ring is full the scan recycles its oldest frame, as long as the page in it is still the one the scan read,
+    // nobody uses it and it's clean, otherwise the frame is left to the pool and a frame from the pool takes its place
+    private int getRingFrame(ScanRing ring) {
+        if(ring.isFull() && reclaim(ring.oldest())) {
+            return ring.recycle();
+        }
+        int frameId = getFrame();
+        if(frameId != DatabaseConfig.getInstance().getInvalidFrameId()) {
+            ring.add(frameId);
+        }
+        return frameId;
+    }
+
+    // Caller should acquire the latch before calling this function.
+    private boolean reclaim(int frameId) {
+        Page page = pages[frameId];
+        int pageId = page.getPageId();
+        Lock stripeLatch = pageTable.getLatch(pageId);
+        stripeLatch.lock();
+        try {
+            if(pageTable.get(pageId) != frameId || page.getPinCount() > 0 || !cold[frameId] || page.isDirty()) {
+                return false;
+            }
+            replacer.remove(frameId);
+            pageTable.remove(pageId);
+        } finally {
+            stripeLatch.unlock();
+        }
+        evicted(page, frameId);
         return true;
     }
 
     // Caller should acquire the latch before calling this function.
+    // The latch is released while a dirty victim is written back, so the caller must re-validate what it looked up before.
     private int getFrame() {
         if(!this.freeFramesQueue.isEmpty()) {
             return freeFramesQueue.poll();
         }
-        int frameId = replacer.victim();
-        if(frameId == DatabaseConfig.getInstance().getInvalidFrameId()) {
-            return DatabaseConfig.getInstance().getInvalidFrameId();
+        while(true) {
+            long claimed = claimVictim();
+            int frameId = (int) (claimed >> 1);
+            if(frameId == DatabaseConfig.getInstance().getInvalidFrameId() || (claimed & 1) == 0) {
+                return frameId;
+            }
+            Page oldPage = pages[frameId];
+            int oldPageId = oldPage.getPageId();
+            metrics.recordDirtyEviction();
+            latch.unlock();
+            try {
+                doFlushPage(oldPage);
+            } catch (RuntimeException e) {
+                lockLatch();
+                // the page is still the only copy of its changes, it goes back to the pool dirty and the miss fails
+                oldPage.setDirty(true);
+                finishWriteBack(frameId, oldPageId);
+                throw e;
+            }
+            lockLatch();
+            if(finishWriteBack(frameId, oldPageId)) {
+                return frameId;
+            }
         }
+    }
+
+    // Caller should acquire the latch before calling this function.
+    // asks the replacer for a victim, a clean one is evicted right away, a dirty one stays resident and usable,
+    // pinned so other evictions keep away, and the caller writes it back and calls finishWriteBack
+    // @return the frame id and a dirty flag packed together, frame id << 1 | 1 if the victim has to be written back first,
+    // the frame id is the invalid frame id if there is no victim
+    private long claimVictim() {
+        while(true) {
+            int frameId = replacer.victim();
+            if(frameId == DatabaseConfig.getInstance().getInvalidFrameId()) {
+                return (long) frameId << 1;
+            }
+            Page oldPage = pages[frameId];
+            int oldPageId = oldPage.getPageId();
+            Lock stripeLatch = pageTable.getLatch(oldPageId);
+            stripeLatch.lock();
+            try {
+                // the replacer handed us the frame before we held the stripe latch, so a hit may have
+                // pinned (and maybe unpinned) it in between, re-admit it so the replacer agrees with the pin count,
+                // then either give it back pinned or take it out for good,
+                // the re-admit is a plain unpin, it isn't a use of the page and it keeps whatever priority
+                // the unpin of that hit gave the frame (see Replacer.unpin), so the priority isn't lost here
+                replacer.unpin(frameId);
+                if(oldPage.getPinCount() > 0) {
+                    replacer.pin(frameId);
+                    continue;
+                }
+                if(!oldPage.isDirty()) {
+                    replacer.remove(frameId);
+                    pageTable.remove(oldPageId);
+                    return (long) evicted(oldPage, frameId) << 1;
+                }
+                // keep it resident and usable while it's written back, the pin keeps other evictions away
+                oldPage.incrementPinCount();
+                fetchedDuringWriteBack[frameId] = false;
+                return (long) frameId << 1 | 1;
+            } finally {
+                stripeLatch.unlock();
+            }
+        }
+    }
+
+    // Caller should acquire the latch before calling this function.
+    // the write back of a victim claimed by claimVictim is done, gives back its pin and evicts it,
+    // @return false if somebody fetched the page meanwhile (even if they are done with it already) or dirtied it,
+    // then it's left in the pool as a used page
+    private boolean finishWriteBack(int frameId, int oldPageId) {
         Page oldPage = pages[frameId];
-        // it's completely fine to not acquire a latch on the page
-        // since the page will not be victimized if it's pinned and still in use, in other words,
-        // no other threads will be operating on the same page
-        if(oldPage.isDirty()) {
-            doFlushPage(oldPage);
+        Lock stripeLatch = pageTable.getLatch(oldPageId);
+        stripeLatch.lock();
+        try {
+            oldPage.decrementPinCount();
+            // another eviction may have seen our pin meanwhile and pinned it in the replacer, re-admit it again,
+            // a plain unpin keeps the priority a fetch during the write back gave the frame
+            replacer.unpin(frameId);
+            if(oldPage.getPinCount() > 0 || oldPage.isDirty() || fetchedDuringWriteBack[frameId]) {
+                if(oldPage.getPinCount() > 0) {
+                    replacer.pin(frameId);
+                }
+                return false;
+            }
+            replacer.remove(frameId);
+            pageTable.remove(oldPageId);
+            evicted(oldPage, frameId);
+            return true;
+        } finally {
+            stripeLatch.unlock();
         }
-        pageTable.remove(oldPage.getPageId());
+    }
+
+    // the page is clean and no longer in the page table, in other words,
+    // no other threads will be operating on the same page, and a miss on it reads it back from disk
+    private int evicted(Page oldPage, int frameId) {
+        metrics.recordEviction();
         oldPage.resetMemory();
         assert oldPage.getPinCount() == 0; // the pin count must be zero its victim
         return frameId;
     }
 
-    // Caller should acquire the latch before calling this function.
+    // Caller should keep the frame from being given to another page, either by holding the latch or a pin.
     // Make sure that frameId has a valid page, this is a private method the caller
     // of this method should know exactly what is going on
+    // With a log the caller must not hold the write latch of the page.
     private void doFlushPage(Page page) {
-        diskManager.writePage(page.getPageId(), page.getData());
+        // clear the flag before writing, a thread that dirties the page during the write sets it again
         page.setDirty(false);
+        try {
+            if(logManager == null) {
+                diskManager.writePage(page.getPageId(), page.getBuffer().duplicate());
+                return;
+            }
+            // WAL, the image we write must not hold a change whose log record isn't durable,
+            // so write a copy once the log caught up with it
+            ByteBuffer image = ByteBuffer.allocate(DatabaseConfig.getInstance().getPageSize());
+            int pageLSN = copyPage(page, image);
+            image.flip();
+            logManager.flush(pageLSN);
+            diskManager.writePage(page.getPageId(), image);
+        } catch (RuntimeException e) {
+            // nothing reached the disk, the page is still the only copy of its changes
+            page.setDirty(true);
+            throw e;
+        }
     }
 
-    /**
-     * @return the id of the allocated page
-     * @brief Allocate a page on disk. Caller should acquire the latch before calling this function.
-     */
-    private int allocatePage() {
-        // for now on each program run we will start from page 0
-        // later on we can add a data structure to track deallocated pages and use them to reduce fragmentation
-        return nextPageId.getAndIncrement();
+    // Caller should hold a pin on every frame, and the pages must be sorted by page id.
+    // like doFlushPage, but writes all the pages with one batch write
+    private void doFlushPages(int[] pageIds, int[] frameIds) {
+        ByteBuffer[] images = new ByteBuffer[pageIds.length];
+        int maxLSN = LogManager.INVALID_LSN;
+        for(int i = 0; i < pageIds.length; i++) {
+            Page page = pages[frameIds[i]];
+            page.setDirty(false);
+            if(logManager == null) {
+                images[i] = page.getBuffer().duplicate();
+                continue;
+            }
+            images[i] = ByteBuffer.allocate(DatabaseConfig.getInstance().getPageSize());
+            maxLSN = Math.max(maxLSN, copyPage(page, images[i]));
+            images[i].flip();
+        }
+        try {
+            if(logManager != null) {
+                logManager.flush(maxLSN);
+            }
+            diskManager.writePages(pageIds, images);
+        } catch (RuntimeException e) {
+            // we can't tell which pages of the batch reached the disk, so none of them counts as written
+            for(int frameId : frameIds) {
+                pages[frameId].setDirty(true);
+            }
+            throw e;
+        }
     }
 
-    /**
-     * @param pageId id of the page to deallocate
-     * @brief Deallocate a page on disk. Caller should acquire the latch before calling this function.
-     */
-    void deallocatePage(int pageId) {
-        // This is a no-nop right now without a more complex data structure to track deallocated pages
+    // copies the page under its read latch, where its bytes and its LSN agree, the caller must not hold its write latch
+    // @return the LSN of the copy
+    private int copyPage(Page page, ByteBuffer image) {
+        page.readLatch();
+        try {
+            image.put(page.getBuffer().duplicate());
+            return page.getLSN();
+        } finally {
+            page.readUnlatch();
+        }
     }
 }
@@ -0,0 +1,169 @@
+package com.husam.cachemanager;
+
+import com.husam.common.DatabaseConfig;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * fuzzy checkpoints, writes every page that was dirty when the checkpoint started while the pool stays fully online
+ * the dirty pages are collected without any latch and sorted by page id, so they are written in disk order,
+ * they are written in batches of at most maxBatchPages pages, every run of consecutive page ids in a batch with one I/O
+ * the pages of a batch stay pinned from their copy till the batch is written, so none of them is evicted before its image
+ * is on disk, and a page is only marked clean once it's written and only if it didn't change since its copy
+ * the checkpoint writes at most maxPagesPerSecond pages per second so it doesn't starve the foreground I/O,
+ * and syncs the disk once at the end
+ * it can run in the background every intervalMillis, flushAllPages runs it without the rate limit
+ * the background thread is stopped with a flag and never interrupted, an interrupt in the middle of a batch write
+ * would close the FileChannel of the database
+ */
+public class Checkpointer {
+
+    private static final Logger LOGGER = LogManager.getLogger(Checkpointer.class);
+    private final BufferPoolManagerImpl bufferPool;
+    private final int maxBatchPages;
+    // <= 0 means no limit
+    private final int maxPagesPerSecond;
+    private final long intervalMillis;
+    // one checkpoint at a time, it also guards the batch buffers
+    private final Lock checkpointLatch;
+    private final ByteBuffer[] batch;
+    private volatile boolean running;
+    private Thread thread;
+
+    public Checkpointer(BufferPoolManagerImpl bufferPool, int maxBatchPages, int maxPagesPerSecond, long intervalMillis) {
+        this.bufferPool = bufferPool;
+        this.maxBatchPages = Math.max(1, maxBatchPages);
+        this.maxPagesPerSecond = maxPagesPerSecond;
+        this.intervalMillis = intervalMillis;
+        this.checkpointLatch = new ReentrantLock();
+        this.batch = new ByteBuffer[this.maxBatchPages];
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, "checkpointer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if(thread == null) {
+            return;
+        }
+        // wakes it up if it waits for the next checkpoint or in the rate limit, a checkpoint in progress is finished
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs one rate limited checkpoint.
+     *
+     * @return the number of pages written
+     */
+    public int checkpoint() {
+        return checkpoint(maxPagesPerSecond);
+    }
+
+    /**
+     * @param pagesPerSecond <= 0 writes as fast as the disk goes
+     * @return the number of pages written
+     */
+    int checkpoint(int pagesPerSecond) {
+        checkpointLatch.lock();
+        try {
+            int[] dirtyPageIds = bufferPool.dirtyPageIds();
+            if(dirtyPageIds.length == 0) {
+                return 0;
+            }
+            Arrays.sort(dirtyPageIds);
+            long start = System.nanoTime();
+            int written = 0;
+            int next = 0;
+            int[] batchPageIds = new int[maxBatchPages];
+            int[] batchLSNs = new int[maxBatchPages];
+            long[] batchVersions = new long[maxBatchPages];
+            while(next < dirtyPageIds.length) {
+                int count = 0;
+                int maxLSN = 0;
+                boolean batchWritten = false;
+                try {
+                    // pages that were cleaned or evicted meanwhile are skipped, the gaps they leave split the batch write
+                    while(next < dirtyPageIds.length && count < maxBatchPages) {
+                        ByteBuffer image = batchBuffer(count);
+                        int lsn = bufferPool.copyDirtyPage(dirtyPageIds[next], image, batchVersions, count);
+                        if(lsn >= 0) {
+                            image.flip();
+                            batchLSNs[count] = lsn;
+                            batchPageIds[count++] = dirtyPageIds[next];
+                            maxLSN = Math.max(maxLSN, lsn);
+                        }
+                        next++;
+                    }
+                    if(count == 0) {
+                        continue;
+                    }
+                    bufferPool.writePages(Arrays.copyOf(batchPageIds, count), Arrays.copyOf(batch, count), maxLSN);
+                    batchWritten = true;
+                } finally {
+                    // the pages of the batch stay pinned and dirty till their images are on disk
+                    bufferPool.releaseCopiedPages(batchPageIds, batchLSNs, batchVersions, count, batchWritten);
+                }
+                written += count;
+                throttle(written, start, pagesPerSecond);
+            }
+            // one fsync for the whole checkpoint
+            bufferPool.syncDisk();
+            return written;
+        } finally {
+            checkpointLatch.unlock();
+        }
+    }
+
+    private ByteBuffer batchBuffer(int index) {
+        if(batch[index] == null) {
+            batch[index] = ByteBuffer.allocateDirect(DatabaseConfig.getInstance().getPageSize());
+        }
+        batch[index].clear();
+        return batch[index];
+    }
+
+    // sleeps till writing that many pages took as long as the rate allows
+    private void throttle(int written, long startNanos, int pagesPerSecond) {
+        if(pagesPerSecond <= 0) {
+            return;
+        }
+        long dueNanos = startNanos + TimeUnit.SECONDS.toNanos(written) / pagesPerSecond;
+        long waitNanos = dueNanos - System.nanoTime();
+        // a stopping checkpointer finishes its checkpoint at full speed, stop unparks it
+        while(waitNanos > 0 && (running || Thread.currentThread() != thread)) {
+            LockSupport.parkNanos(this, waitNanos);
+            waitNanos = dueNanos - System.nanoTime();
+        }
+    }
+
+    private void run() {
+        while(running) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(intervalMillis));
+            if(!running) {
+                return;
+            }
+            try {
+                checkpoint();
+            } catch (RuntimeException e) {
+                LOGGER.error("checkpoint failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.husam.cachemanager;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * background writer that keeps a reserve of clean evictable frames, so a miss almost never has to
+ * write a dirty victim before it can read its own page
+ * each round it asks the replacer for the frames it is going to victimize next, and flushes the dirty ones among them
+ * till the low watermark of clean frames (free frames included) ahead of the hand is reached,
+ * writing at most maxPagesPerRound pages per round to bound the I/O it adds,
+ * the pages of a round are written with one batch write in page id order, so neighbouring pages go out with one I/O
+ * the cleaner is stopped without an interrupt, an interrupt in the middle of a write closes the FileChannel of the database
+ */
+public class PageCleaner {
+
+    private static final Logger LOGGER = LogManager.getLogger(PageCleaner.class);
+    private final BufferPoolManagerImpl bufferPool;
+    private final int lowWatermark;
+    private final int maxPagesPerRound;
+    private final long intervalMillis;
+    // reused between rounds, only touched by the cleaner thread
+    private final int[] candidates;
+    private volatile boolean running;
+    private Thread thread;
+
+    public PageCleaner(BufferPoolManagerImpl bufferPool, int lowWatermark, int maxPagesPerRound, long intervalMillis) {
+        this.bufferPool = bufferPool;
+        this.lowWatermark = Math.min(lowWatermark, bufferPool.getPoolSize());
+        this.maxPagesPerRound = maxPagesPerRound;
+        this.intervalMillis = intervalMillis;
+        this.candidates = new int[this.lowWatermark];
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, "page-cleaner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if(thread == null) {
+            return;
+        }
+        // wakes it up if it waits for its next round, a round in progress is finished first
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs one cleaning round.
+     *
+     * @return the number of pages written
+     */
+    public int cleanRound() {
+        int needed = lowWatermark - bufferPool.freeFrameCount();
+        if(needed <= 0) {
+            return 0;
+        }
+        int count = bufferPool.nextVictims(candidates);
+        return bufferPool.cleanFrames(candidates, Math.min(Math.min(count, needed), maxPagesPerRound));
+    }
+
+    private void run() {
+        while(running) {
+            try {
+                cleanRound();
+            } catch (RuntimeException e) {
+                LOGGER.error("page cleaner round failed", e);
+            }
+            if(running) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(intervalMillis));
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.husam.cachemanager;
+
+import com.husam.storageengine.page.Page;
+
+import java.util.NoSuchElementException;
+
+/**
+ * sequential scan over a range of page ids, opened with BufferPoolManager.openScan
+ * every page of the range is returned once, starting at the page the scan joined the running scans at,
+ * going to the end of the range and wrapping around to its start
+ * the page returned by next stays pinned till the next call of next or close, scans are read only,
+ * a page must not be modified through a scan
+ * a scan is used by one thread, close it when you are done, even if it didn't reach the end
+ */
+public class PageScan implements AutoCloseable {
+
+    // the scans that are running over a page range
+    static final class SharedScan {
+        // the page the scans read last, a new scan starts there
+        volatile int position;
+        // guarded by the shared scans latch of the buffer pool
+        int activeScans;
+
+        SharedScan(int fromPageId) {
+            this.position = fromPageId;
+        }
+    }
+
+    private final BufferPoolManagerImpl bufferPool;
+    private final int fromPageId;
+    private final int toPageId;
+    private final SharedScan shared;
+    private final ScanRing ring;
+    private int nextPageId;
+    private int remaining;
+    private Page current;
+    private boolean closed;
+
+    PageScan(BufferPoolManagerImpl bufferPool, int fromPageId, int toPageId, int startPageId, SharedScan shared, ScanRing ring) {
+        this.bufferPool = bufferPool;
+        this.fromPageId = fromPageId;
+        this.toPageId = toPageId;
+        this.shared = shared;
+        this.ring = ring;
+        this.nextPageId = startPageId;
+        this.remaining = toPageId - fromPageId;
+    }
+
+    public boolean hasNext() {
+        return !closed && remaining > 0;
+    }
+
+    /**
+     * Unpins the page returned before and returns the next page of the scan pinned.
+     *
+     * @return the next page, or null if it couldn't be fetched since every frame is pinned
+     */
+    public Page next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        releaseCurrent();
+        int pageId = nextPageId;
+        nextPageId = pageId + 1 == toPageId ? fromPageId : pageId + 1;
+        remaining--;
+        shared.position = pageId;
+        current = bufferPool.fetchPage(pageId, ring);
+        return current;
+    }
+
+    @Override
+    public void close() {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        releaseCurrent();
+        bufferPool.closeScan(fromPageId, toPageId, shared);
+    }
+
+    private void releaseCurrent() {
+        if(current != null) {
+            bufferPool.unpinScanPage(current.getPageId());
+            current = null;
+        }
+    }
+}
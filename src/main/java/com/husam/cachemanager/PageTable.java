@@ -0,0 +1,183 @@
+package com.husam.cachemanager;
+
+import com.husam.common.DatabaseConfig;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * page table that maps page ids to frame ids using primitive ints only, so lookups never box
+ * the table is split into stripes, each stripe is an open addressing hash table (linear probing) guarded by its own latch,
+ * pages that hash to different stripes never contend with each other
+ * the table doesn't take the latches by itself, the caller must hold getLatch(pageId) around every operation on pageId,
+ * that way the BPM can look up a frame and pin it atomically
+ */
+public class PageTable {
+
+    private static final int MAX_STRIPES = 4096;
+    private static final int MIN_STRIPE_CAPACITY = 8;
+
+    private static final class Stripe {
+        final Lock latch = new ReentrantLock();
+        int[] keys;
+        int[] values;
+        int mask;
+        int size;
+
+        Stripe(int capacity) {
+            this.keys = new int[capacity];
+            this.values = new int[capacity];
+            this.mask = capacity - 1;
+            Arrays.fill(keys, EMPTY);
+        }
+    }
+
+    // page ids are never negative, so the invalid page id marks an empty slot
+    private static final int EMPTY = DatabaseConfig.getInstance().getInvalidPageId();
+
+    private final Stripe[] stripes;
+    private final int stripeBits;
+
+    public PageTable(int poolSize) {
+        int numOfStripes = Math.min(MAX_STRIPES, nextPowerOfTwo(Runtime.getRuntime().availableProcessors() * 16));
+        this.stripeBits = Integer.numberOfTrailingZeros(numOfStripes);
+        this.stripes = new Stripe[numOfStripes];
+        // keep every stripe at most half full when the pool is full and the pages are spread evenly
+        int capacity = nextPowerOfTwo(Math.max(MIN_STRIPE_CAPACITY, 2 * ((poolSize + numOfStripes - 1) / numOfStripes)));
+        for(int i = 0; i < numOfStripes; i++) {
+            stripes[i] = new Stripe(capacity);
+        }
+    }
+
+    /**
+     * @return the latch of the stripe that pageId belongs to, it must be held around get, put and remove of pageId
+     */
+    public Lock getLatch(int pageId) {
+        return stripes[hash(pageId) & (stripes.length - 1)].latch;
+    }
+
+    /**
+     * @return the frame id holding pageId, or the invalid frame id if the page is not in the table
+     */
+    public int get(int pageId) {
+        if(pageId == EMPTY) {
+            return DatabaseConfig.getInstance().getInvalidFrameId();
+        }
+        int hash = hash(pageId);
+        Stripe stripe = stripes[hash & (stripes.length - 1)];
+        int[] keys = stripe.keys;
+        for(int slot = home(hash, stripe.mask); ; slot = (slot + 1) & stripe.mask) {
+            if(keys[slot] == pageId) {
+                return stripe.values[slot];
+            }
+            if(keys[slot] == EMPTY) {
+                return DatabaseConfig.getInstance().getInvalidFrameId();
+            }
+        }
+    }
+
+    /**
+     * Maps pageId to frameId, replacing any previous mapping of pageId.
+     */
+    public void put(int pageId, int frameId) {
+        assert pageId != EMPTY;
+        int hash = hash(pageId);
+        Stripe stripe = stripes[hash & (stripes.length - 1)];
+        int slot = home(hash, stripe.mask);
+        while(stripe.keys[slot] != EMPTY) {
+            if(stripe.keys[slot] == pageId) {
+                stripe.values[slot] = frameId;
+                return;
+            }
+            slot = (slot + 1) & stripe.mask;
+        }
+        stripe.keys[slot] = pageId;
+        stripe.values[slot] = frameId;
+        stripe.size++;
+        if(stripe.size * 2 > stripe.keys.length) {
+            grow(stripe);
+        }
+    }
+
+    /**
+     * @return the frame id that pageId was mapped to, or the invalid frame id if the page was not in the table
+     */
+    public int remove(int pageId) {
+        if(pageId == EMPTY) {
+            return DatabaseConfig.getInstance().getInvalidFrameId();
+        }
+        int hash = hash(pageId);
+        Stripe stripe = stripes[hash & (stripes.length - 1)];
+        int[] keys = stripe.keys;
+        int slot = home(hash, stripe.mask);
+        while(keys[slot] != pageId) {
+            if(keys[slot] == EMPTY) {
+                return DatabaseConfig.getInstance().getInvalidFrameId();
+            }
+            slot = (slot + 1) & stripe.mask;
+        }
+        int frameId = stripe.values[slot];
+        // backward shift deletion, so we never need tombstones and probe chains stay short
+        int hole = slot;
+        int next = slot;
+        while(true) {
+            next = (next + 1) & stripe.mask;
+            if(keys[next] == EMPTY) {
+                break;
+            }
+            int nextHome = home(hash(keys[next]), stripe.mask);
+            boolean staysInPlace = hole <= next ? (hole < nextHome && nextHome <= next) : (hole < nextHome || nextHome <= next);
+            if(staysInPlace) {
+                continue;
+            }
+            keys[hole] = keys[next];
+            stripe.values[hole] = stripe.values[next];
+            hole = next;
+        }
+        keys[hole] = EMPTY;
+        stripe.size--;
+        return frameId;
+    }
+
+    private void grow(Stripe stripe) {
+        int[] oldKeys = stripe.keys;
+        int[] oldValues = stripe.values;
+        int capacity = oldKeys.length * 2;
+        stripe.keys = new int[capacity];
+        stripe.values = new int[capacity];
+        stripe.mask = capacity - 1;
+        Arrays.fill(stripe.keys, EMPTY);
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldKeys[i] == EMPTY) {
+                continue;
+            }
+            int slot = home(hash(oldKeys[i]), stripe.mask);
+            while(stripe.keys[slot] != EMPTY) {
+                slot = (slot + 1) & stripe.mask;
+            }
+            stripe.keys[slot] = oldKeys[i];
+            stripe.values[slot] = oldValues[i];
+        }
+    }
+
+    // the low bits pick the stripe, so the slot inside the stripe is taken from the rotated hash
+    private int home(int hash, int mask) {
+        return Integer.rotateRight(hash, stripeBits) & mask;
+    }
+
+    // murmur3 finalizer, page ids are sequential so they have to be mixed before masking
+    private static int hash(int pageId) {
+        int h = pageId;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+}
@@ -0,0 +1,134 @@
+package com.husam.cachemanager;
+
+import com.husam.common.DatabaseConfig;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * reads pages into the buffer pool before they are asked for, on a small pool of background threads
+ * prefetch is the explicit hint, and onFetch watches the fetches of every thread for a sequential run,
+ * once a thread fetched trigger consecutive page ids a window of the next windowPages pages is prefetched,
+ * and a new window is asked for whenever the scan gets into the second half of the previous one,
+ * so the reads stay ahead of the scan without flooding the pool
+ * a prefetch is cut into tasks of at most PAGES_PER_READ pages, each task reads its pages with one batch read,
+ * so a window is read with a few large sequential reads, in parallel
+ * the detection is per thread, scans running in different threads don't break each other's runs
+ */
+public class ReadAhead {
+
+    private static final Logger LOGGER = LogManager.getLogger(ReadAhead.class);
+    // 128KB with the default page size
+    private static final int PAGES_PER_READ = 32;
+
+    // the sequential run of the fetches of one thread
+    private static final class Run {
+        int lastPageId = DatabaseConfig.getInstance().getInvalidPageId();
+        int length;
+        // the pages below this one were already asked for
+        int prefetchedUntil;
+    }
+
+    private final BufferPoolManagerImpl bufferPool;
+    private final int windowPages;
+    private final int trigger;
+    // a prefetch never asks for more than this, so a read-ahead can't take over the pool
+    private final int maxPagesPerPrefetch;
+    private final ThreadLocal<Run> runs = ThreadLocal.withInitial(Run::new);
+    private final ExecutorService readers;
+    // the queued prefetches are skipped once it's set
+    private volatile boolean stopped;
+
+    /**
+     * @param windowPages how many pages are read ahead of a sequential scan, 0 disables the detection
+     * @param trigger     how many consecutive page ids a thread has to fetch before it counts as a scan
+     */
+    public ReadAhead(BufferPoolManagerImpl bufferPool, int numOfThreads, int windowPages, int trigger) {
+        this.bufferPool = bufferPool;
+        this.windowPages = windowPages;
+        this.trigger = Math.max(1, trigger);
+        this.maxPagesPerPrefetch = Math.max(1, bufferPool.getPoolSize() / 4);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.readers = Executors.newFixedThreadPool(Math.max(1, numOfThreads), task -> {
+            Thread thread = new Thread(task, "read-ahead-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Asks for pages [fromPageId, fromPageId + count) to be read in the background, pages that are already in the
+     * buffer pool are skipped, and so are the ones that don't fit in the share of the pool a prefetch may take.
+     */
+    public void prefetch(int fromPageId, int count) {
+        if(fromPageId < 0 || count <= 0) {
+            return;
+        }
+        int last = (int) Math.min(Integer.MAX_VALUE, (long) fromPageId + Math.min(count, maxPagesPerPrefetch));
+        try {
+            for(int pageId = fromPageId; pageId < last; pageId += PAGES_PER_READ) {
+                int from = pageId;
+                int pages = Math.min(PAGES_PER_READ, last - pageId);
+                readers.execute(() -> prefetchPages(from, pages));
+            }
+        } catch (RejectedExecutionException e) {
+            // stopped, it was only a hint
+        }
+    }
+
+    /**
+     * Called on every fetch, prefetches the next window once the thread is scanning sequentially.
+     */
+    public void onFetch(int pageId) {
+        if(windowPages <= 0) {
+            return;
+        }
+        Run run = runs.get();
+        if(pageId == run.lastPageId + 1) {
+            run.length++;
+        } else {
+            run.length = 1;
+            run.prefetchedUntil = pageId + 1;
+        }
+        run.lastPageId = pageId;
+        if(run.length >= trigger && run.prefetchedUntil - pageId <= windowPages / 2) {
+            int from = Math.max(run.prefetchedUntil, pageId + 1);
+            int until = pageId + 1 + windowPages;
+            prefetch(from, until - from);
+            run.prefetchedUntil = until;
+        }
+    }
+
+    /**
+     * Drops the prefetches that didn't start yet and waits for the running ones, the readers aren't interrupted,
+     * since an interrupt in the middle of a read closes the FileChannel of the database for every thread.
+     */
+    public void stop() {
+        stopped = true;
+        readers.shutdown();
+        try {
+            while(!readers.awaitTermination(1, TimeUnit.SECONDS)) {
+                LOGGER.debug("waiting for the running prefetches to finish");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void prefetchPages(int fromPageId, int count) {
+        if(stopped) {
+            return;
+        }
+        try {
+            bufferPool.prefetchPages(fromPageId, count);
+        } catch (RuntimeException e) {
+            // a fetch of the pages reads them again and sees the error itself
+            LOGGER.debug("prefetch of {} pages starting at the page with ID: {} failed", count, fromPageId, e);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.husam.cachemanager;
+
+import com.husam.cachemanager.replacers.Priority;
+import com.husam.storageengine.page.Page;
+import com.husam.storageengine.page.ReadPageGuard;
+
+import java.nio.ByteBuffer;
+
+class ReadPageGuardImpl implements ReadPageGuard {
+
+    private final BufferPoolManager bufferPool;
+    private final Page page;
+    private boolean latched;
+    // the version an optimistic guard reads under, 0 while a writer held the latch, which never validates
+    private long stamp;
+    private boolean released;
+    // the page is unpinned with it
+    private final Priority priority;
+
+    // the caller already holds the read latch if latched is true
+    ReadPageGuardImpl(BufferPoolManager bufferPool, Page page, boolean latched) {
+        this(bufferPool, page, latched, Priority.NORMAL);
+    }
+
+    ReadPageGuardImpl(BufferPoolManager bufferPool, Page page, boolean latched, Priority priority) {
+        this.bufferPool = bufferPool;
+        this.page = page;
+        this.latched = latched;
+        this.priority = priority;
+        if(!latched) {
+            this.stamp = page.tryOptimisticRead();
+        }
+    }
+
+    @Override
+    public int getPageId() {
+        return page.getPageId();
+    }
+
+    @Override
+    public ByteBuffer getBuffer() {
+        assert !released;
+        return page.getBuffer();
+    }
+
+    @Override
+    public boolean isLatched() {
+        return latched;
+    }
+
+    @Override
+    public boolean validate() {
+        return latched || page.validate(stamp);
+    }
+
+    @Override
+    public void latch() {
+        assert !released;
+        if(latched) {
+            return;
+        }
+        page.readLatch();
+        latched = true;
+    }
+
+    @Override
+    public void close() {
+        if(released) {
+            return;
+        }
+        released = true;
+        if(latched) {
+            page.readUnlatch();
+        }
+        bufferPool.unpinPage(page.getPageId(), false, priority);
+    }
+}
@@ -0,0 +1,43 @@
+package com.husam.cachemanager;
+
+/**
+ * the private frames of a scan, in the order the scan filled them
+ * only touched while holding the latch of the buffer pool
+ */
+class ScanRing {
+
+    private final int[] frameIds;
+    private int size;
+    // the oldest frame once the ring is full
+    private int next;
+
+    ScanRing(int capacity) {
+        this.frameIds = new int[capacity];
+    }
+
+    boolean isFull() {
+        return size == frameIds.length;
+    }
+
+    int oldest() {
+        assert isFull();
+        return frameIds[next];
+    }
+
+    // the oldest frame is reused, it becomes the newest one
+    int recycle() {
+        int frameId = oldest();
+        next = (next + 1) % frameIds.length;
+        return frameId;
+    }
+
+    // a frame from the pool joins the ring, once the ring is full it takes the place of the oldest frame
+    void add(int frameId) {
+        if(!isFull()) {
+            frameIds[size++] = frameId;
+            return;
+        }
+        frameIds[next] = frameId;
+        next = (next + 1) % frameIds.length;
+    }
+}
@@ -0,0 +1,50 @@
+package com.husam.cachemanager;
+
+import com.husam.cachemanager.replacers.Priority;
+import com.husam.storageengine.page.Page;
+import com.husam.storageengine.page.WritePageGuard;
+
+import java.nio.ByteBuffer;
+
+class WritePageGuardImpl implements WritePageGuard {
+
+    private final BufferPoolManager bufferPool;
+    private final Page page;
+    private boolean released;
+    // the page is unpinned with it
+    private final Priority priority;
+
+    // the caller already holds the write latch
+    WritePageGuardImpl(BufferPoolManager bufferPool, Page page) {
+        this(bufferPool, page, Priority.NORMAL);
+    }
+
+    WritePageGuardImpl(BufferPoolManager bufferPool, Page page, Priority priority) {
+        this.bufferPool = bufferPool;
+        this.page = page;
+        this.priority = priority;
+    }
+
+    @Override
+    public int getPageId() {
+        return page.getPageId();
+    }
+
+    @Override
+    public ByteBuffer getBuffer() {
+        assert !released;
+        return page.getBuffer();
+    }
+
+    @Override
+    public void close() {
+        if(released) {
+            return;
+        }
+        released = true;
+        // the page id is read before unlatching, the pin keeps it anyway
+        int pageId = page.getPageId();
+        page.writeUnlatch();
+        bufferPool.unpinPage(pageId, true, priority);
+    }
+}
@@ -15,14 +15,21 @@ import java.util.concurrent.locks.ReentrantLock;
  * when the entry get used it will mark it as used, so the hand will re-set it again
  * at first all frames will be in the replacer, and to use a new frame you have to evict
  * which will take o(1) at first till the replacer is full
+ * frames unpinned with a HIGH priority get HIGH_PRIORITY_PASSES extra passes of the hand before they can be evicted,
+ * and every use refills them, so a hot page survives a burst of misses even when it's only briefly unpinned,
+ * the frames holding passes are capped at maxProtectedFrames, past that a HIGH unpin is a plain one,
+ * so the protected pages can never take over the pool
  */
 public class ClockReplacer implements Replacer {
 
     private static final Logger LOGGER = LogManager.getLogger(ClockReplacer.class);
+    private static final int HIGH_PRIORITY_PASSES = 2;
     private static class Entry {
         boolean isValid;
         boolean isPinned;
         boolean useBit;
+        // extra passes of the hand left, the frame is protected while it's not 0
+        int passes;
 
         Entry(boolean isValid, boolean isPinned) {
             this.isValid = isValid;
@@ -35,9 +42,19 @@ public class ClockReplacer implements Replacer {
     private int size;
     private final int numOfFrames;
     private int hand;
+    private int protectedFrames;
+    private final int maxProtectedFrames;
     private final Lock latch;
 
     public ClockReplacer(int numOfFrames) {
+        this(numOfFrames, numOfFrames * DatabaseConfig.getInstance().getProtectedFramesPercent() / 100);
+    }
+
+    /**
+     * @param maxProtectedFrames the most frames that keep their HIGH priority at once
+     */
+    public ClockReplacer(int numOfFrames, int maxProtectedFrames) {
+        this.maxProtectedFrames = maxProtectedFrames;
         this.clock = new Entry[numOfFrames];
         this.size = 0;
         this.numOfFrames = numOfFrames;
@@ -54,8 +71,9 @@ public class ClockReplacer implements Replacer {
         int chances = 0;
         try {
             while (true) {
-                chances++;
-                if(chances == numOfFrames * 2) {
+                // two sweeps clear every use bit and reach every unpinned frame, a few more use up the passes of the protected ones,
+                // the extra step covers the frame under the hand
+                if(chances++ == numOfFrames * (2 + HIGH_PRIORITY_PASSES) + 1) {
                     return DatabaseConfig.getInstance().getInvalidFrameId();
                 }
                 hand = ((hand + 1) % numOfFrames);
@@ -67,6 +85,12 @@ public class ClockReplacer implements Replacer {
                     entry.useBit = false;
                     continue;
                 }
+                if(entry.passes > 0) {
+                    if(--entry.passes == 0) {
+                        protectedFrames--;
+                    }
+                    continue;
+                }
                 entry.isValid = false;
                 entry.isPinned = true; // useBit is already false
                 size--;
@@ -98,6 +122,10 @@ public class ClockReplacer implements Replacer {
                 size--;
             }
             entry.useBit = true;
+            // a protected page stays protected as long as it's used
+            if(entry.passes > 0) {
+                entry.passes = HIGH_PRIORITY_PASSES;
+            }
         } finally {
             latch.unlock();
         }
@@ -119,6 +147,51 @@ public class ClockReplacer implements Replacer {
         }
     }
 
+    @Override
+    public void unpin(int frameId, Priority priority) {
+        if(priority == Priority.LOW) {
+            unpinCold(frameId);
+            return;
+        }
+        assert isValidFrameId(frameId);
+        latch.lock();
+        try {
+            Entry entry = clock[frameId];
+            if(priority == Priority.HIGH && (entry.passes > 0 || protectedFrames < maxProtectedFrames)) {
+                if(entry.passes == 0) {
+                    protectedFrames++;
+                }
+                entry.passes = HIGH_PRIORITY_PASSES;
+            }
+            entry.isValid = true;
+            if(entry.isPinned) {
+                entry.isPinned = false;
+                size++;
+            }
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    // the hand takes it on its first pass, unless it gets used before
+    @Override
+    public void unpinCold(int frameId) {
+        assert isValidFrameId(frameId);
+        latch.lock();
+        try {
+            Entry entry = clock[frameId];
+            entry.isValid = true;
+            entry.useBit = false;
+            unprotect(entry);
+            if(entry.isPinned) {
+                entry.isPinned = false;
+                size++;
+            }
+        } finally {
+            latch.unlock();
+        }
+    }
+
     @Override
     public void remove(int frameId) {
         assert isValidFrameId(frameId);
@@ -131,12 +204,44 @@ public class ClockReplacer implements Replacer {
             entry.isValid = false;
             entry.isPinned = true;
             entry.useBit = false;
+            unprotect(entry);
             size--;
         } finally {
             latch.unlock();
         }
     }
 
+    @Override
+    public int nextVictims(int[] frameIds) {
+        latch.lock();
+        try {
+            // the hand takes entries that have no use bit on its first sweep,
+            // and the ones that have it after clearing them on the second sweep, the protected ones come after that
+            int count = collectAheadOfHand(frameIds, 0, false);
+            return collectAheadOfHand(frameIds, count, true);
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    // Caller should acquire the latch before calling this function.
+    private int collectAheadOfHand(int[] frameIds, int count, boolean useBit) {
+        for(int i = 1; i <= numOfFrames && count < frameIds.length; i++) {
+            Entry entry = clock[(hand + i) % numOfFrames];
+            if(entry.isValid && !entry.isPinned && entry.passes == 0 && entry.useBit == useBit) {
+                frameIds[count++] = (hand + i) % numOfFrames;
+            }
+        }
+        return count;
+    }
+
+    // Caller should acquire the latch before calling this function.
+    private void unprotect(Entry entry) {
+        if(entry.passes > 0) {
+            entry.passes = 0;
+            protectedFrames--;
+        }
+    }
 
     @Override
     public int size() {
@@ -0,0 +1,198 @@
+package com.husam.cachemanager.replacers;
+
+import com.husam.common.DatabaseConfig;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * LRU-K replacement algorithm
+ * that uses coarse grain locking, stability and predictability in DBMS is the most important
+ * every pin is an access, and the replacer remembers the last K access timestamps of each frame,
+ * the victim is the evictable frame with the largest backward K-distance (now minus its K-th most recent access),
+ * frames with less than K accesses have an infinite distance and among them the one with the earliest access goes first
+ * so a page that was touched once by a scan is evicted before a page that is referenced over and over, even if the
+ * scan touched it more recently
+ * the oldest timestamp a frame remembers is its first access if it has less than K accesses, or its K-th most recent access
+ * otherwise, so evictable frames are kept in two sets ordered by that timestamp, and a victim takes O(log n)
+ */
+public class LRUKReplacer implements Replacer {
+
+    private static final Logger LOGGER = LogManager.getLogger(LRUKReplacer.class);
+    private final int k;
+    private final int numOfFrames;
+    // the last k access timestamps of every frame, as a ring of k slots per frame
+    private final long[] history;
+    private final int[] nextSlot;
+    // number of remembered accesses of every frame, capped at k
+    private final int[] accessCount;
+    private final boolean[] isTracked;
+    private final boolean[] isEvictable;
+    // evictable frames, keyed by oldestTimestamp * numOfFrames + frameId so ties are broken by the frame id
+    private final TreeSet<Long> infiniteDistance;
+    private final TreeSet<Long> finiteDistance;
+    private long currentTimestamp;
+    private int size;
+    private final Lock latch;
+
+    public LRUKReplacer(int numOfFrames, int k) {
+        if(k < 1) {
+            throw new IllegalArgumentException("k must be at least 1, k = " + k);
+        }
+        this.k = k;
+        this.numOfFrames = numOfFrames;
+        this.history = new long[numOfFrames * k];
+        this.nextSlot = new int[numOfFrames];
+        this.accessCount = new int[numOfFrames];
+        this.isTracked = new boolean[numOfFrames];
+        this.isEvictable = new boolean[numOfFrames];
+        this.infiniteDistance = new TreeSet<>();
+        this.finiteDistance = new TreeSet<>();
+        this.currentTimestamp = 0;
+        this.size = 0;
+        this.latch = new ReentrantLock();
+    }
+
+    @Override
+    public int victim() {
+        latch.lock();
+        try {
+            TreeSet<Long> candidates = !infiniteDistance.isEmpty() ? infiniteDistance : finiteDistance;
+            if(candidates.isEmpty()) {
+                return DatabaseConfig.getInstance().getInvalidFrameId();
+            }
+            int frameId = (int) (candidates.pollFirst() % numOfFrames);
+            size--;
+            forget(frameId);
+            return frameId;
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    private boolean isValidFrameId(int frameId) {
+        if(frameId < 0 || frameId >= numOfFrames) {
+            LOGGER.fatal("asked to pin frameId that is invalid, the frameId = " + frameId);
+            return false;
+        }
+        return true;
+    }
+
+    // every pin is an access, including the first one when a page is loaded into the frame
+    @Override
+    public void pin(int frameId) {
+        assert isValidFrameId(frameId);
+        latch.lock();
+        try {
+            if(isEvictable[frameId]) {
+                setOf(frameId).remove(key(frameId));
+                isEvictable[frameId] = false;
+                size--;
+            }
+            isTracked[frameId] = true;
+            history[frameId * k + nextSlot[frameId]] = ++currentTimestamp;
+            nextSlot[frameId] = (nextSlot[frameId] + 1) % k;
+            accessCount[frameId] = Math.min(accessCount[frameId] + 1, k);
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    @Override
+    public void unpin(int frameId) {
+        assert isValidFrameId(frameId);
+        latch.lock();
+        try {
+            isTracked[frameId] = true;
+            if(!isEvictable[frameId]) {
+                isEvictable[frameId] = true;
+                setOf(frameId).add(key(frameId));
+                size++;
+            }
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    @Override
+    public void remove(int frameId) {
+        assert isValidFrameId(frameId);
+        latch.lock();
+        try {
+            if(!isTracked[frameId]) {
+                return;
+            }
+            if(!isEvictable[frameId]) {
+                throw new RuntimeException("tried to remove a pinned frame, according to specification this error must be thrown");
+            }
+            setOf(frameId).remove(key(frameId));
+            size--;
+            forget(frameId);
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    @Override
+    public int nextVictims(int[] frameIds) {
+        latch.lock();
+        try {
+            int count = collect(infiniteDistance, frameIds, 0);
+            return collect(finiteDistance, frameIds, count);
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        latch.lock();
+        try {
+            return size;
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    // Caller should acquire the latch before calling this function.
+    private int collect(TreeSet<Long> candidates, int[] frameIds, int count) {
+        Iterator<Long> it = candidates.iterator();
+        while(it.hasNext() && count < frameIds.length) {
+            frameIds[count++] = (int) (it.next() % numOfFrames);
+        }
+        return count;
+    }
+
+    // Caller should acquire the latch before calling this function.
+    private TreeSet<Long> setOf(int frameId) {
+        return accessCount[frameId] < k ? infiniteDistance : finiteDistance;
+    }
+
+    // Caller should acquire the latch before calling this function.
+    // the slot the next access goes to holds the oldest timestamp once the ring is full
+    private long key(int frameId) {
+        long oldest;
+        if(accessCount[frameId] == 0) {
+            oldest = 0;
+        } else if(accessCount[frameId] < k) {
+            oldest = history[frameId * k];
+        } else {
+            oldest = history[frameId * k + nextSlot[frameId]];
+        }
+        return oldest * numOfFrames + frameId;
+    }
+
+    // Caller should acquire the latch before calling this function.
+    private void forget(int frameId) {
+        isTracked[frameId] = false;
+        isEvictable[frameId] = false;
+        accessCount[frameId] = 0;
+        nextSlot[frameId] = 0;
+        Arrays.fill(history, frameId * k, frameId * k + k, 0);
+    }
+}
@@ -0,0 +1,243 @@
+package com.husam.cachemanager.replacers;
+
+import com.husam.common.DatabaseConfig;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * clock replacement algorithm without locks, a drop-in for ClockReplacer with the same victimization order
+ * the valid, pinned and use flags of every frame are packed in one int of an atomic array, so pin and unpin are a single
+ * CAS on the frame's own word (a retry only happens if another thread changed the same frame at the same time),
+ * and the buffer pool hit path doesn't take any lock in the replacer
+ * the hand is an atomic counter, each evicting thread claims the next position with one increment, so evictions run
+ * concurrently and each of them examines different frames, a frame is claimed by CAS-ing it from valid and unpinned
+ * to invalid, so it can only be handed to one of them
+ * the extra passes of the frames unpinned with a HIGH priority live in the same word, see ClockReplacer,
+ * and the protected frames are counted with an atomic counter that is reserved before the CAS that protects a frame
+ */
+public class LockFreeClockReplacer implements Replacer {
+
+    private static final Logger LOGGER = LogManager.getLogger(LockFreeClockReplacer.class);
+    private static final int VALID = 1;
+    private static final int PINNED = 1 << 1;
+    private static final int USE = 1 << 2;
+    // the extra passes of the hand left, 2 bits
+    private static final int PASS = 1 << 3;
+    private static final int PASSES = 3 << 3;
+    private static final int HIGH_PRIORITY_PASSES = 2;
+    // the state of an entry that isn't in the replacer, same as ClockReplacer's initial entries
+    private static final int REMOVED = PINNED | USE;
+
+    private final AtomicIntegerArray clock;
+    private final AtomicInteger size;
+    private final AtomicInteger hand;
+    private final int numOfFrames;
+    private final AtomicInteger protectedFrames;
+    private final int maxProtectedFrames;
+
+    public LockFreeClockReplacer(int numOfFrames) {
+        this(numOfFrames, numOfFrames * DatabaseConfig.getInstance().getProtectedFramesPercent() / 100);
+    }
+
+    /**
+     * @param maxProtectedFrames the most frames that keep their HIGH priority at once
+     */
+    public LockFreeClockReplacer(int numOfFrames, int maxProtectedFrames) {
+        this.protectedFrames = new AtomicInteger(0);
+        this.maxProtectedFrames = maxProtectedFrames;
+        this.clock = new AtomicIntegerArray(numOfFrames);
+        this.size = new AtomicInteger(0);
+        this.hand = new AtomicInteger(0);
+        this.numOfFrames = numOfFrames;
+        for(int i = 0; i < numOfFrames; i++) {
+            clock.set(i, REMOVED);
+        }
+    }
+
+    @Override
+    public int victim() {
+        while(true) {
+            // two sweeps clear every use bit and reach every unpinned frame, a few more use up the passes of the protected ones,
+            // the extra step covers the frame under the hand
+            for(int chances = 0; chances <= numOfFrames * (2 + HIGH_PRIORITY_PASSES); chances++) {
+                int frameId = Math.floorMod(hand.incrementAndGet(), numOfFrames);
+                int state = clock.get(frameId);
+                if((state & PINNED) != 0 || (state & VALID) == 0) {
+                    continue;
+                }
+                if((state & USE) != 0) {
+                    // if the CAS fails somebody else touched the frame, it's not a victim on this sweep either way
+                    clock.compareAndSet(frameId, state, state & ~USE);
+                    continue;
+                }
+                if((state & PASSES) != 0) {
+                    if(clock.compareAndSet(frameId, state, state - PASS) && (state & PASSES) == PASS) {
+                        protectedFrames.decrementAndGet();
+                    }
+                    continue;
+                }
+                if(clock.compareAndSet(frameId, state, PINNED)) {
+                    size.decrementAndGet();
+                    return frameId;
+                }
+            }
+            // the other evicting threads move the hand too, so our steps may have skipped the frames that became victims,
+            // only give up once nothing is evictable
+            if(size.get() == 0) {
+                return DatabaseConfig.getInstance().getInvalidFrameId();
+            }
+        }
+    }
+
+    private boolean isValidFrameId(int frameId) {
+        if(frameId < 0 || frameId >= numOfFrames) {
+            LOGGER.fatal("asked to pin frameId that is invalid, the frameId = " + frameId);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void pin(int frameId) {
+        assert isValidFrameId(frameId);
+        while(true) {
+            int state = clock.get(frameId);
+            if((state & VALID) == 0) {
+                return;
+            }
+            int next = state | PINNED | USE;
+            // a protected page stays protected as long as it's used
+            if((state & PASSES) != 0) {
+                next = (next & ~PASSES) | HIGH_PRIORITY_PASSES * PASS;
+            }
+            if(clock.compareAndSet(frameId, state, next)) {
+                if((state & PINNED) == 0) {
+                    size.decrementAndGet();
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void unpin(int frameId) {
+        assert isValidFrameId(frameId);
+        while(true) {
+            int state = clock.get(frameId);
+            if(clock.compareAndSet(frameId, state, (state | VALID) & ~PINNED)) {
+                if((state & PINNED) != 0) {
+                    size.incrementAndGet();
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void unpin(int frameId, Priority priority) {
+        if(priority != Priority.HIGH) {
+            Replacer.super.unpin(frameId, priority);
+            return;
+        }
+        assert isValidFrameId(frameId);
+        boolean reserved = false;
+        while(true) {
+            int state = clock.get(frameId);
+            boolean isProtected = (state & PASSES) != 0;
+            if(!isProtected && !reserved) {
+                reserved = reserveProtectedFrame();
+            }
+            int next = (state | VALID) & ~PINNED;
+            if(isProtected || reserved) {
+                next = (next & ~PASSES) | HIGH_PRIORITY_PASSES * PASS;
+            }
+            if(clock.compareAndSet(frameId, state, next)) {
+                if((state & PINNED) != 0) {
+                    size.incrementAndGet();
+                }
+                // the frame was protected already, give the reservation back
+                if(isProtected && reserved) {
+                    protectedFrames.decrementAndGet();
+                }
+                return;
+            }
+        }
+    }
+
+    // the hand takes it on its first pass, unless it gets used before
+    @Override
+    public void unpinCold(int frameId) {
+        assert isValidFrameId(frameId);
+        while(true) {
+            int state = clock.get(frameId);
+            if(clock.compareAndSet(frameId, state, (state | VALID) & ~(PINNED | USE | PASSES))) {
+                if((state & PINNED) != 0) {
+                    size.incrementAndGet();
+                }
+                if((state & PASSES) != 0) {
+                    protectedFrames.decrementAndGet();
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void remove(int frameId) {
+        assert isValidFrameId(frameId);
+        while(true) {
+            int state = clock.get(frameId);
+            if((state & VALID) == 0) {
+                throw new RuntimeException("tried to remove a frame that is already removed, according to specification this error must be thrown");
+            }
+            if(clock.compareAndSet(frameId, state, PINNED)) {
+                if((state & PINNED) == 0) {
+                    size.decrementAndGet();
+                }
+                if((state & PASSES) != 0) {
+                    protectedFrames.decrementAndGet();
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int nextVictims(int[] frameIds) {
+        // a best effort snapshot, the frames may change while we look at them
+        int start = Math.floorMod(hand.get(), numOfFrames);
+        int count = collectAheadOfHand(start, frameIds, 0, false);
+        return collectAheadOfHand(start, frameIds, count, true);
+    }
+
+    private int collectAheadOfHand(int start, int[] frameIds, int count, boolean useBit) {
+        for(int i = 1; i <= numOfFrames && count < frameIds.length; i++) {
+            int frameId = (start + i) % numOfFrames;
+            int state = clock.get(frameId);
+            if((state & VALID) != 0 && (state & PINNED) == 0 && (state & PASSES) == 0 && ((state & USE) != 0) == useBit) {
+                frameIds[count++] = frameId;
+            }
+        }
+        return count;
+    }
+
+    private boolean reserveProtectedFrame() {
+        while(true) {
+            int count = protectedFrames.get();
+            if(count >= maxProtectedFrames) {
+                return false;
+            }
+            if(protectedFrames.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+}
@@ -0,0 +1,13 @@
+package com.husam.cachemanager.replacers;
+
+/**
+ * retention hint for a page, given when the page is unpinned, see Replacer.unpin(int, Priority)
+ * HIGH is for the pages that are touched all the time, like index roots and inner nodes and metadata pages,
+ * the replacer keeps them through a burst of misses as long as they fit in its protected share of the pool,
+ * LOW is for pages that won't be used again soon, they are among the next victims like a page that was only prefetched
+ */
+public enum Priority {
+    LOW,
+    NORMAL,
+    HIGH
+}
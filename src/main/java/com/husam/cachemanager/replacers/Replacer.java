@@ -11,6 +11,16 @@ public interface Replacer {
      */
     int victim();
 
+    /**
+     * Tells the replacer which page was just loaded into a frame, the BPM calls it before the first pin of the page.
+     * Policies that remember recently evicted pages (ghost entries) need it, the others can ignore it.
+     *
+     * @param frameId the frame the page was loaded into
+     * @param pageId  the id of the loaded page
+     */
+    default void recordPage(int frameId, int pageId) {
+    }
+
     /**
      * Pins an frameId, indicating that it should not be victimized until it is unpinned.
      *
@@ -20,11 +30,40 @@ public interface Replacer {
 
     /**
      * Unpins a frameId, indicating that it can be victimized.
+     * It keeps the retention priority an earlier unpin gave the frame, only unpinCold, remove and the policy
+     * itself as the frame ages drop it, so the BPM can re-admit a victim it couldn't evict without knowing its priority.
      *
      * @param frameId the frame id to unpin
      */
     void unpin(int frameId);
 
+    /**
+     * Unpins a frameId with a retention hint, NORMAL is a plain unpin and LOW an unpinCold.
+     * Policies that can protect hot frames keep the HIGH ones longer, the default treats them as NORMAL.
+     *
+     * @param frameId  the frame id to unpin
+     * @param priority how hard the replacer should try to keep the frame
+     */
+    default void unpin(int frameId, Priority priority) {
+        if(priority == Priority.LOW) {
+            unpinCold(frameId);
+        } else {
+            unpin(frameId);
+        }
+    }
+
+    /**
+     * Unpins a frame whose page was prefetched and never used, it should be among the next victims till it gets pinned,
+     * so a wrong guess of the read-ahead doesn't push out pages that are really used.
+     * The BPM never pins a prefetched page in the replacer, so the default, a plain unpin, is already right
+     * for the policies that only learn about uses through pin.
+     *
+     * @param frameId the frame id to unpin
+     */
+    default void unpinCold(int frameId) {
+        unpin(frameId);
+    }
+
     /**
      * @param frameId id of frame to be removed
      * @brief Remove an evictable frame from replacer.
@@ -37,6 +76,15 @@ public interface Replacer {
      */
     void remove(int frameId);
 
+    /**
+     * Looks ahead of the replacement policy without changing any state, used by the page cleaner
+     * to clean the frames that are about to be evicted.
+     *
+     * @param frameIds filled with the frames that would be victimized next, in victimization order
+     * @return the number of frame ids written into frameIds
+     */
+    int nextVictims(int[] frameIds);
+
     /**
      * @return the number of elements in the replacer that can be victimized
      */
@@ -0,0 +1,349 @@
+package com.husam.cachemanager.replacers;
+
+import com.husam.common.DatabaseConfig;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 2Q replacement algorithm (Johnson and Shasha), scan resistant
+ * that uses coarse grain locking, stability and predictability in DBMS is the most important
+ * a newly loaded page goes to A1in, a FIFO of pages seen once, accesses within the correlated reference period
+ * after its load (A1in's size, counted in accesses) don't promote it, since they are part of the same use of the page,
+ * a later access promotes it to Am, otherwise a pool that never runs out of free frames would never promote anything,
+ * when A1in grows beyond its share of the pool its oldest page is evicted and its page id is remembered in A1out,
+ * a bounded FIFO of ghost entries that holds no frame,
+ * a page that is loaded again while its ghost is still in A1out was re-referenced after a while, so it goes straight to Am,
+ * an LRU list that holds the hot pages, and is only victimized when A1in is within its share
+ * a sequential scan only ever churns A1in and A1out, so the hot pages in Am survive it
+ * lists are intrusive over the frame ids, so moving a frame never allocates
+ */
+public class TwoQueueReplacer implements Replacer {
+
+    private static final Logger LOGGER = LogManager.getLogger(TwoQueueReplacer.class);
+    private static final int NONE = -1;
+    private static final int A1_IN = 0;
+    private static final int AM = 1;
+
+    private final int numOfFrames;
+    // A1in is victimized first once it holds more than this many frames
+    private final int maxA1InSize;
+    // number of ghost page ids remembered
+    private final int maxA1OutSize;
+    // doubly linked lists of frame ids, head is the newest (MRU) end and tail the oldest (LRU) end
+    private final int[] prev;
+    private final int[] next;
+    private final int[] head;
+    private final int[] tail;
+    private final int[] listSize;
+    // the list a frame is in, or was in before it was victimized, NONE if it never held a page
+    private final int[] queueOf;
+    private final boolean[] isTracked;
+    private final boolean[] isEvictable;
+    // the page each frame holds, as told by recordPage
+    private final int[] pageOf;
+    // frames whose page id was put in A1out when they were victimized
+    private final boolean[] leftGhost;
+    // frames holding a prefetched page that wasn't used yet, they don't leave a ghost since their page was never referenced
+    private final boolean[] isCold;
+    private final LinkedHashSet<Integer> a1Out;
+    // counts the accesses, the value of accessClock when each frame's page was loaded
+    private long accessClock;
+    private final long[] loadedAt;
+    private int size;
+    private final Lock latch;
+
+    public TwoQueueReplacer(int numOfFrames) {
+        // the sizes recommended by the paper, a quarter of the pool for A1in and ghosts for half of it
+        this(numOfFrames, Math.max(1, numOfFrames / 4), Math.max(1, numOfFrames / 2));
+    }
+
+    public TwoQueueReplacer(int numOfFrames, int maxA1InSize, int maxA1OutSize) {
+        this.numOfFrames = numOfFrames;
+        this.maxA1InSize = maxA1InSize;
+        this.maxA1OutSize = maxA1OutSize;
+        this.prev = new int[numOfFrames];
+        this.next = new int[numOfFrames];
+        this.head = new int[]{NONE, NONE};
+        this.tail = new int[]{NONE, NONE};
+        this.listSize = new int[2];
+        this.queueOf = new int[numOfFrames];
+        this.isTracked = new boolean[numOfFrames];
+        this.isEvictable = new boolean[numOfFrames];
+        this.pageOf = new int[numOfFrames];
+        this.leftGhost = new boolean[numOfFrames];
+        this.isCold = new boolean[numOfFrames];
+        this.a1Out = new LinkedHashSet<>();
+        this.accessClock = 0;
+        this.loadedAt = new long[numOfFrames];
+        this.size = 0;
+        this.latch = new ReentrantLock();
+        Arrays.fill(queueOf, NONE);
+        Arrays.fill(pageOf, DatabaseConfig.getInstance().getInvalidPageId());
+    }
+
+    @Override
+    public void recordPage(int frameId, int pageId) {
+        assert isValidFrameId(frameId);
+        latch.lock();
+        try {
+            if(isTracked[frameId]) {
+                unlink(frameId);
+                if(isEvictable[frameId]) {
+                    size--;
+                }
+            }
+            pageOf[frameId] = pageId;
+            leftGhost[frameId] = false;
+            isCold[frameId] = false;
+            loadedAt[frameId] = accessClock;
+            // a page that comes back while its ghost is remembered was re-referenced, it's hot
+            int queue = a1Out.remove(pageId) ? AM : A1_IN;
+            pushHead(queue, frameId);
+            isTracked[frameId] = true;
+            isEvictable[frameId] = false;
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    @Override
+    public int victim() {
+        latch.lock();
+        try {
+            int frameId = findVictim();
+            if(frameId == NONE) {
+                return DatabaseConfig.getInstance().getInvalidFrameId();
+            }
+            evict(frameId);
+            return frameId;
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    private boolean isValidFrameId(int frameId) {
+        if(frameId < 0 || frameId >= numOfFrames) {
+            LOGGER.fatal("asked to pin frameId that is invalid, the frameId = " + frameId);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void pin(int frameId) {
+        assert isValidFrameId(frameId);
+        latch.lock();
+        try {
+            if(!isTracked[frameId]) {
+                return;
+            }
+            if(isEvictable[frameId]) {
+                isEvictable[frameId] = false;
+                size--;
+            }
+            isCold[frameId] = false;
+            accessClock++;
+            // early re-references in A1in are correlated with the load, only Am is kept in recency order
+            boolean promote = queueOf[frameId] == A1_IN && accessClock - loadedAt[frameId] > maxA1InSize;
+            if(queueOf[frameId] == AM || promote) {
+                unlink(frameId);
+                pushHead(AM, frameId);
+            }
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    @Override
+    public void unpin(int frameId) {
+        assert isValidFrameId(frameId);
+        latch.lock();
+        try {
+            if(!isTracked[frameId]) {
+                // a victimized frame handed back by the BPM, its page is still there, so it goes back
+                // to the old end of the list it was taken from, and it's no longer a ghost
+                if(leftGhost[frameId]) {
+                    a1Out.remove(pageOf[frameId]);
+                    leftGhost[frameId] = false;
+                }
+                pushTail(queueOf[frameId] == NONE ? A1_IN : queueOf[frameId], frameId);
+                isTracked[frameId] = true;
+            }
+            if(!isEvictable[frameId]) {
+                isEvictable[frameId] = true;
+                size++;
+            }
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    // a prefetched page goes to the old end of A1in, so it's the next victim unless it gets used before
+    @Override
+    public void unpinCold(int frameId) {
+        assert isValidFrameId(frameId);
+        latch.lock();
+        try {
+            if(!isTracked[frameId]) {
+                // the BPM always records a page before, there is no queue to pick without it
+                unpin(frameId);
+                return;
+            }
+            unlink(frameId);
+            pushTail(A1_IN, frameId);
+            isCold[frameId] = true;
+            if(!isEvictable[frameId]) {
+                isEvictable[frameId] = true;
+                size++;
+            }
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    @Override
+    public void remove(int frameId) {
+        assert isValidFrameId(frameId);
+        latch.lock();
+        try {
+            if(!isTracked[frameId]) {
+                return;
+            }
+            if(!isEvictable[frameId]) {
+                throw new RuntimeException("tried to remove a pinned frame, according to specification this error must be thrown");
+            }
+            evict(frameId);
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    @Override
+    public int nextVictims(int[] frameIds) {
+        latch.lock();
+        try {
+            // walk the lists in the order victim would take them
+            int first = firstQueue();
+            int count = collect(first, frameIds, 0);
+            return collect(1 - first, frameIds, count);
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        latch.lock();
+        try {
+            return size;
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    // Caller should acquire the latch before calling this function.
+    private int findVictim() {
+        int first = firstQueue();
+        int frameId = oldestEvictable(first);
+        if(frameId == NONE) {
+            frameId = oldestEvictable(1 - first);
+        }
+        return frameId;
+    }
+
+    // Caller should acquire the latch before calling this function.
+    private int firstQueue() {
+        return listSize[A1_IN] > maxA1InSize ? A1_IN : AM;
+    }
+
+    // Caller should acquire the latch before calling this function.
+    private int collect(int queue, int[] frameIds, int count) {
+        for(int frameId = tail[queue]; frameId != NONE && count < frameIds.length; frameId = prev[frameId]) {
+            if(isEvictable[frameId]) {
+                frameIds[count++] = frameId;
+            }
+        }
+        return count;
+    }
+
+    // Caller should acquire the latch before calling this function.
+    private int oldestEvictable(int queue) {
+        for(int frameId = tail[queue]; frameId != NONE; frameId = prev[frameId]) {
+            if(isEvictable[frameId]) {
+                return frameId;
+            }
+        }
+        return NONE;
+    }
+
+    // Caller should acquire the latch before calling this function.
+    // takes an evictable frame out, a page leaving A1in is remembered in A1out
+    private void evict(int frameId) {
+        int queue = queueOf[frameId];
+        unlink(frameId);
+        queueOf[frameId] = queue;
+        isTracked[frameId] = false;
+        isEvictable[frameId] = false;
+        size--;
+        if(queue == A1_IN && !isCold[frameId] && pageOf[frameId] != DatabaseConfig.getInstance().getInvalidPageId()) {
+            a1Out.add(pageOf[frameId]);
+            leftGhost[frameId] = true;
+            if(a1Out.size() > maxA1OutSize) {
+                Iterator<Integer> oldest = a1Out.iterator();
+                oldest.next();
+                oldest.remove();
+            }
+        }
+    }
+
+    // Caller should acquire the latch before calling this function.
+    private void pushHead(int queue, int frameId) {
+        prev[frameId] = NONE;
+        next[frameId] = head[queue];
+        if(head[queue] != NONE) {
+            prev[head[queue]] = frameId;
+        } else {
+            tail[queue] = frameId;
+        }
+        head[queue] = frameId;
+        queueOf[frameId] = queue;
+        listSize[queue]++;
+    }
+
+    // Caller should acquire the latch before calling this function.
+    private void pushTail(int queue, int frameId) {
+        next[frameId] = NONE;
+        prev[frameId] = tail[queue];
+        if(tail[queue] != NONE) {
+            next[tail[queue]] = frameId;
+        } else {
+            head[queue] = frameId;
+        }
+        tail[queue] = frameId;
+        queueOf[frameId] = queue;
+        listSize[queue]++;
+    }
+
+    // Caller should acquire the latch before calling this function.
+    private void unlink(int frameId) {
+        int queue = queueOf[frameId];
+        if(prev[frameId] != NONE) {
+            next[prev[frameId]] = next[frameId];
+        } else {
+            head[queue] = next[frameId];
+        }
+        if(next[frameId] != NONE) {
+            prev[next[frameId]] = prev[frameId];
+        } else {
+            tail[queue] = prev[frameId];
+        }
+        listSize[queue]--;
+        queueOf[frameId] = NONE;
+    }
+}
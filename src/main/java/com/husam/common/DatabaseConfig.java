@@ -1,5 +1,7 @@
 package com.husam.common;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class DatabaseConfig {
@@ -8,6 +10,52 @@ public class DatabaseConfig {
     private int pageSize = 4096;
     private int invalidPageId = -1;
     private int invalidFrameId = -1;
+    private DurabilityMode durabilityMode = DurabilityMode.STRICT;
+    // in deferred durability mode, sync after this many writes, <= 0 disables it
+    private int syncEveryWrites = 64;
+    // in deferred durability mode, sync once the oldest unsynced write is this old, <= 0 disables it
+    private long syncIntervalMillis = 10;
+    // number of clean evictable frames the page cleaner keeps ahead of the replacer, 0 disables the cleaner
+    private int cleanerLowWatermark = 0;
+    // the page cleaner writes at most this many pages per round
+    private int cleanerMaxPagesPerRound = 64;
+    private long cleanerIntervalMillis = 10;
+    // keep the buffer pool frames in one off-heap arena instead of a heap array per frame
+    private boolean offHeapFrames = false;
+    // the backend DiskManager.open hands out
+    private DiskManagerBackend diskManagerBackend = DiskManagerBackend.FILE_CHANNEL;
+    // directories to stripe the database file over, one file in each, empty means the file name is used as it is
+    private List<String> dataDirectories = Collections.emptyList();
+    // consecutive pages that go to the same file when the database is striped
+    private int stripeExtentPages = 64;
+    // the memory mapped backend maps the file in chunks of this many bytes, must be a multiple of the page size
+    private int mappedChunkSize = 64 * 1024 * 1024;
+    // pages read ahead of a sequential scan, 0 disables the automatic read-ahead (explicit prefetches still work)
+    private int readAheadPages = 0;
+    // consecutive page ids a thread has to fetch before the read-ahead kicks in
+    private int readAheadTrigger = 4;
+    // threads that read the prefetched pages
+    private int prefetchThreads = 2;
+    // threads that do the I/O of the asynchronous fetches, the disk scheduler keeps the rest of the requests queued
+    private int diskSchedulerThreads = 4;
+    // the most frames the clock replacers protect for pages unpinned with a HIGH priority, in percent of the pool
+    private int protectedFramesPercent = 25;
+    // frames in the private ring of a scan, it's capped at a quarter of the pool
+    private int scanRingFrames = 32;
+    // publish the buffer pool and disk manager metrics as JMX MBeans, they are collected either way
+    private boolean jmxMetrics = true;
+    // bytes of each of the two write-ahead log buffers, the biggest log record must fit in one
+    private int logBufferSize = 1024 * 1024;
+    // the log is flushed once its oldest unflushed record is this old, <= 0 only flushes full buffers and on request
+    private long logFlushIntervalMillis = 5;
+    // run a checkpoint in the background every this many millis, 0 disables the background checkpoints
+    private long checkpointIntervalMillis = 0;
+    // a background checkpoint writes at most this many pages per second, <= 0 means no limit
+    private int checkpointMaxPagesPerSecond = 4096;
+    // the most consecutive pages a checkpoint writes with one I/O
+    private int checkpointMaxBatchPages = 32;
+    // pages a table heap allocates at once when it grows, so its pages sit next to each other on disk
+    private int tableHeapExtentPages = 8;
 
     private DatabaseConfig() {
         // Private constructor to prevent instantiation from outside
@@ -33,8 +81,199 @@ public class DatabaseConfig {
         return invalidFrameId;
     }
 
+    public DurabilityMode getDurabilityMode() {
+        return durabilityMode;
+    }
+
+    public void setDurabilityMode(DurabilityMode durabilityMode) {
+        this.durabilityMode = durabilityMode;
+    }
+
+    public int getSyncEveryWrites() {
+        return syncEveryWrites;
+    }
+
+    public void setSyncEveryWrites(int syncEveryWrites) {
+        this.syncEveryWrites = syncEveryWrites;
+    }
+
+    public long getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    public void setSyncIntervalMillis(long syncIntervalMillis) {
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    public int getCleanerLowWatermark() {
+        return cleanerLowWatermark;
+    }
+
+    public void setCleanerLowWatermark(int cleanerLowWatermark) {
+        this.cleanerLowWatermark = cleanerLowWatermark;
+    }
+
+    public int getCleanerMaxPagesPerRound() {
+        return cleanerMaxPagesPerRound;
+    }
+
+    public void setCleanerMaxPagesPerRound(int cleanerMaxPagesPerRound) {
+        this.cleanerMaxPagesPerRound = cleanerMaxPagesPerRound;
+    }
+
+    public long getCleanerIntervalMillis() {
+        return cleanerIntervalMillis;
+    }
+
+    public void setCleanerIntervalMillis(long cleanerIntervalMillis) {
+        this.cleanerIntervalMillis = cleanerIntervalMillis;
+    }
+
+    public boolean isOffHeapFrames() {
+        return offHeapFrames;
+    }
+
+    public void setOffHeapFrames(boolean offHeapFrames) {
+        this.offHeapFrames = offHeapFrames;
+    }
+
+    public DiskManagerBackend getDiskManagerBackend() {
+        return diskManagerBackend;
+    }
+
+    public void setDiskManagerBackend(DiskManagerBackend diskManagerBackend) {
+        this.diskManagerBackend = diskManagerBackend;
+    }
+
+    public List<String> getDataDirectories() {
+        return dataDirectories;
+    }
+
+    public void setDataDirectories(List<String> dataDirectories) {
+        this.dataDirectories = dataDirectories;
+    }
+
+    public int getStripeExtentPages() {
+        return stripeExtentPages;
+    }
+
+    public void setStripeExtentPages(int stripeExtentPages) {
+        this.stripeExtentPages = stripeExtentPages;
+    }
+
+    public int getMappedChunkSize() {
+        return mappedChunkSize;
+    }
+
+    public void setMappedChunkSize(int mappedChunkSize) {
+        this.mappedChunkSize = mappedChunkSize;
+    }
+
+    public int getReadAheadPages() {
+        return readAheadPages;
+    }
+
+    public void setReadAheadPages(int readAheadPages) {
+        this.readAheadPages = readAheadPages;
+    }
+
+    public int getReadAheadTrigger() {
+        return readAheadTrigger;
+    }
+
+    public void setReadAheadTrigger(int readAheadTrigger) {
+        this.readAheadTrigger = readAheadTrigger;
+    }
+
+    public int getPrefetchThreads() {
+        return prefetchThreads;
+    }
+
+    public void setPrefetchThreads(int prefetchThreads) {
+        this.prefetchThreads = prefetchThreads;
+    }
+
+    public int getDiskSchedulerThreads() {
+        return diskSchedulerThreads;
+    }
+
+    public void setDiskSchedulerThreads(int diskSchedulerThreads) {
+        this.diskSchedulerThreads = diskSchedulerThreads;
+    }
+
+    public int getProtectedFramesPercent() {
+        return protectedFramesPercent;
+    }
+
+    public void setProtectedFramesPercent(int protectedFramesPercent) {
+        this.protectedFramesPercent = protectedFramesPercent;
+    }
+
+    public int getScanRingFrames() {
+        return scanRingFrames;
+    }
+
+    public void setScanRingFrames(int scanRingFrames) {
+        this.scanRingFrames = scanRingFrames;
+    }
+
+    public boolean isJmxMetrics() {
+        return jmxMetrics;
+    }
+
+    public void setJmxMetrics(boolean jmxMetrics) {
+        this.jmxMetrics = jmxMetrics;
+    }
+
+    public int getLogBufferSize() {
+        return logBufferSize;
+    }
+
+    public void setLogBufferSize(int logBufferSize) {
+        this.logBufferSize = logBufferSize;
+    }
+
+    public long getLogFlushIntervalMillis() {
+        return logFlushIntervalMillis;
+    }
+
+    public void setLogFlushIntervalMillis(long logFlushIntervalMillis) {
+        this.logFlushIntervalMillis = logFlushIntervalMillis;
+    }
+
+    public long getCheckpointIntervalMillis() {
+        return checkpointIntervalMillis;
+    }
+
+    public void setCheckpointIntervalMillis(long checkpointIntervalMillis) {
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+    }
+
+    public int getCheckpointMaxPagesPerSecond() {
+        return checkpointMaxPagesPerSecond;
+    }
+
+    public void setCheckpointMaxPagesPerSecond(int checkpointMaxPagesPerSecond) {
+        this.checkpointMaxPagesPerSecond = checkpointMaxPagesPerSecond;
+    }
+
+    public int getCheckpointMaxBatchPages() {
+        return checkpointMaxBatchPages;
+    }
+
+    public void setCheckpointMaxBatchPages(int checkpointMaxBatchPages) {
+        this.checkpointMaxBatchPages = checkpointMaxBatchPages;
+    }
+
+    public int getTableHeapExtentPages() {
+        return tableHeapExtentPages;
+    }
+
+    public void setTableHeapExtentPages(int tableHeapExtentPages) {
+        this.tableHeapExtentPages = tableHeapExtentPages;
+    }
+
     public void save() {
         // Save config to file
     }
-
-}
\ No newline at end of file
+}
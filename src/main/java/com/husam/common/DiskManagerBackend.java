@@ -0,0 +1,16 @@
+package com.husam.common;
+
+/**
+ * the DiskManager implementation that DiskManager.open hands out
+ */
+public enum DiskManagerBackend {
+    /**
+     * positional reads and writes on a FileChannel, see FileChannelDiskManager
+     */
+    FILE_CHANNEL,
+    /**
+     * the file is mapped in chunks and pages are copied in and out of the mapping, see MemoryMappedDiskManager,
+     * best for read mostly databases that fit in the OS page cache
+     */
+    MEMORY_MAPPED
+}
@@ -0,0 +1,16 @@
+package com.husam.common;
+
+/**
+ * how page writes are made durable by the DiskManager
+ */
+public enum DurabilityMode {
+    /**
+     * every page write is followed by its own fsync before it returns, this is the safest and the slowest mode
+     */
+    STRICT,
+    /**
+     * page writes are left in the OS page cache and a sync coordinator batches the fsyncs,
+     * every N writes, every T milliseconds or at an explicit sync() barrier, whichever comes first
+     */
+    DEFERRED
+}
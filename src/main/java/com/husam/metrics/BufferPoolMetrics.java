@@ -0,0 +1,191 @@
+package com.husam.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * counters of one buffer pool, the hot paths only bump striped counters (LongAdder), so keeping them on costs
+ * about nothing, the time spent waiting on the global latch is only measured when the latch was contended
+ * use snapshot() to read them all at once, or the MXBean the pool registers
+ */
+public final class BufferPoolMetrics implements BufferPoolMetricsMXBean {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    // victims a miss had to write back by itself before reusing their frame
+    private final LongAdder dirtyEvictions = new LongAdder();
+    // pages the page cleaner wrote ahead of the replacer
+    private final LongAdder backgroundFlushes = new LongAdder();
+    private final LongAdder prefetchedPages = new LongAdder();
+    private final LongAdder latchAcquisitions = new LongAdder();
+    // only the acquisitions that had to wait
+    private final LatencyHistogram latchWaits = new LatencyHistogram();
+
+    public void recordHit() {
+        hits.increment();
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    public void recordEviction() {
+        evictions.increment();
+    }
+
+    public void recordDirtyEviction() {
+        dirtyEvictions.increment();
+    }
+
+    public void recordBackgroundFlush() {
+        backgroundFlushes.increment();
+    }
+
+    public void recordPrefetchedPage() {
+        prefetchedPages.increment();
+    }
+
+    public void recordLatchAcquisition() {
+        latchAcquisitions.increment();
+    }
+
+    public void recordLatchWait(long nanos) {
+        latchAcquisitions.increment();
+        latchWaits.record(nanos);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        return snapshot().getHitRatio();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getDirtyEvictions() {
+        return dirtyEvictions.sum();
+    }
+
+    @Override
+    public long getBackgroundFlushes() {
+        return backgroundFlushes.sum();
+    }
+
+    @Override
+    public long getPrefetchedPages() {
+        return prefetchedPages.sum();
+    }
+
+    @Override
+    public long getLatchAcquisitions() {
+        return latchAcquisitions.sum();
+    }
+
+    @Override
+    public long getContendedLatchAcquisitions() {
+        return latchWaits.snapshot().getCount();
+    }
+
+    @Override
+    public double getLatchWaitMeanNanos() {
+        return latchWaits.snapshot().getMeanNanos();
+    }
+
+    @Override
+    public long getLatchWaitP99Nanos() {
+        return latchWaits.snapshot().getPercentileNanos(99);
+    }
+
+    @Override
+    public long getLatchWaitMaxNanos() {
+        return latchWaits.snapshot().getMaxNanos();
+    }
+
+    /**
+     * the counters at the time the snapshot was taken
+     */
+    public static final class Snapshot {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long dirtyEvictions;
+        private final long backgroundFlushes;
+        private final long prefetchedPages;
+        private final long latchAcquisitions;
+        private final LatencyHistogram.Snapshot latchWaits;
+
+        private Snapshot(BufferPoolMetrics metrics) {
+            this.hits = metrics.hits.sum();
+            this.misses = metrics.misses.sum();
+            this.evictions = metrics.evictions.sum();
+            this.dirtyEvictions = metrics.dirtyEvictions.sum();
+            this.backgroundFlushes = metrics.backgroundFlushes.sum();
+            this.prefetchedPages = metrics.prefetchedPages.sum();
+            this.latchAcquisitions = metrics.latchAcquisitions.sum();
+            this.latchWaits = metrics.latchWaits.snapshot();
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public double getHitRatio() {
+            long fetches = hits + misses;
+            return fetches == 0 ? 0 : (double) hits / fetches;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getDirtyEvictions() {
+            return dirtyEvictions;
+        }
+
+        public long getBackgroundFlushes() {
+            return backgroundFlushes;
+        }
+
+        public long getPrefetchedPages() {
+            return prefetchedPages;
+        }
+
+        public long getLatchAcquisitions() {
+            return latchAcquisitions;
+        }
+
+        public LatencyHistogram.Snapshot getLatchWaits() {
+            return latchWaits;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + ", misses=" + misses + ", hitRatio=" + getHitRatio()
+                    + ", evictions=" + evictions + ", dirtyEvictions=" + dirtyEvictions
+                    + ", backgroundFlushes=" + backgroundFlushes + ", prefetchedPages=" + prefetchedPages
+                    + ", latchAcquisitions=" + latchAcquisitions + ", contendedLatchAcquisitions=" + latchWaits.getCount()
+                    + ", latchWaitP99Nanos=" + latchWaits.getPercentileNanos(99);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.husam.metrics;
+
+/**
+ * the buffer pool counters published over JMX, every getter is computed from one snapshot taken when it's called
+ * latencies are in nanoseconds
+ */
+public interface BufferPoolMetricsMXBean {
+
+    long getHits();
+
+    long getMisses();
+
+    double getHitRatio();
+
+    long getEvictions();
+
+    long getDirtyEvictions();
+
+    long getBackgroundFlushes();
+
+    long getPrefetchedPages();
+
+    long getLatchAcquisitions();
+
+    long getContendedLatchAcquisitions();
+
+    double getLatchWaitMeanNanos();
+
+    long getLatchWaitP99Nanos();
+
+    long getLatchWaitMaxNanos();
+}
@@ -0,0 +1,122 @@
+package com.husam.metrics;
+
+/**
+ * latencies of the page reads, page writes and fsyncs of one DiskManager, every histogram counts its operations too
+ * a write's latency doesn't include its fsync, even in STRICT mode the fsync is recorded as a sync of its own
+ */
+public final class DiskMetrics implements DiskMetricsMXBean {
+
+    private final LatencyHistogram reads = new LatencyHistogram();
+    private final LatencyHistogram writes = new LatencyHistogram();
+    private final LatencyHistogram syncs = new LatencyHistogram();
+
+    public void recordRead(long nanos) {
+        reads.record(nanos);
+    }
+
+    public void recordWrite(long nanos) {
+        writes.record(nanos);
+    }
+
+    public void recordSync(long nanos) {
+        syncs.record(nanos);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(reads.snapshot(), writes.snapshot(), syncs.snapshot());
+    }
+
+    @Override
+    public long getPageReads() {
+        return reads.snapshot().getCount();
+    }
+
+    @Override
+    public long getPageWrites() {
+        return writes.snapshot().getCount();
+    }
+
+    @Override
+    public long getSyncs() {
+        return syncs.snapshot().getCount();
+    }
+
+    @Override
+    public double getReadMeanNanos() {
+        return reads.snapshot().getMeanNanos();
+    }
+
+    @Override
+    public long getReadP99Nanos() {
+        return reads.snapshot().getPercentileNanos(99);
+    }
+
+    @Override
+    public long getReadMaxNanos() {
+        return reads.snapshot().getMaxNanos();
+    }
+
+    @Override
+    public double getWriteMeanNanos() {
+        return writes.snapshot().getMeanNanos();
+    }
+
+    @Override
+    public long getWriteP99Nanos() {
+        return writes.snapshot().getPercentileNanos(99);
+    }
+
+    @Override
+    public long getWriteMaxNanos() {
+        return writes.snapshot().getMaxNanos();
+    }
+
+    @Override
+    public double getSyncMeanNanos() {
+        return syncs.snapshot().getMeanNanos();
+    }
+
+    @Override
+    public long getSyncP99Nanos() {
+        return syncs.snapshot().getPercentileNanos(99);
+    }
+
+    @Override
+    public long getSyncMaxNanos() {
+        return syncs.snapshot().getMaxNanos();
+    }
+
+    /**
+     * the latencies at the time the snapshot was taken
+     */
+    public static final class Snapshot {
+        private final LatencyHistogram.Snapshot reads;
+        private final LatencyHistogram.Snapshot writes;
+        private final LatencyHistogram.Snapshot syncs;
+
+        private Snapshot(LatencyHistogram.Snapshot reads, LatencyHistogram.Snapshot writes, LatencyHistogram.Snapshot syncs) {
+            this.reads = reads;
+            this.writes = writes;
+            this.syncs = syncs;
+        }
+
+        public LatencyHistogram.Snapshot getReads() {
+            return reads;
+        }
+
+        public LatencyHistogram.Snapshot getWrites() {
+            return writes;
+        }
+
+        public LatencyHistogram.Snapshot getSyncs() {
+            return syncs;
+        }
+
+        @Override
+        public String toString() {
+            return "reads=" + reads.getCount() + ", readP99Nanos=" + reads.getPercentileNanos(99)
+                    + ", writes=" + writes.getCount() + ", writeP99Nanos=" + writes.getPercentileNanos(99)
+                    + ", syncs=" + syncs.getCount() + ", syncP99Nanos=" + syncs.getPercentileNanos(99);
+        }
+    }
+}
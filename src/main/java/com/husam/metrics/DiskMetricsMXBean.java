@@ -0,0 +1,31 @@
+package com.husam.metrics;
+
+/**
+ * the DiskManager counters published over JMX, latencies are in nanoseconds
+ */
+public interface DiskMetricsMXBean {
+
+    long getPageReads();
+
+    long getPageWrites();
+
+    long getSyncs();
+
+    double getReadMeanNanos();
+
+    long getReadP99Nanos();
+
+    long getReadMaxNanos();
+
+    double getWriteMeanNanos();
+
+    long getWriteP99Nanos();
+
+    long getWriteMaxNanos();
+
+    double getSyncMeanNanos();
+
+    long getSyncP99Nanos();
+
+    long getSyncMaxNanos();
+}
@@ -0,0 +1,137 @@
+package com.husam.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * histogram of latencies in nanoseconds that never allocates on record, so it can stay on in production
+ * values below 16ns get a bucket each, above that every power of two is split into 8 buckets,
+ * so a percentile is off by at most 12.5%
+ * a recording thread only writes to the stripe of its thread id, so threads rarely write to the same cache lines,
+ * a snapshot sums the stripes, it's not atomic with respect to concurrent records, which is fine for monitoring
+ */
+public final class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // the first exponent that isn't linear is 4 (16ns), the last one is 62
+    static final int NUM_OF_BUCKETS = LINEAR_BUCKETS + (63 - 4) * SUB_BUCKETS;
+    // every stripe keeps its count, sum and max after the buckets
+    private static final int COUNT = NUM_OF_BUCKETS;
+    private static final int SUM = NUM_OF_BUCKETS + 1;
+    private static final int MAX = NUM_OF_BUCKETS + 2;
+    private static final int STRIPE_LENGTH = NUM_OF_BUCKETS + 3;
+    private static final int MAX_STRIPES = 16;
+
+    private final AtomicLongArray[] stripes;
+
+    public LatencyHistogram() {
+        int numOfStripes = Math.min(MAX_STRIPES, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+        this.stripes = new AtomicLongArray[numOfStripes];
+        for(int i = 0; i < numOfStripes; i++) {
+            stripes[i] = new AtomicLongArray(STRIPE_LENGTH);
+        }
+    }
+
+    public void record(long nanos) {
+        if(nanos < 0) {
+            nanos = 0;
+        }
+        AtomicLongArray stripe = stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+        stripe.incrementAndGet(bucket(nanos));
+        stripe.incrementAndGet(COUNT);
+        stripe.addAndGet(SUM, nanos);
+        long max = stripe.get(MAX);
+        while(nanos > max && !stripe.compareAndSet(MAX, max, nanos)) {
+            max = stripe.get(MAX);
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[NUM_OF_BUCKETS];
+        long count = 0;
+        long sum = 0;
+        long max = 0;
+        for(AtomicLongArray stripe : stripes) {
+            for(int i = 0; i < NUM_OF_BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+            count += stripe.get(COUNT);
+            sum += stripe.get(SUM);
+            max = Math.max(max, stripe.get(MAX));
+        }
+        return new Snapshot(counts, count, sum, max);
+    }
+
+    static int bucket(long nanos) {
+        if(nanos < LINEAR_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + subBucket;
+    }
+
+    // the largest value that falls into the bucket
+    static long upperBound(int bucket) {
+        if(bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+        long subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long lowerBound = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * the latencies recorded till the snapshot was taken
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMaxNanos() {
+            return max;
+        }
+
+        public double getMeanNanos() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the upper bound of the bucket the percentile falls into, never more than the max
+         */
+        public long getPercentileNanos(double percentile) {
+            long total = 0;
+            for(long bucketCount : counts) {
+                total += bucketCount;
+            }
+            if(total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+            long seen = 0;
+            for(int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if(seen >= rank) {
+                    return Math.min(max, upperBound(i));
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.husam.metrics;
+
+import com.husam.common.DatabaseConfig;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * publishes metrics as MBeans of the platform MBean server, under com.husam.sqlight:type=<type>,id=<n>
+ * the id tells apart the instances of the same type living in one JVM
+ * failing to publish is logged and otherwise ignored, the metrics are still there through their snapshots
+ */
+public final class MetricsRegistry {
+
+    private static final Logger LOGGER = LogManager.getLogger(MetricsRegistry.class);
+    private static final String DOMAIN = "com.husam.sqlight";
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private MetricsRegistry() {
+    }
+
+    /**
+     * @return the name the MBean was registered under, or null if JMX metrics are disabled or it couldn't be registered
+     */
+    public static ObjectName register(String type, Object mbean) {
+        if(!DatabaseConfig.getInstance().isJmxMetrics()) {
+            return null;
+        }
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=" + type + ",id=" + nextId.getAndIncrement());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, name);
+            return name;
+        } catch (JMException e) {
+            LOGGER.error("can't register the {} metrics MBean", type, e);
+            return null;
+        }
+    }
+
+    public static void unregister(ObjectName name) {
+        if(name == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if(server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOGGER.error("can't unregister the metrics MBean {}", name, e);
+        }
+    }
+}
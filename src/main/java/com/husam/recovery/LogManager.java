@@ -0,0 +1,434 @@
+package com.husam.recovery;
+
+import com.husam.common.DatabaseConfig;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * The write-ahead log, an append-only file of log records, every record gets the next LSN (log sequence number).
+ * Records are appended to an in-memory log buffer, a background thread writes the buffer to the end of the log file
+ * and fsyncs it, then moves the flushedLSN watermark, every record with an LSN <= flushedLSN is durable.
+ * The log is double buffered, appenders keep filling one buffer while the other one is being written,
+ * so an append only waits for I/O when both buffers are full.
+ * Group commit: a flush writes everything appended so far with one sequential write and one fsync,
+ * the threads that asked for a flush while one was running are all served by the next one.
+ * The buffer is flushed when somebody waits for an LSN, when it's full, or once its oldest record is logFlushIntervalMillis old.
+ * A record on disk is its size (header included), its LSN, a CRC32 of the size, the payload and the LSN, then its payload.
+ * On open, the LSNs continue after the last good record of the file, the log is cut off at the first torn or corrupt record.
+ * The buffer pool calls flush(pageLSN) before writing a page (WAL-before-data), so the data file itself needs no fsync per write.
+ * We use explicit locks instead of monitors so that waiting threads never pin a carrier thread.
+ */
+public class LogManager {
+
+    private static final Logger LOGGER = org.apache.logging.log4j.LogManager.getLogger(LogManager.class);
+    public static final int SIZE_RECORD_HEADER = 3 * Integer.BYTES;
+    // no log record has it, a page that was never logged keeps it as its LSN
+    public static final int INVALID_LSN = 0;
+
+    private final FileChannel logFile;
+    private final long flushIntervalNanos;
+    private final Lock latch;
+    private final Condition hasWork;
+    private final Condition flushed;
+    private final Condition bufferFree;
+    // futures of callers waiting on an LSN that isn't durable yet, keyed by the LSN
+    private final TreeMap<Integer, CompletableFuture<Void>> waiters;
+    private final Thread flushThread;
+    // appends go to appendBuffer, the flush thread owns flushBuffer while writing it
+    private ByteBuffer appendBuffer;
+    private ByteBuffer flushBuffer;
+    // the LSN the next record gets
+    private int nextLSN;
+    // every record with an LSN <= flushedLSN is durable, only moved by the flush thread while holding the latch
+    private volatile int flushedLSN;
+    // somebody waits for every LSN <= requestedLSN to become durable
+    private int requestedLSN;
+    private long oldestAppendNanos;
+    // where the next flush writes in the log file
+    private long logEnd;
+    private long flushes;
+    private IOException failure;
+    private boolean closed;
+
+    public LogManager(String logFileName) {
+        this(logFileName, DatabaseConfig.getInstance().getLogBufferSize(), DatabaseConfig.getInstance().getLogFlushIntervalMillis());
+    }
+
+    /**
+     * @param bufferSize       bytes of each of the two log buffers, a record can't be bigger than a buffer
+     * @param flushIntervalMillis flush a buffer once its oldest record is this old, <= 0 only flushes full buffers and on request
+     */
+    public LogManager(String logFileName, int bufferSize, long flushIntervalMillis) {
+        try {
+            logFile = FileChannel.open(Paths.get(logFileName), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            LOGGER.fatal("can't open the log file: " + logFileName + " in read write mode");
+            throw new RuntimeException(e);
+        }
+        this.appendBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.flushBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.latch = new ReentrantLock();
+        this.hasWork = latch.newCondition();
+        this.flushed = latch.newCondition();
+        this.bufferFree = latch.newCondition();
+        this.waiters = new TreeMap<>();
+        recover();
+        this.flushThread = new Thread(this::run, "log-flusher");
+        this.flushThread.setDaemon(true);
+        this.flushThread.start();
+    }
+
+    /**
+     * Appends a log record, the record isn't durable till the flushedLSN reaches its LSN, see flush and whenFlushed.
+     *
+     * @param record the remaining bytes are the payload of the record
+     * @return the LSN of the record
+     * @throws IllegalStateException if the log was shut down
+     */
+    public int appendLogRecord(ByteBuffer record) {
+        int size = SIZE_RECORD_HEADER + record.remaining();
+        if(size > appendBuffer.capacity()) {
+            throw new IllegalArgumentException("a log record of " + size + " bytes doesn't fit in the log buffer");
+        }
+        // only the LSN is left to checksum under the latch
+        CRC32 checksum = new CRC32();
+        updateInt(checksum, size);
+        checksum.update(record.duplicate());
+        latch.lock();
+        try {
+            throwIfClosed();
+            while(appendBuffer.remaining() < size) {
+                throwIfFailed();
+                // both buffers are full, get the current one flushed
+                requestedLSN = Math.max(requestedLSN, nextLSN - 1);
+                hasWork.signal();
+                bufferFree.awaitUninterruptibly();
+                throwIfClosed();
+            }
+            if(appendBuffer.position() == 0) {
+                oldestAppendNanos = System.nanoTime();
+                // the flush thread sleeps without a timeout while the buffer is empty, wake it up to start the delay
+                if(flushIntervalNanos > 0) {
+                    hasWork.signal();
+                }
+            }
+            int lsn = nextLSN++;
+            updateInt(checksum, lsn);
+            appendBuffer.putInt(size).putInt(lsn).putInt((int) checksum.getValue()).put(record);
+            return lsn;
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    /**
+     * Blocks till every record with an LSN <= lsn is durable.
+     */
+    public void flush(int lsn) {
+        if(lsn <= flushedLSN) {
+            return;
+        }
+        latch.lock();
+        try {
+            assert lsn < nextLSN : "flush of an LSN that wasn't appended yet: " + lsn;
+            if(lsn > requestedLSN) {
+                requestedLSN = lsn;
+                hasWork.signal();
+            }
+            while(flushedLSN < lsn) {
+                throwIfFailed();
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    /**
+     * Like flush, but doesn't block.
+     *
+     * @return a future that completes once every record with an LSN <= lsn is durable
+     */
+    public CompletableFuture<Void> whenFlushed(int lsn) {
+        if(lsn <= flushedLSN) {
+            return CompletableFuture.completedFuture(null);
+        }
+        latch.lock();
+        try {
+            if(lsn <= flushedLSN) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if(failure != null) {
+                return CompletableFuture.failedFuture(failure);
+            }
+            if(lsn > requestedLSN) {
+                requestedLSN = lsn;
+                hasWork.signal();
+            }
+            return waiters.computeIfAbsent(lsn, key -> new CompletableFuture<>());
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    /**
+     * @return every record with an LSN <= the returned one is durable
+     */
+    public int getFlushedLSN() {
+        return flushedLSN;
+    }
+
+    /**
+     * @return the LSN of the last appended record, INVALID_LSN if the log is empty
+     */
+    public int getLastLSN() {
+        latch.lock();
+        try {
+            return nextLSN - 1;
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    /**
+     * @return how many times the log buffer was written and synced
+     */
+    public long getFlushCount() {
+        latch.lock();
+        try {
+            return flushes;
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    /**
+     * Reads the durable records of the log in LSN order, it's meant for recovery.
+     *
+     * @param consumer gets the LSN and the payload of every record, the payload is only valid during the call
+     */
+    public void readLog(BiConsumer<Integer, ByteBuffer> consumer) {
+        long end;
+        latch.lock();
+        try {
+            end = logEnd;
+        } finally {
+            latch.unlock();
+        }
+        try {
+            readRecords(end, consumer);
+        } catch (IOException e) {
+            LOGGER.error("can't read the log");
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Flushes whatever is still in the log buffer and stops the flush thread.
+     */
+    public void shutDown() {
+        latch.lock();
+        try {
+            closed = true;
+            hasWork.signal();
+        } finally {
+            latch.unlock();
+        }
+        try {
+            flushThread.join();
+            logFile.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // continue after the last complete record of the log file
+    private void recover() {
+        int[] lastLSN = {INVALID_LSN};
+        try {
+            logEnd = readRecords(logFile.size(), (lsn, payload) -> lastLSN[0] = lsn);
+            if(logEnd < logFile.size()) {
+                LOGGER.warn("the log ends with a torn or corrupt record, cutting it off at offset {}", logEnd);
+                logFile.truncate(logEnd);
+            }
+        } catch (IOException e) {
+            LOGGER.fatal("can't read the log file");
+            throw new RuntimeException(e);
+        }
+        nextLSN = lastLSN[0] + 1;
+        flushedLSN = lastLSN[0];
+        requestedLSN = lastLSN[0];
+    }
+
+    // @return the offset right after the last good record before end, reading stops at the first record that fails its checksum
+    private long readRecords(long end, BiConsumer<Integer, ByteBuffer> consumer) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SIZE_RECORD_HEADER);
+        CRC32 checksum = new CRC32();
+        long offset = 0;
+        int expectedLSN = INVALID_LSN;
+        while(offset + SIZE_RECORD_HEADER <= end) {
+            header.clear();
+            readFully(header, offset);
+            int size = header.getInt(0);
+            int lsn = header.getInt(Integer.BYTES);
+            // the LSNs of the file are consecutive, anything else is a record that was only partially written
+            if(size < SIZE_RECORD_HEADER || offset + size > end || (expectedLSN != INVALID_LSN && lsn != expectedLSN) || lsn <= INVALID_LSN) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(size - SIZE_RECORD_HEADER);
+            readFully(payload, offset + SIZE_RECORD_HEADER);
+            payload.flip();
+            checksum.reset();
+            updateInt(checksum, size);
+            checksum.update(payload.duplicate());
+            updateInt(checksum, lsn);
+            if((int) checksum.getValue() != header.getInt(2 * Integer.BYTES)) {
+                break;
+            }
+            consumer.accept(lsn, payload);
+            offset += size;
+            expectedLSN = lsn + 1;
+        }
+        return offset;
+    }
+
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        while(buffer.hasRemaining()) {
+            int read = logFile.read(buffer, offset);
+            if(read == -1) {
+                throw new IOException("unexpected end of the log file at offset " + offset);
+            }
+            offset += read;
+        }
+    }
+
+    private static void updateInt(CRC32 checksum, int value) {
+        for(int shift = 24; shift >= 0; shift -= 8) {
+            checksum.update(value >>> shift);
+        }
+    }
+
+    // Caller should acquire the latch before calling this function.
+    private void throwIfClosed() {
+        if(closed) {
+            throw new IllegalStateException("the log was shut down");
+        }
+    }
+
+    // Caller should acquire the latch before calling this function.
+    private void throwIfFailed() {
+        if(failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private void run() {
+        while(true) {
+            ByteBuffer toFlush;
+            int lastLSN;
+            long offset;
+            latch.lock();
+            try {
+                if(!awaitWork()) {
+                    return;
+                }
+                // swap the buffers, appenders go on with the empty one while we write the full one
+                toFlush = appendBuffer;
+                appendBuffer = flushBuffer;
+                lastLSN = nextLSN - 1;
+                offset = logEnd;
+            } finally {
+                latch.unlock();
+            }
+            IOException error = null;
+            try {
+                toFlush.flip();
+                while(toFlush.hasRemaining()) {
+                    offset += logFile.write(toFlush, offset);
+                }
+                // the file size only changes when the log grows, but the metadata is needed to find the end again
+                logFile.force(true);
+            } catch (IOException e) {
+                LOGGER.fatal("can't flush the log");
+                error = e;
+            }
+            latch.lock();
+            try {
+                toFlush.clear();
+                flushBuffer = toFlush;
+                if(error != null) {
+                    failure = error;
+                    for(CompletableFuture<Void> waiter : waiters.values()) {
+                        waiter.completeExceptionally(error);
+                    }
+                    waiters.clear();
+                    flushed.signalAll();
+                    bufferFree.signalAll();
+                    return;
+                }
+                logEnd = offset;
+                flushes++;
+                flushedLSN = lastLSN;
+                Iterator<Map.Entry<Integer, CompletableFuture<Void>>> it = waiters.headMap(lastLSN, true).entrySet().iterator();
+                while(it.hasNext()) {
+                    it.next().getValue().complete(null);
+                    it.remove();
+                }
+                flushed.signalAll();
+                bufferFree.signalAll();
+            } finally {
+                latch.unlock();
+            }
+        }
+    }
+
+    // Caller should acquire the latch before calling this function.
+    // waits till the append buffer should be flushed, returns false once the log is closed and nothing is left to flush
+    private boolean awaitWork() {
+        while(true) {
+            boolean pending = appendBuffer.position() > 0;
+            if(!pending) {
+                if(closed) {
+                    return false;
+                }
+                hasWork.awaitUninterruptibly();
+                continue;
+            }
+            if(closed || requestedLSN > flushedLSN) {
+                return true;
+            }
+            if(flushIntervalNanos <= 0) {
+                hasWork.awaitUninterruptibly();
+                continue;
+            }
+            long waitNanos = oldestAppendNanos + flushIntervalNanos - System.nanoTime();
+            if(waitNanos <= 0) {
+                return true;
+            }
+            try {
+                hasWork.awaitNanos(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.husam.storageengine.allocator;
+
+import com.husam.cachemanager.BufferPoolManager;
+import com.husam.cachemanager.replacers.Priority;
+import com.husam.common.DatabaseConfig;
+import com.husam.storageengine.page.BitmapPage;
+import com.husam.storageengine.page.FileHeaderPage;
+import com.husam.storageengine.page.Page;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * persistent page allocator, the allocation state lives in the database file and its pages are cached in the BPM
+ * page 0 is the file header, it holds the next page id to allocate, so it's recovered at startup,
+ * the pages after it are split in groups of BitmapPage.capacity() pages, the first page of each group is the bitmap page
+ * that tracks which pages of the group are allocated, a group gets its bitmap page when the file grows into it
+ * freed pages are reused first fit, starting from the lowest group that has a free page,
+ * and an extent is a run of contiguous pages within one group, so the pages of an object can be read sequentially,
+ * an extent that doesn't fit in what is left of the last group starts in the next one, and the rest becomes free pages
+ * the free pages of every group are counted in memory at startup, so groups without a free page are never read
+ * every operation takes the latch of the allocator and pins one page at a time, so it never needs more than one frame
+ * its pages are unpinned with a HIGH priority, every allocation and deallocation goes through them
+ * the database file must be created by this allocator, it formats page 0 when it finds it empty
+ */
+public class BitmapPageAllocator implements PageAllocator {
+
+    private static final Logger LOGGER = LogManager.getLogger(BitmapPageAllocator.class);
+    private static final int HEADER_PAGE_ID = 0;
+
+    private final BufferPoolManager bufferPool;
+    private final int pagesPerGroup;
+    private final int invalidPageId = DatabaseConfig.getInstance().getInvalidPageId();
+    private final Lock latch;
+    // guarded by the latch
+    private int nextPageId;
+    // free pages below nextPageId of every group
+    private int[] freePages;
+    private int numOfGroups;
+    private long totalFreePages;
+    // no group below it has a free page
+    private int searchHint;
+
+    /**
+     * Recovers the allocation state from the file, or formats the file if it's empty.
+     */
+    public BitmapPageAllocator(BufferPoolManager bufferPool) {
+        this.bufferPool = bufferPool;
+        this.pagesPerGroup = BitmapPage.capacity();
+        this.latch = new ReentrantLock();
+        this.freePages = new int[8];
+        recover();
+    }
+
+    @Override
+    public int allocatePage() {
+        return allocateExtent(1);
+    }
+
+    @Override
+    public int allocateExtent(int numOfPages) {
+        if(numOfPages < 1 || numOfPages >= pagesPerGroup) {
+            throw new IllegalArgumentException("an extent must have between 1 and " + (pagesPerGroup - 1) + " pages, got: " + numOfPages);
+        }
+        latch.lock();
+        try {
+            int pageId = allocateFreePages(numOfPages);
+            if(pageId != invalidPageId) {
+                return pageId;
+            }
+            return extend(numOfPages);
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    @Override
+    public void deallocatePage(int pageId) {
+        latch.lock();
+        try {
+            if(pageId <= HEADER_PAGE_ID || pageId >= nextPageId || isBitmapPage(pageId)) {
+                LOGGER.error("can't deallocate page with ID: {}, it's not an allocated data page", pageId);
+                return;
+            }
+            int group = groupOf(pageId);
+            Page page = bufferPool.fetchPage(bitmapPageId(group));
+            if(page == null) {
+                LOGGER.error("can't fetch the bitmap page to deallocate page with ID: {}, the page is leaked", pageId);
+                return;
+            }
+            BitmapPage bitmap = new BitmapPage(page.getBuffer());
+            int bit = pageId - bitmapPageId(group);
+            if(!bitmap.isAllocated(bit)) {
+                bufferPool.unpinPage(page.getPageId(), false, Priority.HIGH);
+                LOGGER.warn("page with ID: {} is deallocated twice", pageId);
+                return;
+            }
+            bitmap.setAllocated(bit, false);
+            bufferPool.unpinPage(page.getPageId(), true, Priority.HIGH);
+            freePages[group]++;
+            totalFreePages++;
+            searchHint = Math.min(searchHint, group);
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    @Override
+    public int getNextPageId() {
+        latch.lock();
+        try {
+            return nextPageId;
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    @Override
+    public boolean reusesPageIds() {
+        return true;
+    }
+
+    private void recover() {
+        Page page = fetchOrFail(HEADER_PAGE_ID);
+        FileHeaderPage header = new FileHeaderPage(page.getBuffer());
+        if(!header.isFormatted()) {
+            header.format(HEADER_PAGE_ID + 1);
+            bufferPool.unpinPage(HEADER_PAGE_ID, true, Priority.HIGH);
+            nextPageId = HEADER_PAGE_ID + 1;
+            return;
+        }
+        nextPageId = header.getNextPageId();
+        bufferPool.unpinPage(HEADER_PAGE_ID, false, Priority.HIGH);
+        int groups = nextPageId > HEADER_PAGE_ID + 1 ? groupOf(nextPageId - 1) + 1 : 0;
+        for(int group = 0; group < groups; group++) {
+            addGroup();
+            page = fetchOrFail(bitmapPageId(group));
+            int limit = limitOf(group);
+            freePages[group] = limit - new BitmapPage(page.getBuffer()).countAllocated(0, limit);
+            totalFreePages += freePages[group];
+            bufferPool.unpinPage(page.getPageId(), false, Priority.HIGH);
+        }
+        LOGGER.debug("recovered the page allocator, next page ID: {}, free pages: {}", nextPageId, totalFreePages);
+    }
+
+    // Caller should acquire the latch before calling this function.
+    // first fit among the pages that were freed (or skipped), the invalid page id if no group has the run
+    private int allocateFreePages(int numOfPages) {
+        if(totalFreePages < numOfPages) {
+            return invalidPageId;
+        }
+        for(int group = searchHint; group < numOfGroups; group++) {
+            if(freePages[group] < numOfPages) {
+                continue;
+            }
+            Page page = bufferPool.fetchPage(bitmapPageId(group));
+            if(page == null) {
+                return invalidPageId;
+            }
+            BitmapPage bitmap = new BitmapPage(page.getBuffer());
+            int bit = bitmap.findFree(1, limitOf(group), numOfPages);
+            if(bit == -1) {
+                // the free pages of the group are scattered
+                bufferPool.unpinPage(page.getPageId(), false, Priority.HIGH);
+                continue;
+            }
+            for(int i = bit; i < bit + numOfPages; i++) {
+                bitmap.setAllocated(i, true);
+            }
+            bufferPool.unpinPage(page.getPageId(), true, Priority.HIGH);
+            freePages[group] -= numOfPages;
+            totalFreePages -= numOfPages;
+            if(numOfPages == 1) {
+                // first fit, so the groups before this one have no free page
+                searchHint = group;
+            }
+            return bitmapPageId(group) + bit;
+        }
+        return invalidPageId;
+    }
+
+    // Caller should acquire the latch before calling this function.
+    // allocates numOfPages pages past the end of what was ever allocated
+    private int extend(int numOfPages) {
+        int first = nextPageId;
+        while(true) {
+            if(isBitmapPage(first)) {
+                if(!formatBitmapPage(groupOf(first))) {
+                    return invalidPageId;
+                }
+                first++;
+                continue;
+            }
+            int group = groupOf(first);
+            int groupEnd = bitmapPageId(group) + pagesPerGroup;
+            if(first + numOfPages <= groupEnd) {
+                break;
+            }
+            // the extent doesn't fit in the group, what is left of it becomes free pages
+            freePages[group] += groupEnd - first;
+            totalFreePages += groupEnd - first;
+            first = groupEnd;
+        }
+        int group = groupOf(first);
+        Page page = bufferPool.fetchPage(bitmapPageId(group));
+        if(page == null) {
+            return invalidPageId;
+        }
+        BitmapPage bitmap = new BitmapPage(page.getBuffer());
+        for(int pageId = first; pageId < first + numOfPages; pageId++) {
+            bitmap.setAllocated(pageId - bitmapPageId(group), true);
+        }
+        bufferPool.unpinPage(page.getPageId(), true, Priority.HIGH);
+        if(!setNextPageId(first + numOfPages)) {
+            return invalidPageId;
+        }
+        return first;
+    }
+
+    // Caller should acquire the latch before calling this function.
+    private boolean formatBitmapPage(int group) {
+        Page page = bufferPool.fetchPage(bitmapPageId(group));
+        if(page == null) {
+            return false;
+        }
+        page.resetMemory();
+        new BitmapPage(page.getBuffer()).setAllocated(0, true);
+        bufferPool.unpinPage(page.getPageId(), true, Priority.HIGH);
+        addGroup();
+        return setNextPageId(bitmapPageId(group) + 1);
+    }
+
+    // Caller should acquire the latch before calling this function.
+    private boolean setNextPageId(int pageId) {
+        Page page = bufferPool.fetchPage(HEADER_PAGE_ID);
+        if(page == null) {
+            return false;
+        }
+        new FileHeaderPage(page.getBuffer()).setNextPageId(pageId);
+        bufferPool.unpinPage(HEADER_PAGE_ID, true, Priority.HIGH);
+        nextPageId = pageId;
+        return true;
+    }
+
+    // Caller should acquire the latch before calling this function.
+    private void addGroup() {
+        if(numOfGroups == freePages.length) {
+            freePages = Arrays.copyOf(freePages, freePages.length * 2);
+        }
+        freePages[numOfGroups++] = 0;
+    }
+
+    private Page fetchOrFail(int pageId) {
+        Page page = bufferPool.fetchPage(pageId);
+        if(page == null) {
+            LOGGER.fatal("can't fetch page with ID: {} to recover the page allocator", pageId);
+            throw new RuntimeException("can't fetch page with ID: " + pageId + " to recover the page allocator");
+        }
+        return page;
+    }
+
+    // the number of bits of the group that stand for pages below nextPageId
+    private int limitOf(int group) {
+        return Math.min(pagesPerGroup, nextPageId - bitmapPageId(group));
+    }
+
+    private int groupOf(int pageId) {
+        return (pageId - HEADER_PAGE_ID - 1) / pagesPerGroup;
+    }
+
+    private int bitmapPageId(int group) {
+        return HEADER_PAGE_ID + 1 + group * pagesPerGroup;
+    }
+
+    private boolean isBitmapPage(int pageId) {
+        return pageId > HEADER_PAGE_ID && (pageId - HEADER_PAGE_ID - 1) % pagesPerGroup == 0;
+    }
+}
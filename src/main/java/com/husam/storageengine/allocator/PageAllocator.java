@@ -0,0 +1,37 @@
+package com.husam.storageengine.allocator;
+
+/**
+ * hands out the page ids of the database file, used by the BPM to allocate and free pages
+ * it is called without holding the latch of the BPM, so an allocator may fetch its own pages through the BPM
+ */
+public interface PageAllocator {
+
+    /**
+     * @return the id of the allocated page, or the invalid page id if no page could be allocated
+     */
+    int allocatePage();
+
+    /**
+     * Allocates numOfPages contiguous pages, so an object that owns them can read them sequentially.
+     * The content of the pages is undefined, the owner must initialize every page before using it.
+     *
+     * @return the id of the first page of the extent, or the invalid page id if it could not be allocated
+     */
+    int allocateExtent(int numOfPages);
+
+    /**
+     * Frees the page, so it may be handed out again.
+     */
+    void deallocatePage(int pageId);
+
+    /**
+     * @return one past the highest page id ever allocated
+     */
+    int getNextPageId();
+
+    /**
+     * @return true if a page id may be handed out again after it was freed, the old content of such a page
+     * may still be on disk, so the BPM must write a new page instead of reading it back
+     */
+    boolean reusesPageIds();
+}
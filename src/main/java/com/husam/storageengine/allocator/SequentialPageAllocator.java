@@ -0,0 +1,41 @@
+package com.husam.storageengine.allocator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * hands out page ids in increasing order starting from the given one, freed pages are never reused
+ * and nothing is stored in the file, so the caller must know where to start after a restart
+ */
+public class SequentialPageAllocator implements PageAllocator {
+
+    private final AtomicInteger nextPageId;
+
+    public SequentialPageAllocator(int nextPageId) {
+        this.nextPageId = new AtomicInteger(nextPageId);
+    }
+
+    @Override
+    public int allocatePage() {
+        return nextPageId.getAndIncrement();
+    }
+
+    @Override
+    public int allocateExtent(int numOfPages) {
+        return nextPageId.getAndAdd(numOfPages);
+    }
+
+    @Override
+    public void deallocatePage(int pageId) {
+        // This is a no-nop, the page ids are never reused
+    }
+
+    @Override
+    public int getNextPageId() {
+        return nextPageId.get();
+    }
+
+    @Override
+    public boolean reusesPageIds() {
+        return false;
+    }
+}
@@ -1,74 +1,152 @@
 package com.husam.storageengine.diskmanager;
 
 import com.husam.common.DatabaseConfig;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
+import com.husam.common.DurabilityMode;
+import com.husam.metrics.DiskMetrics;
 
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
- * The DiskManager class is responsible for handling the reading and writing of pages to disk.
- * This class ensures atomic writes by writing in exact page sizes, preventing data corruption and maintaining consistency.
- * By avoiding partial writes, it guarantees complete and error-free data, providing a reliable foundation for any system that relies on persistent storage.
- * Since disk access involves physical movement and can be time-consuming, it's essential to ensure that multiple threads don't access the disk in parallel.
- * Therefore, this class has been designed to be synchronized to prevent race conditions and data corruption.
- * By carefully managing disk operations, this class can efficiently store and retrieve data with minimal errors or delays.
- * Overall, the DiskManager class is a well-designed component that plays a critical role in the smooth operation of any system that requires persistent storage.
+ * The DiskManager is responsible for handling the reading and writing of pages to disk.
+ * Pages are addressed by their id, page i lives at offset i * pageSize of the database file.
+ * The actual I/O is done by a backend, use open to get the backend selected in the DatabaseConfig:
+ * FileChannelDiskManager does positional reads and writes with system calls,
+ * MemoryMappedDiskManager maps the file and turns page reads and writes into memory copies.
+ * Runs of consecutive pages can be moved with one I/O (scatter/gather), the variants that take an array of page ids
+ * split it into runs of consecutive ids by themselves, and a batch of writes is synced once.
+ * The pages can also be striped over several files, one per device, see StripedDiskManager.
+ * Every backend must be safe to use from many threads at once, and records the latency of its reads, writes and syncs.
  */
+public interface DiskManager {
 
-public class DiskManager {
-
-    private static final Logger LOGGER = LogManager.getLogger(DatabaseConfig.class);
-    private RandomAccessFile dbFile;
-    private DatabaseConfig conf = DatabaseConfig.getInstance();
+    static DiskManager open(String fileName) {
+        return open(fileName, DatabaseConfig.getInstance().getDurabilityMode());
+    }
 
-    public DiskManager(String fileName) {
-        try {
-            dbFile = new RandomAccessFile(fileName, "rw");
-        } catch (FileNotFoundException e) {
-            LOGGER.fatal("can't open the database file: " + fileName + " in read write mode");
-            throw new RuntimeException(e);
+    /**
+     * Opens the database with the backend selected in the DatabaseConfig, if more than one data directory is configured
+     * the database is striped over a file of that name in each of them, see StripedDiskManager.
+     */
+    static DiskManager open(String fileName, DurabilityMode durabilityMode) {
+        DatabaseConfig conf = DatabaseConfig.getInstance();
+        List<String> dataDirectories = conf.getDataDirectories();
+        if(dataDirectories.size() > 1) {
+            String[] fileNames = new String[dataDirectories.size()];
+            for(int i = 0; i < fileNames.length; i++) {
+                fileNames[i] = Paths.get(dataDirectories.get(i), fileName).toString();
+            }
+            return new StripedDiskManager(fileNames, conf.getStripeExtentPages(), durabilityMode);
         }
+        if(dataDirectories.size() == 1) {
+            return openFile(Paths.get(dataDirectories.get(0), fileName).toString(), durabilityMode);
+        }
+        return openFile(fileName, durabilityMode);
     }
 
-    public synchronized void readPage(int pageId, byte[] pageData) {
-        long offset = 1l * pageId * conf.getPageSize();
-        try {
-            if (offset > dbFile.length()) {
-                LOGGER.error("can't read page with ID: ", pageId);
-                return;
-            }
-            dbFile.seek(offset);
-            if (dbFile.read(pageData, 0, conf.getPageSize()) == -1) {
-                LOGGER.error("can't read page with ID: ", pageId);
-            }
-        } catch (IOException e) {
-            LOGGER.error("can't read page with ID: ", pageId);
-            throw new RuntimeException(e);
+    /**
+     * Opens a single file with the backend selected in the DatabaseConfig, it's never striped.
+     */
+    static DiskManager openFile(String fileName, DurabilityMode durabilityMode) {
+        switch (DatabaseConfig.getInstance().getDiskManagerBackend()) {
+            case MEMORY_MAPPED:
+                return new MemoryMappedDiskManager(fileName, durabilityMode);
+            case FILE_CHANNEL:
+            default:
+                return new FileChannelDiskManager(fileName, durabilityMode);
         }
+    }
 
+    default void readPage(int pageId, byte[] pageData) {
+        readPage(pageId, ByteBuffer.wrap(pageData, 0, DatabaseConfig.getInstance().getPageSize()));
     }
 
-    public synchronized void writePage(int pageId, byte[] pageData) {
-        long offset = 1l * pageId * conf.getPageSize();
-        try {
-            dbFile.seek(offset);
-            dbFile.write(pageData, 0, conf.getPageSize());
-            // to keep disk in sync
-            dbFile.getFD().sync();
-        } catch (IOException e) {
-            LOGGER.error("can't write a page with ID: ", pageId);
-            throw new RuntimeException(e);
+    /**
+     * Reads the page into the remaining bytes of pageData, which must be exactly one page.
+     * If the file ends before the page does, the rest of the buffer is zeroed.
+     */
+    void readPage(int pageId, ByteBuffer pageData);
+
+    /**
+     * Reads consecutive pages with one I/O, pageData[i] gets page firstPageId + i, each must be exactly one page.
+     * The part of the pages that lies past the end of the file is zeroed.
+     */
+    void readPages(int firstPageId, ByteBuffer[] pageData);
+
+    /**
+     * Reads the pages with one I/O per run of consecutive page ids, pageData[i] gets page pageIds[i].
+     */
+    default void readPages(int[] pageIds, ByteBuffer[] pageData) {
+        for(int from = 0, to; from < pageIds.length; from = to) {
+            to = runEnd(pageIds, from);
+            readPages(pageIds[from], Arrays.copyOfRange(pageData, from, to));
         }
     }
 
-    public synchronized void shutDown() {
-        try {
-            dbFile.close();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    default long writePage(int pageId, byte[] pageData) {
+        return writePage(pageId, ByteBuffer.wrap(pageData, 0, DatabaseConfig.getInstance().getPageSize()));
+    }
+
+    /**
+     * Writes the remaining bytes of pageData, which must be exactly one page.
+     * In STRICT mode the page is synced to the device before returning.
+     *
+     * @return a ticket to pass to whenDurable
+     */
+    long writePage(int pageId, ByteBuffer pageData);
+
+    /**
+     * Writes consecutive pages with one I/O, pageData[i] goes to page firstPageId + i, each must be exactly one page.
+     * In STRICT mode the pages are synced once before returning.
+     *
+     * @return a ticket to pass to whenDurable, it covers all the pages
+     */
+    long writePages(int firstPageId, ByteBuffer[] pageData);
+
+    /**
+     * Writes the pages with one I/O per run of consecutive page ids, pageData[i] goes to page pageIds[i].
+     * In STRICT mode all the pages are synced once before returning.
+     *
+     * @return a ticket to pass to whenDurable, it covers all the pages
+     */
+    long writePages(int[] pageIds, ByteBuffer[] pageData);
+
+    /**
+     * @param ticket the ticket returned by writePage
+     * @return a future that completes once the write is covered by an fsync
+     */
+    CompletableFuture<Void> whenDurable(long ticket);
+
+    /**
+     * Barrier, blocks till every page write that returned before this call is durable.
+     */
+    void sync();
+
+    /**
+     * Barrier that doesn't block, asks for every page write that returned before this call to be synced right away.
+     *
+     * @return a future that completes once those writes are durable
+     */
+    CompletableFuture<Void> syncAsync();
+
+    /**
+     * @return the read, write and sync latencies of this disk manager
+     */
+    DiskMetrics getMetrics();
+
+    void shutDown();
+
+    /**
+     * @return the index right after the run of consecutive page ids that starts at index from
+     */
+    static int runEnd(int[] pageIds, int from) {
+        int to = from + 1;
+        while(to < pageIds.length && pageIds[to] == pageIds[to - 1] + 1) {
+            to++;
         }
+        return to;
     }
 }
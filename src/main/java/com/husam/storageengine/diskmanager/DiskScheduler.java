@@ -0,0 +1,230 @@
+package com.husam.storageengine.diskmanager;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The DiskScheduler queues page reads and writes and does them on a small pool of worker threads,
+ * the callers get a future instead of waiting, so thousands of requests can be in flight on a handful of threads.
+ * The queue is kept in page id order and the workers serve it like an elevator going one way (C-SCAN),
+ * each worker takes the first request at or after the page the last one ended at, and wraps around to the lowest page id,
+ * so a burst of requests hits the file in offset order instead of in arrival order.
+ * A worker also takes the queued requests of the same kind for the pages right after its own, up to MAX_BATCH_PAGES,
+ * and moves all of them with one I/O.
+ * The requests of one page are started in the order they were scheduled, but with more than one worker they may run
+ * at the same time, so the caller must not schedule a read and a write of the same page that depend on each other at once.
+ * Only explicit locks are used, never monitors, so it's safe to call from virtual threads.
+ */
+public class DiskScheduler {
+
+    private static final Logger LOGGER = LogManager.getLogger(DiskScheduler.class);
+    // 128KB with the default page size
+    private static final int MAX_BATCH_PAGES = 32;
+
+    private static final class Request {
+        final int pageId;
+        final ByteBuffer pageData;
+        // exactly one of them is set, it tells the kind of the request
+        final CompletableFuture<Void> read;
+        final CompletableFuture<Long> written;
+
+        Request(int pageId, ByteBuffer pageData, CompletableFuture<Void> read, CompletableFuture<Long> written) {
+            this.pageId = pageId;
+            this.pageData = pageData;
+            this.read = read;
+            this.written = written;
+        }
+
+        boolean isWrite() {
+            return written != null;
+        }
+    }
+
+    private final DiskManager diskManager;
+    private final Lock latch = new ReentrantLock();
+    private final Condition notEmpty = latch.newCondition();
+    // the queued requests of each page, oldest first, guarded by the latch
+    private final TreeMap<Integer, ArrayDeque<Request>> queue = new TreeMap<>();
+    // where the elevator is, the next batch starts at the first queued page at or after it
+    private int head;
+    private int queuedRequests;
+    private boolean stopped;
+    private final Thread[] workers;
+
+    public DiskScheduler(DiskManager diskManager, int numOfWorkers) {
+        this.diskManager = diskManager;
+        this.workers = new Thread[Math.max(1, numOfWorkers)];
+        for(int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(this::work, "disk-scheduler-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Queues a read of the page into the remaining bytes of pageData, which must be exactly one page.
+     *
+     * @return a future that completes once the page is in pageData, or with the error of the read
+     */
+    public CompletableFuture<Void> scheduleRead(int pageId, ByteBuffer pageData) {
+        CompletableFuture<Void> read = new CompletableFuture<>();
+        enqueue(new Request(pageId, pageData, read, null));
+        return read;
+    }
+
+    /**
+     * Queues a write of the remaining bytes of pageData, which must be exactly one page and stay untouched till it's written.
+     *
+     * @return a future that completes with the ticket of the write to pass to DiskManager.whenDurable
+     */
+    public CompletableFuture<Long> scheduleWrite(int pageId, ByteBuffer pageData) {
+        CompletableFuture<Long> written = new CompletableFuture<>();
+        enqueue(new Request(pageId, pageData, null, written));
+        return written;
+    }
+
+    /**
+     * @return the number of requests that are queued and not taken by a worker yet
+     */
+    public int getQueuedRequests() {
+        latch.lock();
+        try {
+            return queuedRequests;
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    /**
+     * Stops taking requests, the workers finish the queued ones first, and waits for them to exit.
+     */
+    public void stop() {
+        latch.lock();
+        try {
+            stopped = true;
+            notEmpty.signalAll();
+        } finally {
+            latch.unlock();
+        }
+        for(Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void enqueue(Request request) {
+        latch.lock();
+        try {
+            if(stopped) {
+                throw new IllegalStateException("the disk scheduler is stopped");
+            }
+            queue.computeIfAbsent(request.pageId, pageId -> new ArrayDeque<>()).add(request);
+            queuedRequests++;
+            notEmpty.signal();
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    private void work() {
+        while(true) {
+            Request[] batch = nextBatch();
+            if(batch == null) {
+                return;
+            }
+            execute(batch);
+        }
+    }
+
+    // takes the next run of requests from the elevator, null once stopped and drained
+    private Request[] nextBatch() {
+        latch.lock();
+        try {
+            while(queue.isEmpty()) {
+                if(stopped) {
+                    return null;
+                }
+                notEmpty.awaitUninterruptibly();
+            }
+            Map.Entry<Integer, ArrayDeque<Request>> entry = queue.ceilingEntry(head);
+            if(entry == null) {
+                // the elevator got to the end, it goes back to the lowest page
+                entry = queue.firstEntry();
+            }
+            Request first = take(entry.getKey(), entry.getValue());
+            Request[] batch = new Request[MAX_BATCH_PAGES];
+            batch[0] = first;
+            int size = 1;
+            while(size < MAX_BATCH_PAGES) {
+                ArrayDeque<Request> next = queue.get(first.pageId + size);
+                if(next == null || next.peek().isWrite() != first.isWrite()) {
+                    break;
+                }
+                batch[size] = take(first.pageId + size, next);
+                size++;
+            }
+            head = first.pageId + size;
+            return size < MAX_BATCH_PAGES ? Arrays.copyOf(batch, size) : batch;
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    // Caller should hold the latch
+    private Request take(int pageId, ArrayDeque<Request> requests) {
+        Request request = requests.poll();
+        if(requests.isEmpty()) {
+            queue.remove(pageId);
+        }
+        queuedRequests--;
+        return request;
+    }
+
+    private void execute(Request[] batch) {
+        ByteBuffer[] pageData = new ByteBuffer[batch.length];
+        for(int i = 0; i < batch.length; i++) {
+            pageData[i] = batch[i].pageData;
+        }
+        try {
+            if(batch[0].isWrite()) {
+                long ticket = batch.length == 1 ? diskManager.writePage(batch[0].pageId, pageData[0])
+                        : diskManager.writePages(batch[0].pageId, pageData);
+                for(Request request : batch) {
+                    request.written.complete(ticket);
+                }
+            } else {
+                if(batch.length == 1) {
+                    diskManager.readPage(batch[0].pageId, pageData[0]);
+                } else {
+                    diskManager.readPages(batch[0].pageId, pageData);
+                }
+                for(Request request : batch) {
+                    request.read.complete(null);
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("I/O of {} pages starting at the page with ID: {} failed", batch.length, batch[0].pageId, e);
+            for(Request request : batch) {
+                if(request.isWrite()) {
+                    request.written.completeExceptionally(e);
+                } else {
+                    request.read.completeExceptionally(e);
+                }
+            }
+        }
+    }
+}
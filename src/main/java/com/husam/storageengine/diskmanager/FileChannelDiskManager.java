@@ -0,0 +1,248 @@
+package com.husam.storageengine.diskmanager;
+
+import com.husam.common.DatabaseConfig;
+import com.husam.common.DurabilityMode;
+import com.husam.metrics.DiskMetrics;
+import com.husam.metrics.MetricsRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The FileChannelDiskManager is the default DiskManager backend, it reads and writes pages with system calls on the database file.
+ * This class ensures atomic writes by writing in exact page sizes, preventing data corruption and maintaining consistency.
+ * By avoiding partial writes, it guarantees complete and error-free data, providing a reliable foundation for any system that relies on persistent storage.
+ * All the I/O is positional on a single FileChannel, a read or write never touches the shared file position,
+ * so there is no global monitor and independent page reads and writes can be in flight at the same time,
+ * which is what modern devices (NVMe) need to reach their bandwidth.
+ * Reading a page that lies (partially) past the end of the file never leaves stale bytes in the frame, the missing part is zeroed.
+ * Consecutive pages are read with one scatter read and written with one gather write,
+ * those are the only I/O that uses the file position, under its own latch.
+ * In STRICT durability mode every write is synced before it returns, in DEFERRED mode the writes stay in the OS page cache
+ * and a SyncCoordinator batches the fsyncs, callers that need durability wait on the ticket returned by writePage.
+ * A FileChannel is interruptible, interrupting a thread in the middle of its I/O closes the channel for every thread,
+ * so the background threads of the buffer pool are stopped with a flag and never interrupted.
+ */
+
+public class FileChannelDiskManager implements DiskManager {
+
+    private static final Logger LOGGER = LogManager.getLogger(FileChannelDiskManager.class);
+    private final FileChannel dbFile;
+    private final DatabaseConfig conf = DatabaseConfig.getInstance();
+    // null in STRICT mode, since every write syncs by itself
+    private final SyncCoordinator syncCoordinator;
+    private final DiskMetrics metrics = new DiskMetrics();
+    // null if the metrics aren't published over JMX
+    private final ObjectName metricsName;
+    // guards the file position, only scatter reads and gather writes use it
+    private final Lock positionLatch = new ReentrantLock();
+
+    public FileChannelDiskManager(String fileName) {
+        this(fileName, DatabaseConfig.getInstance().getDurabilityMode());
+    }
+
+    public FileChannelDiskManager(String fileName, DurabilityMode durabilityMode) {
+        try {
+            dbFile = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            LOGGER.fatal("can't open the database file: " + fileName + " in read write mode");
+            throw new RuntimeException(e);
+        }
+        if(durabilityMode == DurabilityMode.DEFERRED) {
+            syncCoordinator = new SyncCoordinator(this::force, conf.getSyncEveryWrites(), conf.getSyncIntervalMillis());
+        } else {
+            syncCoordinator = null;
+        }
+        metricsName = MetricsRegistry.register("DiskManager", metrics);
+    }
+
+    @Override
+    public void readPage(int pageId, ByteBuffer pageData) {
+        assert pageData.remaining() == conf.getPageSize();
+        long offset = 1L * pageId * conf.getPageSize();
+        long start = System.nanoTime();
+        try {
+            while (pageData.hasRemaining()) {
+                // a positional read may return less than asked for, keep going till the page is full or we hit EOF
+                int read = dbFile.read(pageData, offset);
+                if (read == -1) {
+                    break;
+                }
+                offset += read;
+            }
+            if (pageData.hasRemaining()) {
+                LOGGER.debug("read past the end of the file for page with ID: {}, {} bytes are zeroed", pageId, pageData.remaining());
+                while (pageData.hasRemaining()) {
+                    pageData.put((byte) 0);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("can't read page with ID: {}", pageId);
+            throw new RuntimeException(e);
+        }
+        metrics.recordRead(System.nanoTime() - start);
+    }
+
+    @Override
+    public long writePage(int pageId, ByteBuffer pageData) {
+        assert pageData.remaining() == conf.getPageSize();
+        long offset = 1L * pageId * conf.getPageSize();
+        try {
+            long start = System.nanoTime();
+            while (pageData.hasRemaining()) {
+                offset += dbFile.write(pageData, offset);
+            }
+            metrics.recordWrite(System.nanoTime() - start);
+            if(syncCoordinator != null) {
+                return syncCoordinator.registerWrite();
+            }
+            // to keep disk in sync
+            force();
+            return 0;
+        } catch (IOException e) {
+            LOGGER.error("can't write a page with ID: {}", pageId);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void readPages(int firstPageId, ByteBuffer[] pageData) {
+        long offset = 1L * firstPageId * conf.getPageSize();
+        long start = System.nanoTime();
+        try {
+            positionLatch.lock();
+            try {
+                dbFile.position(offset);
+                // a scatter read may return less than asked for, keep going till the last page is full or we hit EOF
+                while (pageData[pageData.length - 1].hasRemaining()) {
+                    if(dbFile.read(pageData) == -1) {
+                        break;
+                    }
+                }
+            } finally {
+                positionLatch.unlock();
+            }
+        } catch (IOException e) {
+            LOGGER.error("can't read {} pages starting at the page with ID: {}", pageData.length, firstPageId);
+            throw new RuntimeException(e);
+        }
+        for (ByteBuffer page : pageData) {
+            while (page.hasRemaining()) {
+                page.put((byte) 0);
+            }
+        }
+        metrics.recordRead(System.nanoTime() - start);
+    }
+
+    @Override
+    public long writePages(int firstPageId, ByteBuffer[] pageData) {
+        try {
+            gatherWrite(firstPageId, pageData);
+            return syncBatch();
+        } catch (IOException e) {
+            LOGGER.error("can't write {} pages starting at the page with ID: {}", pageData.length, firstPageId);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public long writePages(int[] pageIds, ByteBuffer[] pageData) {
+        assert pageIds.length == pageData.length;
+        try {
+            for(int from = 0, to; from < pageIds.length; from = to) {
+                to = DiskManager.runEnd(pageIds, from);
+                gatherWrite(pageIds[from], Arrays.copyOfRange(pageData, from, to));
+            }
+            return syncBatch();
+        } catch (IOException e) {
+            LOGGER.error("can't write a batch of {} pages", pageIds.length);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> whenDurable(long ticket) {
+        if(syncCoordinator == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return syncCoordinator.whenDurable(ticket);
+    }
+
+    @Override
+    public void sync() {
+        if(syncCoordinator != null) {
+            syncCoordinator.sync();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> syncAsync() {
+        if(syncCoordinator == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return syncCoordinator.requestSync();
+    }
+
+    @Override
+    public DiskMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void shutDown() {
+        MetricsRegistry.unregister(metricsName);
+        try {
+            if(syncCoordinator != null) {
+                syncCoordinator.close();
+            }
+        } finally {
+            // the file is closed even if the last fsync failed
+            try {
+                dbFile.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private void gatherWrite(int firstPageId, ByteBuffer[] pageData) throws IOException {
+        long start = System.nanoTime();
+        positionLatch.lock();
+        try {
+            dbFile.position(1L * firstPageId * conf.getPageSize());
+            // a gather write may write less than asked for, the last buffer is the last to drain
+            while (pageData[pageData.length - 1].hasRemaining()) {
+                dbFile.write(pageData);
+            }
+        } finally {
+            positionLatch.unlock();
+        }
+        metrics.recordWrite(System.nanoTime() - start);
+    }
+
+    // the one sync point of a batch of writes
+    private long syncBatch() throws IOException {
+        if(syncCoordinator != null) {
+            return syncCoordinator.registerWrite();
+        }
+        // to keep disk in sync
+        force();
+        return 0;
+    }
+
+    private void force() throws IOException {
+        long start = System.nanoTime();
+        dbFile.force(true);
+        metrics.recordSync(System.nanoTime() - start);
+    }
+}
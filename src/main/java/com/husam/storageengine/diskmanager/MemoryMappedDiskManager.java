@@ -0,0 +1,275 @@
+package com.husam.storageengine.diskmanager;
+
+import com.husam.common.DatabaseConfig;
+import com.husam.common.DurabilityMode;
+import com.husam.metrics.DiskMetrics;
+import com.husam.metrics.MetricsRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * DiskManager backend that maps the database file in fixed size chunks with MappedByteBuffer,
+ * a page read or write is a memory copy between the frame and the mapping instead of a system call,
+ * which pays off for read mostly databases that fit in the OS page cache.
+ * The chunk size is a multiple of the page size, so a page never straddles two chunks.
+ * The mapping only grows: the first write to a page past the mapped chunks maps the missing chunks,
+ * which extends the file to the end of the last chunk (the new bytes are zero).
+ * Reading a page that is not mapped yet zeroes the frame, just like reading past the end of the file.
+ * A write only lands in the OS page cache, force() msyncs the chunks that were written to since the last force,
+ * in STRICT mode every write forces its chunk before it returns, in DEFERRED mode a SyncCoordinator batches the forces.
+ */
+public class MemoryMappedDiskManager implements DiskManager {
+
+    private static final Logger LOGGER = LogManager.getLogger(MemoryMappedDiskManager.class);
+
+    private static final class Chunk {
+        final MappedByteBuffer buffer;
+        // set after every write to the chunk, cleared by force
+        volatile boolean dirty;
+
+        Chunk(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    private final FileChannel dbFile;
+    private final DatabaseConfig conf = DatabaseConfig.getInstance();
+    private final int chunkSize;
+    // copy on write, readers and writers never lock it, only growing the mapping takes the growLatch
+    private volatile Chunk[] chunks = new Chunk[0];
+    private final Lock growLatch = new ReentrantLock();
+    // null in STRICT mode, since every write forces by itself
+    private final SyncCoordinator syncCoordinator;
+    private final DiskMetrics metrics = new DiskMetrics();
+    // null if the metrics aren't published over JMX
+    private final ObjectName metricsName;
+
+    public MemoryMappedDiskManager(String fileName) {
+        this(fileName, DatabaseConfig.getInstance().getDurabilityMode());
+    }
+
+    public MemoryMappedDiskManager(String fileName, DurabilityMode durabilityMode) {
+        this(fileName, durabilityMode, DatabaseConfig.getInstance().getMappedChunkSize());
+    }
+
+    public MemoryMappedDiskManager(String fileName, DurabilityMode durabilityMode, int chunkSize) {
+        if(chunkSize <= 0 || chunkSize % conf.getPageSize() != 0) {
+            throw new IllegalArgumentException("the chunk size must be a positive multiple of the page size, got: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        try {
+            dbFile = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // map whatever the file already holds
+            grow((int) ((dbFile.size() + chunkSize - 1) / chunkSize));
+        } catch (IOException e) {
+            LOGGER.fatal("can't open the database file: " + fileName + " in read write mode");
+            throw new RuntimeException(e);
+        }
+        if(durabilityMode == DurabilityMode.DEFERRED) {
+            syncCoordinator = new SyncCoordinator(this::force, conf.getSyncEveryWrites(), conf.getSyncIntervalMillis());
+        } else {
+            syncCoordinator = null;
+        }
+        metricsName = MetricsRegistry.register("DiskManager", metrics);
+    }
+
+    @Override
+    public void readPage(int pageId, ByteBuffer pageData) {
+        assert pageData.remaining() == conf.getPageSize();
+        long offset = 1L * pageId * conf.getPageSize();
+        long start = System.nanoTime();
+        Chunk[] mapped = chunks;
+        int chunkIndex = (int) (offset / chunkSize);
+        if(chunkIndex >= mapped.length) {
+            LOGGER.debug("read past the mapped part of the file for page with ID: {}, the page is zeroed", pageId);
+            while (pageData.hasRemaining()) {
+                pageData.put((byte) 0);
+            }
+            metrics.recordRead(System.nanoTime() - start);
+            return;
+        }
+        int position = (int) (offset % chunkSize);
+        ByteBuffer source = mapped[chunkIndex].buffer.duplicate();
+        source.position(position).limit(position + conf.getPageSize());
+        pageData.put(source);
+        metrics.recordRead(System.nanoTime() - start);
+    }
+
+    @Override
+    public long writePage(int pageId, ByteBuffer pageData) {
+        long start = System.nanoTime();
+        Chunk chunk = copyToMapping(pageId, pageData);
+        metrics.recordWrite(System.nanoTime() - start);
+        if(syncCoordinator != null) {
+            return syncCoordinator.registerWrite();
+        }
+        // to keep disk in sync
+        start = System.nanoTime();
+        chunk.dirty = false;
+        chunk.buffer.force();
+        metrics.recordSync(System.nanoTime() - start);
+        return 0;
+    }
+
+    @Override
+    public void readPages(int firstPageId, ByteBuffer[] pageData) {
+        // a read is a memory copy, there's no I/O to batch
+        for(int i = 0; i < pageData.length; i++) {
+            readPage(firstPageId + i, pageData[i]);
+        }
+    }
+
+    @Override
+    public long writePages(int firstPageId, ByteBuffer[] pageData) {
+        long start = System.nanoTime();
+        for(int i = 0; i < pageData.length; i++) {
+            copyToMapping(firstPageId + i, pageData[i]);
+        }
+        metrics.recordWrite(System.nanoTime() - start);
+        return syncBatch();
+    }
+
+    @Override
+    public long writePages(int[] pageIds, ByteBuffer[] pageData) {
+        assert pageIds.length == pageData.length;
+        long start = System.nanoTime();
+        for(int i = 0; i < pageIds.length; i++) {
+            copyToMapping(pageIds[i], pageData[i]);
+        }
+        metrics.recordWrite(System.nanoTime() - start);
+        return syncBatch();
+    }
+
+    // the one sync point of a batch of writes
+    private long syncBatch() {
+        if(syncCoordinator != null) {
+            return syncCoordinator.registerWrite();
+        }
+        // to keep disk in sync, the chunks we wrote to are the only dirty ones
+        force();
+        return 0;
+    }
+
+    // @return the chunk the page was copied to, it's marked dirty
+    private Chunk copyToMapping(int pageId, ByteBuffer pageData) {
+        assert pageData.remaining() == conf.getPageSize();
+        long offset = 1L * pageId * conf.getPageSize();
+        int chunkIndex = (int) (offset / chunkSize);
+        Chunk[] mapped = chunks;
+        if(chunkIndex >= mapped.length) {
+            try {
+                mapped = grow(chunkIndex + 1);
+            } catch (IOException e) {
+                LOGGER.error("can't grow the mapping to write a page with ID: {}", pageId);
+                throw new RuntimeException(e);
+            }
+        }
+        Chunk chunk = mapped[chunkIndex];
+        ByteBuffer target = chunk.buffer.duplicate();
+        target.position((int) (offset % chunkSize));
+        target.put(pageData);
+        chunk.dirty = true;
+        return chunk;
+    }
+
+    /**
+     * Makes every write that returned before this call durable, by forcing the chunks written to since the last force.
+     */
+    public void force() {
+        long start = System.nanoTime();
+        boolean forced = false;
+        for (Chunk chunk : chunks) {
+            if(chunk.dirty) {
+                // cleared before the force, so a write that races with it marks the chunk again
+                chunk.dirty = false;
+                chunk.buffer.force();
+                forced = true;
+            }
+        }
+        if(forced) {
+            metrics.recordSync(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> whenDurable(long ticket) {
+        if(syncCoordinator == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return syncCoordinator.whenDurable(ticket);
+    }
+
+    @Override
+    public void sync() {
+        if(syncCoordinator != null) {
+            syncCoordinator.sync();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> syncAsync() {
+        if(syncCoordinator == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return syncCoordinator.requestSync();
+    }
+
+    @Override
+    public DiskMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void shutDown() {
+        MetricsRegistry.unregister(metricsName);
+        try {
+            if(syncCoordinator != null) {
+                syncCoordinator.close();
+            }
+            force();
+        } finally {
+            // the file is closed even if the last fsync failed, the mappings go away once the buffers are collected
+            chunks = new Chunk[0];
+            try {
+                dbFile.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Maps chunks till at least numOfChunks are mapped.
+     *
+     * @return the chunks after growing
+     */
+    private Chunk[] grow(int numOfChunks) throws IOException {
+        growLatch.lock();
+        try {
+            Chunk[] mapped = chunks;
+            if(mapped.length >= numOfChunks) {
+                return mapped;
+            }
+            Chunk[] grown = new Chunk[numOfChunks];
+            System.arraycopy(mapped, 0, grown, 0, mapped.length);
+            for(int i = mapped.length; i < numOfChunks; i++) {
+                grown[i] = new Chunk(dbFile.map(FileChannel.MapMode.READ_WRITE, 1L * i * chunkSize, chunkSize));
+            }
+            chunks = grown;
+            return grown;
+        } finally {
+            growLatch.unlock();
+        }
+    }
+}
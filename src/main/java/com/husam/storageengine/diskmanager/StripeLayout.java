@@ -0,0 +1,59 @@
+package com.husam.storageengine.diskmanager;
+
+import com.husam.common.DatabaseConfig;
+
+/**
+ * maps the page ids of a striped database to the files that hold them
+ * the page ids are cut in extents of extentPages consecutive pages, and the extents are dealt to the files round robin,
+ * extent e goes to file e % numOfFiles, where it's extent e / numOfFiles of that file
+ * so a sequential scan moves from file to file every extent, and the files grow at the same pace
+ */
+public final class StripeLayout {
+
+    private final int numOfFiles;
+    private final int extentPages;
+
+    public StripeLayout(int numOfFiles, int extentPages) {
+        if(numOfFiles < 1) {
+            throw new IllegalArgumentException("a stripe needs at least 1 file, got: " + numOfFiles);
+        }
+        if(extentPages < 1) {
+            throw new IllegalArgumentException("a stripe extent needs at least 1 page, got: " + extentPages);
+        }
+        this.numOfFiles = numOfFiles;
+        this.extentPages = extentPages;
+    }
+
+    public int getNumOfFiles() {
+        return numOfFiles;
+    }
+
+    public int getExtentPages() {
+        return extentPages;
+    }
+
+    /** @return the index of the file that holds the page */
+    public int fileOf(int pageId) {
+        return (pageId / extentPages) % numOfFiles;
+    }
+
+    /** @return the id of the page inside its file, the page lives at offset localPageId * pageSize of the file */
+    public int localPageIdOf(int pageId) {
+        return (pageId / extentPages / numOfFiles) * extentPages + pageId % extentPages;
+    }
+
+    /** @return the byte offset of the page inside its file */
+    public long offsetOf(int pageId) {
+        return 1L * localPageIdOf(pageId) * DatabaseConfig.getInstance().getPageSize();
+    }
+
+    /** @return the page id of the page at localPageId of the file, the inverse of fileOf and localPageIdOf */
+    public int pageIdOf(int file, int localPageId) {
+        return (localPageId / extentPages * numOfFiles + file) * extentPages + localPageId % extentPages;
+    }
+
+    /** @return the first page id of the extent after the one of the page, the pages before it are in the same file */
+    public int extentEnd(int pageId) {
+        return (pageId / extentPages + 1) * extentPages;
+    }
+}
@@ -0,0 +1,262 @@
+package com.husam.storageengine.diskmanager;
+
+import com.husam.common.DatabaseConfig;
+import com.husam.common.DurabilityMode;
+import com.husam.metrics.DiskMetrics;
+import com.husam.metrics.MetricsRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The StripedDiskManager spreads the pages of the database over several files, see StripeLayout for which page goes where.
+ * Put the files on different devices (directories on different mount points) to add up their bandwidth and size.
+ * Every file is a DiskManager of its own, of the backend selected in the DatabaseConfig, with its own latches and metrics,
+ * so the I/O to different files never shares a latch and goes on in parallel.
+ * A run of consecutive pages is cut at the extent boundaries, and a batch of pages is split per file,
+ * so every file gets one batch and syncs it once, the batches of the files are done at the same time on a small pool
+ * of I/O threads (the caller does one of them itself) and the call returns once all of them are done.
+ * In DEFERRED durability mode the files batch their own fsyncs, and the tickets of this disk manager come from
+ * a SyncCoordinator of its own, whose fsync asks every file for a barrier at once and waits for all of them,
+ * so the fsyncs of the files run in parallel too. In STRICT mode every file syncs its writes before they return.
+ */
+public class StripedDiskManager implements DiskManager {
+
+    private static final Logger LOGGER = LogManager.getLogger(StripedDiskManager.class);
+    private final DiskManager[] files;
+    private final StripeLayout layout;
+    // does the per file batches of readPages and writePages in parallel
+    private final ExecutorService ioThreads;
+    // null in STRICT mode, since every write syncs by itself
+    private final SyncCoordinator syncCoordinator;
+    private final DiskMetrics metrics = new DiskMetrics();
+    // null if the metrics aren't published over JMX
+    private final ObjectName metricsName;
+
+    public StripedDiskManager(String[] fileNames, int extentPages) {
+        this(fileNames, extentPages, DatabaseConfig.getInstance().getDurabilityMode());
+    }
+
+    public StripedDiskManager(String[] fileNames, int extentPages, DurabilityMode durabilityMode) {
+        this.layout = new StripeLayout(fileNames.length, extentPages);
+        this.files = new DiskManager[fileNames.length];
+        for(int i = 0; i < fileNames.length; i++) {
+            files[i] = DiskManager.openFile(fileNames[i], durabilityMode);
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        this.ioThreads = Executors.newFixedThreadPool(Math.max(1, fileNames.length - 1), task -> {
+            Thread thread = new Thread(task, "stripe-io-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if(durabilityMode == DurabilityMode.DEFERRED) {
+            DatabaseConfig conf = DatabaseConfig.getInstance();
+            syncCoordinator = new SyncCoordinator(this::syncFiles, conf.getSyncEveryWrites(), conf.getSyncIntervalMillis());
+        } else {
+            syncCoordinator = null;
+        }
+        metricsName = MetricsRegistry.register("DiskManager", metrics);
+    }
+
+    public StripeLayout getLayout() {
+        return layout;
+    }
+
+    @Override
+    public void readPage(int pageId, ByteBuffer pageData) {
+        long start = System.nanoTime();
+        files[layout.fileOf(pageId)].readPage(layout.localPageIdOf(pageId), pageData);
+        metrics.recordRead(System.nanoTime() - start);
+    }
+
+    @Override
+    public long writePage(int pageId, ByteBuffer pageData) {
+        long start = System.nanoTime();
+        files[layout.fileOf(pageId)].writePage(layout.localPageIdOf(pageId), pageData);
+        metrics.recordWrite(System.nanoTime() - start);
+        return syncCoordinator == null ? 0 : syncCoordinator.registerWrite();
+    }
+
+    @Override
+    public void readPages(int firstPageId, ByteBuffer[] pageData) {
+        long start = System.nanoTime();
+        // every extent of the run is a run of its own file, a file reads its extents one after the other
+        List<List<int[]>> extents = new ArrayList<>(files.length);
+        for(int file = 0; file < files.length; file++) {
+            extents.add(new ArrayList<>());
+        }
+        for(int from = 0, to; from < pageData.length; from = to) {
+            int pageId = firstPageId + from;
+            to = Math.min(pageData.length, layout.extentEnd(pageId) - firstPageId);
+            extents.get(layout.fileOf(pageId)).add(new int[]{from, to});
+        }
+        Runnable[] work = new Runnable[files.length];
+        for(int file = 0; file < files.length; file++) {
+            List<int[]> fileExtents = extents.get(file);
+            if(fileExtents.isEmpty()) {
+                continue;
+            }
+            DiskManager disk = files[file];
+            work[file] = () -> {
+                for(int[] extent : fileExtents) {
+                    int pageId = firstPageId + extent[0];
+                    disk.readPages(layout.localPageIdOf(pageId), Arrays.copyOfRange(pageData, extent[0], extent[1]));
+                }
+            };
+        }
+        runPerFile(work);
+        metrics.recordRead(System.nanoTime() - start);
+    }
+
+    @Override
+    public long writePages(int firstPageId, ByteBuffer[] pageData) {
+        int[] pageIds = new int[pageData.length];
+        for(int i = 0; i < pageIds.length; i++) {
+            pageIds[i] = firstPageId + i;
+        }
+        return writePages(pageIds, pageData);
+    }
+
+    @Override
+    public long writePages(int[] pageIds, ByteBuffer[] pageData) {
+        assert pageIds.length == pageData.length;
+        long start = System.nanoTime();
+        int[] counts = new int[files.length];
+        for(int pageId : pageIds) {
+            counts[layout.fileOf(pageId)]++;
+        }
+        // one batch per file, the pages of a file keep their order, so its runs stay runs
+        Runnable[] work = new Runnable[files.length];
+        for(int file = 0; file < files.length; file++) {
+            if(counts[file] == 0) {
+                continue;
+            }
+            int[] localPageIds = new int[counts[file]];
+            ByteBuffer[] filePages = new ByteBuffer[counts[file]];
+            for(int i = 0, j = 0; i < pageIds.length; i++) {
+                if(layout.fileOf(pageIds[i]) == file) {
+                    localPageIds[j] = layout.localPageIdOf(pageIds[i]);
+                    filePages[j++] = pageData[i];
+                }
+            }
+            DiskManager disk = files[file];
+            work[file] = () -> disk.writePages(localPageIds, filePages);
+        }
+        runPerFile(work);
+        metrics.recordWrite(System.nanoTime() - start);
+        return syncCoordinator == null ? 0 : syncCoordinator.registerWrite();
+    }
+
+    @Override
+    public CompletableFuture<Void> whenDurable(long ticket) {
+        if(syncCoordinator == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return syncCoordinator.whenDurable(ticket);
+    }
+
+    @Override
+    public void sync() {
+        if(syncCoordinator != null) {
+            syncCoordinator.sync();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> syncAsync() {
+        if(syncCoordinator == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return syncCoordinator.requestSync();
+    }
+
+    @Override
+    public DiskMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void shutDown() {
+        MetricsRegistry.unregister(metricsName);
+        try {
+            if(syncCoordinator != null) {
+                syncCoordinator.close();
+            }
+        } finally {
+            // every file is closed even if the last fsync or the shut down of another file failed
+            ioThreads.shutdown();
+            RuntimeException error = null;
+            for(DiskManager file : files) {
+                try {
+                    file.shutDown();
+                } catch (RuntimeException e) {
+                    error = error == null ? e : error;
+                }
+            }
+            if(error != null) {
+                throw error;
+            }
+        }
+    }
+
+    // runs the batches of the files at the same time and waits for all of them, a null entry is a file without a batch
+    private void runPerFile(Runnable[] work) {
+        int last = work.length - 1;
+        while(last >= 0 && work[last] == null) {
+            last--;
+        }
+        if(last < 0) {
+            return;
+        }
+        List<CompletableFuture<Void>> others = new ArrayList<>();
+        for(int file = 0; file < last; file++) {
+            if(work[file] != null) {
+                others.add(CompletableFuture.runAsync(work[file], ioThreads));
+            }
+        }
+        RuntimeException error = null;
+        try {
+            work[last].run();
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        // the buffers of the batch belong to the caller again only once every file is done with them
+        try {
+            CompletableFuture.allOf(others.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if(error == null) {
+                error = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        if(error != null) {
+            throw error;
+        }
+    }
+
+    // the fsync of the stripe, every file syncs at the same time
+    private void syncFiles() throws IOException {
+        long start = System.nanoTime();
+        CompletableFuture<?>[] barriers = new CompletableFuture<?>[files.length];
+        for(int i = 0; i < files.length; i++) {
+            barriers[i] = files[i].syncAsync();
+        }
+        try {
+            CompletableFuture.allOf(barriers).join();
+        } catch (CompletionException e) {
+            LOGGER.error("can't sync the files of the stripe", e.getCause());
+            throw new IOException(e.getCause());
+        }
+        metrics.recordSync(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,243 @@
+package com.husam.storageengine.diskmanager;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * group commit for fsyncs, writers register each completed write and get a ticket back,
+ * a background thread issues one fsync for all the writes registered so far once enough writes are pending,
+ * the oldest pending write got too old, or somebody asked for a barrier
+ * an fsync started after a write was registered always covers that write, so a ticket is durable once
+ * the durable watermark reaches it
+ * we use explicit locks instead of monitors so that waiting threads never pin a carrier thread
+ */
+public class SyncCoordinator {
+
+    /**
+     * the actual sync operation of the underlying file(s)
+     */
+    public interface SyncAction {
+        void sync() throws IOException;
+    }
+
+    private static final Logger LOGGER = LogManager.getLogger(SyncCoordinator.class);
+    private final SyncAction syncAction;
+    // sync after this many pending writes, <= 0 disables the threshold
+    private final int maxPendingWrites;
+    // sync once the oldest pending write is this old, <= 0 disables the threshold
+    private final long maxDelayNanos;
+    private final Lock latch;
+    private final Condition hasWork;
+    private final Condition becameDurable;
+    // futures of callers waiting on a ticket that isn't durable yet, keyed by the ticket
+    private final TreeMap<Long, CompletableFuture<Void>> waiters;
+    private final Thread syncThread;
+    // ticket of the last registered write
+    private long lastTicket;
+    // every ticket <= durableTicket is covered by an fsync
+    private long durableTicket;
+    // a barrier asked for every ticket <= requestedTicket to become durable right away
+    private long requestedTicket;
+    private long oldestPendingNanos;
+    private IOException failure;
+    private boolean closed;
+
+    public SyncCoordinator(SyncAction syncAction, int maxPendingWrites, long maxDelayMillis) {
+        this.syncAction = syncAction;
+        this.maxPendingWrites = maxPendingWrites;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.latch = new ReentrantLock();
+        this.hasWork = latch.newCondition();
+        this.becameDurable = latch.newCondition();
+        this.waiters = new TreeMap<>();
+        this.syncThread = new Thread(this::run, "sync-coordinator");
+        this.syncThread.setDaemon(true);
+        this.syncThread.start();
+    }
+
+    /**
+     * Registers a write that has already been handed to the OS.
+     *
+     * @return the ticket of the write
+     */
+    public long registerWrite() {
+        latch.lock();
+        try {
+            boolean firstPending = lastTicket == durableTicket;
+            if(firstPending) {
+                oldestPendingNanos = System.nanoTime();
+            }
+            lastTicket++;
+            // the sync thread sleeps without a timeout while nothing is pending, wake it up to start the delay
+            if((firstPending && maxDelayNanos > 0) || (maxPendingWrites > 0 && lastTicket - durableTicket >= maxPendingWrites)) {
+                hasWork.signal();
+            }
+            return lastTicket;
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    /**
+     * @return a future that completes once the write of the ticket is covered by an fsync
+     */
+    public CompletableFuture<Void> whenDurable(long ticket) {
+        latch.lock();
+        try {
+            if(ticket <= durableTicket) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if(failure != null) {
+                return CompletableFuture.failedFuture(failure);
+            }
+            return waiters.computeIfAbsent(ticket, t -> new CompletableFuture<>());
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    /**
+     * Barrier, blocks till every write registered before this call is durable.
+     */
+    public void sync() {
+        latch.lock();
+        try {
+            long target = lastTicket;
+            if(target > requestedTicket) {
+                requestedTicket = target;
+                hasWork.signal();
+            }
+            while(durableTicket < target) {
+                if(failure != null) {
+                    throw new RuntimeException(failure);
+                }
+                becameDurable.awaitUninterruptibly();
+            }
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    /**
+     * Barrier that doesn't block, asks for an fsync of every write registered before this call right away.
+     *
+     * @return a future that completes once those writes are durable
+     */
+    public CompletableFuture<Void> requestSync() {
+        latch.lock();
+        try {
+            long target = lastTicket;
+            if(target > requestedTicket) {
+                requestedTicket = target;
+                hasWork.signal();
+            }
+            return whenDurable(target);
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    /**
+     * Syncs whatever is still pending and stops the sync thread, the thread is stopped even if that last sync fails.
+     */
+    public void close() {
+        try {
+            sync();
+        } finally {
+            latch.lock();
+            try {
+                closed = true;
+                hasWork.signal();
+            } finally {
+                latch.unlock();
+            }
+            try {
+                syncThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        while(true) {
+            long target;
+            latch.lock();
+            try {
+                while(!closed && !shouldSync()) {
+                    if(lastTicket > durableTicket && maxDelayNanos > 0) {
+                        hasWork.awaitNanos(maxDelayNanos - (System.nanoTime() - oldestPendingNanos));
+                    } else {
+                        hasWork.await();
+                    }
+                }
+                if(closed) {
+                    return;
+                }
+                target = lastTicket;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                latch.unlock();
+            }
+            IOException error = null;
+            try {
+                syncAction.sync();
+            } catch (IOException e) {
+                LOGGER.error("can't sync the database file", e);
+                error = e;
+            }
+            complete(target, error);
+        }
+    }
+
+    // Caller should acquire the latch before calling this function.
+    private boolean shouldSync() {
+        long pending = lastTicket - durableTicket;
+        if(pending == 0) {
+            return false;
+        }
+        return requestedTicket > durableTicket
+                || (maxPendingWrites > 0 && pending >= maxPendingWrites)
+                || (maxDelayNanos > 0 && System.nanoTime() - oldestPendingNanos >= maxDelayNanos);
+    }
+
+    private void complete(long target, IOException error) {
+        latch.lock();
+        try {
+            if(error != null) {
+                // the writes may or may not be on the device, nothing after this can be promised
+                failure = error;
+                for(CompletableFuture<Void> waiter : waiters.values()) {
+                    waiter.completeExceptionally(error);
+                }
+                waiters.clear();
+                becameDurable.signalAll();
+                closed = true;
+                return;
+            }
+            durableTicket = target;
+            if(lastTicket > durableTicket) {
+                oldestPendingNanos = System.nanoTime();
+            }
+            Iterator<Map.Entry<Long, CompletableFuture<Void>>> it = waiters.headMap(target, true).entrySet().iterator();
+            while(it.hasNext()) {
+                it.next().getValue().complete(null);
+                it.remove();
+            }
+            becameDurable.signalAll();
+        } finally {
+            latch.unlock();
+        }
+    }
+}
@@ -0,0 +1,553 @@
+package com.husam.storageengine.index;
+
+import com.husam.cachemanager.BufferPoolManager;
+import com.husam.cachemanager.replacers.Priority;
+import com.husam.common.DatabaseConfig;
+import com.husam.storageengine.page.BPlusTreeHeaderPage;
+import com.husam.storageengine.page.BPlusTreeInternalPage;
+import com.husam.storageengine.page.BPlusTreeLeafPage;
+import com.husam.storageengine.page.BPlusTreePage;
+import com.husam.storageengine.page.BasicPageGuard;
+import com.husam.storageengine.page.ReadPageGuard;
+import com.husam.storageengine.page.WritePageGuard;
+import com.husam.storageengine.table.RecordId;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * B+Tree index from unique long keys to record ids, its nodes are pages of the buffer pool
+ * the tree is identified by its header page, which holds the root, open the tree again with that id
+ * concurrency is latch crabbing through the page guards:
+ * readers read latch a child before they unlatch its parent, from the header page down to a leaf,
+ * range scans then walk the leaves from left to right, latching the next leaf before they unlatch the current one
+ * writers first go down like readers and only write latch the leaf, if the leaf can take the change without
+ * splitting or underflowing (it's safe) that's all, most writes are like that, so writers on different leaves
+ * only share read latches on the upper levels
+ * otherwise the writer starts over and write latches its way down, keeping the latches of the nodes a split or merge
+ * could reach, and unlatching all the nodes above a safe one
+ * a writer latches siblings while holding the write latch of their parent, always the left one first,
+ * it unlatches a node to latch its left sibling, so writers and range scans never wait on each other in a cycle
+ * a node merged away can still be pinned by a range scan that reached it before the merge, its page is then queued
+ * and deleted later, by the next remove or scan that finds it unpinned, see reclaimDeletedPages
+ */
+public class BPlusTree {
+
+    private static final Logger LOGGER = LogManager.getLogger(BPlusTree.class);
+
+    /** gets the entries of a range scan in key order, it runs with the leaf read latched, so it must not modify the tree */
+    @FunctionalInterface
+    public interface EntryVisitor {
+        void visit(long key, int recordPageId, int recordSlot);
+    }
+
+    // the write latched pages of a pessimistic write, from the top down, the header page is kept till the root is safe
+    private static final class WritePath implements AutoCloseable {
+        WritePageGuard header;
+        final List<WritePageGuard> nodes = new ArrayList<>();
+
+        // unlatches every page above the last node
+        void releaseAncestors() {
+            if(header != null) {
+                header.close();
+                header = null;
+            }
+            for(int i = 0; i < nodes.size() - 1; i++) {
+                nodes.get(i).close();
+            }
+            WritePageGuard last = nodes.get(nodes.size() - 1);
+            nodes.clear();
+            nodes.add(last);
+        }
+
+        @Override
+        public void close() {
+            if(header != null) {
+                header.close();
+            }
+            for(WritePageGuard guard : nodes) {
+                guard.close();
+            }
+        }
+    }
+
+    private final BufferPoolManager bufferPool;
+    private final int headerPageId;
+    private final int leafMaxSize;
+    private final int internalMaxSize;
+    private final int invalidPageId = DatabaseConfig.getInstance().getInvalidPageId();
+    // pages of nodes nobody can reach anymore that were still pinned when they were deleted
+    private final Queue<Integer> pendingDeletes = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a new empty tree with nodes as big as a page allows.
+     */
+    public BPlusTree(BufferPoolManager bufferPool) {
+        this(bufferPool, BPlusTreeLeafPage.capacity(), BPlusTreeInternalPage.capacity());
+    }
+
+    /**
+     * Creates a new empty tree, small nodes are only good for testing splits and merges.
+     */
+    public BPlusTree(BufferPoolManager bufferPool, int leafMaxSize, int internalMaxSize) {
+        if(leafMaxSize < 2 || leafMaxSize > BPlusTreeLeafPage.capacity()) {
+            throw new IllegalArgumentException("a leaf must hold between 2 and " + BPlusTreeLeafPage.capacity() + " entries, got: " + leafMaxSize);
+        }
+        if(internalMaxSize < 3 || internalMaxSize > BPlusTreeInternalPage.capacity()) {
+            throw new IllegalArgumentException("an internal node must hold between 3 and " + BPlusTreeInternalPage.capacity() + " children, got: " + internalMaxSize);
+        }
+        this.bufferPool = bufferPool;
+        this.leafMaxSize = leafMaxSize;
+        this.internalMaxSize = internalMaxSize;
+        try (WritePageGuard header = newNode(); WritePageGuard root = newNode()) {
+            new BPlusTreeLeafPage(root.getBuffer()).init(leafMaxSize);
+            new BPlusTreeHeaderPage(header.getBuffer()).init(root.getPageId(), leafMaxSize, internalMaxSize);
+            this.headerPageId = header.getPageId();
+        }
+    }
+
+    /**
+     * Opens a tree created before.
+     */
+    public BPlusTree(BufferPoolManager bufferPool, int headerPageId) {
+        this.bufferPool = bufferPool;
+        this.headerPageId = headerPageId;
+        try (ReadPageGuard header = fetchReadOrFail(headerPageId, Priority.HIGH)) {
+            BPlusTreeHeaderPage headerPage = new BPlusTreeHeaderPage(header.getBuffer());
+            this.leafMaxSize = headerPage.getLeafMaxSize();
+            this.internalMaxSize = headerPage.getInternalMaxSize();
+        }
+    }
+
+    public int getHeaderPageId() {
+        return headerPageId;
+    }
+
+    /**
+     * Deletes the pages of removed nodes that couldn't be deleted yet because somebody still had them pinned,
+     * remove and scan call it, so the pages are given back soon after their last pin.
+     *
+     * @return the number of pages that are still pinned and stay queued
+     */
+    public int reclaimDeletedPages() {
+        if(pendingDeletes.isEmpty()) {
+            return 0;
+        }
+        int left = 0;
+        // only the pages queued so far, so a page that is still pinned isn't retried over and over
+        for(int i = pendingDeletes.size(); i > 0; i--) {
+            Integer pageId = pendingDeletes.poll();
+            if(pageId == null) {
+                break;
+            }
+            if(!bufferPool.deletePage(pageId)) {
+                pendingDeletes.add(pageId);
+                left++;
+            }
+        }
+        return left;
+    }
+
+    /**
+     * @return the record id of the key, or null if the key isn't in the tree
+     */
+    public RecordId get(long key) {
+        try (ReadPageGuard guard = findLeafRead(key)) {
+            BPlusTreeLeafPage leaf = new BPlusTreeLeafPage(guard.getBuffer());
+            int index = leaf.lowerBound(key);
+            if(index == leaf.getSize() || leaf.keyAt(index) != key) {
+                return null;
+            }
+            return new RecordId(leaf.recordPageIdAt(index), leaf.recordSlotAt(index));
+        }
+    }
+
+    /**
+     * Visits the entries with keys in [fromKey, toKey] in key order.
+     */
+    public void scan(long fromKey, long toKey, EntryVisitor visitor) {
+        ReadPageGuard guard = findLeafRead(fromKey);
+        try {
+            BPlusTreeLeafPage leaf = new BPlusTreeLeafPage(guard.getBuffer());
+            int index = leaf.lowerBound(fromKey);
+            while(true) {
+                int size = leaf.getSize();
+                for(; index < size; index++) {
+                    long key = leaf.keyAt(index);
+                    if(key > toKey) {
+                        return;
+                    }
+                    visitor.visit(key, leaf.recordPageIdAt(index), leaf.recordSlotAt(index));
+                }
+                int nextPageId = leaf.getNextPageId();
+                if(nextPageId == invalidPageId) {
+                    return;
+                }
+                ReadPageGuard next = fetchReadOrFail(nextPageId, Priority.NORMAL);
+                guard.close();
+                guard = next;
+                leaf = new BPlusTreeLeafPage(guard.getBuffer());
+                index = 0;
+            }
+        } finally {
+            guard.close();
+            reclaimDeletedPages();
+        }
+    }
+
+    /**
+     * @return false if the key is already in the tree, the tree isn't changed then
+     */
+    public boolean insert(long key, RecordId recordId) {
+        // the optimistic way, only the leaf is write latched
+        try (WritePageGuard guard = findLeafWrite(key)) {
+            BPlusTreeLeafPage leaf = new BPlusTreeLeafPage(guard.getBuffer());
+            int index = leaf.lowerBound(key);
+            if(index < leaf.getSize() && leaf.keyAt(index) == key) {
+                return false;
+            }
+            if(leaf.getSize() < leaf.getMaxSize()) {
+                leaf.insertAt(index, key, recordId.getPageId(), recordId.getSlot());
+                return true;
+            }
+        }
+        try (WritePath path = lockPath(key, true)) {
+            WritePageGuard guard = path.nodes.get(path.nodes.size() - 1);
+            BPlusTreeLeafPage leaf = new BPlusTreeLeafPage(guard.getBuffer());
+            int index = leaf.lowerBound(key);
+            if(index < leaf.getSize() && leaf.keyAt(index) == key) {
+                return false;
+            }
+            if(leaf.getSize() < leaf.getMaxSize()) {
+                leaf.insertAt(index, key, recordId.getPageId(), recordId.getSlot());
+                return true;
+            }
+            try (WritePageGuard rightGuard = newNode()) {
+                BPlusTreeLeafPage right = new BPlusTreeLeafPage(rightGuard.getBuffer());
+                right.init(leafMaxSize);
+                // the leaf holds one entry too many, the left half keeps the bigger part
+                int leftCount = (leaf.getMaxSize() + 2) / 2;
+                if(index < leftCount) {
+                    leaf.moveTailTo(right, leftCount - 1);
+                    leaf.insertAt(index, key, recordId.getPageId(), recordId.getSlot());
+                } else {
+                    leaf.moveTailTo(right, leftCount);
+                    right.insertAt(index - leftCount, key, recordId.getPageId(), recordId.getSlot());
+                }
+                right.setNextPageId(leaf.getNextPageId());
+                leaf.setNextPageId(rightGuard.getPageId());
+                insertIntoParent(path, path.nodes.size() - 1, right.keyAt(0), rightGuard.getPageId());
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return false if the key isn't in the tree
+     */
+    public boolean remove(long key) {
+        try (WritePageGuard guard = findLeafWrite(key)) {
+            BPlusTreeLeafPage leaf = new BPlusTreeLeafPage(guard.getBuffer());
+            int index = leaf.lowerBound(key);
+            if(index == leaf.getSize() || leaf.keyAt(index) != key) {
+                return false;
+            }
+            if(leaf.getSize() > leaf.getMinSize()) {
+                leaf.removeAt(index);
+                return true;
+            }
+        }
+        List<Integer> deleted = new ArrayList<>();
+        try (WritePath path = lockPath(key, false)) {
+            WritePageGuard guard = path.nodes.get(path.nodes.size() - 1);
+            BPlusTreeLeafPage leaf = new BPlusTreeLeafPage(guard.getBuffer());
+            int index = leaf.lowerBound(key);
+            if(index == leaf.getSize() || leaf.keyAt(index) != key) {
+                return false;
+            }
+            leaf.removeAt(index);
+            rebalance(path, path.nodes.size() - 1, deleted);
+        }
+        // the pages are unlatched by now, and nobody can reach them anymore, a scan may still have one pinned though
+        reclaimDeletedPages();
+        for(int pageId : deleted) {
+            if(!bufferPool.deletePage(pageId)) {
+                LOGGER.debug("page with ID: {} of a B+Tree node is still pinned, deleting it later", pageId);
+                pendingDeletes.add(pageId);
+            }
+        }
+        return true;
+    }
+
+    // read latches the leaf that may hold key
+    private ReadPageGuard findLeafRead(long key) {
+        ReadPageGuard guard = fetchReadOrFail(headerPageId, Priority.HIGH);
+        try {
+            BPlusTreeHeaderPage header = new BPlusTreeHeaderPage(guard.getBuffer());
+            int pageId = header.getRootPageId();
+            int level = header.getRootLevel();
+            while(true) {
+                ReadPageGuard child = fetchReadOrFail(pageId, priorityOf(level));
+                guard.close();
+                guard = child;
+                if(level == 0) {
+                    ReadPageGuard leaf = guard;
+                    guard = null;
+                    return leaf;
+                }
+                BPlusTreeInternalPage node = new BPlusTreeInternalPage(guard.getBuffer());
+                pageId = node.childAt(node.childIndex(key));
+                level--;
+            }
+        } finally {
+            if(guard != null) {
+                guard.close();
+            }
+        }
+    }
+
+    // read latches down to the parent of the leaf that may hold key, and write latches the leaf
+    private WritePageGuard findLeafWrite(long key) {
+        ReadPageGuard guard = fetchReadOrFail(headerPageId, Priority.HIGH);
+        try {
+            BPlusTreeHeaderPage header = new BPlusTreeHeaderPage(guard.getBuffer());
+            int pageId = header.getRootPageId();
+            int level = header.getRootLevel();
+            while(level > 0) {
+                ReadPageGuard child = fetchReadOrFail(pageId, Priority.HIGH);
+                guard.close();
+                guard = child;
+                BPlusTreeInternalPage node = new BPlusTreeInternalPage(guard.getBuffer());
+                pageId = node.childAt(node.childIndex(key));
+                level--;
+            }
+            return fetchWriteOrFail(pageId, Priority.NORMAL);
+        } finally {
+            guard.close();
+        }
+    }
+
+    // write latches the way down to the leaf that may hold key, keeping only the latches the write may need
+    private WritePath lockPath(long key, boolean forInsert) {
+        WritePath path = new WritePath();
+        try {
+            path.header = fetchWriteOrFail(headerPageId, Priority.HIGH);
+            BPlusTreeHeaderPage header = new BPlusTreeHeaderPage(path.header.getBuffer());
+            int pageId = header.getRootPageId();
+            int level = header.getRootLevel();
+            boolean isRoot = true;
+            while(true) {
+                WritePageGuard guard = fetchWriteOrFail(pageId, priorityOf(level--));
+                path.nodes.add(guard);
+                BPlusTreePage node = view(guard);
+                if(isSafe(node, forInsert, isRoot)) {
+                    path.releaseAncestors();
+                }
+                if(node.isLeaf()) {
+                    return path;
+                }
+                BPlusTreeInternalPage internal = (BPlusTreeInternalPage) node;
+                pageId = internal.childAt(internal.childIndex(key));
+                isRoot = false;
+            }
+        } catch (RuntimeException e) {
+            path.close();
+            throw e;
+        }
+    }
+
+    // a safe node doesn't split on an insert or underflow on a delete, so the nodes above it don't change
+    private static boolean isSafe(BPlusTreePage node, boolean forInsert, boolean isRoot) {
+        if(forInsert) {
+            return node.getSize() < node.getMaxSize();
+        }
+        if(isRoot) {
+            // the root only changes when an internal root is left with one child
+            return node.isLeaf() || node.getSize() > 2;
+        }
+        return node.getSize() > node.getMinSize();
+    }
+
+    // the node at index got split, rightPageId is its new right sibling and key the first key of the sibling
+    private void insertIntoParent(WritePath path, int index, long key, int rightPageId) {
+        WritePageGuard childGuard = path.nodes.get(index);
+        if(index == 0) {
+            // only the root can split without a latched parent, its parent is the header page
+            assert path.header != null;
+            int level = BPlusTreePage.levelOf(childGuard.getBuffer());
+            try (WritePageGuard rootGuard = newNode()) {
+                BPlusTreeInternalPage root = new BPlusTreeInternalPage(rootGuard.getBuffer());
+                root.init(level + 1, internalMaxSize);
+                root.populateNewRoot(childGuard.getPageId(), key, rightPageId);
+                new BPlusTreeHeaderPage(path.header.getBuffer()).setRoot(rootGuard.getPageId(), level + 1);
+            }
+            return;
+        }
+        WritePageGuard parentGuard = path.nodes.get(index - 1);
+        BPlusTreeInternalPage parent = new BPlusTreeInternalPage(parentGuard.getBuffer());
+        int position = parent.indexOfChild(childGuard.getPageId()) + 1;
+        if(parent.getSize() < parent.getMaxSize()) {
+            parent.insertAt(position, key, rightPageId);
+            return;
+        }
+        try (WritePageGuard siblingGuard = newNode()) {
+            BPlusTreeInternalPage sibling = new BPlusTreeInternalPage(siblingGuard.getBuffer());
+            sibling.init(parent.getLevel(), internalMaxSize);
+            int leftCount = (parent.getMaxSize() + 2) / 2;
+            if(position < leftCount) {
+                parent.moveTailTo(sibling, leftCount - 1);
+                parent.insertAt(position, key, rightPageId);
+            } else {
+                parent.moveTailTo(sibling, leftCount);
+                sibling.insertAt(position - leftCount, key, rightPageId);
+            }
+            // the unused key of the first entry of the sibling is the one that goes up
+            insertIntoParent(path, index - 1, sibling.keyAt(0), siblingGuard.getPageId());
+        }
+    }
+
+    // fixes an underflow of the node at index by borrowing from or merging with a sibling, the pages that are
+    // no longer part of the tree are added to deleted
+    private void rebalance(WritePath path, int index, List<Integer> deleted) {
+        WritePageGuard guard = path.nodes.get(index);
+        BPlusTreePage node = view(guard);
+        if(index == 0) {
+            if(path.header != null && !node.isLeaf() && node.getSize() == 1) {
+                // the root has a single child left, the child becomes the root
+                int childPageId = ((BPlusTreeInternalPage) node).childAt(0);
+                new BPlusTreeHeaderPage(path.header.getBuffer()).setRoot(childPageId, node.getLevel() - 1);
+                deleted.add(guard.getPageId());
+            }
+            return;
+        }
+        if(node.getSize() >= node.getMinSize()) {
+            return;
+        }
+        BPlusTreeInternalPage parent = new BPlusTreeInternalPage(path.nodes.get(index - 1).getBuffer());
+        int position = parent.indexOfChild(guard.getPageId());
+        // read before the node may be unlatched below
+        Priority priority = priorityOf(node.getLevel());
+        boolean merged;
+        if(position + 1 < parent.getSize()) {
+            try (WritePageGuard rightGuard = fetchWriteOrFail(parent.childAt(position + 1), priority)) {
+                merged = fix(node, view(rightGuard), parent, position + 1);
+                if(merged) {
+                    deleted.add(rightGuard.getPageId());
+                }
+            }
+        } else {
+            // siblings are latched from left to right, so the node is unlatched while the left one is latched,
+            // nobody else can change it meanwhile, since its parent is write latched
+            int pageId = guard.getPageId();
+            guard.close();
+            try (WritePageGuard leftGuard = fetchWriteOrFail(parent.childAt(position - 1), priority)) {
+                guard = fetchWriteOrFail(pageId, priority);
+                path.nodes.set(index, guard);
+                merged = fix(view(leftGuard), view(guard), parent, position);
+                if(merged) {
+                    deleted.add(pageId);
+                }
+            }
+        }
+        if(merged) {
+            rebalance(path, index - 1, deleted);
+        }
+    }
+
+    // one of the two siblings underflows, right is the child at rightPosition of parent,
+    // returns true if right was merged into left and dropped from parent
+    private static boolean fix(BPlusTreePage left, BPlusTreePage right, BPlusTreeInternalPage parent, int rightPosition) {
+        boolean leftUnderflows = left.getSize() < left.getMinSize();
+        BPlusTreePage donor = leftUnderflows ? right : left;
+        if(donor.getSize() > donor.getMinSize()) {
+            if(left.isLeaf()) {
+                borrowLeaf((BPlusTreeLeafPage) left, (BPlusTreeLeafPage) right, parent, rightPosition, leftUnderflows);
+            } else {
+                borrowInternal((BPlusTreeInternalPage) left, (BPlusTreeInternalPage) right, parent, rightPosition, leftUnderflows);
+            }
+            return false;
+        }
+        if(left.isLeaf()) {
+            BPlusTreeLeafPage leftLeaf = (BPlusTreeLeafPage) left;
+            BPlusTreeLeafPage rightLeaf = (BPlusTreeLeafPage) right;
+            rightLeaf.moveTailTo(leftLeaf, 0);
+            leftLeaf.setNextPageId(rightLeaf.getNextPageId());
+        } else {
+            BPlusTreeInternalPage rightNode = (BPlusTreeInternalPage) right;
+            // the separator comes down from the parent as the key of the first child of right
+            rightNode.setKeyAt(0, parent.keyAt(rightPosition));
+            rightNode.moveTailTo((BPlusTreeInternalPage) left, 0);
+        }
+        parent.removeAt(rightPosition);
+        return true;
+    }
+
+    private static void borrowLeaf(BPlusTreeLeafPage left, BPlusTreeLeafPage right, BPlusTreeInternalPage parent, int rightPosition, boolean fromRight) {
+        if(fromRight) {
+            left.insertAt(left.getSize(), right.keyAt(0), right.recordPageIdAt(0), right.recordSlotAt(0));
+            right.removeAt(0);
+        } else {
+            int last = left.getSize() - 1;
+            right.insertAt(0, left.keyAt(last), left.recordPageIdAt(last), left.recordSlotAt(last));
+            left.removeAt(last);
+        }
+        parent.setKeyAt(rightPosition, right.keyAt(0));
+    }
+
+    // the key that separates the siblings rotates through the parent
+    private static void borrowInternal(BPlusTreeInternalPage left, BPlusTreeInternalPage right, BPlusTreeInternalPage parent, int rightPosition, boolean fromRight) {
+        if(fromRight) {
+            left.insertAt(left.getSize(), parent.keyAt(rightPosition), right.childAt(0));
+            parent.setKeyAt(rightPosition, right.keyAt(1));
+            right.removeAt(0);
+        } else {
+            int last = left.getSize() - 1;
+            right.insertAt(0, left.keyAt(last), left.childAt(last));
+            right.setKeyAt(1, parent.keyAt(rightPosition));
+            parent.setKeyAt(rightPosition, left.keyAt(last));
+            left.removeAt(last);
+        }
+    }
+
+    private static BPlusTreePage view(WritePageGuard guard) {
+        return BPlusTreePage.levelOf(guard.getBuffer()) == 0
+                ? new BPlusTreeLeafPage(guard.getBuffer()) : new BPlusTreeInternalPage(guard.getBuffer());
+    }
+
+    // nobody else can reach a new page till it's linked into the tree, the latch is taken for the guard only
+    private WritePageGuard newNode() {
+        BasicPageGuard guard = bufferPool.newPageGuarded();
+        if(guard == null) {
+            LOGGER.fatal("can't create a new page for a B+Tree node");
+            throw new RuntimeException("can't create a new page for a B+Tree node");
+        }
+        return guard.upgradeWrite();
+    }
+
+    // the header and the inner nodes are on the way to every leaf, so they are kept in the pool over the leaves
+    private static Priority priorityOf(int level) {
+        return level > 0 ? Priority.HIGH : Priority.NORMAL;
+    }
+
+    private ReadPageGuard fetchReadOrFail(int pageId, Priority priority) {
+        ReadPageGuard guard = bufferPool.fetchPageRead(pageId, priority);
+        if(guard == null) {
+            LOGGER.fatal("can't fetch page with ID: {} of a B+Tree", pageId);
+            throw new RuntimeException("can't fetch page with ID: " + pageId + " of a B+Tree");
+        }
+        return guard;
+    }
+
+    private WritePageGuard fetchWriteOrFail(int pageId, Priority priority) {
+        WritePageGuard guard = bufferPool.fetchPageWrite(pageId, priority);
+        if(guard == null) {
+            LOGGER.fatal("can't fetch page with ID: {} of a B+Tree", pageId);
+            throw new RuntimeException("can't fetch page with ID: " + pageId + " of a B+Tree");
+        }
+        return guard;
+    }
+}
@@ -0,0 +1,321 @@
+package com.husam.storageengine.index;
+
+import com.husam.cachemanager.BufferPoolManager;
+import com.husam.cachemanager.replacers.Priority;
+import com.husam.common.DatabaseConfig;
+import com.husam.storageengine.page.BasicPageGuard;
+import com.husam.storageengine.page.ExtendibleHashBucketPage;
+import com.husam.storageengine.page.ExtendibleHashDirectoryPage;
+import com.husam.storageengine.page.ExtendibleHashHeaderPage;
+import com.husam.storageengine.page.ReadPageGuard;
+import com.husam.storageengine.page.WritePageGuard;
+import com.husam.storageengine.table.RecordId;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * extendible hash index from unique long keys to record ids, for equality lookups in a constant number of page accesses
+ * three levels of pages of the buffer pool: the header page picks a directory by the top bits of the hash of the key,
+ * the directory picks a bucket by the low bits, and the bucket holds the entries
+ * a full bucket splits in two by one more bit of the hash, doubling the directory when the bucket already used
+ * all of its bits, an emptied bucket merges with its split image and the directory shrinks when it can
+ * the index is identified by its header page, open it again with that id
+ * the latch of a directory page is the latch of that directory: lookups, and inserts and removes that stay inside their
+ * bucket, read latch the directory and latch only their bucket, so they don't serialize unless they hit the same bucket,
+ * splits and merges write latch the directory, so they're the only ones in it
+ * directories are created the first time a key maps to them and never go away, so the header is only write latched then
+ */
+public class ExtendibleHashIndex {
+
+    private static final Logger LOGGER = LogManager.getLogger(ExtendibleHashIndex.class);
+    private static final int DEFAULT_HEADER_MAX_DEPTH = 6;
+
+    private final BufferPoolManager bufferPool;
+    private final int headerPageId;
+    private final int directoryMaxDepth;
+    private final int bucketMaxSize;
+    private final int invalidPageId = DatabaseConfig.getInstance().getInvalidPageId();
+
+    /**
+     * Creates a new empty index with 2^6 directories and pages as full as they can be.
+     */
+    public ExtendibleHashIndex(BufferPoolManager bufferPool) {
+        this(bufferPool, Math.min(DEFAULT_HEADER_MAX_DEPTH, ExtendibleHashHeaderPage.maxDepthCapacity()),
+                ExtendibleHashDirectoryPage.maxDepthCapacity(), ExtendibleHashBucketPage.capacity());
+    }
+
+    /**
+     * Creates a new empty index, it holds at most 2^(headerMaxDepth + directoryMaxDepth) buckets of bucketMaxSize entries.
+     */
+    public ExtendibleHashIndex(BufferPoolManager bufferPool, int headerMaxDepth, int directoryMaxDepth, int bucketMaxSize) {
+        if(headerMaxDepth < 0 || headerMaxDepth > ExtendibleHashHeaderPage.maxDepthCapacity()) {
+            throw new IllegalArgumentException("the header depth must be between 0 and " + ExtendibleHashHeaderPage.maxDepthCapacity() + ", got: " + headerMaxDepth);
+        }
+        if(directoryMaxDepth < 0 || directoryMaxDepth > ExtendibleHashDirectoryPage.maxDepthCapacity() || headerMaxDepth + directoryMaxDepth > Integer.SIZE) {
+            throw new IllegalArgumentException("the directory depth must be between 0 and " + ExtendibleHashDirectoryPage.maxDepthCapacity() + ", got: " + directoryMaxDepth);
+        }
+        if(bucketMaxSize < 1 || bucketMaxSize > ExtendibleHashBucketPage.capacity()) {
+            throw new IllegalArgumentException("a bucket must hold between 1 and " + ExtendibleHashBucketPage.capacity() + " entries, got: " + bucketMaxSize);
+        }
+        this.bufferPool = bufferPool;
+        this.directoryMaxDepth = directoryMaxDepth;
+        this.bucketMaxSize = bucketMaxSize;
+        try (WritePageGuard header = newPage()) {
+            new ExtendibleHashHeaderPage(header.getBuffer()).init(headerMaxDepth, directoryMaxDepth, bucketMaxSize);
+            this.headerPageId = header.getPageId();
+        }
+    }
+
+    /**
+     * Opens an index created before.
+     */
+    public ExtendibleHashIndex(BufferPoolManager bufferPool, int headerPageId) {
+        this.bufferPool = bufferPool;
+        this.headerPageId = headerPageId;
+        try (ReadPageGuard header = fetchReadOrFail(headerPageId, Priority.HIGH)) {
+            ExtendibleHashHeaderPage headerPage = new ExtendibleHashHeaderPage(header.getBuffer());
+            this.directoryMaxDepth = headerPage.getDirectoryMaxDepth();
+            this.bucketMaxSize = headerPage.getBucketMaxSize();
+        }
+    }
+
+    public int getHeaderPageId() {
+        return headerPageId;
+    }
+
+    /**
+     * @return the record id of the key, or null if the key isn't in the index
+     */
+    public RecordId get(long key) {
+        int hash = hash(key);
+        int directoryPageId = directoryPageId(hash, false);
+        if(directoryPageId == invalidPageId) {
+            return null;
+        }
+        ReadPageGuard directoryGuard = fetchReadOrFail(directoryPageId, Priority.HIGH);
+        ReadPageGuard bucketGuard;
+        try {
+            ExtendibleHashDirectoryPage directory = new ExtendibleHashDirectoryPage(directoryGuard.getBuffer());
+            bucketGuard = fetchReadOrFail(directory.getBucketPageId(directory.bucketIndex(hash)), Priority.NORMAL);
+        } finally {
+            directoryGuard.close();
+        }
+        try (ReadPageGuard guard = bucketGuard) {
+            ExtendibleHashBucketPage bucket = new ExtendibleHashBucketPage(guard.getBuffer());
+            int index = bucket.indexOf(key);
+            return index < 0 ? null : new RecordId(bucket.recordPageIdAt(index), bucket.recordSlotAt(index));
+        }
+    }
+
+    /**
+     * @return false if the key is already in the index, or its bucket is full and its directory can't grow anymore
+     */
+    public boolean insert(long key, RecordId recordId) {
+        int hash = hash(key);
+        int directoryPageId = directoryPageId(hash, true);
+        try (ReadPageGuard directoryGuard = fetchReadOrFail(directoryPageId, Priority.HIGH)) {
+            ExtendibleHashDirectoryPage directory = new ExtendibleHashDirectoryPage(directoryGuard.getBuffer());
+            try (WritePageGuard bucketGuard = fetchWriteOrFail(directory.getBucketPageId(directory.bucketIndex(hash)), Priority.NORMAL)) {
+                ExtendibleHashBucketPage bucket = new ExtendibleHashBucketPage(bucketGuard.getBuffer());
+                if(bucket.indexOf(key) >= 0) {
+                    return false;
+                }
+                if(!bucket.isFull()) {
+                    bucket.insert(key, recordId.getPageId(), recordId.getSlot());
+                    return true;
+                }
+            }
+        }
+        // the bucket must split, that changes the directory
+        try (WritePageGuard directoryGuard = fetchWriteOrFail(directoryPageId, Priority.HIGH)) {
+            ExtendibleHashDirectoryPage directory = new ExtendibleHashDirectoryPage(directoryGuard.getBuffer());
+            while(true) {
+                int index = directory.bucketIndex(hash);
+                try (WritePageGuard bucketGuard = fetchWriteOrFail(directory.getBucketPageId(index), Priority.NORMAL)) {
+                    ExtendibleHashBucketPage bucket = new ExtendibleHashBucketPage(bucketGuard.getBuffer());
+                    if(bucket.indexOf(key) >= 0) {
+                        return false;
+                    }
+                    if(!bucket.isFull()) {
+                        bucket.insert(key, recordId.getPageId(), recordId.getSlot());
+                        return true;
+                    }
+                    if(directory.getLocalDepth(index) == directory.getGlobalDepth()) {
+                        if(directory.getGlobalDepth() == directory.getMaxDepth()) {
+                            LOGGER.warn("can't insert key: {}, its bucket is full and its directory is at its max depth", key);
+                            return false;
+                        }
+                        directory.incrGlobalDepth();
+                    }
+                    split(directory, index, bucketGuard);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false if the key isn't in the index
+     */
+    public boolean remove(long key) {
+        int hash = hash(key);
+        int directoryPageId = directoryPageId(hash, false);
+        if(directoryPageId == invalidPageId) {
+            return false;
+        }
+        try (ReadPageGuard directoryGuard = fetchReadOrFail(directoryPageId, Priority.HIGH)) {
+            ExtendibleHashDirectoryPage directory = new ExtendibleHashDirectoryPage(directoryGuard.getBuffer());
+            int index = directory.bucketIndex(hash);
+            try (WritePageGuard bucketGuard = fetchWriteOrFail(directory.getBucketPageId(index), Priority.NORMAL)) {
+                ExtendibleHashBucketPage bucket = new ExtendibleHashBucketPage(bucketGuard.getBuffer());
+                int entry = bucket.indexOf(key);
+                if(entry < 0) {
+                    return false;
+                }
+                bucket.removeAt(entry);
+                if(!bucket.isEmpty() || directory.getLocalDepth(index) == 0) {
+                    return true;
+                }
+            }
+        }
+        merge(directoryPageId, hash);
+        return true;
+    }
+
+    // splits the bucket at index by the next bit of the hash, the entries with the bit set move to a new bucket,
+    // the caller holds the write latch of the directory, which has room for the deeper bucket
+    private void split(ExtendibleHashDirectoryPage directory, int index, WritePageGuard bucketGuard) {
+        ExtendibleHashBucketPage bucket = new ExtendibleHashBucketPage(bucketGuard.getBuffer());
+        int bucketPageId = bucketGuard.getPageId();
+        try (WritePageGuard imageGuard = newPage()) {
+            ExtendibleHashBucketPage image = new ExtendibleHashBucketPage(imageGuard.getBuffer());
+            image.init(bucketMaxSize);
+            int localDepth = directory.getLocalDepth(index);
+            int splitBit = 1 << localDepth;
+            // a removal moves the last entry into the hole, going backwards every entry is looked at once
+            for(int i = bucket.getSize() - 1; i >= 0; i--) {
+                if((hash(bucket.keyAt(i)) & splitBit) != 0) {
+                    image.insert(bucket.keyAt(i), bucket.recordPageIdAt(i), bucket.recordSlotAt(i));
+                    bucket.removeAt(i);
+                }
+            }
+            int size = directory.size();
+            for(int i = 0; i < size; i++) {
+                if(directory.getBucketPageId(i) == bucketPageId) {
+                    directory.setLocalDepth(i, localDepth + 1);
+                    if((i & splitBit) != 0) {
+                        directory.setBucketPageId(i, imageGuard.getPageId());
+                    }
+                }
+            }
+        }
+    }
+
+    // merges the bucket of the hash with its split image while one of them is empty, then shrinks the directory
+    private void merge(int directoryPageId, int hash) {
+        try (WritePageGuard directoryGuard = fetchWriteOrFail(directoryPageId, Priority.HIGH)) {
+            ExtendibleHashDirectoryPage directory = new ExtendibleHashDirectoryPage(directoryGuard.getBuffer());
+            while(true) {
+                int index = directory.bucketIndex(hash);
+                int localDepth = directory.getLocalDepth(index);
+                if(localDepth == 0) {
+                    return;
+                }
+                int imageIndex = index ^ (1 << (localDepth - 1));
+                if(directory.getLocalDepth(imageIndex) != localDepth) {
+                    return;
+                }
+                int bucketPageId = directory.getBucketPageId(index);
+                int imagePageId = directory.getBucketPageId(imageIndex);
+                int droppedPageId;
+                try (WritePageGuard bucketGuard = fetchWriteOrFail(bucketPageId, Priority.NORMAL);
+                     WritePageGuard imageGuard = fetchWriteOrFail(imagePageId, Priority.NORMAL)) {
+                    boolean bucketEmpty = new ExtendibleHashBucketPage(bucketGuard.getBuffer()).isEmpty();
+                    if(!bucketEmpty && !new ExtendibleHashBucketPage(imageGuard.getBuffer()).isEmpty()) {
+                        return;
+                    }
+                    droppedPageId = bucketEmpty ? bucketPageId : imagePageId;
+                    int keptPageId = bucketEmpty ? imagePageId : bucketPageId;
+                    int size = directory.size();
+                    for(int i = 0; i < size; i++) {
+                        int pageId = directory.getBucketPageId(i);
+                        if(pageId == bucketPageId || pageId == imagePageId) {
+                            directory.setBucketPageId(i, keptPageId);
+                            directory.setLocalDepth(i, localDepth - 1);
+                        }
+                    }
+                }
+                // nobody else can be in the bucket, the directory is write latched
+                if(!bufferPool.deletePage(droppedPageId)) {
+                    LOGGER.warn("can't delete page with ID: {} of a hash bucket, it's still pinned", droppedPageId);
+                }
+                while(directory.canShrink()) {
+                    directory.decrGlobalDepth();
+                }
+            }
+        }
+    }
+
+    // the directory page id of the hash, creating the directory with one empty bucket if create is true
+    private int directoryPageId(int hash, boolean create) {
+        try (ReadPageGuard guard = fetchReadOrFail(headerPageId, Priority.HIGH)) {
+            ExtendibleHashHeaderPage header = new ExtendibleHashHeaderPage(guard.getBuffer());
+            int directoryPageId = header.getDirectoryPageId(header.directoryIndex(hash));
+            if(directoryPageId != invalidPageId || !create) {
+                return directoryPageId;
+            }
+        }
+        try (WritePageGuard guard = fetchWriteOrFail(headerPageId, Priority.HIGH)) {
+            ExtendibleHashHeaderPage header = new ExtendibleHashHeaderPage(guard.getBuffer());
+            int directoryIndex = header.directoryIndex(hash);
+            if(header.getDirectoryPageId(directoryIndex) != invalidPageId) {
+                return header.getDirectoryPageId(directoryIndex);
+            }
+            try (WritePageGuard directory = newPage(); WritePageGuard bucket = newPage()) {
+                new ExtendibleHashBucketPage(bucket.getBuffer()).init(bucketMaxSize);
+                new ExtendibleHashDirectoryPage(directory.getBuffer()).init(directoryMaxDepth, bucket.getPageId());
+                header.setDirectoryPageId(directoryIndex, directory.getPageId());
+                return directory.getPageId();
+            }
+        }
+    }
+
+    // murmur3 finalizer of the key, the header uses the top bits of the hash and the directories the low ones
+    static int hash(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    // nobody else can reach a new page till it's linked into the index, the latch is taken for the guard only
+    private WritePageGuard newPage() {
+        BasicPageGuard guard = bufferPool.newPageGuarded();
+        if(guard == null) {
+            LOGGER.fatal("can't create a new page for a hash index");
+            throw new RuntimeException("can't create a new page for a hash index");
+        }
+        return guard.upgradeWrite();
+    }
+
+    // the header and the directories are on the way to every bucket, so they are kept in the pool over the buckets
+    private ReadPageGuard fetchReadOrFail(int pageId, Priority priority) {
+        ReadPageGuard guard = bufferPool.fetchPageRead(pageId, priority);
+        if(guard == null) {
+            LOGGER.fatal("can't fetch page with ID: {} of a hash index", pageId);
+            throw new RuntimeException("can't fetch page with ID: " + pageId + " of a hash index");
+        }
+        return guard;
+    }
+
+    private WritePageGuard fetchWriteOrFail(int pageId, Priority priority) {
+        WritePageGuard guard = bufferPool.fetchPageWrite(pageId, priority);
+        if(guard == null) {
+            LOGGER.fatal("can't fetch page with ID: {} of a hash index", pageId);
+            throw new RuntimeException("can't fetch page with ID: " + pageId + " of a hash index");
+        }
+        return guard;
+    }
+}
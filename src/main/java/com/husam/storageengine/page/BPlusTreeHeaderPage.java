@@ -0,0 +1,50 @@
+package com.husam.storageengine.page;
+
+import java.nio.ByteBuffer;
+
+/**
+ * view over the header page of a B+Tree, the page that identifies the tree
+ * it holds the root page id and the level of the root, so a descent knows when the next page is a leaf,
+ * and the node sizes the tree was created with
+ * the root changes under the write latch of this page
+ */
+public class BPlusTreeHeaderPage {
+
+    private static final int OFFSET_ROOT_PAGE_ID = Page.SIZE_PAGE_HEADER;
+    private static final int OFFSET_ROOT_LEVEL = OFFSET_ROOT_PAGE_ID + Integer.BYTES;
+    private static final int OFFSET_LEAF_MAX_SIZE = OFFSET_ROOT_LEVEL + Integer.BYTES;
+    private static final int OFFSET_INTERNAL_MAX_SIZE = OFFSET_LEAF_MAX_SIZE + Integer.BYTES;
+
+    private final ByteBuffer buffer;
+
+    public BPlusTreeHeaderPage(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public void init(int rootPageId, int leafMaxSize, int internalMaxSize) {
+        setRoot(rootPageId, 0);
+        buffer.putInt(OFFSET_LEAF_MAX_SIZE, leafMaxSize);
+        buffer.putInt(OFFSET_INTERNAL_MAX_SIZE, internalMaxSize);
+    }
+
+    public int getRootPageId() {
+        return buffer.getInt(OFFSET_ROOT_PAGE_ID);
+    }
+
+    public int getRootLevel() {
+        return buffer.getInt(OFFSET_ROOT_LEVEL);
+    }
+
+    public void setRoot(int rootPageId, int rootLevel) {
+        buffer.putInt(OFFSET_ROOT_PAGE_ID, rootPageId);
+        buffer.putInt(OFFSET_ROOT_LEVEL, rootLevel);
+    }
+
+    public int getLeafMaxSize() {
+        return buffer.getInt(OFFSET_LEAF_MAX_SIZE);
+    }
+
+    public int getInternalMaxSize() {
+        return buffer.getInt(OFFSET_INTERNAL_MAX_SIZE);
+    }
+}
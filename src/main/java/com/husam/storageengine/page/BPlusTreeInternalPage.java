@@ -0,0 +1,114 @@
+package com.husam.storageengine.page;
+
+import com.husam.common.DatabaseConfig;
+
+import java.nio.ByteBuffer;
+
+/**
+ * view over an internal node of a B+Tree, the entries follow the node header
+ * an entry is a key and the id of a child page, 12 bytes, the size of the node is its number of children
+ * the key of entry 0 is unused, child i holds the keys in [key i, key i + 1)
+ */
+public class BPlusTreeInternalPage extends BPlusTreePage {
+
+    private static final int OFFSET_ENTRIES = SIZE_BPLUS_TREE_PAGE_HEADER;
+    private static final int SIZE_ENTRY = Long.BYTES + Integer.BYTES;
+
+    public BPlusTreeInternalPage(ByteBuffer buffer) {
+        super(buffer);
+    }
+
+    /** @return the most children an internal page can hold */
+    public static int capacity() {
+        return (DatabaseConfig.getInstance().getPageSize() - OFFSET_ENTRIES) / SIZE_ENTRY;
+    }
+
+    @Override
+    public void init(int level, int maxSize) {
+        assert level > 0;
+        super.init(level, maxSize);
+    }
+
+    @Override
+    public int getMinSize() {
+        return (getMaxSize() + 1) / 2;
+    }
+
+    public long keyAt(int index) {
+        return buffer.getLong(offsetOf(index));
+    }
+
+    public void setKeyAt(int index, long key) {
+        buffer.putLong(offsetOf(index), key);
+    }
+
+    public int childAt(int index) {
+        return buffer.getInt(offsetOf(index) + Long.BYTES);
+    }
+
+    public void setChildAt(int index, int childPageId) {
+        buffer.putInt(offsetOf(index) + Long.BYTES, childPageId);
+    }
+
+    /** @return the index of the child whose key range holds key */
+    public int childIndex(long key) {
+        int low = 1;
+        int high = getSize();
+        // the last index whose key is <= key, or 0
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(keyAt(mid) <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+    /** @return the index of the child, or -1 if it isn't a child of this node */
+    public int indexOfChild(int childPageId) {
+        int size = getSize();
+        for(int i = 0; i < size; i++) {
+            if(childAt(i) == childPageId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Turns an empty node into a root with two children separated by key. */
+    public void populateNewRoot(int leftPageId, long key, int rightPageId) {
+        setSize(2);
+        setChildAt(0, leftPageId);
+        setKeyAt(1, key);
+        setChildAt(1, rightPageId);
+    }
+
+    /** Inserts the entry at index, the node must not be full. */
+    public void insertAt(int index, long key, int childPageId) {
+        assert getSize() < getMaxSize();
+        openGap(index, 1);
+        setKeyAt(index, key);
+        setChildAt(index, childPageId);
+    }
+
+    public void removeAt(int index) {
+        closeGap(index);
+    }
+
+    /** Appends the entries [from, getSize()) to the end of dst and removes them from this node. */
+    public void moveTailTo(BPlusTreeInternalPage dst, int from) {
+        super.moveTailTo(dst, from);
+    }
+
+    @Override
+    int entriesOffset() {
+        return OFFSET_ENTRIES;
+    }
+
+    @Override
+    int entrySize() {
+        return SIZE_ENTRY;
+    }
+}
@@ -0,0 +1,100 @@
+package com.husam.storageengine.page;
+
+import com.husam.common.DatabaseConfig;
+
+import java.nio.ByteBuffer;
+
+/**
+ * view over a leaf of a B+Tree, after the node header comes the id of the next leaf, then the entries
+ * an entry is a key and the record id it maps to (page id and slot), 16 bytes
+ * the leaves of a tree are linked in key order, so range scans walk them from left to right
+ */
+public class BPlusTreeLeafPage extends BPlusTreePage {
+
+    private static final int OFFSET_NEXT_PAGE_ID = SIZE_BPLUS_TREE_PAGE_HEADER;
+    private static final int OFFSET_ENTRIES = OFFSET_NEXT_PAGE_ID + Integer.BYTES;
+    private static final int SIZE_ENTRY = Long.BYTES + 2 * Integer.BYTES;
+
+    public BPlusTreeLeafPage(ByteBuffer buffer) {
+        super(buffer);
+    }
+
+    /** @return the most entries a leaf page can hold */
+    public static int capacity() {
+        return (DatabaseConfig.getInstance().getPageSize() - OFFSET_ENTRIES) / SIZE_ENTRY;
+    }
+
+    public void init(int maxSize) {
+        init(0, maxSize);
+        setNextPageId(DatabaseConfig.getInstance().getInvalidPageId());
+    }
+
+    @Override
+    public int getMinSize() {
+        return getMaxSize() / 2;
+    }
+
+    public int getNextPageId() {
+        return buffer.getInt(OFFSET_NEXT_PAGE_ID);
+    }
+
+    public void setNextPageId(int nextPageId) {
+        buffer.putInt(OFFSET_NEXT_PAGE_ID, nextPageId);
+    }
+
+    public long keyAt(int index) {
+        return buffer.getLong(offsetOf(index));
+    }
+
+    public int recordPageIdAt(int index) {
+        return buffer.getInt(offsetOf(index) + Long.BYTES);
+    }
+
+    public int recordSlotAt(int index) {
+        return buffer.getInt(offsetOf(index) + Long.BYTES + Integer.BYTES);
+    }
+
+    /** @return the index of the first key >= key, getSize() if there is none */
+    public int lowerBound(long key) {
+        int low = 0;
+        int high = getSize();
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(keyAt(mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Inserts the entry at index, the leaf must not be full. */
+    public void insertAt(int index, long key, int recordPageId, int recordSlot) {
+        assert getSize() < getMaxSize();
+        openGap(index, 1);
+        int offset = offsetOf(index);
+        buffer.putLong(offset, key);
+        buffer.putInt(offset + Long.BYTES, recordPageId);
+        buffer.putInt(offset + Long.BYTES + Integer.BYTES, recordSlot);
+    }
+
+    public void removeAt(int index) {
+        closeGap(index);
+    }
+
+    /** Appends the entries [from, getSize()) to the end of dst and removes them from this leaf. */
+    public void moveTailTo(BPlusTreeLeafPage dst, int from) {
+        super.moveTailTo(dst, from);
+    }
+
+    @Override
+    int entriesOffset() {
+        return OFFSET_ENTRIES;
+    }
+
+    @Override
+    int entrySize() {
+        return SIZE_ENTRY;
+    }
+}
@@ -0,0 +1,117 @@
+package com.husam.storageengine.page;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * view over a node of a B+Tree, the common part of leaf and internal pages
+ * after the page header come the level of the node (0 for leaves, the parents of leaves are at level 1, ...),
+ * the number of entries and the most entries the node may hold, the entries follow the header of the subclass
+ * the entries are kept sorted by key and have a fixed size, so they're shifted and moved with bulk copies
+ */
+public abstract class BPlusTreePage {
+
+    private static final int OFFSET_LEVEL = Page.SIZE_PAGE_HEADER;
+    private static final int OFFSET_SIZE = OFFSET_LEVEL + Integer.BYTES;
+    private static final int OFFSET_MAX_SIZE = OFFSET_SIZE + Integer.BYTES;
+    static final int SIZE_BPLUS_TREE_PAGE_HEADER = OFFSET_MAX_SIZE + Integer.BYTES;
+
+    final ByteBuffer buffer;
+
+    BPlusTreePage(ByteBuffer buffer) {
+        assert buffer.order() == ByteOrder.LITTLE_ENDIAN;
+        this.buffer = buffer;
+    }
+
+    /** @return the level of the node in the page, so the right view can be picked */
+    public static int levelOf(ByteBuffer buffer) {
+        return buffer.getInt(OFFSET_LEVEL);
+    }
+
+    void init(int level, int maxSize) {
+        buffer.putInt(OFFSET_LEVEL, level);
+        buffer.putInt(OFFSET_SIZE, 0);
+        buffer.putInt(OFFSET_MAX_SIZE, maxSize);
+    }
+
+    public int getLevel() {
+        return buffer.getInt(OFFSET_LEVEL);
+    }
+
+    public boolean isLeaf() {
+        return getLevel() == 0;
+    }
+
+    public int getSize() {
+        return buffer.getInt(OFFSET_SIZE);
+    }
+
+    public void setSize(int size) {
+        buffer.putInt(OFFSET_SIZE, size);
+    }
+
+    public int getMaxSize() {
+        return buffer.getInt(OFFSET_MAX_SIZE);
+    }
+
+    /** @return the fewest entries a node other than the root may hold */
+    public abstract int getMinSize();
+
+    abstract int entriesOffset();
+
+    abstract int entrySize();
+
+    int offsetOf(int index) {
+        return entriesOffset() + index * entrySize();
+    }
+
+    // makes room for count entries at index, the entries from index on move up
+    void openGap(int index, int count) {
+        int from = offsetOf(index);
+        moveWithin(from, from + count * entrySize(), (getSize() - index) * entrySize());
+        setSize(getSize() + count);
+    }
+
+    // removes the entry at index, the entries after it move down
+    void closeGap(int index) {
+        int to = offsetOf(index);
+        moveWithin(to + entrySize(), to, (getSize() - index - 1) * entrySize());
+        setSize(getSize() - 1);
+    }
+
+    // appends the entries [from, getSize()) to dst and drops them from this node
+    void moveTailTo(BPlusTreePage dst, int from) {
+        int count = getSize() - from;
+        ByteBuffer source = buffer.duplicate();
+        source.position(offsetOf(from)).limit(offsetOf(getSize()));
+        dst.buffer.duplicate().position(dst.offsetOf(dst.getSize())).put(source);
+        dst.setSize(dst.getSize() + count);
+        setSize(from);
+    }
+
+    // copies length bytes inside the page, the ranges may overlap, so the copy goes away from the destination
+    private void moveWithin(int from, int to, int length) {
+        if(length == 0 || from == to) {
+            return;
+        }
+        if(to > from) {
+            int remaining = length;
+            while(remaining >= Long.BYTES) {
+                remaining -= Long.BYTES;
+                buffer.putLong(to + remaining, buffer.getLong(from + remaining));
+            }
+            while(remaining > 0) {
+                remaining--;
+                buffer.put(to + remaining, buffer.get(from + remaining));
+            }
+        } else {
+            int done = 0;
+            for(; done + Long.BYTES <= length; done += Long.BYTES) {
+                buffer.putLong(to + done, buffer.getLong(from + done));
+            }
+            for(; done < length; done++) {
+                buffer.put(to + done, buffer.get(from + done));
+            }
+        }
+    }
+}
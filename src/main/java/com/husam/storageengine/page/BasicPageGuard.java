@@ -1,4 +1,33 @@
 package com.husam.storageengine.page;
 
-public interface BasicPageGuard {
+import java.nio.ByteBuffer;
+
+/**
+ * holds a pin on a page without latching it, closing the guard unpins the page,
+ * so it's meant to be used with try-with-resources
+ * the caller is responsible for latching the page if other threads may use it, or upgrades the guard
+ */
+public interface BasicPageGuard extends AutoCloseable {
+
+    int getPageId();
+
+    /** @return the data of the page, see Page.getBuffer() */
+    ByteBuffer getBuffer();
+
+    /** The page was modified through the guard, it's unpinned as dirty. */
+    void markDirty();
+
+    /**
+     * Read latches the page and moves the pin to a read guard, this guard must not be used anymore.
+     */
+    ReadPageGuard upgradeRead();
+
+    /**
+     * Write latches the page and moves the pin to a write guard, this guard must not be used anymore.
+     */
+    WritePageGuard upgradeWrite();
+
+    /** Unpins the page, calling it more than once does nothing. */
+    @Override
+    void close();
 }
@@ -0,0 +1,68 @@
+package com.husam.storageengine.page;
+
+import com.husam.common.DatabaseConfig;
+
+import java.nio.ByteBuffer;
+
+/**
+ * view over a page that tracks which pages of its group are allocated, one bit per page, set means allocated
+ * the bits start after the page header, bit i stands for the i-th page of the group,
+ * and the group starts with the bitmap page itself, so bit 0 is always set
+ */
+public class BitmapPage {
+
+    private final ByteBuffer buffer;
+
+    public BitmapPage(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /** @return the number of pages a bitmap page tracks */
+    public static int capacity() {
+        return (DatabaseConfig.getInstance().getPageSize() - Page.SIZE_PAGE_HEADER) * Byte.SIZE;
+    }
+
+    public boolean isAllocated(int bit) {
+        return (buffer.get(Page.SIZE_PAGE_HEADER + (bit >>> 3)) & (1 << (bit & 7))) != 0;
+    }
+
+    public void setAllocated(int bit, boolean allocated) {
+        int offset = Page.SIZE_PAGE_HEADER + (bit >>> 3);
+        byte bits = buffer.get(offset);
+        bits = allocated ? (byte) (bits | (1 << (bit & 7))) : (byte) (bits & ~(1 << (bit & 7)));
+        buffer.put(offset, bits);
+    }
+
+    /** @return the number of allocated pages among bits [fromBit, toBit) */
+    public int countAllocated(int fromBit, int toBit) {
+        int count = 0;
+        for(int bit = fromBit; bit < toBit; bit++) {
+            if(isAllocated(bit)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the first bit of the first run of length free pages within bits [fromBit, toBit), or -1 if there is none
+     */
+    public int findFree(int fromBit, int toBit, int length) {
+        int runStart = fromBit;
+        for(int bit = fromBit; bit < toBit; ) {
+            // a full byte can't be part of a run, skip it at once
+            if((bit & 7) == 0 && bit + Byte.SIZE <= toBit && buffer.get(Page.SIZE_PAGE_HEADER + (bit >>> 3)) == (byte) 0xff) {
+                bit += Byte.SIZE;
+                runStart = bit;
+                continue;
+            }
+            if(isAllocated(bit)) {
+                runStart = bit + 1;
+            } else if(bit - runStart + 1 == length) {
+                return runStart;
+            }
+            bit++;
+        }
+        return -1;
+    }
+}
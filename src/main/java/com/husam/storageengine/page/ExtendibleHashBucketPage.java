@@ -0,0 +1,99 @@
+package com.husam.storageengine.page;
+
+import com.husam.common.DatabaseConfig;
+
+import java.nio.ByteBuffer;
+
+/**
+ * view over a bucket page of an extendible hash index
+ * after the header come the number of entries and the most entries the bucket may hold, then the entries,
+ * an entry is a key and the record id it maps to (page id and slot), 16 bytes
+ * the entries aren't kept in any order, a removal moves the last entry into the hole
+ */
+public class ExtendibleHashBucketPage {
+
+    private static final int OFFSET_SIZE = Page.SIZE_PAGE_HEADER;
+    private static final int OFFSET_MAX_SIZE = OFFSET_SIZE + Integer.BYTES;
+    private static final int OFFSET_ENTRIES = OFFSET_MAX_SIZE + Integer.BYTES;
+    private static final int SIZE_ENTRY = Long.BYTES + 2 * Integer.BYTES;
+
+    private final ByteBuffer buffer;
+
+    public ExtendibleHashBucketPage(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /** @return the most entries a bucket page can hold */
+    public static int capacity() {
+        return (DatabaseConfig.getInstance().getPageSize() - OFFSET_ENTRIES) / SIZE_ENTRY;
+    }
+
+    public void init(int maxSize) {
+        setSize(0);
+        buffer.putInt(OFFSET_MAX_SIZE, maxSize);
+    }
+
+    public int getSize() {
+        return buffer.getInt(OFFSET_SIZE);
+    }
+
+    public int getMaxSize() {
+        return buffer.getInt(OFFSET_MAX_SIZE);
+    }
+
+    public boolean isFull() {
+        return getSize() == getMaxSize();
+    }
+
+    public boolean isEmpty() {
+        return getSize() == 0;
+    }
+
+    public long keyAt(int index) {
+        return buffer.getLong(OFFSET_ENTRIES + index * SIZE_ENTRY);
+    }
+
+    public int recordPageIdAt(int index) {
+        return buffer.getInt(OFFSET_ENTRIES + index * SIZE_ENTRY + Long.BYTES);
+    }
+
+    public int recordSlotAt(int index) {
+        return buffer.getInt(OFFSET_ENTRIES + index * SIZE_ENTRY + Long.BYTES + Integer.BYTES);
+    }
+
+    /** @return the index of the entry of key, or -1 if the key isn't in the bucket */
+    public int indexOf(long key) {
+        int size = getSize();
+        for(int i = 0; i < size; i++) {
+            if(keyAt(i) == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Appends the entry, the bucket must not be full and must not hold the key. */
+    public void insert(long key, int recordPageId, int recordSlot) {
+        assert !isFull();
+        int size = getSize();
+        int offset = OFFSET_ENTRIES + size * SIZE_ENTRY;
+        buffer.putLong(offset, key);
+        buffer.putInt(offset + Long.BYTES, recordPageId);
+        buffer.putInt(offset + Long.BYTES + Integer.BYTES, recordSlot);
+        setSize(size + 1);
+    }
+
+    public void removeAt(int index) {
+        int last = getSize() - 1;
+        if(index != last) {
+            ByteBuffer entry = buffer.duplicate();
+            entry.position(OFFSET_ENTRIES + last * SIZE_ENTRY).limit(OFFSET_ENTRIES + (last + 1) * SIZE_ENTRY);
+            buffer.duplicate().position(OFFSET_ENTRIES + index * SIZE_ENTRY).put(entry);
+        }
+        setSize(last);
+    }
+
+    private void setSize(int size) {
+        buffer.putInt(OFFSET_SIZE, size);
+    }
+}
@@ -0,0 +1,112 @@
+package com.husam.storageengine.page;
+
+import com.husam.common.DatabaseConfig;
+
+import java.nio.ByteBuffer;
+
+/**
+ * view over a directory page of an extendible hash index
+ * the low globalDepth bits of the hash of a key index the directory, every entry holds a bucket page id and the local
+ * depth of that bucket, a bucket with local depth d is shared by the 2^(globalDepth - d) entries that agree on the low d bits
+ * after the header come the global depth and the max depth, then 2^maxDepth bucket page ids and 2^maxDepth local depths,
+ * the entries past 2^globalDepth are unused
+ */
+public class ExtendibleHashDirectoryPage {
+
+    private static final int OFFSET_GLOBAL_DEPTH = Page.SIZE_PAGE_HEADER;
+    private static final int OFFSET_MAX_DEPTH = OFFSET_GLOBAL_DEPTH + Integer.BYTES;
+    private static final int OFFSET_BUCKET_PAGE_IDS = OFFSET_MAX_DEPTH + Integer.BYTES;
+
+    private final ByteBuffer buffer;
+
+    public ExtendibleHashDirectoryPage(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /** @return the biggest max depth whose entries fit in a page */
+    public static int maxDepthCapacity() {
+        int entries = (DatabaseConfig.getInstance().getPageSize() - OFFSET_BUCKET_PAGE_IDS) / (Integer.BYTES + Byte.BYTES);
+        return 31 - Integer.numberOfLeadingZeros(entries);
+    }
+
+    /** Formats the page as a directory of global depth 0 with one bucket. */
+    public void init(int maxDepth, int bucketPageId) {
+        buffer.putInt(OFFSET_GLOBAL_DEPTH, 0);
+        buffer.putInt(OFFSET_MAX_DEPTH, maxDepth);
+        setBucketPageId(0, bucketPageId);
+        setLocalDepth(0, 0);
+    }
+
+    public int getGlobalDepth() {
+        return buffer.getInt(OFFSET_GLOBAL_DEPTH);
+    }
+
+    public int getMaxDepth() {
+        return buffer.getInt(OFFSET_MAX_DEPTH);
+    }
+
+    /** @return the number of entries in use, 2^globalDepth */
+    public int size() {
+        return 1 << getGlobalDepth();
+    }
+
+    public int bucketIndex(int hash) {
+        return hash & (size() - 1);
+    }
+
+    public int getBucketPageId(int index) {
+        return buffer.getInt(OFFSET_BUCKET_PAGE_IDS + index * Integer.BYTES);
+    }
+
+    public void setBucketPageId(int index, int bucketPageId) {
+        buffer.putInt(OFFSET_BUCKET_PAGE_IDS + index * Integer.BYTES, bucketPageId);
+    }
+
+    public int getLocalDepth(int index) {
+        return buffer.get(localDepthsOffset() + index);
+    }
+
+    public void setLocalDepth(int index, int localDepth) {
+        buffer.put(localDepthsOffset() + index, (byte) localDepth);
+    }
+
+    /**
+     * Doubles the directory, the new upper half points to the same buckets as the lower half.
+     */
+    public void incrGlobalDepth() {
+        assert getGlobalDepth() < getMaxDepth();
+        int size = size();
+        ByteBuffer ids = buffer.duplicate();
+        ids.position(OFFSET_BUCKET_PAGE_IDS).limit(OFFSET_BUCKET_PAGE_IDS + size * Integer.BYTES);
+        buffer.duplicate().position(OFFSET_BUCKET_PAGE_IDS + size * Integer.BYTES).put(ids);
+        ByteBuffer depths = buffer.duplicate();
+        depths.position(localDepthsOffset()).limit(localDepthsOffset() + size);
+        buffer.duplicate().position(localDepthsOffset() + size).put(depths);
+        buffer.putInt(OFFSET_GLOBAL_DEPTH, getGlobalDepth() + 1);
+    }
+
+    /** Halves the directory, only valid when canShrink() is true. */
+    public void decrGlobalDepth() {
+        assert canShrink();
+        buffer.putInt(OFFSET_GLOBAL_DEPTH, getGlobalDepth() - 1);
+    }
+
+    /** @return true if no bucket needs all the global depth bits, so both halves of the directory are the same */
+    public boolean canShrink() {
+        int globalDepth = getGlobalDepth();
+        if(globalDepth == 0) {
+            return false;
+        }
+        int size = size();
+        for(int i = 0; i < size; i++) {
+            if(getLocalDepth(i) == globalDepth) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int localDepthsOffset() {
+        return OFFSET_BUCKET_PAGE_IDS + (1 << getMaxDepth()) * Integer.BYTES;
+    }
+}
@@ -0,0 +1,65 @@
+package com.husam.storageengine.page;
+
+import com.husam.common.DatabaseConfig;
+
+import java.nio.ByteBuffer;
+
+/**
+ * view over the header page of an extendible hash index, the page that identifies the index
+ * the top maxDepth bits of the hash of a key pick one of the 2^maxDepth directories, a directory is created
+ * the first time a key maps to it, so after the header come the sizes the index was created with and the directory page ids
+ */
+public class ExtendibleHashHeaderPage {
+
+    private static final int OFFSET_MAX_DEPTH = Page.SIZE_PAGE_HEADER;
+    private static final int OFFSET_DIRECTORY_MAX_DEPTH = OFFSET_MAX_DEPTH + Integer.BYTES;
+    private static final int OFFSET_BUCKET_MAX_SIZE = OFFSET_DIRECTORY_MAX_DEPTH + Integer.BYTES;
+    private static final int OFFSET_DIRECTORY_PAGE_IDS = OFFSET_BUCKET_MAX_SIZE + Integer.BYTES;
+
+    private final ByteBuffer buffer;
+
+    public ExtendibleHashHeaderPage(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /** @return the biggest max depth whose directory page ids fit in a page */
+    public static int maxDepthCapacity() {
+        int entries = (DatabaseConfig.getInstance().getPageSize() - OFFSET_DIRECTORY_PAGE_IDS) / Integer.BYTES;
+        return 31 - Integer.numberOfLeadingZeros(entries);
+    }
+
+    public void init(int maxDepth, int directoryMaxDepth, int bucketMaxSize) {
+        buffer.putInt(OFFSET_MAX_DEPTH, maxDepth);
+        buffer.putInt(OFFSET_DIRECTORY_MAX_DEPTH, directoryMaxDepth);
+        buffer.putInt(OFFSET_BUCKET_MAX_SIZE, bucketMaxSize);
+        for(int i = 0; i < 1 << maxDepth; i++) {
+            setDirectoryPageId(i, DatabaseConfig.getInstance().getInvalidPageId());
+        }
+    }
+
+    public int getMaxDepth() {
+        return buffer.getInt(OFFSET_MAX_DEPTH);
+    }
+
+    public int getDirectoryMaxDepth() {
+        return buffer.getInt(OFFSET_DIRECTORY_MAX_DEPTH);
+    }
+
+    public int getBucketMaxSize() {
+        return buffer.getInt(OFFSET_BUCKET_MAX_SIZE);
+    }
+
+    /** @return the index of the directory of the hash, taken from its top bits */
+    public int directoryIndex(int hash) {
+        int maxDepth = getMaxDepth();
+        return maxDepth == 0 ? 0 : hash >>> (Integer.SIZE - maxDepth);
+    }
+
+    public int getDirectoryPageId(int index) {
+        return buffer.getInt(OFFSET_DIRECTORY_PAGE_IDS + index * Integer.BYTES);
+    }
+
+    public void setDirectoryPageId(int index, int directoryPageId) {
+        buffer.putInt(OFFSET_DIRECTORY_PAGE_IDS + index * Integer.BYTES, directoryPageId);
+    }
+}
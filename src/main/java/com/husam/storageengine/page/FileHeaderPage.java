@@ -0,0 +1,37 @@
+package com.husam.storageengine.page;
+
+import java.nio.ByteBuffer;
+
+/**
+ * view over the first page of a database file that is managed by the BitmapPageAllocator,
+ * it holds a magic number, so a formatted file can be told from an empty one, and the next page id to allocate
+ */
+public class FileHeaderPage {
+
+    private static final int MAGIC = 0x53514c54;
+    private static final int OFFSET_MAGIC = Page.SIZE_PAGE_HEADER;
+    private static final int OFFSET_NEXT_PAGE_ID = OFFSET_MAGIC + Integer.BYTES;
+
+    private final ByteBuffer buffer;
+
+    public FileHeaderPage(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public boolean isFormatted() {
+        return buffer.getInt(OFFSET_MAGIC) == MAGIC;
+    }
+
+    public void format(int nextPageId) {
+        buffer.putInt(OFFSET_MAGIC, MAGIC);
+        setNextPageId(nextPageId);
+    }
+
+    public int getNextPageId() {
+        return buffer.getInt(OFFSET_NEXT_PAGE_ID);
+    }
+
+    public void setNextPageId(int nextPageId) {
+        buffer.putInt(OFFSET_NEXT_PAGE_ID, nextPageId);
+    }
+}
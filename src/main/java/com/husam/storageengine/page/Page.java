@@ -3,14 +3,20 @@ package com.husam.storageengine.page;
 import com.husam.cachemanager.BufferPoolManager;
 import com.husam.common.DatabaseConfig;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Page is the basic unit of storage within the database system. Page provides a wrapper for actual data pages being
  * held in main memory. Page also contains book-keeping information that is used by the buffer pool manager, e.g.
  * pin count, dirty flag, page id, etc.
+ * The data either lives in its own heap array, or in a slot of an off-heap PageArena, in which case there is no array
+ * and the page can only be accessed through getBuffer().
+ * The latch is a version counter (StampedLock), every write latch bumps the version, so a reader can read the page
+ * optimistically without writing to the latch at all, and validate afterwards that no writer came in between.
+ * The latch isn't reentrant.
  */
 
 // TODO: check out the page structure, and how to serialize the page data to other page objects, checkout security reasons
@@ -18,30 +24,59 @@ public class Page {
     protected static final int SIZE_PAGE_HEADER = 8;
     protected static final int OFFSET_PAGE_START = 0;
     protected static final int OFFSET_LSN = 4;
+    // null when the page lives in an off-heap slot
     private final byte[] data;
-    private int pageId;
+    // little endian view over the data, shared by every user of the page, so only absolute gets and puts are allowed on it
+    private final ByteBuffer buffer;
+    // page id and dirty flag are read by BPM paths that don't hold the stripe latch of the page
+    private volatile int pageId;
+    // guarded by the stripe latch of the page in the BPM page table
     private int pinCount;
-    private boolean isDirty;
+    private volatile boolean isDirty;
     // this latch is to operate on the internal data byte array,
     // but for the metadata we don't need any latch since it must be modified by the BPM
     // and the BPM will synchronize it
-    private final ReadWriteLock rwLatch;
+    private final StampedLock latch;
 
     /** Constructor. Zeros out the page data. */
     public Page() {
         this.data = new byte[DatabaseConfig.getInstance().getPageSize()];
+        this.buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
         resetMemory();
         this.pageId = DatabaseConfig.getInstance().getInvalidPageId();
         this.pinCount = 0;
         this.isDirty = false;
-        this.rwLatch = new ReentrantReadWriteLock();
+        this.latch = new StampedLock();
     }
 
-    /** @return the actual data contained within this page */
+    /** Constructor for a page that lives in the given page sized slot, usually of a PageArena. Zeros out the page data. */
+    public Page(ByteBuffer slot) {
+        assert slot.capacity() == DatabaseConfig.getInstance().getPageSize();
+        this.data = null;
+        this.buffer = slot.order(ByteOrder.LITTLE_ENDIAN);
+        resetMemory();
+        this.pageId = DatabaseConfig.getInstance().getInvalidPageId();
+        this.pinCount = 0;
+        this.isDirty = false;
+        this.latch = new StampedLock();
+    }
+
+    /** @return the actual data contained within this page, only heap pages have it */
     public byte[] getData() {
+        if(data == null) {
+            throw new UnsupportedOperationException("an off-heap page has no heap array, use getBuffer() instead");
+        }
         return data;
     }
 
+    /**
+     * @return a little endian view of the actual data contained within this page, it's shared, so use absolute gets and puts only,
+     * and duplicate() it before doing anything that moves its position or limit
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
     /** @return the page id of this page */
     public int getPageId() {
         return pageId;
@@ -79,52 +114,72 @@ public class Page {
 
     /** Acquire the page write latch. */
     public void writeLatch() {
-        rwLatch.writeLock().lock();
+        latch.writeLock();
     }
 
-    /** Release the page write latch. */
+    /**
+     * Release the page write latch.
+     *
+     * @throws IllegalMonitorStateException if the page isn't write latched
+     */
     public void writeUnlatch() {
-        rwLatch.writeLock().unlock();
+        if(!latch.tryUnlockWrite()) {
+            throw new IllegalMonitorStateException("page " + pageId + " isn't write latched");
+        }
     }
 
     /** Acquire the page read latch. */
     public void readLatch() {
-        rwLatch.readLock().lock();
+        latch.readLock();
     }
 
-    /** Release the page read latch. */
+    /**
+     * Release the page read latch.
+     *
+     * @throws IllegalMonitorStateException if the page isn't read latched
+     */
     public void readUnlatch() {
-        rwLatch.readLock().unlock();
+        if(!latch.tryUnlockRead()) {
+            throw new IllegalMonitorStateException("page " + pageId + " isn't read latched");
+        }
     }
 
-    /** @return the page LSN. */
-    public int getLSN() {
-        return getIntFromByteArray(data, OFFSET_LSN);
+    /**
+     * Starts an optimistic read, it only reads the version of the latch.
+     *
+     * @return the version to validate the read with, 0 if the page is write latched right now
+     */
+    public long tryOptimisticRead() {
+        return latch.tryOptimisticRead();
     }
 
-    /** Sets the page LSN. */
-    public void setLSN(int lsn) {
-        putIntToByteArray(data, OFFSET_LSN, lsn);
+    /**
+     * @param stamp the version returned by tryOptimisticRead
+     * @return true if the page wasn't write latched since the version was taken, so what was read in between is consistent
+     */
+    public boolean validate(long stamp) {
+        return latch.validate(stamp);
     }
 
-    // Helper method to get an integer from a byte array
-    private int getIntFromByteArray(byte[] bytes, int offset) {
-        return (bytes[offset] & 0xFF) |
-                ((bytes[offset + 1] & 0xFF) << 8) |
-                ((bytes[offset + 2] & 0xFF) << 16) |
-                ((bytes[offset + 3] & 0xFF) << 24);
+    /** @return the page LSN. */
+    public int getLSN() {
+        return buffer.getInt(OFFSET_LSN);
     }
 
-    // Helper method to put an integer into a byte array
-    private void putIntToByteArray(byte[] bytes, int offset, int value) {
-        bytes[offset] = (byte) (value & 0xFF);
-        bytes[offset + 1] = (byte) ((value >> 8) & 0xFF);
-        bytes[offset + 2] = (byte) ((value >> 16) & 0xFF);
-        bytes[offset + 3] = (byte) ((value >> 24) & 0xFF);
+    /** Sets the page LSN. */
+    public void setLSN(int lsn) {
+        buffer.putInt(OFFSET_LSN, lsn);
     }
 
     /** Zeroes out the data that is held within the page. */
     public void resetMemory() {
-        Arrays.fill(data, OFFSET_PAGE_START, DatabaseConfig.getInstance().getPageSize(), (byte) 0);
+        int pageSize = DatabaseConfig.getInstance().getPageSize();
+        if(data != null) {
+            Arrays.fill(data, OFFSET_PAGE_START, pageSize, (byte) 0);
+            return;
+        }
+        for(int offset = OFFSET_PAGE_START; offset < pageSize; offset += Long.BYTES) {
+            buffer.putLong(offset, 0L);
+        }
     }
 }
\ No newline at end of file
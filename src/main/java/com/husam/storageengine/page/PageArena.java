@@ -0,0 +1,52 @@
+package com.husam.storageengine.page;
+
+import com.husam.common.DatabaseConfig;
+
+import java.nio.ByteBuffer;
+
+/**
+ * off-heap memory for buffer pool frames, instead of one heap array per frame that the GC has to trace,
+ * the frames live in a few large direct buffers that are aligned to the page size and carved into fixed page sized slots
+ * a direct buffer can be handed to the FileChannel as it is, so the disk reads and writes straight into the slot
+ * a single ByteBuffer can't be larger than 2GB, so the arena is made of chunks of at most 1GB
+ * the memory is released when the arena (and every page using it) becomes unreachable
+ */
+public class PageArena {
+
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+    private final ByteBuffer[] chunks;
+    private final int slotsPerChunk;
+    private final int numOfSlots;
+    private final int pageSize;
+
+    public PageArena(int numOfSlots) {
+        this.pageSize = DatabaseConfig.getInstance().getPageSize();
+        this.numOfSlots = numOfSlots;
+        this.slotsPerChunk = Math.max(1, MAX_CHUNK_BYTES / pageSize);
+        int numOfChunks = (numOfSlots + slotsPerChunk - 1) / slotsPerChunk;
+        this.chunks = new ByteBuffer[numOfChunks];
+        for(int i = 0; i < numOfChunks; i++) {
+            int slots = Math.min(slotsPerChunk, numOfSlots - i * slotsPerChunk);
+            // over-allocate by one page so the slice can start on a page boundary
+            chunks[i] = ByteBuffer.allocateDirect(slots * pageSize + pageSize).alignedSlice(pageSize);
+        }
+    }
+
+    public int getNumOfSlots() {
+        return numOfSlots;
+    }
+
+    /**
+     * @return a page sized view of the slot, every call returns a new view of the same memory
+     */
+    public ByteBuffer slot(int slotId) {
+        if(slotId < 0 || slotId >= numOfSlots) {
+            throw new IndexOutOfBoundsException("slot " + slotId + " is out of the arena of " + numOfSlots + " slots");
+        }
+        ByteBuffer chunk = chunks[slotId / slotsPerChunk].duplicate();
+        int offset = (slotId % slotsPerChunk) * pageSize;
+        chunk.position(offset);
+        chunk.limit(offset + pageSize);
+        return chunk.slice();
+    }
+}
@@ -1,4 +1,44 @@
 package com.husam.storageengine.page;
 
-public interface ReadPageGuard {
+import java.nio.ByteBuffer;
+
+/**
+ * holds a pin and a read latch on a page, closing the guard unlatches and unpins the page
+ * an optimistic guard doesn't take the read latch, it only remembers the version of the page latch,
+ * the reads made through it may see a concurrent write, so they must be validated before they are used,
+ * if the validation fails the guard is latched and the reads are done again:
+ * <pre>
+ * try (ReadPageGuard guard = bpm.fetchPageOptimistic(pageId)) {
+ *     int value = guard.getBuffer().getInt(offset);
+ *     if(!guard.validate()) {
+ *         guard.latch();
+ *         value = guard.getBuffer().getInt(offset);
+ *     }
+ * }
+ * </pre>
+ * values read before validating may be garbage, so don't follow an offset read from the page without checking its range
+ */
+public interface ReadPageGuard extends AutoCloseable {
+
+    int getPageId();
+
+    /** @return the data of the page, see Page.getBuffer(), it must not be modified */
+    ByteBuffer getBuffer();
+
+    /** @return true if the guard holds the read latch, false if it's optimistic */
+    boolean isLatched();
+
+    /**
+     * @return true if no writer latched the page since the guard took its version, always true for a latched guard
+     */
+    boolean validate();
+
+    /**
+     * Takes the read latch, an optimistic guard becomes a latched one, does nothing if the guard is latched already.
+     */
+    void latch();
+
+    /** Unlatches (if latched) and unpins the page, calling it more than once does nothing. */
+    @Override
+    void close();
 }
@@ -0,0 +1,297 @@
+package com.husam.storageengine.page;
+
+import com.husam.common.DatabaseConfig;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * view over a slotted page that stores the tuples of a table heap
+ * after the page header comes the table page header, then the slot directory grows from the start of the page
+ * and the tuples grow from the end of the page towards it, the free space is the gap in between
+ *
+ *   | page header | next page id | slot count | free space pointer | tuple count | garbage | slot 0 | slot 1 | ...
+ *   ... free space ... | tuple 1 | tuple 0 |
+ *
+ * a slot is the offset and the length of its tuple (2 bytes each), a deleted slot has offset 0 and is reused by inserts,
+ * so the slot of a live tuple never changes and (page id, slot) identifies it for good
+ * deleting or shrinking a tuple leaves garbage between the tuples, an insert or update that doesn't fit in the free space
+ * compacts the page in place first, the tuples move but their slots don't
+ * tuples are handed out as little endian slices of the page, nothing is copied, a slice is only valid while the page
+ * is latched, since a compaction moves the tuples
+ * the callers latch the page, the view doesn't
+ */
+public class TablePage {
+
+    public static final int INVALID_SLOT = -1;
+    private static final int OFFSET_NEXT_PAGE_ID = Page.SIZE_PAGE_HEADER;
+    private static final int OFFSET_SLOT_COUNT = OFFSET_NEXT_PAGE_ID + Integer.BYTES;
+    private static final int OFFSET_FREE_SPACE_POINTER = OFFSET_SLOT_COUNT + Character.BYTES;
+    private static final int OFFSET_TUPLE_COUNT = OFFSET_FREE_SPACE_POINTER + Character.BYTES;
+    private static final int OFFSET_GARBAGE = OFFSET_TUPLE_COUNT + Character.BYTES;
+    private static final int SIZE_TABLE_PAGE_HEADER = OFFSET_GARBAGE + Character.BYTES;
+    private static final int SIZE_SLOT = 2 * Character.BYTES;
+
+    private final ByteBuffer buffer;
+
+    public TablePage(ByteBuffer buffer) {
+        assert buffer.order() == ByteOrder.LITTLE_ENDIAN;
+        this.buffer = buffer;
+    }
+
+    /** @return the biggest tuple an empty page can hold */
+    public static int maxTupleSize() {
+        return DatabaseConfig.getInstance().getPageSize() - SIZE_TABLE_PAGE_HEADER - SIZE_SLOT;
+    }
+
+    /** Formats the page as an empty table page, whatever it held before is gone. */
+    public void init() {
+        setNextPageId(DatabaseConfig.getInstance().getInvalidPageId());
+        buffer.putChar(OFFSET_SLOT_COUNT, (char) 0);
+        // the page size can be 64KB, which doesn't fit in 2 bytes, so the pointer is stored minus one
+        setFreeSpacePointer(pageSize());
+        buffer.putChar(OFFSET_TUPLE_COUNT, (char) 0);
+        buffer.putChar(OFFSET_GARBAGE, (char) 0);
+    }
+
+    public int getNextPageId() {
+        return buffer.getInt(OFFSET_NEXT_PAGE_ID);
+    }
+
+    public void setNextPageId(int nextPageId) {
+        buffer.putInt(OFFSET_NEXT_PAGE_ID, nextPageId);
+    }
+
+    /** @return the number of slots, deleted ones included, slots are numbered [0, getSlotCount()) */
+    public int getSlotCount() {
+        return buffer.getChar(OFFSET_SLOT_COUNT);
+    }
+
+    /** @return the number of live tuples */
+    public int getTupleCount() {
+        return buffer.getChar(OFFSET_TUPLE_COUNT);
+    }
+
+    /** @return the size of the biggest tuple an insert can take right now, compacting the page if it has to */
+    public int getFreeSpace() {
+        int free = getFreeSpacePointer() - slotDirectoryEnd() + getGarbage();
+        // an insert that can't reuse a deleted slot needs a new one
+        if(getTupleCount() == getSlotCount()) {
+            free -= SIZE_SLOT;
+        }
+        return Math.max(0, free);
+    }
+
+    /**
+     * @return the slot of the tuple, or INVALID_SLOT if the tuple doesn't fit in the page
+     */
+    public int insertTuple(ByteBuffer tuple) {
+        int length = tuple.remaining();
+        if(length == 0 || length > getFreeSpace()) {
+            return INVALID_SLOT;
+        }
+        int slot = findFreeSlot();
+        boolean newSlot = slot == getSlotCount();
+        int needed = length + (newSlot ? SIZE_SLOT : 0);
+        if(getFreeSpacePointer() - slotDirectoryEnd() < needed) {
+            compact();
+        }
+        if(newSlot) {
+            buffer.putChar(OFFSET_SLOT_COUNT, (char) (slot + 1));
+        }
+        int offset = getFreeSpacePointer() - length;
+        copyIn(offset, tuple);
+        setFreeSpacePointer(offset);
+        setSlot(slot, offset, length);
+        buffer.putChar(OFFSET_TUPLE_COUNT, (char) (getTupleCount() + 1));
+        return slot;
+    }
+
+    /**
+     * @return the tuple as a slice of the page, null if the slot is deleted or doesn't exist, see the class doc for how long it's valid
+     */
+    public ByteBuffer getTuple(int slot) {
+        if(isDeleted(slot)) {
+            return null;
+        }
+        int offset = slotOffset(slot);
+        ByteBuffer tuple = buffer.duplicate();
+        tuple.position(offset).limit(offset + slotLength(slot));
+        return tuple.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public boolean isDeleted(int slot) {
+        return slot < 0 || slot >= getSlotCount() || slotOffset(slot) == 0;
+    }
+
+    /**
+     * @return false if the slot is already deleted or doesn't exist
+     */
+    public boolean deleteTuple(int slot) {
+        if(isDeleted(slot)) {
+            return false;
+        }
+        int offset = slotOffset(slot);
+        int length = slotLength(slot);
+        setSlot(slot, 0, 0);
+        buffer.putChar(OFFSET_TUPLE_COUNT, (char) (getTupleCount() - 1));
+        if(offset == getFreeSpacePointer()) {
+            // the lowest tuple just goes back to the free space
+            setFreeSpacePointer(offset + length);
+        } else {
+            setGarbage(getGarbage() + length);
+        }
+        trimSlotDirectory();
+        return true;
+    }
+
+    /**
+     * Replaces the tuple, it keeps its slot, a tuple that doesn't grow stays where it is.
+     *
+     * @return false if the slot is deleted or doesn't exist, or the new tuple doesn't fit in the page
+     */
+    public boolean updateTuple(int slot, ByteBuffer tuple) {
+        if(isDeleted(slot) || tuple.remaining() == 0) {
+            return false;
+        }
+        int length = tuple.remaining();
+        int offset = slotOffset(slot);
+        int oldLength = slotLength(slot);
+        if(length <= oldLength) {
+            copyIn(offset, tuple);
+            setSlot(slot, offset, length);
+            setGarbage(getGarbage() + oldLength - length);
+            return true;
+        }
+        int available = getFreeSpacePointer() - slotDirectoryEnd() + getGarbage() + oldLength;
+        if(length > available) {
+            return false;
+        }
+        // give the old version back, then place the new one like an insert into the same slot
+        setSlot(slot, 0, 0);
+        setGarbage(getGarbage() + oldLength);
+        if(getFreeSpacePointer() - slotDirectoryEnd() < length) {
+            compact();
+        }
+        int newOffset = getFreeSpacePointer() - length;
+        copyIn(newOffset, tuple);
+        setFreeSpacePointer(newOffset);
+        setSlot(slot, newOffset, length);
+        return true;
+    }
+
+    /**
+     * Moves the tuples next to each other at the end of the page, so all the garbage becomes free space.
+     * The slots don't change.
+     */
+    public void compact() {
+        int slotCount = getSlotCount();
+        // offset and slot packed together, so sorting them sorts the slots by the offset of their tuples
+        long[] tuples = new long[getTupleCount()];
+        int count = 0;
+        for(int slot = 0; slot < slotCount; slot++) {
+            if(slotOffset(slot) != 0) {
+                tuples[count++] = ((long) slotOffset(slot) << 16) | slot;
+            }
+        }
+        Arrays.sort(tuples, 0, count);
+        // the tuple closest to the end of the page moves first, so a tuple never overwrites one that didn't move yet
+        int end = pageSize();
+        for(int i = count - 1; i >= 0; i--) {
+            int slot = (int) (tuples[i] & 0xffff);
+            int offset = slotOffset(slot);
+            int length = slotLength(slot);
+            end -= length;
+            if(end != offset) {
+                moveUp(offset, end, length);
+                setSlot(slot, end, length);
+            }
+        }
+        setFreeSpacePointer(end);
+        setGarbage(0);
+    }
+
+    // copies length bytes from from to to, to > from and the ranges may overlap, so it copies from the end backwards
+    private void moveUp(int from, int to, int length) {
+        if(to >= from + length) {
+            ByteBuffer source = buffer.duplicate();
+            source.position(from).limit(from + length);
+            buffer.duplicate().position(to).put(source);
+            return;
+        }
+        int remaining = length;
+        while(remaining >= Long.BYTES) {
+            remaining -= Long.BYTES;
+            buffer.putLong(to + remaining, buffer.getLong(from + remaining));
+        }
+        while(remaining > 0) {
+            remaining--;
+            buffer.put(to + remaining, buffer.get(from + remaining));
+        }
+    }
+
+    // one bulk copy of the remaining bytes of tuple, its position doesn't move
+    private void copyIn(int offset, ByteBuffer tuple) {
+        buffer.duplicate().position(offset).put(tuple.duplicate());
+    }
+
+    // deleted slots at the end of the directory go back to the free space
+    private void trimSlotDirectory() {
+        int slotCount = getSlotCount();
+        while(slotCount > 0 && slotOffset(slotCount - 1) == 0) {
+            slotCount--;
+        }
+        buffer.putChar(OFFSET_SLOT_COUNT, (char) slotCount);
+    }
+
+    private int findFreeSlot() {
+        int slotCount = getSlotCount();
+        if(getTupleCount() == slotCount) {
+            return slotCount;
+        }
+        for(int slot = 0; slot < slotCount; slot++) {
+            if(slotOffset(slot) == 0) {
+                return slot;
+            }
+        }
+        return slotCount;
+    }
+
+    private int slotDirectoryEnd() {
+        return SIZE_TABLE_PAGE_HEADER + getSlotCount() * SIZE_SLOT;
+    }
+
+    private int slotOffset(int slot) {
+        return buffer.getChar(SIZE_TABLE_PAGE_HEADER + slot * SIZE_SLOT);
+    }
+
+    private int slotLength(int slot) {
+        return buffer.getChar(SIZE_TABLE_PAGE_HEADER + slot * SIZE_SLOT + Character.BYTES);
+    }
+
+    private void setSlot(int slot, int offset, int length) {
+        buffer.putChar(SIZE_TABLE_PAGE_HEADER + slot * SIZE_SLOT, (char) offset);
+        buffer.putChar(SIZE_TABLE_PAGE_HEADER + slot * SIZE_SLOT + Character.BYTES, (char) length);
+    }
+
+    private int getFreeSpacePointer() {
+        return buffer.getChar(OFFSET_FREE_SPACE_POINTER) + 1;
+    }
+
+    private void setFreeSpacePointer(int offset) {
+        buffer.putChar(OFFSET_FREE_SPACE_POINTER, (char) (offset - 1));
+    }
+
+    private int getGarbage() {
+        return buffer.getChar(OFFSET_GARBAGE);
+    }
+
+    private void setGarbage(int garbage) {
+        buffer.putChar(OFFSET_GARBAGE, (char) garbage);
+    }
+
+    private static int pageSize() {
+        return DatabaseConfig.getInstance().getPageSize();
+    }
+}
@@ -1,4 +1,19 @@
 package com.husam.storageengine.page;
 
-public interface WritePageGuard {
+import java.nio.ByteBuffer;
+
+/**
+ * holds a pin and the write latch on a page, closing the guard unlatches the page and unpins it as dirty,
+ * so it's meant to be used with try-with-resources
+ */
+public interface WritePageGuard extends AutoCloseable {
+
+    int getPageId();
+
+    /** @return the data of the page, see Page.getBuffer() */
+    ByteBuffer getBuffer();
+
+    /** Unlatches and unpins the page, calling it more than once does nothing. */
+    @Override
+    void close();
 }
@@ -0,0 +1,46 @@
+package com.husam.storageengine.table;
+
+/**
+ * address of a tuple in a table heap, the page that holds it and its slot in that page
+ * the slot of a tuple doesn't change while the tuple lives, so a record id stays valid till the tuple is deleted
+ */
+public final class RecordId {
+
+    private final int pageId;
+    private final int slot;
+
+    public RecordId(int pageId, int slot) {
+        this.pageId = pageId;
+        this.slot = slot;
+    }
+
+    public int getPageId() {
+        return pageId;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof RecordId)) {
+            return false;
+        }
+        RecordId other = (RecordId) o;
+        return pageId == other.pageId && slot == other.slot;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * pageId + slot;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + pageId + ", " + slot + ")";
+    }
+}
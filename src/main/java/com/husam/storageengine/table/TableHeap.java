@@ -0,0 +1,216 @@
+package com.husam.storageengine.table;
+
+import com.husam.cachemanager.BufferPoolManager;
+import com.husam.common.DatabaseConfig;
+import com.husam.storageengine.page.ReadPageGuard;
+import com.husam.storageengine.page.TablePage;
+import com.husam.storageengine.page.WritePageGuard;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * unordered collection of tuples stored in a linked list of table pages that live in the buffer pool
+ * the heap grows by extents of getTableHeapExtentPages() contiguous pages, all the pages of an extent are formatted
+ * and linked when it's allocated, so a scan follows the list mostly in page id order and the read ahead kicks in
+ * the heap is identified by its first page, open it again with that id
+ * inserts are serialized by the latch of the heap and go to the last page that had room, the space freed by deletes in
+ * the pages before it is only reused by updates of the tuples in those pages,
+ * every other operation only latches the page it works on
+ * tuples are handed out as slices of the pages, they are only valid inside the callback that gets them
+ */
+public class TableHeap {
+
+    private static final Logger LOGGER = LogManager.getLogger(TableHeap.class);
+
+    /** gets every live tuple of a scan, the tuple is a slice of the page, it's only valid during the call */
+    @FunctionalInterface
+    public interface TupleVisitor {
+        void visit(int pageId, int slot, ByteBuffer tuple);
+    }
+
+    private final BufferPoolManager bufferPool;
+    private final int firstPageId;
+    private final int invalidPageId = DatabaseConfig.getInstance().getInvalidPageId();
+    private final Lock insertLatch = new ReentrantLock();
+    // guarded by the insert latch, inserts start at this page
+    private int insertPageId;
+
+    /**
+     * Creates a new empty heap.
+     */
+    public TableHeap(BufferPoolManager bufferPool) {
+        this.bufferPool = bufferPool;
+        this.firstPageId = allocateExtent();
+        if(firstPageId == invalidPageId) {
+            LOGGER.fatal("can't allocate the first extent of a table heap");
+            throw new RuntimeException("can't allocate the first extent of a table heap");
+        }
+        this.insertPageId = firstPageId;
+    }
+
+    /**
+     * Opens a heap created before, inserts start at the last page of the heap that holds a tuple.
+     */
+    public TableHeap(BufferPoolManager bufferPool, int firstPageId) {
+        this.bufferPool = bufferPool;
+        this.firstPageId = firstPageId;
+        int lastUsedPageId = firstPageId;
+        for(int pageId = firstPageId; pageId != invalidPageId; ) {
+            try (ReadPageGuard guard = fetchReadOrFail(pageId)) {
+                TablePage page = new TablePage(guard.getBuffer());
+                if(page.getTupleCount() > 0) {
+                    lastUsedPageId = pageId;
+                }
+                pageId = page.getNextPageId();
+            }
+        }
+        this.insertPageId = lastUsedPageId;
+    }
+
+    public int getFirstPageId() {
+        return firstPageId;
+    }
+
+    /**
+     * @param tuple its remaining bytes are the tuple, its position doesn't move
+     * @return the id of the new tuple, or null if the heap is full and can't grow
+     */
+    public RecordId insertTuple(ByteBuffer tuple) {
+        if(tuple.remaining() == 0 || tuple.remaining() > TablePage.maxTupleSize()) {
+            throw new IllegalArgumentException("a tuple must have between 1 and " + TablePage.maxTupleSize() + " bytes, got: " + tuple.remaining());
+        }
+        insertLatch.lock();
+        try {
+            int pageId = insertPageId;
+            while(true) {
+                int nextPageId;
+                try (WritePageGuard guard = fetchWriteOrFail(pageId)) {
+                    TablePage page = new TablePage(guard.getBuffer());
+                    int slot = page.insertTuple(tuple);
+                    if(slot != TablePage.INVALID_SLOT) {
+                        insertPageId = pageId;
+                        return new RecordId(pageId, slot);
+                    }
+                    nextPageId = page.getNextPageId();
+                    if(nextPageId == invalidPageId) {
+                        nextPageId = allocateExtent();
+                        if(nextPageId == invalidPageId) {
+                            LOGGER.error("can't grow the table heap with first page ID: {}", firstPageId);
+                            return null;
+                        }
+                        page.setNextPageId(nextPageId);
+                    }
+                }
+                pageId = nextPageId;
+            }
+        } finally {
+            insertLatch.unlock();
+        }
+    }
+
+    /**
+     * Reads the tuple without copying it.
+     *
+     * @return what reader returned, or null if the tuple is deleted
+     */
+    public <T> T readTuple(RecordId recordId, Function<ByteBuffer, T> reader) {
+        try (ReadPageGuard guard = fetchReadOrFail(recordId.getPageId())) {
+            ByteBuffer tuple = new TablePage(guard.getBuffer()).getTuple(recordId.getSlot());
+            return tuple == null ? null : reader.apply(tuple);
+        }
+    }
+
+    /**
+     * @return a little endian copy of the tuple, or null if the tuple is deleted
+     */
+    public ByteBuffer getTuple(RecordId recordId) {
+        return readTuple(recordId, tuple -> {
+            ByteBuffer copy = ByteBuffer.allocate(tuple.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+            copy.put(tuple).flip();
+            return copy;
+        });
+    }
+
+    /**
+     * Replaces the tuple in its page, it keeps its record id.
+     *
+     * @return false if the tuple is deleted, or the new tuple doesn't fit in its page, then the caller has to delete and insert it
+     */
+    public boolean updateTuple(RecordId recordId, ByteBuffer tuple) {
+        try (WritePageGuard guard = fetchWriteOrFail(recordId.getPageId())) {
+            return new TablePage(guard.getBuffer()).updateTuple(recordId.getSlot(), tuple);
+        }
+    }
+
+    /**
+     * @return false if the tuple was already deleted
+     */
+    public boolean deleteTuple(RecordId recordId) {
+        try (WritePageGuard guard = fetchWriteOrFail(recordId.getPageId())) {
+            return new TablePage(guard.getBuffer()).deleteTuple(recordId.getSlot());
+        }
+    }
+
+    /**
+     * Visits every live tuple of the heap, page by page, each page is read latched while its tuples are visited,
+     * so the visitor must not modify the heap.
+     */
+    public void scan(TupleVisitor visitor) {
+        for(int pageId = firstPageId; pageId != invalidPageId; ) {
+            try (ReadPageGuard guard = fetchReadOrFail(pageId)) {
+                TablePage page = new TablePage(guard.getBuffer());
+                int slotCount = page.getSlotCount();
+                for(int slot = 0; slot < slotCount; slot++) {
+                    ByteBuffer tuple = page.getTuple(slot);
+                    if(tuple != null) {
+                        visitor.visit(pageId, slot, tuple);
+                    }
+                }
+                pageId = page.getNextPageId();
+            }
+        }
+    }
+
+    // formats and links the pages of a new extent, returns its first page id, or the invalid page id if it can't be allocated
+    private int allocateExtent() {
+        int numOfPages = DatabaseConfig.getInstance().getTableHeapExtentPages();
+        int fromPageId = bufferPool.allocateExtent(numOfPages);
+        if(fromPageId == invalidPageId) {
+            return invalidPageId;
+        }
+        for(int i = 0; i < numOfPages; i++) {
+            try (WritePageGuard guard = fetchWriteOrFail(fromPageId + i)) {
+                TablePage page = new TablePage(guard.getBuffer());
+                page.init();
+                if(i + 1 < numOfPages) {
+                    page.setNextPageId(fromPageId + i + 1);
+                }
+            }
+        }
+        return fromPageId;
+    }
+
+    private ReadPageGuard fetchReadOrFail(int pageId) {
+        ReadPageGuard guard = bufferPool.fetchPageRead(pageId);
+        if(guard == null) {
+            LOGGER.fatal("can't fetch page with ID: {} of the table heap", pageId);
+            throw new RuntimeException("can't fetch page with ID: " + pageId + " of the table heap");
+        }
+        return guard;
+    }
+
+    private WritePageGuard fetchWriteOrFail(int pageId) {
+        WritePageGuard guard = bufferPool.fetchPageWrite(pageId);
+        if(guard == null) {
+            LOGGER.fatal("can't fetch page with ID: {} of the table heap", pageId);
+            throw new RuntimeException("can't fetch page with ID: " + pageId + " of the table heap");
+        }
+        return guard;
+    }
+}
@@ -0,0 +1,127 @@
+package come.husam.benchmarks;
+
+import com.husam.cachemanager.BufferPoolManager;
+import com.husam.cachemanager.BufferPoolManagerImpl;
+import com.husam.storageengine.diskmanager.DiskManager;
+import com.husam.storageengine.index.BPlusTree;
+import com.husam.storageengine.table.RecordId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * point lookup, insert/delete and short range scan throughput of a B+Tree with millions of keys
+ * the tree is loaded once with the even keys in [0, 2 * numOfKeys), lookups and scans hit random even keys,
+ * insertRemove inserts a random odd key and removes it again, so the tree keeps its size and shape
+ * pick poolSize below the pages of the tree (about numOfKeys / 170 leaves) to measure lookups that miss,
+ * the main method runs everything with 1, 2, 4, ... up to the number of cores threads
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BPlusTreeBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Tree {
+
+        @Param({"2000000"})
+        public int numOfKeys;
+
+        @Param({"16384"})
+        public int poolSize;
+
+        File dbFile;
+        DiskManager diskManager;
+        BufferPoolManager bpm;
+        BPlusTree tree;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            dbFile = File.createTempFile("btree-bench", ".db");
+            diskManager = BenchmarkSupport.newDiskManager("FILE_CHANNEL", "DEFERRED", dbFile.getPath());
+            bpm = new BufferPoolManagerImpl(poolSize, diskManager);
+            tree = new BPlusTree(bpm);
+            for (long key = 0; key < numOfKeys; ++key) {
+                tree.insert(2 * key, new RecordId((int) key, 0));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            bpm.shutDown();
+            diskManager.shutDown();
+            dbFile.delete();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Keys {
+
+        SplittableRandom random;
+        int numOfKeys;
+
+        @Setup(Level.Trial)
+        public void setUp(Tree tree) {
+            random = new SplittableRandom(Thread.currentThread().getId());
+            numOfKeys = tree.numOfKeys;
+        }
+
+        long next() {
+            return 2L * random.nextInt(numOfKeys);
+        }
+    }
+
+    @Benchmark
+    public RecordId lookup(Tree tree, Keys keys) {
+        return tree.tree.get(keys.next());
+    }
+
+    @Benchmark
+    public boolean insertRemove(Tree tree, Keys keys) {
+        long key = keys.next() + 1;
+        return tree.tree.insert(key, new RecordId(0, 0)) & tree.tree.remove(key);
+    }
+
+    @Benchmark
+    public long scan100(Tree tree, Keys keys) {
+        long from = keys.next();
+        long[] sum = new long[1];
+        tree.tree.scan(from, from + 200, (key, pageId, slot) -> sum[0] += pageId);
+        return sum[0];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+            Options options = new OptionsBuilder()
+                    .include(BPlusTreeBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+            if (threads >= cores) {
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package come.husam.benchmarks;
+
+import com.husam.cachemanager.replacers.ClockReplacer;
+import com.husam.cachemanager.replacers.LRUKReplacer;
+import com.husam.cachemanager.replacers.LockFreeClockReplacer;
+import com.husam.cachemanager.replacers.Replacer;
+import com.husam.cachemanager.replacers.TwoQueueReplacer;
+import com.husam.common.DatabaseConfig;
+import com.husam.common.DiskManagerBackend;
+import com.husam.common.DurabilityMode;
+import com.husam.storageengine.diskmanager.DiskManager;
+
+/**
+ * builds the components a benchmark parameter names, add a case here to compare a new replacer or I/O backend
+ */
+public final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    public static Replacer newReplacer(String name, int numOfFrames) {
+        switch (name) {
+            case "CLOCK":
+                return new ClockReplacer(numOfFrames);
+            case "LOCK_FREE_CLOCK":
+                return new LockFreeClockReplacer(numOfFrames);
+            case "LRU_K":
+                return new LRUKReplacer(numOfFrames, 2);
+            case "TWO_QUEUE":
+                return new TwoQueueReplacer(numOfFrames);
+            default:
+                throw new IllegalArgumentException("unknown replacer: " + name);
+        }
+    }
+
+    public static DiskManager newDiskManager(String backend, String durability, String fileName) {
+        DatabaseConfig conf = DatabaseConfig.getInstance();
+        DiskManagerBackend oldBackend = conf.getDiskManagerBackend();
+        conf.setDiskManagerBackend(DiskManagerBackend.valueOf(backend));
+        try {
+            return DiskManager.open(fileName, DurabilityMode.valueOf(durability));
+        } finally {
+            conf.setDiskManagerBackend(oldBackend);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package come.husam.benchmarks;
+
+import com.husam.cachemanager.BufferPoolManager;
+import com.husam.cachemanager.BufferPoolManagerImpl;
+import com.husam.storageengine.diskmanager.DiskManager;
+import com.husam.storageengine.page.Page;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * fetchPage/unpinPage throughput of the buffer pool
+ * hit: every page fits in the pool, so this measures the page table, the pin count and the replacer bookkeeping
+ * miss: the pages are a multiple of the pool, most fetches evict a page (writing it back when dirty) and read one
+ * the replacer, the I/O backend and the workload shape are parameters, the main method runs everything with
+ * 1, 2, 4, ... up to the number of cores threads
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BufferPoolBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Pool {
+
+        @Param({"CLOCK", "LOCK_FREE_CLOCK", "LRU_K", "TWO_QUEUE"})
+        public String replacer;
+
+        @Param({"FILE_CHANNEL", "MEMORY_MAPPED"})
+        public String backend;
+
+        @Param({"1024"})
+        public int poolSize;
+
+        // pages in the database, as a multiple of the pool size, 1 means every fetch hits
+        @Param({"1", "8"})
+        public int pagesPerFrame;
+
+        // fetches that dirty the page per 100 fetches
+        @Param({"0", "20"})
+        public int dirtyPercent;
+
+        File dbFile;
+        DiskManager diskManager;
+        BufferPoolManager pool;
+        int numOfPages;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            dbFile = File.createTempFile("pool-bench", ".db");
+            diskManager = BenchmarkSupport.newDiskManager(backend, "DEFERRED", dbFile.getPath());
+            pool = new BufferPoolManagerImpl(poolSize, diskManager, 0, BenchmarkSupport.newReplacer(replacer, poolSize));
+            numOfPages = poolSize * pagesPerFrame;
+            for (int i = 0; i < numOfPages; ++i) {
+                Page page = pool.newPage();
+                page.getBuffer().putInt(Integer.BYTES, i);
+                pool.unpinPage(page.getPageId(), true);
+            }
+            pool.flushAllPages();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.shutDown();
+            diskManager.shutDown();
+            dbFile.delete();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Accesses {
+
+        @Param({"UNIFORM", "ZIPFIAN", "SCAN"})
+        public String shape;
+
+        PageIdGenerator pageIds;
+
+        @Setup(Level.Trial)
+        public void setUp(Pool pool) {
+            pageIds = PageIdGenerator.of(shape, pool.numOfPages);
+        }
+    }
+
+    @Benchmark
+    public int fetchUnpin(Pool pool, Accesses accesses) {
+        int pageId = accesses.pageIds.next();
+        Page page = pool.pool.fetchPage(pageId);
+        if (page == null) {
+            // every frame is pinned by the other threads
+            return -1;
+        }
+        boolean dirty = pool.dirtyPercent > 0 && ThreadLocalRandom.current().nextInt(100) < pool.dirtyPercent;
+        int value;
+        if (dirty) {
+            page.writeLatch();
+            value = page.getBuffer().getInt(Integer.BYTES) + 1;
+            page.getBuffer().putInt(Integer.BYTES, value);
+            page.writeUnlatch();
+        } else {
+            value = page.getBuffer().getInt(Integer.BYTES);
+        }
+        pool.pool.unpinPage(pageId, dirty);
+        return value;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+            Options options = new OptionsBuilder()
+                    .include(BufferPoolBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+            if (threads >= cores) {
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package come.husam.benchmarks;
+
+import com.husam.common.DatabaseConfig;
+import com.husam.storageengine.diskmanager.DiskManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * page read and write throughput of the DiskManager backends on a temp file
+ * the file is written once before the run, so reads never fall past its end
+ * the file is small enough to sit in the OS page cache, this compares the cost of the backends, not of the device
+ * use the SCAN shape for sequential I/O and UNIFORM or ZIPFIAN for random I/O
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DiskManagerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Disk {
+
+        @Param({"FILE_CHANNEL", "MEMORY_MAPPED"})
+        public String backend;
+
+        // STRICT syncs every write, so it only makes sense on a real device
+        @Param({"DEFERRED"})
+        public String durability;
+
+        @Param({"16384"})
+        public int numOfPages;
+
+        File dbFile;
+        DiskManager diskManager;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            dbFile = File.createTempFile("disk-bench", ".db");
+            diskManager = BenchmarkSupport.newDiskManager(backend, durability, dbFile.getPath());
+            ByteBuffer page = ByteBuffer.allocateDirect(DatabaseConfig.getInstance().getPageSize());
+            for (int pageId = 0; pageId < numOfPages; ++pageId) {
+                page.clear();
+                page.putInt(0, pageId);
+                diskManager.writePage(pageId, page);
+            }
+            diskManager.sync();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            diskManager.shutDown();
+            dbFile.delete();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Accesses {
+
+        @Param({"UNIFORM", "ZIPFIAN", "SCAN"})
+        public String shape;
+
+        PageIdGenerator pageIds;
+        ByteBuffer page;
+
+        @Setup(Level.Trial)
+        public void setUp(Disk disk) {
+            pageIds = PageIdGenerator.of(shape, disk.numOfPages);
+            page = ByteBuffer.allocateDirect(DatabaseConfig.getInstance().getPageSize());
+        }
+    }
+
+    @Benchmark
+    public int readPage(Disk disk, Accesses accesses) {
+        int pageId = accesses.pageIds.next();
+        accesses.page.clear();
+        disk.diskManager.readPage(pageId, accesses.page);
+        return accesses.page.getInt(0);
+    }
+
+    @Benchmark
+    public long writePage(Disk disk, Accesses accesses) {
+        int pageId = accesses.pageIds.next();
+        accesses.page.clear();
+        accesses.page.putInt(0, pageId);
+        return disk.diskManager.writePage(pageId, accesses.page);
+    }
+}
@@ -0,0 +1,125 @@
+package come.husam.benchmarks;
+
+import com.husam.cachemanager.BufferPoolManager;
+import com.husam.cachemanager.BufferPoolManagerImpl;
+import com.husam.storageengine.diskmanager.DiskManager;
+import com.husam.storageengine.index.BPlusTree;
+import com.husam.storageengine.index.ExtendibleHashIndex;
+import com.husam.storageengine.table.RecordId;
+import com.husam.storageengine.table.TableHeap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * point lookup throughput of a table heap by key, through the extendible hash index, through the B+Tree,
+ * and by scanning the heap, the baseline the indexes are there to beat
+ * the rows are a key and a value, both indexes map every key to its row, lookups pick random keys
+ * the pool holds everything, so this compares page accesses and CPU, not I/O
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class IndexLookupBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Table {
+
+        @Param({"100000"})
+        public int numOfRows;
+
+        @Param({"16384"})
+        public int poolSize;
+
+        File dbFile;
+        DiskManager diskManager;
+        BufferPoolManager bpm;
+        TableHeap heap;
+        ExtendibleHashIndex hashIndex;
+        BPlusTree treeIndex;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            dbFile = File.createTempFile("index-bench", ".db");
+            diskManager = BenchmarkSupport.newDiskManager("FILE_CHANNEL", "DEFERRED", dbFile.getPath());
+            bpm = new BufferPoolManagerImpl(poolSize, diskManager);
+            heap = new TableHeap(bpm);
+            hashIndex = new ExtendibleHashIndex(bpm);
+            treeIndex = new BPlusTree(bpm);
+            ByteBuffer row = ByteBuffer.allocate(2 * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (long key = 0; key < numOfRows; ++key) {
+                row.putLong(0, key).putLong(Long.BYTES, -key);
+                RecordId recordId = heap.insertTuple(row);
+                hashIndex.insert(key, recordId);
+                treeIndex.insert(key, recordId);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            bpm.shutDown();
+            diskManager.shutDown();
+            dbFile.delete();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Keys {
+
+        SplittableRandom random;
+        int numOfRows;
+
+        @Setup(Level.Trial)
+        public void setUp(Table table) {
+            random = new SplittableRandom(Thread.currentThread().getId());
+            numOfRows = table.numOfRows;
+        }
+
+        long next() {
+            return random.nextInt(numOfRows);
+        }
+    }
+
+    @Benchmark
+    public Long hashLookup(Table table, Keys keys) {
+        RecordId recordId = table.hashIndex.get(keys.next());
+        return table.heap.readTuple(recordId, tuple -> tuple.getLong(Long.BYTES));
+    }
+
+    @Benchmark
+    public Long treeLookup(Table table, Keys keys) {
+        RecordId recordId = table.treeIndex.get(keys.next());
+        return table.heap.readTuple(recordId, tuple -> tuple.getLong(Long.BYTES));
+    }
+
+    @Benchmark
+    public long scanLookup(Table table, Keys keys) {
+        long key = keys.next();
+        long[] value = new long[1];
+        table.heap.scan((pageId, slot, tuple) -> {
+            if (tuple.getLong(0) == key) {
+                value[0] = tuple.getLong(Long.BYTES);
+            }
+        });
+        return value[0];
+    }
+}
@@ -0,0 +1,104 @@
+package come.husam.benchmarks;
+
+import com.husam.cachemanager.BufferPoolManager;
+import com.husam.cachemanager.BufferPoolManagerImpl;
+import com.husam.common.DatabaseConfig;
+import com.husam.storageengine.diskmanager.DiskManager;
+import com.husam.storageengine.page.Page;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * heap frames (one byte[] per frame) against off-heap frames (one PageArena) on a fully resident pool,
+ * every operation fetches a random page, copies a small record out of it (the allocation a query would do) and unpins it,
+ * so the young collections have to deal with an old generation that either holds every frame or almost nothing
+ * run it with the gc profiler (the main method adds it) to get the GC counts and pause times next to the throughput
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PageArenaBenchmark {
+
+    private static final int RECORD_LONGS = 16;
+
+    @Param({"false", "true"})
+    public boolean offHeap;
+
+    // 512MB of 4KB frames
+    @Param({"131072"})
+    public int poolSize;
+
+    private File dbFile;
+    private DiskManager diskManager;
+    private BufferPoolManager pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dbFile = File.createTempFile("arena-bench", ".db");
+        diskManager = DiskManager.open(dbFile.getPath());
+        DatabaseConfig.getInstance().setOffHeapFrames(offHeap);
+        try {
+            pool = new BufferPoolManagerImpl(poolSize, diskManager, 0);
+        } finally {
+            DatabaseConfig.getInstance().setOffHeapFrames(false);
+        }
+        for (int i = 0; i < poolSize; ++i) {
+            Page page = pool.newPage();
+            page.getBuffer().putLong(Long.BYTES, i);
+            pool.unpinPage(page.getPageId(), false);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutDown();
+        diskManager.shutDown();
+        dbFile.delete();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long[] fetchCopyUnpin() {
+        int pageId = ThreadLocalRandom.current().nextInt(poolSize);
+        Page page = pool.fetchPage(pageId);
+        long[] record = new long[RECORD_LONGS];
+        for (int i = 0; i < RECORD_LONGS; ++i) {
+            record[i] = page.getBuffer().getLong(Long.BYTES * (i + 1));
+        }
+        pool.unpinPage(pageId, false);
+        return record;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PageArenaBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
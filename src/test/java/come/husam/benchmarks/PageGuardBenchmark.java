@@ -0,0 +1,140 @@
+package come.husam.benchmarks;
+
+import com.husam.cachemanager.BufferPoolManager;
+import com.husam.cachemanager.BufferPoolManagerImpl;
+import com.husam.storageengine.diskmanager.DiskManager;
+import com.husam.storageengine.page.Page;
+import com.husam.storageengine.page.ReadPageGuard;
+import com.husam.storageengine.page.WritePageGuard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * read heavy guard throughput, every thread reads a few fields of a small set of hot pages (think index root and inner pages)
+ * and once in a while writes one, through latched read guards or optimistic ones
+ * the main method runs it with 1, 2, 4, ... up to the number of cores threads, the latched readers all write to
+ * the latch of the same pages, the optimistic ones only read its version
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PageGuardBenchmark {
+
+    private static final int FIELDS = 8;
+
+    // the hot pages every thread reads
+    @Param({"4"})
+    public int hotPages;
+
+    // writes per 1000 operations
+    @Param({"0", "10"})
+    public int writesPerMille;
+
+    private File dbFile;
+    private DiskManager diskManager;
+    private BufferPoolManager pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dbFile = File.createTempFile("guard-bench", ".db");
+        diskManager = DiskManager.open(dbFile.getPath());
+        pool = new BufferPoolManagerImpl(64, diskManager, 0);
+        for (int i = 0; i < hotPages; ++i) {
+            Page page = pool.newPage();
+            pool.unpinPage(page.getPageId(), false);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutDown();
+        diskManager.shutDown();
+        dbFile.delete();
+    }
+
+    @Benchmark
+    public long latchedRead() {
+        int pageId = ThreadLocalRandom.current().nextInt(hotPages);
+        if (isWrite()) {
+            return write(pageId);
+        }
+        try (ReadPageGuard guard = pool.fetchPageRead(pageId)) {
+            return readFields(guard);
+        }
+    }
+
+    @Benchmark
+    public long optimisticRead() {
+        int pageId = ThreadLocalRandom.current().nextInt(hotPages);
+        if (isWrite()) {
+            return write(pageId);
+        }
+        try (ReadPageGuard guard = pool.fetchPageOptimistic(pageId)) {
+            long sum = readFields(guard);
+            if (!guard.validate()) {
+                guard.latch();
+                sum = readFields(guard);
+            }
+            return sum;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+            Options options = new OptionsBuilder()
+                    .include(PageGuardBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+            if (threads >= cores) {
+                break;
+            }
+        }
+    }
+
+    private boolean isWrite() {
+        return writesPerMille > 0 && ThreadLocalRandom.current().nextInt(1000) < writesPerMille;
+    }
+
+    private long write(int pageId) {
+        try (WritePageGuard guard = pool.fetchPageWrite(pageId)) {
+            long value = guard.getBuffer().getLong(Long.BYTES) + 1;
+            for (int i = 1; i <= FIELDS; ++i) {
+                guard.getBuffer().putLong(Long.BYTES * i, value);
+            }
+            return value;
+        }
+    }
+
+    private static long readFields(ReadPageGuard guard) {
+        long sum = 0;
+        for (int i = 1; i <= FIELDS; ++i) {
+            sum += guard.getBuffer().getLong(Long.BYTES * i);
+        }
+        return sum;
+    }
+}
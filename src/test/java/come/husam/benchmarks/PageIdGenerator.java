@@ -0,0 +1,102 @@
+package come.husam.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * the page ids a benchmark thread asks for, the workload shape is a benchmark parameter,
+ * so replacers and I/O backends are compared on the same access patterns
+ * UNIFORM picks any page with the same probability, ZIPFIAN makes the low page ids hot (YCSB's generator,
+ * Gray et al. "Quickly generating billion-record synthetic databases"), SCAN reads the pages in order from a random
+ * starting point and wraps around
+ * a generator is used by one thread
+ */
+public abstract class PageIdGenerator {
+
+    public static final double DEFAULT_ZIPFIAN_THETA = 0.99;
+
+    public abstract int next();
+
+    public static PageIdGenerator of(String shape, int numOfPages) {
+        return of(shape, numOfPages, DEFAULT_ZIPFIAN_THETA);
+    }
+
+    public static PageIdGenerator of(String shape, int numOfPages, double theta) {
+        switch (shape) {
+            case "UNIFORM":
+                return new Uniform(numOfPages);
+            case "ZIPFIAN":
+                return new Zipfian(numOfPages, theta);
+            case "SCAN":
+                return new Scan(numOfPages);
+            default:
+                throw new IllegalArgumentException("unknown workload shape: " + shape);
+        }
+    }
+
+    private static final class Uniform extends PageIdGenerator {
+        private final int numOfPages;
+
+        Uniform(int numOfPages) {
+            this.numOfPages = numOfPages;
+        }
+
+        @Override
+        public int next() {
+            return ThreadLocalRandom.current().nextInt(numOfPages);
+        }
+    }
+
+    private static final class Scan extends PageIdGenerator {
+        private final int numOfPages;
+        private int cursor;
+
+        Scan(int numOfPages) {
+            this.numOfPages = numOfPages;
+            this.cursor = ThreadLocalRandom.current().nextInt(numOfPages);
+        }
+
+        @Override
+        public int next() {
+            int pageId = cursor;
+            cursor = cursor + 1 == numOfPages ? 0 : cursor + 1;
+            return pageId;
+        }
+    }
+
+    private static final class Zipfian extends PageIdGenerator {
+        private final int numOfPages;
+        private final double theta;
+        private final double zetaN;
+        private final double alpha;
+        private final double eta;
+
+        Zipfian(int numOfPages, double theta) {
+            this.numOfPages = numOfPages;
+            this.theta = theta;
+            this.zetaN = zeta(numOfPages, theta);
+            this.alpha = 1.0 / (1.0 - theta);
+            this.eta = (1 - Math.pow(2.0 / numOfPages, 1 - theta)) / (1 - zeta(2, theta) / zetaN);
+        }
+
+        @Override
+        public int next() {
+            double u = ThreadLocalRandom.current().nextDouble();
+            double uz = u * zetaN;
+            if (uz < 1.0) {
+                return 0;
+            }
+            if (uz < 1.0 + Math.pow(0.5, theta)) {
+                return 1;
+            }
+            return Math.min(numOfPages - 1, (int) (numOfPages * Math.pow(eta * u - eta + 1, alpha)));
+        }
+
+        private static double zeta(int n, double theta) {
+            double sum = 0;
+            for (int i = 1; i <= n; ++i) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+    }
+}
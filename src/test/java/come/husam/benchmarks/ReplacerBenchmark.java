@@ -0,0 +1,62 @@
+package come.husam.benchmarks;
+
+import com.husam.cachemanager.replacers.Replacer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * latency of picking a victim, sampled so the percentiles show the long clock sweeps
+ * pinnedPercent of the frames are pinned for the whole run and spread over the pool, the rest are evictable,
+ * every operation evicts a frame and hands it back, so the replacer stays in the same state
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ReplacerBenchmark {
+
+    @Param({"CLOCK", "LOCK_FREE_CLOCK", "LRU_K", "TWO_QUEUE"})
+    public String replacer;
+
+    @Param({"1024", "16384", "131072"})
+    public int poolSize;
+
+    @Param({"0", "50", "90"})
+    public int pinnedPercent;
+
+    private Replacer frames;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        frames = BenchmarkSupport.newReplacer(replacer, poolSize);
+        for (int frameId = 0; frameId < poolSize; ++frameId) {
+            frames.unpin(frameId);
+        }
+        for (int frameId = 0; frameId < poolSize; ++frameId) {
+            if (frameId % 100 < pinnedPercent) {
+                frames.pin(frameId);
+            }
+        }
+    }
+
+    @Benchmark
+    public int victim() {
+        int frameId = frames.victim();
+        frames.unpin(frameId);
+        return frameId;
+    }
+}
@@ -0,0 +1,121 @@
+package come.husam.benchmarks;
+
+import com.husam.cachemanager.BufferPoolManager;
+import com.husam.cachemanager.BufferPoolManagerImpl;
+import com.husam.storageengine.diskmanager.DiskManager;
+import com.husam.storageengine.table.RecordId;
+import com.husam.storageengine.table.TableHeap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * insert and full scan throughput of a table heap of fixed size rows on top of a buffer pool with a temp file
+ * the insert heap starts empty every iteration, so the iterations don't slow down as the file grows,
+ * the scan heap is loaded once, a scan sums a field of every row straight from the pages, one op is a whole scan
+ * pick poolSize below the pages of the scan heap to measure scans that miss
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TableHeapBenchmark {
+
+    @State(Scope.Benchmark)
+    public abstract static class Heap {
+
+        @Param({"4096"})
+        public int poolSize;
+
+        @Param({"64", "256"})
+        public int tupleSize;
+
+        File dbFile;
+        DiskManager diskManager;
+        BufferPoolManager bpm;
+        TableHeap heap;
+        ByteBuffer row;
+
+        void open() throws IOException {
+            dbFile = File.createTempFile("heap-bench", ".db");
+            diskManager = BenchmarkSupport.newDiskManager("FILE_CHANNEL", "DEFERRED", dbFile.getPath());
+            bpm = new BufferPoolManagerImpl(poolSize, diskManager);
+            heap = new TableHeap(bpm);
+            row = ByteBuffer.allocate(tupleSize).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        void close() {
+            bpm.shutDown();
+            diskManager.shutDown();
+            dbFile.delete();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class InsertHeap extends Heap {
+
+        long nextKey;
+
+        @Setup(Level.Iteration)
+        public void setUp() throws IOException {
+            open();
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ScanHeap extends Heap {
+
+        @Param({"100000"})
+        public int numOfRows;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            open();
+            for (int key = 0; key < numOfRows; ++key) {
+                row.putLong(0, key);
+                heap.insertTuple(row);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            close();
+        }
+    }
+
+    @Benchmark
+    public RecordId insert(InsertHeap state) {
+        ByteBuffer row = state.row;
+        row.putLong(0, state.nextKey++);
+        return state.heap.insertTuple(row);
+    }
+
+    @Benchmark
+    public long scan(ScanHeap state) {
+        long[] sum = new long[1];
+        state.heap.scan((pageId, slot, tuple) -> sum[0] += tuple.getLong(0));
+        return sum[0];
+    }
+}
@@ -2,14 +2,46 @@ package come.husam.cachemanager;
 
 import com.husam.cachemanager.BufferPoolManager;
 import com.husam.cachemanager.BufferPoolManagerImpl;
+import com.husam.cachemanager.Checkpointer;
+import com.husam.cachemanager.PageCleaner;
+import com.husam.cachemanager.PageScan;
+import com.husam.cachemanager.replacers.ClockReplacer;
+import com.husam.cachemanager.replacers.LockFreeClockReplacer;
+import com.husam.cachemanager.replacers.Priority;
+import com.husam.common.DatabaseConfig;
+import com.husam.common.DurabilityMode;
+import com.husam.metrics.BufferPoolMetrics;
+import com.husam.recovery.LogManager;
 import com.husam.storageengine.diskmanager.DiskManager;
+import com.husam.storageengine.diskmanager.FileChannelDiskManager;
+import com.husam.storageengine.page.BasicPageGuard;
 import com.husam.storageengine.page.Page;
+import com.husam.storageengine.page.ReadPageGuard;
+import com.husam.storageengine.page.WritePageGuard;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import static org.junit.Assert.*;
 
@@ -20,7 +52,7 @@ public class BufferPoolManagerImplTest {
     private BufferPoolManager bpm;
     @Before
     public void setUp() {
-        this.diskManager = new DiskManager(DB_FILE_NAME);
+        this.diskManager = DiskManager.open(DB_FILE_NAME);
         this.bpm = new BufferPoolManagerImpl(BUFFER_POOL_SIZE, this.diskManager, 0);
     }
 
@@ -72,4 +104,1155 @@ public class BufferPoolManagerImplTest {
         File file = new File("test.db");
         file.delete();
     }
+
+    @Test
+    public void testConcurrentFetchUnpin() throws InterruptedException {
+        hammerFetchUnpin(new BufferPoolManagerImpl(64, this.diskManager, 0));
+    }
+
+    @Test
+    public void testConcurrentFetchUnpinLockFreeClock() throws InterruptedException {
+        hammerFetchUnpin(new BufferPoolManagerImpl(64, this.diskManager, 0, new LockFreeClockReplacer(64)));
+    }
+
+    private void hammerFetchUnpin(BufferPoolManager pool) throws InterruptedException {
+        final int poolSize = pool.getPoolSize();
+        final int numOfPages = 256;
+        final int numOfThreads = 8;
+        final int iterations = 20000;
+
+        // Scenario: write every page's own id into it, the pool is smaller than the data so most pages get evicted.
+        for (int i = 0; i < numOfPages; ++i) {
+            Page page = pool.newPage();
+            assertNotNull(page);
+            ByteBuffer.wrap(page.getData()).putInt(8, page.getPageId());
+            assertTrue(pool.unpinPage(page.getPageId(), true));
+        }
+
+        // Scenario: many threads fetch and unpin random pages, a thread pins one page at a time
+        // so the pool never runs out of frames, and every fetched page must hold its own id.
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[numOfThreads];
+        for (int t = 0; t < numOfThreads; ++t) {
+            threads[t] = new Thread(() -> {
+                try {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < iterations; ++i) {
+                        int pageId = random.nextInt(numOfPages);
+                        Page page = pool.fetchPage(pageId);
+                        assertNotNull(page);
+                        assertEquals(pageId, page.getPageId());
+                        assertEquals(pageId, ByteBuffer.wrap(page.getData()).getInt(8));
+                        assertTrue(pool.unpinPage(pageId, random.nextInt(4) == 0));
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+
+        // Scenario: every pin was released, so all the frames can be taken by new fetches at the same time.
+        for (int i = 0; i < poolSize; ++i) {
+            assertNotNull(pool.fetchPage(i));
+        }
+        this.diskManager.shutDown();
+        File file = new File(DB_FILE_NAME);
+        file.delete();
+    }
+
+    @Test
+    public void testPageCleanerKeepsCleanFrames() {
+        BufferPoolManagerImpl pool = new BufferPoolManagerImpl(BUFFER_POOL_SIZE, this.diskManager, 0);
+        PageCleaner cleaner = new PageCleaner(pool, 5, 64, 10);
+
+        // Scenario: fill the pool with dirty unpinned pages.
+        for (int i = 0; i < BUFFER_POOL_SIZE; ++i) {
+            Page page = pool.newPage();
+            assertNotNull(page);
+            assertTrue(pool.unpinPage(page.getPageId(), true));
+        }
+
+        // Scenario: one cleaner round writes the next 5 victims, a second round has nothing left to do.
+        assertEquals(5, cleaner.cleanRound());
+        assertEquals(0, cleaner.cleanRound());
+        assertEquals(5, pool.getBackgroundFlushCount());
+
+        // Scenario: the next 5 misses evict clean frames, so the foreground never writes.
+        for (int i = 0; i < 5; ++i) {
+            Page page = pool.newPage();
+            assertNotNull(page);
+            assertTrue(pool.unpinPage(page.getPageId(), false));
+        }
+        assertEquals(0, pool.getForegroundFlushCount());
+
+        // Scenario: without the cleaner, evicting the remaining dirty pages has to write in the foreground.
+        for (int i = 0; i < 5; ++i) {
+            assertNotNull(pool.newPage());
+        }
+        assertEquals(5, pool.getForegroundFlushCount());
+        this.diskManager.shutDown();
+        File file = new File(DB_FILE_NAME);
+        file.delete();
+    }
+
+    @Test
+    public void testStoppingPageCleanerDuringWriteKeepsFileOpen() throws Exception {
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+        CountDownLatch writeStarted = new CountDownLatch(1);
+        this.diskManager = new FileChannelDiskManager(DB_FILE_NAME, DurabilityMode.DEFERRED) {
+            @Override
+            public long writePages(int[] pageIds, ByteBuffer[] pageData) {
+                writeStarted.countDown();
+                // long enough for stop to come in while the write is in progress, an interrupt ends the wait early
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(200));
+                return super.writePages(pageIds, pageData);
+            }
+        };
+        BufferPoolManagerImpl pool = new BufferPoolManagerImpl(BUFFER_POOL_SIZE, this.diskManager, 0);
+        for (int i = 0; i < BUFFER_POOL_SIZE; ++i) {
+            Page page = pool.newPage();
+            page.getBuffer().putInt(64, i + 1);
+            assertTrue(pool.unpinPage(page.getPageId(), true));
+        }
+
+        // Scenario: the cleaner is stopped in the middle of its batch write.
+        PageCleaner cleaner = new PageCleaner(pool, 5, 64, 10);
+        cleaner.start();
+        assertTrue(writeStarted.await(30, TimeUnit.SECONDS));
+        cleaner.stop();
+
+        // Scenario: the write went through and the database file is still open for everybody else.
+        assertEquals(5, pool.getBackgroundFlushCount());
+        // pages are little endian
+        ByteBuffer frame = ByteBuffer.allocate(DatabaseConfig.getInstance().getPageSize()).order(ByteOrder.LITTLE_ENDIAN);
+        this.diskManager.readPage(0, frame);
+        pool.flushAllPages();
+        for (int i = 0; i < BUFFER_POOL_SIZE; ++i) {
+            frame.clear();
+            this.diskManager.readPage(i, frame);
+            assertEquals(i + 1, frame.getInt(64));
+        }
+        pool.shutDown();
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testStoppingCheckpointerDuringWriteKeepsFileOpen() throws Exception {
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+        CountDownLatch writeStarted = new CountDownLatch(1);
+        this.diskManager = new FileChannelDiskManager(DB_FILE_NAME, DurabilityMode.DEFERRED) {
+            @Override
+            public long writePages(int[] pageIds, ByteBuffer[] pageData) {
+                writeStarted.countDown();
+                // long enough for stop to come in while the write is in progress, an interrupt ends the wait early
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(200));
+                return super.writePages(pageIds, pageData);
+            }
+        };
+        BufferPoolManagerImpl pool = new BufferPoolManagerImpl(BUFFER_POOL_SIZE, this.diskManager, 0);
+        for (int i = 0; i < BUFFER_POOL_SIZE; ++i) {
+            Page page = pool.newPage();
+            page.getBuffer().putInt(64, i + 1);
+            assertTrue(pool.unpinPage(page.getPageId(), true));
+        }
+
+        // Scenario: a slow, rate limited checkpoint is stopped in the middle of a batch write.
+        Checkpointer checkpointer = new Checkpointer(pool, 2, 1, 1);
+        checkpointer.start();
+        assertTrue(writeStarted.await(30, TimeUnit.SECONDS));
+        checkpointer.stop();
+
+        // Scenario: the checkpoint was finished and the database file is still open for everybody else.
+        assertEquals(0, pool.checkpoint());
+        // pages are little endian
+        ByteBuffer frame = ByteBuffer.allocate(DatabaseConfig.getInstance().getPageSize()).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < BUFFER_POOL_SIZE; ++i) {
+            frame.clear();
+            this.diskManager.readPage(i, frame);
+            assertEquals(i + 1, frame.getInt(64));
+        }
+        pool.shutDown();
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testFailedVictimWriteBackKeepsPageAndFrame() throws Exception {
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+        AtomicBoolean failWrites = new AtomicBoolean();
+        this.diskManager = new FileChannelDiskManager(DB_FILE_NAME, DurabilityMode.DEFERRED) {
+            @Override
+            public long writePage(int pageId, ByteBuffer pageData) {
+                if (failWrites.get()) {
+                    throw new RuntimeException("disk full");
+                }
+                return super.writePage(pageId, pageData);
+            }
+        };
+        BufferPoolManager pool = new BufferPoolManagerImpl(BUFFER_POOL_SIZE, this.diskManager, 0);
+        for (int i = 0; i < BUFFER_POOL_SIZE; ++i) {
+            Page page = pool.newPage();
+            page.getBuffer().putInt(64, i + 1);
+            assertTrue(pool.unpinPage(page.getPageId(), true));
+        }
+
+        // Scenario: a miss has to write back a dirty victim and the write fails, so does the miss.
+        failWrites.set(true);
+        try {
+            pool.fetchPage(50);
+            fail("the write back of the victim should have failed");
+        } catch (RuntimeException expected) {
+        }
+        failWrites.set(false);
+
+        // Scenario: the victim gave its frame back, every frame can be pinned at once.
+        for (int pageId = 50; pageId < 50 + BUFFER_POOL_SIZE; ++pageId) {
+            assertNotNull(pool.fetchPage(pageId));
+        }
+        for (int pageId = 50; pageId < 50 + BUFFER_POOL_SIZE; ++pageId) {
+            assertTrue(pool.unpinPage(pageId, false));
+        }
+
+        // Scenario: the victim kept its change, it was written back by a later eviction.
+        // pages are little endian
+        ByteBuffer frame = ByteBuffer.allocate(DatabaseConfig.getInstance().getPageSize()).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < BUFFER_POOL_SIZE; ++i) {
+            frame.clear();
+            this.diskManager.readPage(i, frame);
+            assertEquals(i + 1, frame.getInt(64));
+        }
+        pool.shutDown();
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testFailedFlushLeavesPageDirty() throws Exception {
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+        AtomicBoolean failWrites = new AtomicBoolean();
+        this.diskManager = new FileChannelDiskManager(DB_FILE_NAME, DurabilityMode.DEFERRED) {
+            @Override
+            public long writePage(int pageId, ByteBuffer pageData) {
+                if (failWrites.get()) {
+                    throw new RuntimeException("disk full");
+                }
+                return super.writePage(pageId, pageData);
+            }
+        };
+        BufferPoolManager pool = new BufferPoolManagerImpl(BUFFER_POOL_SIZE, this.diskManager, 0);
+        Page page = pool.newPage();
+        page.getBuffer().putInt(64, 42);
+        assertTrue(pool.unpinPage(page.getPageId(), true));
+
+        // Scenario: the write of a flush fails, the page keeps its dirty flag and its pin is given back.
+        failWrites.set(true);
+        try {
+            pool.flushPage(page.getPageId());
+            fail("the flush should have failed");
+        } catch (RuntimeException expected) {
+        }
+        failWrites.set(false);
+        assertSame(page, pool.fetchPage(page.getPageId()));
+        assertEquals(1, page.getPinCount());
+        assertTrue(page.isDirty());
+        assertTrue(pool.unpinPage(page.getPageId(), false));
+
+        // Scenario: the next flush of the dirty pages still writes the change.
+        pool.flushAllPages();
+        // pages are little endian
+        ByteBuffer frame = ByteBuffer.allocate(DatabaseConfig.getInstance().getPageSize()).order(ByteOrder.LITTLE_ENDIAN);
+        this.diskManager.readPage(page.getPageId(), frame);
+        assertEquals(42, frame.getInt(64));
+        pool.shutDown();
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testFailedBatchFlushLeavesPagesDirty() throws Exception {
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+        this.diskManager = new FileChannelDiskManager(DB_FILE_NAME, DurabilityMode.DEFERRED) {
+            @Override
+            public long writePages(int[] pageIds, ByteBuffer[] pageData) {
+                throw new RuntimeException("disk full");
+            }
+        };
+        BufferPoolManagerImpl pool = new BufferPoolManagerImpl(BUFFER_POOL_SIZE, this.diskManager, 0);
+        for (int i = 0; i < BUFFER_POOL_SIZE; ++i) {
+            assertTrue(pool.unpinPage(pool.newPage().getPageId(), true));
+        }
+
+        // Scenario: the batch write of a cleaner round fails, none of its pages counts as written.
+        PageCleaner cleaner = new PageCleaner(pool, 5, 64, 10);
+        try {
+            cleaner.cleanRound();
+            fail("the batch write should have failed");
+        } catch (RuntimeException expected) {
+        }
+        assertEquals(0, pool.getBackgroundFlushCount());
+        for (int pageId = 0; pageId < BUFFER_POOL_SIZE; ++pageId) {
+            Page page = pool.fetchPage(pageId);
+            assertTrue(page.isDirty());
+            assertEquals(1, page.getPinCount());
+            assertTrue(pool.unpinPage(pageId, false));
+        }
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testFailingPageCleanerLosesNoChanges() throws Exception {
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+        AtomicInteger failedBatches = new AtomicInteger();
+        this.diskManager = new FileChannelDiskManager(DB_FILE_NAME, DurabilityMode.DEFERRED) {
+            @Override
+            public long writePages(int[] pageIds, ByteBuffer[] pageData) {
+                failedBatches.incrementAndGet();
+                throw new RuntimeException("disk full");
+            }
+        };
+        BufferPoolManagerImpl pool = new BufferPoolManagerImpl(BUFFER_POOL_SIZE, this.diskManager, 0);
+        for (int i = 0; i < BUFFER_POOL_SIZE; ++i) {
+            Page page = pool.newPage();
+            page.getBuffer().putInt(64, i + 1);
+            assertTrue(pool.unpinPage(page.getPageId(), true));
+        }
+
+        // Scenario: every round of the cleaner fails, it logs the error and keeps trying.
+        PageCleaner cleaner = new PageCleaner(pool, 5, 64, 1);
+        cleaner.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (failedBatches.get() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(failedBatches.get() >= 3);
+        // a running round keeps its pages pinned, the misses below need every frame
+        cleaner.stop();
+
+        // Scenario: misses evict every page, the pages the cleaner failed to write are written back by the evictions.
+        for (int pageId = 50; pageId < 50 + BUFFER_POOL_SIZE; ++pageId) {
+            assertNotNull(pool.fetchPage(pageId));
+        }
+        // pages are little endian
+        ByteBuffer frame = ByteBuffer.allocate(DatabaseConfig.getInstance().getPageSize()).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < BUFFER_POOL_SIZE; ++i) {
+            frame.clear();
+            this.diskManager.readPage(i, frame);
+            assertEquals(i + 1, frame.getInt(64));
+        }
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testMissReadDoesNotBlockOtherPages() throws Exception {
+        final int slowPageId = 5;
+        CountDownLatch readStarted = new CountDownLatch(1);
+        CountDownLatch finishRead = new CountDownLatch(1);
+        AtomicInteger slowReads = new AtomicInteger();
+        DiskManager slowDisk = new FileChannelDiskManager("test_slow.db") {
+            @Override
+            public void readPage(int pageId, ByteBuffer pageData) {
+                if (pageId == slowPageId) {
+                    slowReads.incrementAndGet();
+                    readStarted.countDown();
+                    try {
+                        finishRead.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.readPage(pageId, pageData);
+            }
+        };
+        BufferPoolManager pool = new BufferPoolManagerImpl(BUFFER_POOL_SIZE, slowDisk, 0);
+        Page page0 = pool.newPage();
+        assertNotNull(page0);
+        assertTrue(pool.unpinPage(page0.getPageId(), false));
+
+        // Scenario: a miss is stuck in its disk read.
+        AtomicReference<Page> first = new AtomicReference<>();
+        AtomicReference<Page> second = new AtomicReference<>();
+        Thread firstFetcher = new Thread(() -> first.set(pool.fetchPage(slowPageId)));
+        firstFetcher.start();
+        readStarted.await();
+
+        // Scenario: hits, other misses and new pages go on while the read is in progress.
+        assertSame(page0, pool.fetchPage(page0.getPageId()));
+        assertTrue(pool.unpinPage(page0.getPageId(), false));
+        assertNotNull(pool.fetchPage(7));
+        assertNotNull(pool.newPage());
+
+        // Scenario: a second fetcher of the same page waits for the read in progress instead of reading it again.
+        Thread secondFetcher = new Thread(() -> second.set(pool.fetchPage(slowPageId)));
+        secondFetcher.start();
+        secondFetcher.join(100);
+        assertTrue(secondFetcher.isAlive());
+        finishRead.countDown();
+        firstFetcher.join();
+        secondFetcher.join();
+        assertNotNull(first.get());
+        assertSame(first.get(), second.get());
+        assertEquals(slowPageId, first.get().getPageId());
+        assertEquals(1, slowReads.get());
+        slowDisk.shutDown();
+        new File("test_slow.db").delete();
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testVictimFetchedDuringWriteBackStays() throws Exception {
+        CountDownLatch writeStarted = new CountDownLatch(1);
+        CountDownLatch finishWrite = new CountDownLatch(1);
+        AtomicInteger victimPageId = new AtomicInteger(-1);
+        DiskManager slowDisk = new FileChannelDiskManager("test_slow.db") {
+            @Override
+            public long writePage(int pageId, ByteBuffer pageData) {
+                if (victimPageId.compareAndSet(-1, pageId)) {
+                    writeStarted.countDown();
+                    try {
+                        finishWrite.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.writePage(pageId, pageData);
+            }
+        };
+        BufferPoolManager pool = new BufferPoolManagerImpl(2, slowDisk, 0);
+        for (int i = 0; i < 2; ++i) {
+            Page page = pool.newPage();
+            page.getBuffer().putInt(64, i);
+            assertTrue(pool.unpinPage(page.getPageId(), true));
+        }
+
+        // Scenario: a miss picks a dirty victim and writes it back, the victim is fetched and released clean meanwhile.
+        AtomicReference<Page> missed = new AtomicReference<>();
+        Thread fetcher = new Thread(() -> missed.set(pool.fetchPage(10)));
+        fetcher.start();
+        writeStarted.await();
+        Page victim = pool.fetchPage(victimPageId.get());
+        assertNotNull(victim);
+        assertEquals(victimPageId.get(), victim.getPageId());
+        assertTrue(pool.unpinPage(victimPageId.get(), false));
+        finishWrite.countDown();
+        fetcher.join();
+
+        // Scenario: the miss took the other frame, the page that was used stays in the pool.
+        assertNotNull(missed.get());
+        assertEquals(10, missed.get().getPageId());
+        long misses = pool.getMetrics().getMisses();
+        assertSame(victim, pool.fetchPage(victimPageId.get()));
+        assertEquals(misses, pool.getMetrics().getMisses());
+        assertTrue(pool.unpinPage(victimPageId.get(), false));
+        assertTrue(pool.unpinPage(10, false));
+        slowDisk.shutDown();
+        new File("test_slow.db").delete();
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testOffHeapFrames() {
+        DatabaseConfig.getInstance().setOffHeapFrames(true);
+        BufferPoolManager pool;
+        try {
+            pool = new BufferPoolManagerImpl(2, this.diskManager, 0);
+        } finally {
+            DatabaseConfig.getInstance().setOffHeapFrames(false);
+        }
+
+        // Scenario: off-heap pages are only reachable through their buffer.
+        Page page0 = pool.newPage();
+        assertNotNull(page0);
+        assertTrue(page0.getBuffer().isDirect());
+        page0.getBuffer().putLong(8, 0x1122334455667788L);
+        assertTrue(pool.unpinPage(0, true));
+
+        // Scenario: page 0 is written from its slot when it's evicted, and read back into a slot.
+        for (int i = 0; i < 2; ++i) {
+            Page page = pool.newPage();
+            assertNotNull(page);
+            assertTrue(pool.unpinPage(page.getPageId(), false));
+        }
+        page0 = pool.fetchPage(0);
+        assertNotNull(page0);
+        assertEquals(0x1122334455667788L, page0.getBuffer().getLong(8));
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testPrefetchAndSequentialReadAhead() throws Exception {
+        AtomicInteger reads = new AtomicInteger();
+        AtomicInteger batchReads = new AtomicInteger();
+        DiskManager countingDisk = new FileChannelDiskManager("test_prefetch.db") {
+            @Override
+            public void readPage(int pageId, ByteBuffer pageData) {
+                reads.incrementAndGet();
+                super.readPage(pageId, pageData);
+            }
+
+            @Override
+            public void readPages(int firstPageId, ByteBuffer[] pageData) {
+                reads.addAndGet(pageData.length);
+                batchReads.incrementAndGet();
+                super.readPages(firstPageId, pageData);
+            }
+        };
+        DatabaseConfig conf = DatabaseConfig.getInstance();
+        conf.setReadAheadPages(8);
+        BufferPoolManagerImpl pool;
+        try {
+            // an empty pool over 64 allocated pages
+            pool = new BufferPoolManagerImpl(32, countingDisk, 64);
+        } finally {
+            conf.setReadAheadPages(0);
+        }
+
+        // Scenario: an explicit prefetch reads the pages in the background, fetching them doesn't read again.
+        pool.prefetch(40, 4);
+        awaitReads(reads, 4);
+        for (int pageId = 43; pageId >= 40; --pageId) {
+            assertEquals(pageId, pool.fetchPage(pageId).getPageId());
+            assertTrue(pool.unpinPage(pageId, false));
+        }
+        assertEquals(4, reads.get());
+        assertEquals(4, pool.getPrefetchedPageCount());
+        // the consecutive pages are read with one I/O
+        assertEquals(1, batchReads.get());
+
+        // Scenario: pages that are resident or were never allocated are not prefetched.
+        pool.prefetch(62, 8);
+        awaitReads(reads, 6);
+
+        // Scenario: a sequential scan of 16 pages keeps a window of 8 pages read ahead of it, so it reads pages 0..21.
+        for (int pageId = 0; pageId < 16; ++pageId) {
+            assertNotNull(pool.fetchPage(pageId));
+            assertTrue(pool.unpinPage(pageId, false));
+        }
+        awaitReads(reads, 6 + 22);
+
+        // Scenario: the scan goes on over the pages read ahead without reading them, and moves the window to 22..26.
+        for (int pageId = 16; pageId < 22; ++pageId) {
+            assertNotNull(pool.fetchPage(pageId));
+            assertTrue(pool.unpinPage(pageId, false));
+        }
+        awaitReads(reads, 6 + 22 + 5);
+        pool.shutDown();
+        countingDisk.shutDown();
+        new File("test_prefetch.db").delete();
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    // waits till the disk saw the expected number of reads, and checks it doesn't see more
+    private static void awaitReads(AtomicInteger reads, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (reads.get() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(50);
+        assertEquals(expected, reads.get());
+    }
+
+    @Test
+    public void testScanRingAndScanSharing() {
+        AtomicInteger reads = new AtomicInteger();
+        DiskManager countingDisk = new FileChannelDiskManager("test_scan.db") {
+            @Override
+            public void readPage(int pageId, ByteBuffer pageData) {
+                reads.incrementAndGet();
+                super.readPage(pageId, pageData);
+            }
+        };
+        DatabaseConfig conf = DatabaseConfig.getInstance();
+        int oldScanRingFrames = conf.getScanRingFrames();
+        conf.setScanRingFrames(4);
+        BufferPoolManager pool;
+        try {
+            // 8 hot pages and a table of 100 pages after them
+            pool = new BufferPoolManagerImpl(16, countingDisk, 108);
+        } finally {
+            conf.setScanRingFrames(oldScanRingFrames);
+        }
+        for (int pageId = 0; pageId < 8; ++pageId) {
+            assertNotNull(pool.fetchPage(pageId));
+            assertTrue(pool.unpinPage(pageId, false));
+        }
+
+        // Scenario: a scan bigger than the pool recycles its ring, the hot pages stay resident.
+        try (PageScan scan = pool.openScan(8, 108)) {
+            int pageId = 8;
+            while (scan.hasNext()) {
+                assertEquals(pageId++, scan.next().getPageId());
+            }
+            assertEquals(108, pageId);
+        }
+        assertEquals(8 + 100, reads.get());
+        for (int pageId = 0; pageId < 8; ++pageId) {
+            assertNotNull(pool.fetchPage(pageId));
+            assertTrue(pool.unpinPage(pageId, false));
+        }
+        assertEquals(8 + 100, reads.get());
+
+        // Scenario: a second scan joins a running one half way, they share the reads,
+        // and the second one wraps around to read the first half it missed.
+        reads.set(0);
+        boolean[] seen = new boolean[108];
+        int seenCount = 0;
+        try (PageScan first = pool.openScan(8, 108)) {
+            for (int i = 0; i < 50; ++i) {
+                first.next();
+            }
+            try (PageScan second = pool.openScan(8, 108)) {
+                while (second.hasNext()) {
+                    if (first.hasNext()) {
+                        first.next();
+                    }
+                    Page page = second.next();
+                    assertFalse(seen[page.getPageId()]);
+                    seen[page.getPageId()] = true;
+                    seenCount++;
+                }
+            }
+        }
+        assertEquals(100, seenCount);
+        // the first scan reads 8..103, 104..107 are still in the frames the previous scan left behind,
+        // the second one joins at 57 and only reads 8..56 by itself
+        assertEquals(96 + 49, reads.get());
+        pool.shutDown();
+        countingDisk.shutDown();
+        new File("test_scan.db").delete();
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testScanOfResidentPagesIsNotAUse() {
+        BufferPoolManager pool = new BufferPoolManagerImpl(8, diskManager, 20, new ClockReplacer(8));
+        for (int pageId = 0; pageId < 8; ++pageId) {
+            assertNotNull(pool.fetchPage(pageId));
+            assertTrue(pool.unpinPage(pageId, false));
+        }
+        // the miss sweeps the use bits of every frame away and takes page 1, the hand stops on its frame
+        assertNotNull(pool.fetchPage(8));
+        assertTrue(pool.unpinPage(8, false));
+
+        // Scenario: a scan reads resident pages 2 and 3, it pins them without setting their use bits.
+        try (PageScan scan = pool.openScan(2, 4)) {
+            while (scan.hasNext()) {
+                scan.next();
+            }
+        }
+
+        // Scenario: the next miss takes page 2 right after the hand, as if the scan never touched it.
+        assertNotNull(pool.fetchPage(9));
+        assertTrue(pool.unpinPage(9, false));
+        long misses = pool.getMetrics().snapshot().getMisses();
+        for (int pageId = 3; pageId < 8; ++pageId) {
+            assertNotNull(pool.fetchPage(pageId));
+            assertTrue(pool.unpinPage(pageId, false));
+        }
+        assertEquals(misses, pool.getMetrics().snapshot().getMisses());
+        assertNotNull(pool.fetchPage(2));
+        assertTrue(pool.unpinPage(2, false));
+        assertEquals(misses + 1, pool.getMetrics().snapshot().getMisses());
+        pool.shutDown();
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testPageGuards() throws Exception {
+        // Scenario: a write guard latches the page and unpins it dirty when it's closed.
+        int pageId;
+        try (BasicPageGuard guard = bpm.newPageGuarded()) {
+            pageId = guard.getPageId();
+            try (WritePageGuard writeGuard = guard.upgradeWrite()) {
+                writeGuard.getBuffer().putInt(8, 42);
+            }
+            // the pin moved to the write guard, closing the basic guard does nothing
+        }
+        Page page = bpm.fetchPage(pageId);
+        assertEquals(1, page.getPinCount());
+        assertTrue(page.isDirty());
+        assertTrue(bpm.unpinPage(pageId, false));
+
+        // Scenario: an optimistic read that no writer crossed is valid without taking the latch.
+        try (ReadPageGuard guard = bpm.fetchPageOptimistic(pageId)) {
+            assertFalse(guard.isLatched());
+            assertEquals(42, guard.getBuffer().getInt(8));
+            assertTrue(guard.validate());
+        }
+
+        // Scenario: a write in the middle of an optimistic read fails its validation, the latched retry sees the write.
+        try (ReadPageGuard guard = bpm.fetchPageOptimistic(pageId)) {
+            int value = guard.getBuffer().getInt(8);
+            Thread writer = new Thread(() -> {
+                try (WritePageGuard writeGuard = bpm.fetchPageWrite(pageId)) {
+                    writeGuard.getBuffer().putInt(8, value + 1);
+                }
+            });
+            writer.start();
+            writer.join();
+            assertFalse(guard.validate());
+            guard.latch();
+            assertTrue(guard.validate());
+            assertEquals(43, guard.getBuffer().getInt(8));
+
+            // Scenario: a writer waits for the read latch.
+            Thread blockedWriter = new Thread(() -> bpm.fetchPageWrite(pageId).close());
+            blockedWriter.start();
+            blockedWriter.join(100);
+            assertTrue(blockedWriter.isAlive());
+            guard.close();
+            blockedWriter.join();
+        }
+
+        // Scenario: releasing a latch the page doesn't hold is an error, not a silent no-op.
+        page = bpm.fetchPage(pageId);
+        try {
+            page.readUnlatch();
+            fail();
+        } catch (IllegalMonitorStateException expected) {
+        }
+        page.readLatch();
+        try {
+            page.writeUnlatch();
+            fail();
+        } catch (IllegalMonitorStateException expected) {
+        }
+        page.readUnlatch();
+        assertTrue(bpm.unpinPage(pageId, false));
+
+        // Scenario: every guard gave its pin back.
+        page = bpm.fetchPage(pageId);
+        assertEquals(1, page.getPinCount());
+        assertTrue(bpm.unpinPage(pageId, false));
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        for (int i = 0; i < BUFFER_POOL_SIZE; ++i) {
+            Page page = bpm.newPage();
+            bpm.unpinPage(page.getPageId(), i % 2 == 0);
+        }
+        // hits
+        for (int i = 0; i < BUFFER_POOL_SIZE; ++i) {
+            bpm.fetchPage(i);
+            bpm.unpinPage(i, false);
+        }
+        // misses, each one evicts one of the first pages, half of them are dirty
+        for (int i = 0; i < BUFFER_POOL_SIZE; ++i) {
+            Page page = bpm.newPage();
+            bpm.unpinPage(page.getPageId(), false);
+        }
+        for (int i = 0; i < 4; ++i) {
+            assertNotNull(bpm.fetchPage(i));
+            bpm.unpinPage(i, false);
+        }
+
+        BufferPoolMetrics.Snapshot snapshot = bpm.getMetrics().snapshot();
+        assertEquals(BUFFER_POOL_SIZE, snapshot.getHits());
+        assertEquals(4, snapshot.getMisses());
+        assertEquals(BUFFER_POOL_SIZE / 2, snapshot.getDirtyEvictions());
+        assertEquals(BUFFER_POOL_SIZE + 4, snapshot.getEvictions());
+        assertEquals(BUFFER_POOL_SIZE / (BUFFER_POOL_SIZE + 4.0), snapshot.getHitRatio(), 1e-9);
+        assertTrue(snapshot.getLatchAcquisitions() > 0);
+        assertEquals(4, diskManager.getMetrics().snapshot().getReads().getCount());
+        assertTrue(diskManager.getMetrics().snapshot().getWrites().getCount() >= BUFFER_POOL_SIZE / 2);
+
+        // the same counters are published over JMX
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        boolean found = false;
+        for (ObjectName name : server.queryNames(new ObjectName("com.husam.sqlight:type=BufferPool,*"), null)) {
+            if ((long) server.getAttribute(name, "Misses") == 4 && (long) server.getAttribute(name, "Hits") == BUFFER_POOL_SIZE) {
+                found = true;
+            }
+        }
+        assertTrue(found);
+        // and unpublished on shut down
+        bpm.shutDown();
+        for (ObjectName name : server.queryNames(new ObjectName("com.husam.sqlight:type=BufferPool,*"), null)) {
+            assertFalse((long) server.getAttribute(name, "Misses") == 4 && (long) server.getAttribute(name, "Hits") == BUFFER_POOL_SIZE);
+        }
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testWriteAheadLogBeforeData() throws Exception {
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+        LogManager log = new LogManager("test.log", 4096, 0);
+        // the pageLSN and the flushedLSN of every logged page at the moment it reaches the disk manager
+        List<int[]> loggedWrites = Collections.synchronizedList(new ArrayList<>());
+        this.diskManager = new FileChannelDiskManager(DB_FILE_NAME, DurabilityMode.DEFERRED) {
+            @Override
+            public long writePage(int pageId, ByteBuffer pageData) {
+                record(pageData);
+                return super.writePage(pageId, pageData);
+            }
+
+            @Override
+            public long writePages(int firstPageId, ByteBuffer[] pageData) {
+                for (ByteBuffer page : pageData) {
+                    record(page);
+                }
+                return super.writePages(firstPageId, pageData);
+            }
+
+            @Override
+            public long writePages(int[] pageIds, ByteBuffer[] pageData) {
+                for (ByteBuffer page : pageData) {
+                    record(page);
+                }
+                return super.writePages(pageIds, pageData);
+            }
+
+            private void record(ByteBuffer pageData) {
+                // pages are little endian, a duplicate is big endian again
+                int pageLSN = pageData.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(pageData.position() + Integer.BYTES);
+                if (pageLSN != LogManager.INVALID_LSN) {
+                    loggedWrites.add(new int[]{pageLSN, log.getFlushedLSN()});
+                }
+            }
+        };
+        BufferPoolManager pool = new BufferPoolManagerImpl(BUFFER_POOL_SIZE, diskManager, log);
+        List<Integer> pageIds = new ArrayList<>();
+        for (int i = 0; i < 3 * BUFFER_POOL_SIZE; ++i) {
+            try (BasicPageGuard guard = pool.newPageGuarded()) {
+                pageIds.add(guard.getPageId());
+            }
+        }
+        // log every change before making it, nothing flushes the log but the evictions
+        for (int round = 0; round < 3; ++round) {
+            for (int pageId : pageIds) {
+                try (WritePageGuard guard = pool.fetchPageWrite(pageId)) {
+                    int lsn = log.appendLogRecord(ByteBuffer.allocate(16));
+                    guard.getBuffer().putInt(64, round);
+                    guard.getBuffer().putInt(Integer.BYTES, lsn);
+                }
+            }
+        }
+        int evictions = loggedWrites.size();
+        assertTrue(evictions > 0);
+        pool.flushAllPages();
+        // the flush wrote the changes of the last round too
+        assertTrue(loggedWrites.size() > evictions);
+        synchronized (loggedWrites) {
+            for (int[] write : loggedWrites) {
+                assertTrue("page with LSN " + write[0] + " written while the log was flushed to " + write[1], write[1] >= write[0]);
+            }
+        }
+        pool.shutDown();
+        log.shutDown();
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+        new File("test.log").delete();
+    }
+
+    @Test
+    public void testCheckpoint() throws Exception {
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+        List<int[]> batches = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger singleWrites = new AtomicInteger();
+        AtomicInteger runWrites = new AtomicInteger();
+        AtomicInteger syncs = new AtomicInteger();
+        this.diskManager = new FileChannelDiskManager(DB_FILE_NAME, DurabilityMode.DEFERRED) {
+            @Override
+            public long writePage(int pageId, ByteBuffer pageData) {
+                singleWrites.incrementAndGet();
+                return super.writePage(pageId, pageData);
+            }
+
+            @Override
+            public long writePages(int[] pageIds, ByteBuffer[] pageData) {
+                batches.add(pageIds.clone());
+                for (int from = 0, to; from < pageIds.length; from = to) {
+                    to = DiskManager.runEnd(pageIds, from);
+                    runWrites.incrementAndGet();
+                }
+                return super.writePages(pageIds, pageData);
+            }
+
+            @Override
+            public void sync() {
+                syncs.incrementAndGet();
+                super.sync();
+            }
+        };
+        BufferPoolManager pool = new BufferPoolManagerImpl(BUFFER_POOL_SIZE, diskManager, 0);
+        for (int i = 0; i < BUFFER_POOL_SIZE; ++i) {
+            pool.newPage();
+        }
+        // dirty every page but 4, in reverse order
+        for (int i = BUFFER_POOL_SIZE - 1; i >= 0; --i) {
+            if (i != 4) {
+                pool.fetchPage(i).getBuffer().putInt(64, i + 100);
+                assertTrue(pool.unpinPage(i, true));
+            }
+            assertTrue(pool.unpinPage(i, false));
+        }
+
+        // the dirty pages are written in page id order with one batch, the runs of consecutive pages with one write each, and synced once
+        long writesBefore = diskManager.getMetrics().snapshot().getWrites().getCount();
+        assertEquals(BUFFER_POOL_SIZE - 1, pool.checkpoint());
+        assertEquals(0, singleWrites.get());
+        assertEquals(1, batches.size());
+        assertArrayEquals(new int[]{0, 1, 2, 3, 5, 6, 7, 8, 9}, batches.get(0));
+        assertEquals(2, runWrites.get());
+        assertEquals(2, diskManager.getMetrics().snapshot().getWrites().getCount() - writesBefore);
+        assertEquals(1, syncs.get());
+        // nothing is dirty anymore
+        assertEquals(0, pool.checkpoint());
+        assertEquals(1, batches.size());
+
+        // the pool stays online while the background checkpoints write, the last write of every page wins
+        int oldInterval = (int) DatabaseConfig.getInstance().getCheckpointIntervalMillis();
+        DatabaseConfig.getInstance().setCheckpointIntervalMillis(1);
+        BufferPoolManager online = new BufferPoolManagerImpl(BUFFER_POOL_SIZE, diskManager, BUFFER_POOL_SIZE);
+        DatabaseConfig.getInstance().setCheckpointIntervalMillis(oldInterval);
+        for (int i = 0; i < BUFFER_POOL_SIZE; ++i) {
+            online.unpinPage(online.newPage().getPageId(), true);
+        }
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; ++t) {
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 2000; ++i) {
+                    int pageId = BUFFER_POOL_SIZE + ThreadLocalRandom.current().nextInt(BUFFER_POOL_SIZE);
+                    try (WritePageGuard guard = online.fetchPageWrite(pageId)) {
+                        guard.getBuffer().putInt(64, guard.getBuffer().getInt(64) + 1);
+                    }
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        online.flushAllPages();
+        online.shutDown();
+        int total = 0;
+        ByteBuffer page = ByteBuffer.allocate(DatabaseConfig.getInstance().getPageSize()).order(ByteOrder.LITTLE_ENDIAN);
+        for (int pageId = BUFFER_POOL_SIZE; pageId < 2 * BUFFER_POOL_SIZE; ++pageId) {
+            page.clear();
+            diskManager.readPage(pageId, page);
+            total += page.getInt(64);
+        }
+        assertEquals(writers.length * 2000, total);
+        pool.shutDown();
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testCheckpointKeepsPagesUntilWritten() throws Exception {
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+        AtomicInteger failures = new AtomicInteger(1);
+        AtomicReference<BufferPoolManager> poolRef = new AtomicReference<>();
+        AtomicReference<Page> fetchedDuringWrite = new AtomicReference<>();
+        this.diskManager = new FileChannelDiskManager(DB_FILE_NAME, DurabilityMode.DEFERRED) {
+            @Override
+            public long writePages(int[] pageIds, ByteBuffer[] pageData) {
+                // every page of the batch is still pinned, so a miss finds no frame to evict
+                fetchedDuringWrite.set(poolRef.get().fetchPage(50));
+                if (failures.getAndDecrement() > 0) {
+                    throw new RuntimeException("disk is gone");
+                }
+                return super.writePages(pageIds, pageData);
+            }
+        };
+        BufferPoolManager pool = new BufferPoolManagerImpl(BUFFER_POOL_SIZE, diskManager, 0);
+        poolRef.set(pool);
+        for (int i = 0; i < BUFFER_POOL_SIZE; ++i) {
+            pool.newPage().getBuffer().putInt(64, i + 100);
+            assertTrue(pool.unpinPage(i, true));
+        }
+
+        // Scenario: the write fails, the pages were never evictable meanwhile and they are still dirty.
+        try {
+            pool.checkpoint();
+            fail("the checkpoint write should have failed");
+        } catch (RuntimeException e) {
+            assertEquals("disk is gone", e.getMessage());
+        }
+        assertNull(fetchedDuringWrite.get());
+
+        // Scenario: the next checkpoint writes every page, and then they are clean.
+        assertEquals(BUFFER_POOL_SIZE, pool.checkpoint());
+        assertNull(fetchedDuringWrite.get());
+        assertEquals(0, pool.checkpoint());
+        ByteBuffer page = ByteBuffer.allocate(DatabaseConfig.getInstance().getPageSize()).order(ByteOrder.LITTLE_ENDIAN);
+        diskManager.readPage(3, page);
+        assertEquals(103, page.getInt(64));
+        pool.shutDown();
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testAsyncFetch() throws Exception {
+        int numOfPages = 2000;
+        ByteBuffer image = ByteBuffer.allocate(DatabaseConfig.getInstance().getPageSize()).order(ByteOrder.LITTLE_ENDIAN);
+        for (int pageId = 0; pageId < numOfPages; ++pageId) {
+            image.clear();
+            image.putInt(64, pageId + 7);
+            diskManager.writePage(pageId, image);
+        }
+        BufferPoolManager pool = new BufferPoolManagerImpl(numOfPages, diskManager, numOfPages);
+
+        // Scenario: one thread keeps every fetch in flight at once, they all complete with their own page.
+        List<CompletableFuture<Page>> fetches = new ArrayList<>();
+        for (int pageId = 0; pageId < numOfPages; ++pageId) {
+            fetches.add(pool.fetchPageAsync(pageId));
+        }
+        // a second fetch of a page that is being read waits for the same read
+        CompletableFuture<Page> again = pool.fetchPageAsync(5);
+        CompletableFuture.allOf(fetches.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        for (int pageId = 0; pageId < numOfPages; ++pageId) {
+            Page page = fetches.get(pageId).get();
+            assertEquals(pageId, page.getPageId());
+            assertEquals(pageId + 7, page.getBuffer().getInt(64));
+        }
+        assertSame(fetches.get(5).get(), again.get(30, TimeUnit.SECONDS));
+        assertEquals(numOfPages, pool.getMetrics().snapshot().getMisses());
+
+        // Scenario: a hit is done right away, and the async pins are given back like any other.
+        CompletableFuture<Page> hit = pool.fetchPageAsync(0);
+        assertTrue(hit.isDone());
+        assertTrue(pool.unpinPage(0, false));
+        assertTrue(pool.unpinPage(5, false));
+        for (int pageId = 0; pageId < numOfPages; ++pageId) {
+            assertTrue(pool.unpinPage(pageId, false));
+        }
+
+        // Scenario: with every frame pinned a fetch completes with null, and so does a new page.
+        for (int pageId = 0; pageId < numOfPages; ++pageId) {
+            assertNotNull(pool.fetchPage(pageId));
+        }
+        assertNull(pool.fetchPageAsync(numOfPages + 1).get(30, TimeUnit.SECONDS));
+        assertNull(pool.newPageAsync().get(30, TimeUnit.SECONDS));
+        pool.shutDown();
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testAsyncFetchWritesBackDirtyVictimsOnTheScheduler() throws Exception {
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+        List<String> writers = Collections.synchronizedList(new ArrayList<>());
+        this.diskManager = new FileChannelDiskManager(DB_FILE_NAME, DurabilityMode.DEFERRED) {
+            @Override
+            public long writePage(int pageId, ByteBuffer pageData) {
+                writers.add(Thread.currentThread().getName());
+                return super.writePage(pageId, pageData);
+            }
+
+            @Override
+            public long writePages(int firstPageId, ByteBuffer[] pages) {
+                for (int i = 0; i < pages.length; ++i) {
+                    writers.add(Thread.currentThread().getName());
+                }
+                return super.writePages(firstPageId, pages);
+            }
+        };
+        BufferPoolManager pool = new BufferPoolManagerImpl(BUFFER_POOL_SIZE, diskManager, 0);
+        for (int i = 0; i < BUFFER_POOL_SIZE; ++i) {
+            pool.newPage().getBuffer().putInt(64, i + 100);
+            assertTrue(pool.unpinPage(i, true));
+        }
+
+        // Scenario: every frame is dirty, the misses write the victims back on the scheduler, never on the caller.
+        List<CompletableFuture<Page>> fetches = new ArrayList<>();
+        for (int pageId = 50; pageId < 50 + BUFFER_POOL_SIZE / 2; ++pageId) {
+            fetches.add(pool.fetchPageAsync(pageId));
+        }
+        for (int i = 0; i < fetches.size(); ++i) {
+            assertEquals(50 + i, fetches.get(i).get(30, TimeUnit.SECONDS).getPageId());
+        }
+        assertEquals(BUFFER_POOL_SIZE / 2, writers.size());
+
+        // Scenario: new pages evict the rest of the dirty frames, their write backs go to the scheduler too.
+        List<CompletableFuture<Page>> newPages = new ArrayList<>();
+        for (int i = 0; i < BUFFER_POOL_SIZE - BUFFER_POOL_SIZE / 2; ++i) {
+            newPages.add(pool.newPageAsync());
+        }
+        Set<Integer> newPageIds = new HashSet<>();
+        for (CompletableFuture<Page> newPage : newPages) {
+            Page page = newPage.get(30, TimeUnit.SECONDS);
+            assertEquals(1, page.getPinCount());
+            assertTrue(page.getPageId() >= BUFFER_POOL_SIZE);
+            newPageIds.add(page.getPageId());
+        }
+        assertEquals(newPages.size(), newPageIds.size());
+        assertEquals(BUFFER_POOL_SIZE, writers.size());
+        for (String writer : writers) {
+            assertTrue(writer, writer.startsWith("disk-scheduler-"));
+        }
+
+        // Scenario: the evicted pages come back with their changes.
+        for (int pageId = 50; pageId < 50 + BUFFER_POOL_SIZE / 2; ++pageId) {
+            assertTrue(pool.unpinPage(pageId, false));
+        }
+        for (int pageId : newPageIds) {
+            assertTrue(pool.unpinPage(pageId, false));
+        }
+        for (int pageId = 0; pageId < BUFFER_POOL_SIZE; ++pageId) {
+            assertEquals(pageId + 100, pool.fetchPageAsync(pageId).get(30, TimeUnit.SECONDS).getBuffer().getInt(64));
+            assertTrue(pool.unpinPage(pageId, false));
+        }
+        pool.shutDown();
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testHighPriorityPageSurvivesMissBurst() {
+        for (int i = 0; i < BUFFER_POOL_SIZE; ++i) {
+            bpm.newPage();
+        }
+        // page 1 is the first page the clock hand reaches
+        assertTrue(bpm.unpinPage(1, false, Priority.HIGH));
+        for (int i = 0; i < BUFFER_POOL_SIZE; ++i) {
+            if (i != 1) {
+                assertTrue(bpm.unpinPage(i, false));
+            }
+        }
+
+        // Scenario: a burst of misses evicts every other page, the protected one stays.
+        for (int pageId = 100; pageId < 100 + BUFFER_POOL_SIZE - 1; ++pageId) {
+            assertNotNull(bpm.fetchPage(pageId));
+            assertTrue(bpm.unpinPage(pageId, false));
+        }
+        long misses = bpm.getMetrics().snapshot().getMisses();
+        assertNotNull(bpm.fetchPage(1));
+        assertEquals(misses, bpm.getMetrics().snapshot().getMisses());
+        assertTrue(bpm.unpinPage(1, false));
+        assertNotNull(bpm.fetchPage(2));
+        assertEquals(misses + 1, bpm.getMetrics().snapshot().getMisses());
+        assertTrue(bpm.unpinPage(2, false));
+        bpm.shutDown();
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
 }
@@ -0,0 +1,158 @@
+package come.husam.cachemanager.replacers;
+
+import com.husam.cachemanager.replacers.Priority;
+import com.husam.cachemanager.replacers.Replacer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * the behaviour both clock replacers share, a subclass runs it against its own implementation
+ */
+public abstract class ClockReplacerTestBase {
+
+    protected Replacer replacer;
+
+    protected abstract Replacer newReplacer(int numOfFrames);
+
+    protected abstract Replacer newReplacer(int numOfFrames, int maxProtectedFrames);
+
+    @Before
+    public void setUp() {
+        this.replacer = newReplacer(7);
+    }
+    @Test
+    public void sampleTest() {
+
+        // Scenario: unpin six elements, i.e. add them to the replacer.
+        replacer.unpin(1);
+        replacer.unpin(2);
+        replacer.unpin(3);
+        replacer.unpin(4);
+        replacer.unpin(5);
+        replacer.unpin(6);
+        replacer.unpin(1);
+        assertEquals(6, replacer.size());
+
+        // Scenario: get three victims from the clock.
+        int value = replacer.victim();
+        assertEquals(1, value);
+        value = replacer.victim();
+        assertEquals(2, value);
+        value = replacer.victim();
+        assertEquals(3, value);
+
+        // Scenario: pin elements in the replacer.
+        // Note that 3 has already been victimized, so pinning 3 should have no effect.
+        replacer.pin(3);
+        replacer.pin(4);
+        assertEquals(2, replacer.size());
+
+        // Scenario: unpin 4. We expect that the reference bit of 4 will be set to 1.
+        replacer.unpin(4);
+
+        // Scenario: continue looking for victims. We expect these victims.
+        value = replacer.victim();
+        assertEquals(5, value);
+        value = replacer.victim();
+        assertEquals(6, value);
+        value = replacer.victim();
+        assertEquals(4, value);
+    }
+
+    @Test
+    public void testColdUnpin() {
+        // Scenario: frame 1 was used, frame 2 holds a prefetched page that was never used.
+        replacer.unpin(1);
+        replacer.pin(1);
+        replacer.unpin(1);
+        replacer.unpinCold(2);
+        assertEquals(2, replacer.size());
+
+        // Scenario: the hand reaches frame 1 first, but the cold frame goes before it.
+        assertEquals(2, replacer.victim());
+        assertEquals(1, replacer.victim());
+    }
+
+    @Test
+    public void testOnlyVictimIsUsedProtectedFrameUnderTheHand() {
+        this.replacer = newReplacer(7, 1);
+        // Scenario: the only evictable frame is the one under the hand, it's protected and was used since.
+        replacer.unpin(0, Priority.HIGH);
+        replacer.pin(0);
+        replacer.unpin(0);
+        assertEquals(1, replacer.size());
+
+        // Scenario: the hand clears its use bit, uses up its passes and takes it on the last step it's given.
+        assertEquals(0, replacer.victim());
+        assertEquals(-1, replacer.victim());
+    }
+
+    @Test
+    public void testHighPriority() {
+        this.replacer = newReplacer(7, 2);
+        // Scenario: frames 1 and 2 are protected, frame 3 asks for it too but the share is full.
+        replacer.unpin(1, Priority.HIGH);
+        replacer.unpin(2, Priority.HIGH);
+        replacer.unpin(3, Priority.HIGH);
+        replacer.unpin(4, Priority.NORMAL);
+        replacer.unpin(5);
+        replacer.unpin(6, Priority.LOW);
+        assertEquals(6, replacer.size());
+
+        // Scenario: the look ahead leaves the protected frames out.
+        int[] next = new int[6];
+        assertEquals(4, replacer.nextVictims(next));
+        assertArrayEquals(new int[]{6, 3, 4, 5}, Arrays.copyOf(next, 4));
+
+        // Scenario: the low frame goes first, the protected frames outlive the others till their passes are used up.
+        assertEquals(6, replacer.victim());
+        assertEquals(3, replacer.victim());
+        assertEquals(4, replacer.victim());
+        assertEquals(5, replacer.victim());
+        assertEquals(1, replacer.victim());
+        assertEquals(2, replacer.victim());
+        assertEquals(0, replacer.size());
+
+        // Scenario: a protected frame that gets used keeps its passes, the one that doesn't goes first.
+        replacer.unpin(1, Priority.HIGH);
+        replacer.unpin(2, Priority.HIGH);
+        replacer.unpin(3);
+        assertEquals(3, replacer.victim());
+        replacer.pin(1);
+        replacer.unpin(1);
+        assertEquals(2, replacer.victim());
+        assertEquals(1, replacer.victim());
+
+        // Scenario: a protected frame that is removed or unpinned cold gives its place in the share back.
+        replacer.unpin(1, Priority.HIGH);
+        replacer.unpin(2, Priority.HIGH);
+        replacer.remove(2);
+        replacer.unpin(1, Priority.LOW);
+        replacer.unpin(3, Priority.HIGH);
+        replacer.unpin(4, Priority.HIGH);
+        replacer.unpin(5, Priority.HIGH);
+        assertEquals(5, replacer.victim());
+        assertEquals(1, replacer.victim());
+        assertEquals(3, replacer.victim());
+        assertEquals(4, replacer.victim());
+
+        // Scenario: a victim the buffer pool can't evict yet is re-admitted with a plain unpin,
+        // that keeps the priority the fetch that raced with the eviction gave it.
+        replacer.unpin(1);
+        replacer.unpin(2);
+        int victim = replacer.victim();
+        replacer.pin(victim);
+        replacer.unpin(victim, Priority.HIGH);
+        replacer.unpin(victim);
+        replacer.unpin(3);
+        int other = victim == 1 ? 2 : 1;
+        assertEquals(other, replacer.victim());
+        assertEquals(3, replacer.victim());
+        assertEquals(victim, replacer.victim());
+    }
+}
@@ -0,0 +1,54 @@
+package come.husam.cachemanager.replacers;
+
+import com.husam.cachemanager.replacers.LRUKReplacer;
+import com.husam.cachemanager.replacers.Replacer;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LRUKReplacerTest {
+
+    private Replacer replacer;
+    @Before
+    public void setUp() {
+        this.replacer = new LRUKReplacer(7, 2);
+    }
+    @Test
+    public void sampleTest() {
+
+        // Scenario: access frames 1 to 6 once and make them evictable, then access frame 1 a second time.
+        for (int i = 1; i <= 6; ++i) {
+            replacer.pin(i);
+            replacer.unpin(i);
+        }
+        replacer.pin(1);
+        replacer.unpin(1);
+        assertEquals(6, replacer.size());
+
+        // Scenario: frames with less than two accesses have an infinite distance and go first, earliest access first.
+        assertEquals(2, replacer.victim());
+        assertEquals(3, replacer.victim());
+        assertEquals(4, replacer.victim());
+        assertEquals(3, replacer.size());
+
+        // Scenario: a victimized frame gets loaded again and stays pinned, frame 4 is loaded and released.
+        replacer.pin(3);
+        replacer.pin(4);
+        replacer.unpin(4);
+        assertEquals(4, replacer.size());
+
+        // Scenario: 4 was accessed after 5 and 6, but all three have a single access, frame 1 has two and goes last.
+        assertEquals(5, replacer.victim());
+        assertEquals(6, replacer.victim());
+        assertEquals(4, replacer.victim());
+        assertEquals(1, replacer.victim());
+        assertEquals(-1, replacer.victim());
+
+        // Scenario: once unpinned, frame 3 can be victimized.
+        replacer.unpin(3);
+        assertEquals(1, replacer.size());
+        assertEquals(3, replacer.victim());
+        assertEquals(0, replacer.size());
+    }
+}
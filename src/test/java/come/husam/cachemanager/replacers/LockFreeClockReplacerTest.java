@@ -0,0 +1,162 @@
+package come.husam.cachemanager.replacers;
+
+import com.husam.cachemanager.replacers.LockFreeClockReplacer;
+import com.husam.cachemanager.replacers.Priority;
+import com.husam.cachemanager.replacers.Replacer;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LockFreeClockReplacerTest extends ClockReplacerTestBase {
+
+    @Override
+    protected Replacer newReplacer(int numOfFrames) {
+        return new LockFreeClockReplacer(numOfFrames);
+    }
+
+    @Override
+    protected Replacer newReplacer(int numOfFrames, int maxProtectedFrames) {
+        return new LockFreeClockReplacer(numOfFrames, maxProtectedFrames);
+    }
+
+    @Test
+    public void testConcurrentVictims() throws InterruptedException {
+        final int numOfFrames = 64;
+        final int numOfThreads = 8;
+        final int iterations = 100000;
+        Replacer concurrent = new LockFreeClockReplacer(numOfFrames);
+        for (int i = 0; i < numOfFrames; ++i) {
+            concurrent.unpin(i);
+        }
+
+        // Scenario: many threads evict frames and hand them back at the same time,
+        // a frame must never be handed to two threads before it's given back.
+        AtomicIntegerArray owned = new AtomicIntegerArray(numOfFrames);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[numOfThreads];
+        for (int t = 0; t < numOfThreads; ++t) {
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < iterations; ++i) {
+                        int frameId = concurrent.victim();
+                        if (frameId == -1) {
+                            continue;
+                        }
+                        assertTrue(owned.compareAndSet(frameId, 0, 1));
+                        // pinning a victimized frame has no effect, like a hit that raced with the eviction
+                        concurrent.pin(frameId);
+                        owned.set(frameId, 0);
+                        concurrent.unpin(frameId);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+
+        // Scenario: every frame was given back, so all of them are evictable exactly once.
+        assertEquals(numOfFrames, concurrent.size());
+        for (int i = 0; i < numOfFrames; ++i) {
+            assertTrue(concurrent.victim() != -1);
+        }
+        assertEquals(-1, concurrent.victim());
+        assertEquals(0, concurrent.size());
+    }
+
+    @Test
+    public void testConcurrentVictimsAreDistinct() throws InterruptedException {
+        final int numOfFrames = 1024;
+        final int numOfThreads = 8;
+        for (int round = 0; round < 20; ++round) {
+            Replacer concurrent = new LockFreeClockReplacer(numOfFrames);
+            for (int i = 0; i < numOfFrames; ++i) {
+                concurrent.unpin(i);
+                // half of the frames were used, so the hands have to clear use bits while they race
+                if (i % 2 == 0) {
+                    concurrent.pin(i);
+                    concurrent.unpin(i);
+                }
+            }
+
+            // Scenario: all threads start evicting at once and nobody gives a frame back,
+            // so every frame is handed out exactly once and the replacer ends up empty.
+            AtomicIntegerArray handedOut = new AtomicIntegerArray(numOfFrames);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] threads = new Thread[numOfThreads];
+            for (int t = 0; t < numOfThreads; ++t) {
+                threads[t] = new Thread(() -> {
+                    try {
+                        start.await();
+                        for (int frameId = concurrent.victim(); frameId != -1; frameId = concurrent.victim()) {
+                            assertEquals("frame " + frameId + " was victimized twice", 1, handedOut.incrementAndGet(frameId));
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                });
+                threads[t].start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertNull(failure.get());
+            for (int i = 0; i < numOfFrames; ++i) {
+                assertEquals(1, handedOut.get(i));
+            }
+            assertEquals(0, concurrent.size());
+        }
+    }
+
+    @Test
+    public void testConcurrentVictimsNeverMissWhileFramesAreEvictable() throws InterruptedException {
+        final int numOfThreads = 8;
+        // one frame more than the threads, so whenever a thread asks for a victim at least two frames are evictable
+        final int numOfFrames = numOfThreads + 1;
+        final int iterations = 200000;
+        Replacer concurrent = new LockFreeClockReplacer(numOfFrames, numOfFrames);
+        for (int i = 0; i < numOfFrames; ++i) {
+            concurrent.unpin(i);
+        }
+
+        // Scenario: every thread evicts a frame and hands it back, some of them protected so the hands need many sweeps,
+        // the other threads move the hand meanwhile, but a victim is never missed while frames are evictable.
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[numOfThreads];
+        for (int t = 0; t < numOfThreads; ++t) {
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < iterations; ++i) {
+                        int frameId = concurrent.victim();
+                        assertTrue("no victim with " + concurrent.size() + " evictable frames", frameId != -1);
+                        concurrent.pin(frameId);
+                        concurrent.unpin(frameId, i % 4 == 0 ? Priority.HIGH : Priority.NORMAL);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+        assertEquals(numOfFrames, concurrent.size());
+    }
+}
@@ -0,0 +1,112 @@
+package come.husam.cachemanager.replacers;
+
+import com.husam.cachemanager.replacers.ClockReplacer;
+import com.husam.cachemanager.replacers.Replacer;
+import com.husam.cachemanager.replacers.TwoQueueReplacer;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TwoQueueReplacerTest {
+
+    private static final int NUM_OF_FRAMES = 100;
+    private static final int HOT_PAGES = 50;
+    private static final int SCAN_PAGES = 1000;
+
+    // drives a replacer the way the buffer pool does, and counts the hits
+    private static class SimulatedPool {
+        private final Replacer replacer;
+        private final Map<Integer, Integer> pageToFrame = new HashMap<>();
+        private final Map<Integer, Integer> frameToPage = new HashMap<>();
+        private final ArrayDeque<Integer> freeFrames = new ArrayDeque<>();
+        private int hits;
+
+        SimulatedPool(Replacer replacer) {
+            this.replacer = replacer;
+            for (int i = 0; i < NUM_OF_FRAMES; ++i) {
+                freeFrames.add(i);
+            }
+        }
+
+        void access(int pageId) {
+            Integer frameId = pageToFrame.get(pageId);
+            if (frameId != null) {
+                hits++;
+            } else {
+                frameId = freeFrames.isEmpty() ? replacer.victim() : freeFrames.poll();
+                assertTrue(frameId >= 0);
+                Integer oldPage = frameToPage.remove(frameId);
+                if (oldPage != null) {
+                    pageToFrame.remove(oldPage);
+                }
+                pageToFrame.put(pageId, frameId);
+                frameToPage.put(frameId, pageId);
+                replacer.recordPage(frameId, pageId);
+            }
+            replacer.pin(frameId);
+            replacer.unpin(frameId);
+        }
+
+        double hotHitRatio() {
+            hits = 0;
+            for (int pageId = 0; pageId < HOT_PAGES; ++pageId) {
+                access(pageId);
+            }
+            return (double) hits / HOT_PAGES;
+        }
+    }
+
+    private static double hotHitRatioAfterScan(Replacer replacer) {
+        SimulatedPool pool = new SimulatedPool(replacer);
+        // warm up, the hot set is referenced over and over
+        for (int round = 0; round < 5; ++round) {
+            pool.hotHitRatio();
+        }
+        assertEquals(1.0, pool.hotHitRatio(), 0.0);
+        // a full table scan touches every page once, ten times the size of the pool
+        for (int pageId = HOT_PAGES; pageId < HOT_PAGES + SCAN_PAGES; ++pageId) {
+            pool.access(pageId);
+        }
+        return pool.hotHitRatio();
+    }
+
+    @Test
+    public void testHotSetSurvivesScan() {
+        // Scenario: after the scan the hot pages are all still in the pool.
+        assertEquals(1.0, hotHitRatioAfterScan(new TwoQueueReplacer(NUM_OF_FRAMES)), 0.0);
+
+        // Scenario: the same workload on the clock replacer, the scan flushed the hot set out.
+        assertTrue(hotHitRatioAfterScan(new ClockReplacer(NUM_OF_FRAMES)) < 0.1);
+    }
+
+    @Test
+    public void testGhostPromotesToAm() {
+        Replacer replacer = new TwoQueueReplacer(4, 1, 2);
+        for (int frameId = 0; frameId < 4; ++frameId) {
+            replacer.recordPage(frameId, frameId);
+            replacer.pin(frameId);
+            replacer.unpin(frameId);
+        }
+
+        // Scenario: A1in is over its share, so its oldest page is victimized and remembered as a ghost.
+        assertEquals(0, replacer.victim());
+        assertEquals(3, replacer.size());
+
+        // Scenario: page 0 comes back into frame 0 while its ghost is remembered, it goes to Am.
+        replacer.recordPage(0, 0);
+        replacer.pin(0);
+        replacer.unpin(0);
+
+        // Scenario: the other pages are still in A1in and go before page 0.
+        assertEquals(1, replacer.victim());
+        assertEquals(2, replacer.victim());
+        assertEquals(0, replacer.victim());
+        assertEquals(3, replacer.victim());
+        assertEquals(-1, replacer.victim());
+    }
+}
@@ -0,0 +1,57 @@
+package come.husam.metrics;
+
+import com.husam.metrics.LatencyHistogram;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.snapshot().getPercentileNanos(99));
+        for (int i = 1; i <= 1000; ++i) {
+            histogram.record(i * 1000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1_000_000, snapshot.getMaxNanos());
+        assertEquals(500_500, snapshot.getMeanNanos(), 1e-6);
+        // a percentile is never lower than the exact one, and at most 12.5% higher
+        for (int percentile : new int[]{1, 50, 90, 99}) {
+            long exact = percentile * 10_000L;
+            long reported = snapshot.getPercentileNanos(percentile);
+            assertTrue(percentile + "th: " + reported, reported >= exact && reported <= exact * 1.125);
+        }
+        assertEquals(1_000_000, snapshot.getPercentileNanos(100));
+
+        // small values are exact
+        LatencyHistogram small = new LatencyHistogram();
+        for (int i = 0; i < 16; ++i) {
+            small.record(i);
+        }
+        assertEquals(7, small.snapshot().getPercentileNanos(50));
+    }
+
+    @Test
+    public void testConcurrentRecords() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int threads = 8;
+        int recordsPerThread = 100_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; ++t) {
+            new Thread(() -> {
+                for (int i = 0; i < recordsPerThread; ++i) {
+                    histogram.record(i % 1000);
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        assertEquals(threads * recordsPerThread, histogram.snapshot().getCount());
+        assertEquals(999, histogram.snapshot().getMaxNanos());
+    }
+}
@@ -0,0 +1,148 @@
+package come.husam.recovery;
+
+import com.husam.recovery.LogManager;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LogManagerTest {
+    private static final String LOG_FILE_NAME = "test.log";
+
+    @After
+    public void tearDown() {
+        new File(LOG_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testAppendFlushAndRecover() throws Exception {
+        // no interval, so nothing is flushed till somebody asks
+        LogManager log = new LogManager(LOG_FILE_NAME, 256, 0);
+        assertEquals(LogManager.INVALID_LSN, log.getLastLSN());
+        int first = log.appendLogRecord(record(1));
+        int second = log.appendLogRecord(record(2));
+        assertEquals(1, first);
+        assertEquals(2, second);
+        Thread.sleep(50);
+        assertEquals(LogManager.INVALID_LSN, log.getFlushedLSN());
+
+        log.flush(first);
+        assertTrue(log.getFlushedLSN() >= second);
+        assertTrue(log.whenFlushed(second).isDone());
+
+        // records bigger than what's left of the buffer wait for the other buffer, everything ends up in the log in order
+        for (int i = 3; i <= 100; ++i) {
+            assertEquals(i, log.appendLogRecord(record(i)));
+        }
+        log.whenFlushed(100).get(5, TimeUnit.SECONDS);
+        log.shutDown();
+
+        // a torn record at the end is cut off, and the LSNs continue after the last complete one
+        try (RandomAccessFile file = new RandomAccessFile(LOG_FILE_NAME, "rw")) {
+            file.seek(file.length());
+            file.writeInt(64);
+            file.writeInt(101);
+        }
+        log = new LogManager(LOG_FILE_NAME, 256, 0);
+        assertEquals(100, log.getLastLSN());
+        assertEquals(100, log.getFlushedLSN());
+        List<Integer> values = new ArrayList<>();
+        log.readLog((lsn, payload) -> {
+            assertEquals((int) lsn, payload.getInt());
+            values.add(lsn);
+        });
+        assertEquals(100, values.size());
+        assertEquals(101, log.appendLogRecord(record(101)));
+        log.shutDown();
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        LogManager log = new LogManager(LOG_FILE_NAME, 64 * 1024, 0);
+        int threads = 8;
+        int commitsPerThread = 200;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; ++t) {
+            new Thread(() -> {
+                for (int i = 0; i < commitsPerThread; ++i) {
+                    int lsn = log.appendLogRecord(record(i));
+                    log.flush(lsn);
+                    assertTrue(log.getFlushedLSN() >= lsn);
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertEquals(threads * commitsPerThread, log.getFlushedLSN());
+        // concurrent commits share their fsyncs
+        assertTrue(log.getFlushCount() < threads * commitsPerThread);
+        log.shutDown();
+    }
+
+    @Test
+    public void testCorruptRecordCutsTheLog() throws Exception {
+        LogManager log = new LogManager(LOG_FILE_NAME, 256, 0);
+        for (int i = 1; i <= 10; ++i) {
+            log.appendLogRecord(record(i));
+        }
+        log.flush(10);
+        log.shutDown();
+
+        // flip a payload byte of the 6th record, its header is still fine
+        int recordSize = LogManager.SIZE_RECORD_HEADER + record(0).remaining();
+        try (RandomAccessFile file = new RandomAccessFile(LOG_FILE_NAME, "rw")) {
+            long offset = 5L * recordSize + LogManager.SIZE_RECORD_HEADER + Integer.BYTES;
+            file.seek(offset);
+            int b = file.read();
+            file.seek(offset);
+            file.write(b ^ 0xFF);
+        }
+        log = new LogManager(LOG_FILE_NAME, 256, 0);
+        assertEquals(5, log.getLastLSN());
+        List<Integer> values = new ArrayList<>();
+        log.readLog((lsn, payload) -> values.add(payload.getInt()));
+        assertEquals(List.of(1, 2, 3, 4, 5), values);
+        assertEquals(5L * recordSize, new File(LOG_FILE_NAME).length());
+        assertEquals(6, log.appendLogRecord(record(6)));
+        log.shutDown();
+    }
+
+    @Test
+    public void testAppendAfterShutDown() {
+        LogManager log = new LogManager(LOG_FILE_NAME, 256, 0);
+        log.appendLogRecord(record(1));
+        log.shutDown();
+        try {
+            log.appendLogRecord(record(2));
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testRecordTooBig() throws IOException {
+        LogManager log = new LogManager(LOG_FILE_NAME, 64, 0);
+        try {
+            log.appendLogRecord(ByteBuffer.allocate(64));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        } finally {
+            log.shutDown();
+        }
+    }
+
+    private static ByteBuffer record(int value) {
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + 12);
+        record.putInt(value).position(record.capacity()).flip();
+        return record;
+    }
+}
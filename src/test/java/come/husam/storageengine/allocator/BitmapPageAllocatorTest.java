@@ -0,0 +1,96 @@
+package come.husam.storageengine.allocator;
+
+import com.husam.cachemanager.BufferPoolManager;
+import com.husam.cachemanager.BufferPoolManagerImpl;
+import com.husam.storageengine.diskmanager.DiskManager;
+import com.husam.storageengine.page.BitmapPage;
+import com.husam.storageengine.page.Page;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class BitmapPageAllocatorTest {
+    private static final String DB_FILE_NAME = "test_allocator.db";
+    private static final int BUFFER_POOL_SIZE = 8;
+    // page 0 is the file header and page 1 the bitmap page of the first group
+    private static final int FIRST_DATA_PAGE = 2;
+    private DiskManager diskManager;
+    private BufferPoolManager bpm;
+
+    @Before
+    public void setUp() {
+        this.diskManager = DiskManager.open(DB_FILE_NAME);
+        this.bpm = new BufferPoolManagerImpl(BUFFER_POOL_SIZE, diskManager);
+    }
+
+    @After
+    public void tearDown() {
+        bpm.shutDown();
+        diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testReuseExtentsAndRecovery() {
+        // Scenario: a new file hands out the pages after its header and first bitmap page.
+        for (int i = 0; i < 3; ++i) {
+            Page page = bpm.newPage();
+            assertNotNull(page);
+            assertEquals(FIRST_DATA_PAGE + i, page.getPageId());
+            page.getBuffer().putInt(16, page.getPageId());
+            assertTrue(bpm.unpinPage(page.getPageId(), true));
+        }
+
+        // Scenario: a deleted page is handed out again, zeroed.
+        assertTrue(bpm.deletePage(FIRST_DATA_PAGE + 1));
+        Page reused = bpm.newPage();
+        assertEquals(FIRST_DATA_PAGE + 1, reused.getPageId());
+        assertEquals(0, reused.getBuffer().getInt(16));
+        assertTrue(bpm.unpinPage(reused.getPageId(), false));
+
+        // Scenario: an extent doesn't fit in the hole, it's contiguous after the last page.
+        assertTrue(bpm.deletePage(FIRST_DATA_PAGE));
+        int extent = bpm.allocateExtent(64);
+        assertEquals(FIRST_DATA_PAGE + 3, extent);
+
+        // Scenario: after a restart the next page id and the free pages are recovered from the file.
+        restart();
+        assertEquals(FIRST_DATA_PAGE, bpm.newPage().getPageId());
+        assertEquals(extent + 64, bpm.newPage().getPageId());
+        Page page = bpm.fetchPage(FIRST_DATA_PAGE + 2);
+        assertEquals(FIRST_DATA_PAGE + 2, page.getBuffer().getInt(16));
+        assertTrue(bpm.unpinPage(page.getPageId(), false));
+    }
+
+    @Test
+    public void testExtentsDontCrossGroups() {
+        int pagesPerGroup = BitmapPage.capacity();
+        int first = bpm.allocateExtent(pagesPerGroup - 10);
+        assertEquals(FIRST_DATA_PAGE, first);
+
+        // Scenario: the next extent doesn't fit in the group, it starts after the bitmap page of the next group.
+        int secondGroupBitmap = 1 + pagesPerGroup;
+        assertEquals(secondGroupBitmap + 1, bpm.allocateExtent(64));
+
+        // Scenario: the pages skipped at the end of the first group are handed out as single pages, also after a restart.
+        int skipped = FIRST_DATA_PAGE + pagesPerGroup - 10;
+        assertEquals(skipped, bpm.newPage().getPageId());
+        restart();
+        assertEquals(skipped + 1, bpm.newPage().getPageId());
+        assertEquals(secondGroupBitmap + 1 + 64, bpm.allocateExtent(64));
+    }
+
+    private void restart() {
+        bpm.flushAllPages();
+        bpm.shutDown();
+        diskManager.shutDown();
+        diskManager = DiskManager.open(DB_FILE_NAME);
+        bpm = new BufferPoolManagerImpl(BUFFER_POOL_SIZE, diskManager);
+    }
+}
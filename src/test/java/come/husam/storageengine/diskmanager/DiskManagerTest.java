@@ -0,0 +1,89 @@
+package come.husam.storageengine.diskmanager;
+
+import com.husam.common.DatabaseConfig;
+import com.husam.common.DurabilityMode;
+import com.husam.storageengine.diskmanager.DiskManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DiskManagerTest {
+    private static final String DB_FILE_NAME = "test_disk.db";
+    private DiskManager diskManager;
+
+    @Before
+    public void setUp() {
+        this.diskManager = DiskManager.open(DB_FILE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        this.diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testReadPastEndOfFileZeroesThePage() {
+        int pageSize = DatabaseConfig.getInstance().getPageSize();
+        byte[] written = new byte[pageSize];
+        Arrays.fill(written, (byte) 7);
+        diskManager.writePage(0, written);
+
+        // Scenario: reading back a written page returns exactly what we wrote.
+        byte[] frame = new byte[pageSize];
+        diskManager.readPage(0, frame);
+        assertArrayEquals(written, frame);
+
+        // Scenario: a frame full of old bytes must come back zeroed when the page was never written.
+        diskManager.readPage(5, frame);
+        assertArrayEquals(new byte[pageSize], frame);
+    }
+
+    @Test
+    public void testDeferredDurability() throws Exception {
+        DatabaseConfig conf = DatabaseConfig.getInstance();
+        int oldSyncEveryWrites = conf.getSyncEveryWrites();
+        long oldSyncIntervalMillis = conf.getSyncIntervalMillis();
+        // only barriers sync, so nothing becomes durable behind our back
+        conf.setSyncEveryWrites(0);
+        conf.setSyncIntervalMillis(0);
+        DiskManager deferred = DiskManager.open("test_deferred.db", DurabilityMode.DEFERRED);
+        try {
+            byte[] page = new byte[conf.getPageSize()];
+            long first = deferred.writePage(0, page);
+            long second = deferred.writePage(1, page);
+            CompletableFuture<Void> firstDurable = deferred.whenDurable(first);
+            CompletableFuture<Void> secondDurable = deferred.whenDurable(second);
+
+            // Scenario: without a barrier the writes are not covered by an fsync yet.
+            Thread.sleep(20);
+            assertFalse(firstDurable.isDone());
+
+            // Scenario: a barrier makes every earlier write durable and completes their futures.
+            deferred.sync();
+            assertTrue(firstDurable.isDone());
+            assertTrue(secondDurable.isDone());
+            assertTrue(deferred.whenDurable(second).isDone());
+
+            // Scenario: with a time threshold the write becomes durable without any barrier.
+            deferred.shutDown();
+            conf.setSyncIntervalMillis(5);
+            deferred = DiskManager.open("test_deferred.db", DurabilityMode.DEFERRED);
+            deferred.whenDurable(deferred.writePage(2, page)).get(5, TimeUnit.SECONDS);
+        } finally {
+            conf.setSyncEveryWrites(oldSyncEveryWrites);
+            conf.setSyncIntervalMillis(oldSyncIntervalMillis);
+            deferred.shutDown();
+            new File("test_deferred.db").delete();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package come.husam.storageengine.diskmanager;
+
+import com.husam.common.DatabaseConfig;
+import com.husam.common.DurabilityMode;
+import com.husam.storageengine.diskmanager.DiskScheduler;
+import com.husam.storageengine.diskmanager.FileChannelDiskManager;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DiskSchedulerTest {
+    private static final String DB_FILE_NAME = "test_scheduler.db";
+
+    @After
+    public void tearDown() {
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testRequestsAreServedInDiskOrder() throws Exception {
+        int pageSize = DatabaseConfig.getInstance().getPageSize();
+        List<String> ios = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch firstIOStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FileChannelDiskManager diskManager = new FileChannelDiskManager(DB_FILE_NAME, DurabilityMode.STRICT) {
+            @Override
+            public void readPage(int pageId, ByteBuffer pageData) {
+                record("r" + pageId + "x1");
+                super.readPage(pageId, pageData);
+            }
+
+            @Override
+            public void readPages(int firstPageId, ByteBuffer[] pageData) {
+                record("r" + firstPageId + "x" + pageData.length);
+                super.readPages(firstPageId, pageData);
+            }
+
+            @Override
+            public long writePage(int pageId, ByteBuffer pageData) {
+                record("w" + pageId + "x1");
+                return super.writePage(pageId, pageData);
+            }
+
+            @Override
+            public long writePages(int firstPageId, ByteBuffer[] pageData) {
+                record("w" + firstPageId + "x" + pageData.length);
+                return super.writePages(firstPageId, pageData);
+            }
+
+            // the first I/O holds the only worker till every other request is queued
+            private void record(String io) {
+                ios.add(io);
+                if(ios.size() == 1) {
+                    firstIOStarted.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        DiskScheduler scheduler = new DiskScheduler(diskManager, 1);
+        try {
+            List<CompletableFuture<?>> requests = new ArrayList<>();
+            requests.add(scheduler.scheduleWrite(50, page(50, pageSize)));
+            assertTrue(firstIOStarted.await(10, TimeUnit.SECONDS));
+            requests.add(scheduler.scheduleWrite(12, page(12, pageSize)));
+            requests.add(scheduler.scheduleWrite(60, page(60, pageSize)));
+            requests.add(scheduler.scheduleWrite(10, page(10, pageSize)));
+            requests.add(scheduler.scheduleWrite(11, page(11, pageSize)));
+            requests.add(scheduler.scheduleWrite(70, page(70, pageSize)));
+            ByteBuffer[] frames = new ByteBuffer[3];
+            for(int i = 0; i < frames.length; i++) {
+                frames[i] = ByteBuffer.allocate(pageSize);
+                // reads of 71..73 right after the write of 70, they are a run of their own
+                requests.add(scheduler.scheduleRead(71 + i, frames[i]));
+            }
+            assertEquals(8, scheduler.getQueuedRequests());
+            release.countDown();
+            CompletableFuture.allOf(requests.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+            // Scenario: the elevator goes up from where the first write ended, then wraps around to the lowest page,
+            // and consecutive pages of the same kind are moved with one I/O.
+            assertEquals(Arrays.asList("w50x1", "w60x1", "w70x1", "r71x3", "w10x3"), ios);
+            assertEquals(0, scheduler.getQueuedRequests());
+
+            // Scenario: a scheduled read sees what the scheduled writes wrote.
+            ByteBuffer frame = ByteBuffer.allocate(pageSize);
+            scheduler.scheduleRead(11, frame).get(10, TimeUnit.SECONDS);
+            assertArrayEquals(page(11, pageSize).array(), frame.array());
+        } finally {
+            release.countDown();
+            scheduler.stop();
+            diskManager.shutDown();
+        }
+    }
+
+    @Test
+    public void testFailedIOCompletesItsRequestsExceptionally() throws Exception {
+        FileChannelDiskManager diskManager = new FileChannelDiskManager(DB_FILE_NAME, DurabilityMode.STRICT) {
+            @Override
+            public void readPage(int pageId, ByteBuffer pageData) {
+                throw new RuntimeException("disk is gone");
+            }
+        };
+        DiskScheduler scheduler = new DiskScheduler(diskManager, 2);
+        try {
+            // Scenario: the error of the I/O completes the future, and the scheduler keeps serving requests.
+            try {
+                scheduler.scheduleRead(3, ByteBuffer.allocate(DatabaseConfig.getInstance().getPageSize())).get(10, TimeUnit.SECONDS);
+                fail("the read should have failed");
+            } catch (ExecutionException e) {
+                assertEquals("disk is gone", e.getCause().getMessage());
+            }
+            long ticket = scheduler.scheduleWrite(3, page(3, DatabaseConfig.getInstance().getPageSize())).get(10, TimeUnit.SECONDS);
+            assertTrue(diskManager.whenDurable(ticket).isDone());
+        } finally {
+            scheduler.stop();
+            diskManager.shutDown();
+        }
+
+        // Scenario: a stopped scheduler takes no more requests.
+        try {
+            scheduler.scheduleRead(0, ByteBuffer.allocate(DatabaseConfig.getInstance().getPageSize()));
+            fail("the scheduler is stopped");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private static ByteBuffer page(int pageId, int pageSize) {
+        byte[] data = new byte[pageSize];
+        Arrays.fill(data, (byte) (pageId + 1));
+        return ByteBuffer.wrap(data);
+    }
+}
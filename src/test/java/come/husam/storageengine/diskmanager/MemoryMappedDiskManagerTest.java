@@ -0,0 +1,103 @@
+package come.husam.storageengine.diskmanager;
+
+import com.husam.cachemanager.BufferPoolManager;
+import com.husam.cachemanager.BufferPoolManagerImpl;
+import com.husam.common.DatabaseConfig;
+import com.husam.common.DiskManagerBackend;
+import com.husam.common.DurabilityMode;
+import com.husam.storageengine.diskmanager.DiskManager;
+import com.husam.storageengine.diskmanager.MemoryMappedDiskManager;
+import com.husam.storageengine.page.Page;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryMappedDiskManagerTest {
+    private static final String DB_FILE_NAME = "test_mapped.db";
+    // small chunks, so a handful of pages already spans several of them
+    private static final int PAGES_PER_CHUNK = 4;
+
+    @After
+    public void tearDown() {
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testMappingGrowsAndSurvivesReopen() {
+        int pageSize = DatabaseConfig.getInstance().getPageSize();
+        int chunkSize = PAGES_PER_CHUNK * pageSize;
+        MemoryMappedDiskManager diskManager = new MemoryMappedDiskManager(DB_FILE_NAME, DurabilityMode.STRICT, chunkSize);
+        byte[] frame = new byte[pageSize];
+
+        // Scenario: a page past the mapping reads as zeroes and doesn't grow the file.
+        Arrays.fill(frame, (byte) 1);
+        diskManager.readPage(10, frame);
+        assertArrayEquals(new byte[pageSize], frame);
+        assertEquals(0, new File(DB_FILE_NAME).length());
+
+        // Scenario: writes past the mapping grow it, every page reads back what was written.
+        for (int pageId = 0; pageId < 3 * PAGES_PER_CHUNK; pageId += 3) {
+            diskManager.writePage(pageId, pageOf(pageId));
+        }
+        assertEquals(3L * chunkSize, new File(DB_FILE_NAME).length());
+        for (int pageId = 0; pageId < 3 * PAGES_PER_CHUNK; pageId += 3) {
+            diskManager.readPage(pageId, frame);
+            assertArrayEquals(pageOf(pageId), frame);
+        }
+        diskManager.readPage(1, frame);
+        assertArrayEquals(new byte[pageSize], frame);
+        diskManager.shutDown();
+
+        // Scenario: the pages are on disk, a new manager maps the existing file and reads them back.
+        diskManager = new MemoryMappedDiskManager(DB_FILE_NAME, DurabilityMode.STRICT, chunkSize);
+        for (int pageId = 0; pageId < 3 * PAGES_PER_CHUNK; pageId += 3) {
+            diskManager.readPage(pageId, frame);
+            assertArrayEquals(pageOf(pageId), frame);
+        }
+        diskManager.shutDown();
+    }
+
+    @Test
+    public void testBufferPoolOnMappedBackend() {
+        DatabaseConfig conf = DatabaseConfig.getInstance();
+        conf.setDiskManagerBackend(DiskManagerBackend.MEMORY_MAPPED);
+        DiskManager diskManager;
+        try {
+            diskManager = DiskManager.open(DB_FILE_NAME, DurabilityMode.DEFERRED);
+        } finally {
+            conf.setDiskManagerBackend(DiskManagerBackend.FILE_CHANNEL);
+        }
+        assertTrue(diskManager instanceof MemoryMappedDiskManager);
+        BufferPoolManager bpm = new BufferPoolManagerImpl(2, diskManager, 0);
+
+        // Scenario: pages evicted through the mapping come back with their content.
+        for (int i = 0; i < 8; ++i) {
+            Page page = bpm.newPage();
+            assertNotNull(page);
+            page.getBuffer().putInt(Integer.BYTES * 2, i * 31);
+            bpm.unpinPage(page.getPageId(), true);
+        }
+        for (int i = 0; i < 8; ++i) {
+            Page page = bpm.fetchPage(i);
+            assertEquals(i * 31, page.getBuffer().getInt(Integer.BYTES * 2));
+            bpm.unpinPage(i, false);
+        }
+        bpm.flushAllPages();
+        diskManager.sync();
+        bpm.shutDown();
+        diskManager.shutDown();
+    }
+
+    private static byte[] pageOf(int pageId) {
+        byte[] page = new byte[DatabaseConfig.getInstance().getPageSize()];
+        Arrays.fill(page, (byte) (pageId + 1));
+        return page;
+    }
+}
@@ -0,0 +1,174 @@
+package come.husam.storageengine.diskmanager;
+
+import com.husam.common.DatabaseConfig;
+import com.husam.common.DurabilityMode;
+import com.husam.storageengine.diskmanager.StripeLayout;
+import com.husam.storageengine.diskmanager.StripedDiskManager;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StripedDiskManagerTest {
+    private static final String[] FILE_NAMES = {"test_stripe_0.db", "test_stripe_1.db", "test_stripe_2.db"};
+    private static final int EXTENT_PAGES = 4;
+
+    @After
+    public void tearDown() {
+        for(String fileName : FILE_NAMES) {
+            new File(fileName).delete();
+        }
+    }
+
+    @Test
+    public void testLayoutMapsPagesToFilesAndOffsets() {
+        StripeLayout layout = new StripeLayout(3, 4);
+        int pageSize = DatabaseConfig.getInstance().getPageSize();
+
+        // Scenario: the extents are dealt to the files round robin.
+        assertEquals(0, layout.fileOf(0));
+        assertEquals(0, layout.fileOf(3));
+        assertEquals(1, layout.fileOf(4));
+        assertEquals(2, layout.fileOf(11));
+        assertEquals(0, layout.fileOf(12));
+
+        // Scenario: the pages of a file are packed, the second extent of file 0 starts right after its first one.
+        assertEquals(0, layout.localPageIdOf(0));
+        assertEquals(3, layout.localPageIdOf(3));
+        assertEquals(0, layout.localPageIdOf(4));
+        assertEquals(4, layout.localPageIdOf(12));
+        assertEquals(5, layout.localPageIdOf(13));
+        assertEquals(7, layout.localPageIdOf(23));
+        assertEquals(5L * pageSize, layout.offsetOf(13));
+
+        // Scenario: an extent ends at the next multiple of the extent size.
+        assertEquals(4, layout.extentEnd(0));
+        assertEquals(16, layout.extentEnd(13));
+
+        // Scenario: pageIdOf is the inverse of the mapping.
+        for(int pageId = 0; pageId < 1000; pageId++) {
+            assertEquals(pageId, layout.pageIdOf(layout.fileOf(pageId), layout.localPageIdOf(pageId)));
+        }
+
+        // Scenario: with a single file the layout is the identity.
+        StripeLayout single = new StripeLayout(1, 4);
+        for(int pageId = 0; pageId < 100; pageId++) {
+            assertEquals(0, single.fileOf(pageId));
+            assertEquals(pageId, single.localPageIdOf(pageId));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLayoutRejectsEmptyExtents() {
+        new StripeLayout(2, 0);
+    }
+
+    @Test
+    public void testPagesLandInTheirFiles() throws IOException {
+        int pageSize = DatabaseConfig.getInstance().getPageSize();
+        StripedDiskManager diskManager = new StripedDiskManager(FILE_NAMES, EXTENT_PAGES, DurabilityMode.STRICT);
+        StripeLayout layout = diskManager.getLayout();
+        try {
+            // single page writes, a run that crosses extents and a scattered batch
+            diskManager.writePage(13, page(13, pageSize));
+            ByteBuffer[] run = new ByteBuffer[6];
+            for(int i = 0; i < run.length; i++) {
+                run[i] = page(2 + i, pageSize);
+            }
+            diskManager.writePages(2, run);
+            int[] pageIds = {30, 8, 9, 21, 40};
+            ByteBuffer[] batch = new ByteBuffer[pageIds.length];
+            for(int i = 0; i < pageIds.length; i++) {
+                batch[i] = page(pageIds[i], pageSize);
+            }
+            diskManager.writePages(pageIds, batch);
+
+            // Scenario: every page is read back through the stripe, one by one and as runs across extents.
+            int[] written = {2, 3, 4, 5, 6, 7, 8, 9, 13, 21, 30, 40};
+            for(int pageId : written) {
+                ByteBuffer frame = ByteBuffer.allocate(pageSize);
+                diskManager.readPage(pageId, frame);
+                assertArrayEquals(page(pageId, pageSize).array(), frame.array());
+            }
+            ByteBuffer[] frames = new ByteBuffer[8];
+            for(int i = 0; i < frames.length; i++) {
+                frames[i] = ByteBuffer.allocate(pageSize);
+            }
+            diskManager.readPages(2, frames);
+            for(int i = 0; i < frames.length; i++) {
+                assertArrayEquals(page(2 + i, pageSize).array(), frames[i].array());
+            }
+
+            // Scenario: each page sits at its offset of its own file.
+            for(int pageId : written) {
+                try (RandomAccessFile file = new RandomAccessFile(FILE_NAMES[layout.fileOf(pageId)], "r")) {
+                    byte[] onDisk = new byte[pageSize];
+                    file.seek(layout.offsetOf(pageId));
+                    file.readFully(onDisk);
+                    assertArrayEquals(page(pageId, pageSize).array(), onDisk);
+                }
+            }
+
+            // Scenario: a run that goes around the files several times, every file does its extents in one go.
+            ByteBuffer[] longRun = new ByteBuffer[3 * FILE_NAMES.length * EXTENT_PAGES + 3];
+            for(int i = 0; i < longRun.length; i++) {
+                longRun[i] = page(50 + i, pageSize);
+            }
+            diskManager.writePages(50, longRun);
+            ByteBuffer[] longFrames = new ByteBuffer[longRun.length];
+            for(int i = 0; i < longFrames.length; i++) {
+                longFrames[i] = ByteBuffer.allocate(pageSize);
+            }
+            diskManager.readPages(50, longFrames);
+            for(int i = 0; i < longFrames.length; i++) {
+                assertArrayEquals(page(50 + i, pageSize).array(), longFrames[i].array());
+            }
+        } finally {
+            diskManager.shutDown();
+        }
+    }
+
+    @Test
+    public void testDeferredStripeSyncsAllFiles() throws Exception {
+        DatabaseConfig conf = DatabaseConfig.getInstance();
+        int oldSyncEveryWrites = conf.getSyncEveryWrites();
+        long oldSyncIntervalMillis = conf.getSyncIntervalMillis();
+        conf.setSyncEveryWrites(0);
+        conf.setSyncIntervalMillis(0);
+        StripedDiskManager diskManager = new StripedDiskManager(FILE_NAMES, EXTENT_PAGES, DurabilityMode.DEFERRED);
+        try {
+            int pageSize = conf.getPageSize();
+            long first = diskManager.writePage(0, page(0, pageSize));
+            long second = diskManager.writePages(new int[]{5, 10}, new ByteBuffer[]{page(5, pageSize), page(10, pageSize)});
+            CompletableFuture<Void> secondDurable = diskManager.whenDurable(second);
+
+            // Scenario: a non blocking barrier makes the writes to every file durable.
+            diskManager.syncAsync().get(10, TimeUnit.SECONDS);
+            assertTrue(diskManager.whenDurable(first).isDone());
+            assertTrue(secondDurable.isDone());
+
+            // Scenario: a blocking barrier with nothing pending returns right away.
+            diskManager.sync();
+        } finally {
+            diskManager.shutDown();
+            conf.setSyncEveryWrites(oldSyncEveryWrites);
+            conf.setSyncIntervalMillis(oldSyncIntervalMillis);
+        }
+    }
+
+    private static ByteBuffer page(int pageId, int pageSize) {
+        byte[] data = new byte[pageSize];
+        Arrays.fill(data, (byte) (pageId + 1));
+        return ByteBuffer.wrap(data);
+    }
+}
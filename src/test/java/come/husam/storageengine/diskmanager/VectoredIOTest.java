@@ -0,0 +1,80 @@
+package come.husam.storageengine.diskmanager;
+
+import com.husam.common.DatabaseConfig;
+import com.husam.common.DurabilityMode;
+import com.husam.storageengine.diskmanager.DiskManager;
+import com.husam.storageengine.diskmanager.FileChannelDiskManager;
+import com.husam.storageengine.diskmanager.MemoryMappedDiskManager;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+public class VectoredIOTest {
+    private static final String DB_FILE_NAME = "test_vectored.db";
+
+    @After
+    public void tearDown() {
+        new File(DB_FILE_NAME).delete();
+    }
+
+    @Test
+    public void testFileChannelBatches() {
+        // one gather write per run
+        checkBatches(new FileChannelDiskManager(DB_FILE_NAME, DurabilityMode.STRICT), 3);
+    }
+
+    @Test
+    public void testMemoryMappedBatches() {
+        // a write is a memory copy, the whole batch counts as one
+        checkBatches(new MemoryMappedDiskManager(DB_FILE_NAME, DurabilityMode.STRICT, 4 * DatabaseConfig.getInstance().getPageSize()), 1);
+    }
+
+    private static void checkBatches(DiskManager diskManager, int expectedWrites) {
+        // Scenario: a batch with gaps is split into runs, and the batch is synced once.
+        int[] pageIds = {0, 1, 2, 5, 6, 9};
+        diskManager.writePages(pageIds, pagesOf(pageIds));
+        assertEquals(expectedWrites, diskManager.getMetrics().snapshot().getWrites().getCount());
+        assertEquals(1, diskManager.getMetrics().snapshot().getSyncs().getCount());
+
+        // Scenario: a run reads back what was written, the pages in the gaps are zero.
+        ByteBuffer[] frames = emptyPages(10);
+        diskManager.readPages(0, frames);
+        for (int pageId = 0; pageId < 10; ++pageId) {
+            boolean written = pageId <= 2 || pageId == 5 || pageId == 6 || pageId == 9;
+            assertEquals(written ? pageId + 1 : 0, frames[pageId].getInt(0));
+            assertEquals(written ? pageId + 1 : 0, frames[pageId].getInt(frames[pageId].capacity() - Integer.BYTES));
+        }
+
+        // Scenario: reading past the end of the file zeroes what isn't there.
+        frames = emptyPages(3);
+        for (ByteBuffer frame : frames) {
+            frame.putInt(0, -1);
+        }
+        diskManager.readPages(new int[]{9, 10, 20}, frames);
+        assertEquals(10, frames[0].getInt(0));
+        assertEquals(0, frames[1].getInt(0));
+        assertEquals(0, frames[2].getInt(0));
+        diskManager.shutDown();
+    }
+
+    private static ByteBuffer[] pagesOf(int[] pageIds) {
+        ByteBuffer[] pages = emptyPages(pageIds.length);
+        for (int i = 0; i < pageIds.length; ++i) {
+            pages[i].putInt(0, pageIds[i] + 1);
+            pages[i].putInt(pages[i].capacity() - Integer.BYTES, pageIds[i] + 1);
+        }
+        return pages;
+    }
+
+    private static ByteBuffer[] emptyPages(int count) {
+        ByteBuffer[] pages = new ByteBuffer[count];
+        for (int i = 0; i < count; ++i) {
+            pages[i] = ByteBuffer.allocate(DatabaseConfig.getInstance().getPageSize());
+        }
+        return pages;
+    }
+}
@@ -0,0 +1,227 @@
+package come.husam.storageengine.index;
+
+import com.husam.cachemanager.BufferPoolManager;
+import com.husam.cachemanager.BufferPoolManagerImpl;
+import com.husam.storageengine.diskmanager.DiskManager;
+import com.husam.storageengine.index.BPlusTree;
+import com.husam.storageengine.table.RecordId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BPlusTreeTest {
+    private static final String DB_FILE_NAME = "test_bplus_tree.db";
+    private static final int BUFFER_POOL_SIZE = 64;
+    // small nodes, so a few thousand keys make a tree of several levels
+    private static final int LEAF_MAX_SIZE = 6;
+    private static final int INTERNAL_MAX_SIZE = 5;
+    private DiskManager diskManager;
+    private BufferPoolManager bpm;
+
+    @Before
+    public void setUp() {
+        this.diskManager = DiskManager.open(DB_FILE_NAME);
+        this.bpm = new BufferPoolManagerImpl(BUFFER_POOL_SIZE, diskManager);
+    }
+
+    @After
+    public void tearDown() {
+        bpm.shutDown();
+        diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    private static RecordId recordOf(long key) {
+        return new RecordId((int) (key >>> 4), (int) (key & 15));
+    }
+
+    private static void assertScan(BPlusTree tree, long fromKey, long toKey, List<Long> expected) {
+        List<Long> keys = new ArrayList<>();
+        tree.scan(fromKey, toKey, (key, pageId, slot) -> {
+            assertEquals(recordOf(key), new RecordId(pageId, slot));
+            keys.add(key);
+        });
+        assertEquals(expected, keys);
+    }
+
+    @Test
+    public void testSplitsMergesAndRangeScans() {
+        BPlusTree tree = new BPlusTree(bpm, LEAF_MAX_SIZE, INTERNAL_MAX_SIZE);
+        List<Long> keys = new ArrayList<>();
+        for (long key = 0; key < 2000; ++key) {
+            keys.add(key * 3);
+        }
+        Collections.shuffle(keys, new Random(42));
+
+        // Scenario: random inserts split leaves and internal nodes, duplicates are refused.
+        for (long key : keys) {
+            assertTrue(tree.insert(key, recordOf(key)));
+        }
+        assertFalse(tree.insert(300, recordOf(301)));
+        assertEquals(recordOf(300), tree.get(300));
+        assertNull(tree.get(301));
+
+        // Scenario: range scans walk the leaves in key order, the bounds don't have to be keys.
+        List<Long> expected = new ArrayList<>();
+        for (long key = 102; key <= 5000; key += 3) {
+            expected.add(key);
+        }
+        assertScan(tree, 100, 5000, expected);
+        assertScan(tree, 5990, 7000, Arrays.asList(5991L, 5994L, 5997L));
+
+        // Scenario: deleting every other key borrows and merges, the rest stays reachable.
+        for (int i = 0; i < keys.size(); i += 2) {
+            assertTrue(tree.remove(keys.get(i)));
+        }
+        assertFalse(tree.remove(keys.get(0)));
+        for (int i = 0; i < keys.size(); ++i) {
+            assertEquals(i % 2 == 0 ? null : recordOf(keys.get(i)), tree.get(keys.get(i)));
+        }
+        List<Long> left = new ArrayList<>();
+        for (int i = 1; i < keys.size(); i += 2) {
+            left.add(keys.get(i));
+        }
+        Collections.sort(left);
+        assertScan(tree, Long.MIN_VALUE, Long.MAX_VALUE, left);
+
+        // Scenario: emptying the tree collapses the root, and the tree can grow again.
+        for (long key : left) {
+            assertTrue(tree.remove(key));
+        }
+        assertScan(tree, Long.MIN_VALUE, Long.MAX_VALUE, new ArrayList<>());
+        assertTrue(tree.insert(7, recordOf(7)));
+        assertEquals(recordOf(7), tree.get(7));
+
+        // Scenario: the tree is opened again from its header page.
+        BPlusTree reopened = new BPlusTree(bpm, tree.getHeaderPageId());
+        assertEquals(recordOf(7), reopened.get(7));
+    }
+
+    @Test
+    public void testPinnedNodesAreDeletedLater() {
+        BPlusTree tree = new BPlusTree(bpm, LEAF_MAX_SIZE, INTERNAL_MAX_SIZE);
+        for (long key = 0; key < 40; ++key) {
+            assertTrue(tree.insert(key, recordOf(key)));
+        }
+        int lastPageId = bpm.newPage().getPageId();
+        assertTrue(bpm.unpinPage(lastPageId, false));
+        assertTrue(bpm.deletePage(lastPageId));
+
+        // Scenario: somebody holds a pin on every node, like scans that reached them, while the tree shrinks.
+        for (int pageId = tree.getHeaderPageId(); pageId < lastPageId; ++pageId) {
+            assertNotNull(bpm.fetchPage(pageId));
+        }
+        for (long key = 0; key < 40; key += 2) {
+            assertTrue(tree.remove(key));
+        }
+        int pending = tree.reclaimDeletedPages();
+        assertTrue(pending > 0);
+
+        // Scenario: once the pins are gone the merged away nodes are deleted, the tree is still whole.
+        for (int pageId = tree.getHeaderPageId(); pageId < lastPageId; ++pageId) {
+            assertTrue(bpm.unpinPage(pageId, false));
+        }
+        List<Long> left = new ArrayList<>();
+        for (long key = 1; key < 40; key += 2) {
+            left.add(key);
+        }
+        assertScan(tree, Long.MIN_VALUE, Long.MAX_VALUE, left);
+        assertEquals(0, tree.reclaimDeletedPages());
+    }
+
+    @Test
+    public void testConcurrentInsertsLookupsAndDeletes() throws InterruptedException {
+        BPlusTree tree = new BPlusTree(bpm, LEAF_MAX_SIZE, INTERNAL_MAX_SIZE);
+        int numOfThreads = 8;
+        int keysPerThread = 1500;
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicInteger misses = new AtomicInteger();
+
+        // Scenario: every thread inserts its own keys, interleaved with the keys of the other threads,
+        // and looks up the keys it inserted so far, while scanners walk the leaves.
+        runThreads(numOfThreads, failure, thread -> {
+            Random random = new Random(thread);
+            for (int i = 0; i < keysPerThread; ++i) {
+                long key = (long) i * numOfThreads + thread;
+                if (!tree.insert(key, recordOf(key))) {
+                    misses.incrementAndGet();
+                }
+                long probe = (long) random.nextInt(i + 1) * numOfThreads + thread;
+                if (!recordOf(probe).equals(tree.get(probe))) {
+                    misses.incrementAndGet();
+                }
+                if (i % 100 == 0) {
+                    AtomicLong previous = new AtomicLong(Long.MIN_VALUE);
+                    tree.scan(0, Long.MAX_VALUE, (key1, pageId, slot) -> {
+                        if (key1 <= previous.get()) {
+                            misses.incrementAndGet();
+                        }
+                        previous.set(key1);
+                    });
+                }
+            }
+        });
+        assertNull(failure.get());
+        assertEquals(0, misses.get());
+        AtomicInteger count = new AtomicInteger();
+        tree.scan(Long.MIN_VALUE, Long.MAX_VALUE, (key, pageId, slot) -> assertEquals(count.getAndIncrement(), key));
+        assertEquals(numOfThreads * keysPerThread, count.get());
+
+        // Scenario: the threads delete the odd keys of their own while looking up the even ones.
+        runThreads(numOfThreads, failure, thread -> {
+            for (int i = 0; i < keysPerThread; ++i) {
+                long key = (long) i * numOfThreads + thread;
+                if (key % 2 == 1 && !tree.remove(key)) {
+                    misses.incrementAndGet();
+                }
+                long even = key - key % 2;
+                if (!recordOf(even).equals(tree.get(even))) {
+                    misses.incrementAndGet();
+                }
+            }
+        });
+        assertNull(failure.get());
+        assertEquals(0, misses.get());
+        count.set(0);
+        tree.scan(Long.MIN_VALUE, Long.MAX_VALUE, (key, pageId, slot) -> assertEquals(2L * count.getAndIncrement(), key));
+        assertEquals(numOfThreads * keysPerThread / 2, count.get());
+    }
+
+    private interface Work {
+        void run(int thread);
+    }
+
+    private static void runThreads(int numOfThreads, AtomicReference<Throwable> failure, Work work) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numOfThreads; ++t) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                try {
+                    work.run(thread);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
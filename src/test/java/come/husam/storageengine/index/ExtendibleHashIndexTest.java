@@ -0,0 +1,168 @@
+package come.husam.storageengine.index;
+
+import com.husam.cachemanager.BufferPoolManager;
+import com.husam.cachemanager.BufferPoolManagerImpl;
+import com.husam.storageengine.diskmanager.DiskManager;
+import com.husam.storageengine.index.ExtendibleHashIndex;
+import com.husam.storageengine.page.ExtendibleHashDirectoryPage;
+import com.husam.storageengine.page.ExtendibleHashHeaderPage;
+import com.husam.storageengine.page.ReadPageGuard;
+import com.husam.storageengine.table.RecordId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExtendibleHashIndexTest {
+    private static final String DB_FILE_NAME = "test_hash_index.db";
+    private static final int BUFFER_POOL_SIZE = 64;
+    private DiskManager diskManager;
+    private BufferPoolManager bpm;
+
+    @Before
+    public void setUp() {
+        this.diskManager = DiskManager.open(DB_FILE_NAME);
+        this.bpm = new BufferPoolManagerImpl(BUFFER_POOL_SIZE, diskManager);
+    }
+
+    @After
+    public void tearDown() {
+        bpm.shutDown();
+        diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    private static RecordId recordOf(long key) {
+        return new RecordId((int) (key >>> 4), (int) (key & 15));
+    }
+
+    // the global depth of every directory of the index, -1 for the ones that weren't created
+    private int[] globalDepths(ExtendibleHashIndex index) {
+        int[] depths;
+        List<Integer> directories = new ArrayList<>();
+        try (ReadPageGuard guard = bpm.fetchPageRead(index.getHeaderPageId())) {
+            ExtendibleHashHeaderPage header = new ExtendibleHashHeaderPage(guard.getBuffer());
+            for (int i = 0; i < 1 << header.getMaxDepth(); ++i) {
+                directories.add(header.getDirectoryPageId(i));
+            }
+        }
+        depths = new int[directories.size()];
+        for (int i = 0; i < depths.length; ++i) {
+            if (directories.get(i) < 0) {
+                depths[i] = -1;
+                continue;
+            }
+            try (ReadPageGuard guard = bpm.fetchPageRead(directories.get(i))) {
+                depths[i] = new ExtendibleHashDirectoryPage(guard.getBuffer()).getGlobalDepth();
+            }
+        }
+        return depths;
+    }
+
+    @Test
+    public void testSplitGrowAndShrink() {
+        // two directories of at most 2^9 buckets of 8 entries
+        ExtendibleHashIndex index = new ExtendibleHashIndex(bpm, 1, 9, 8);
+        assertNull(index.get(1));
+        assertFalse(index.remove(1));
+
+        // Scenario: inserts split the buckets and double the directories, duplicates are refused.
+        for (long key = 0; key < 1000; ++key) {
+            assertTrue(index.insert(key, recordOf(key)));
+        }
+        assertFalse(index.insert(10, recordOf(11)));
+        for (long key = 0; key < 1000; ++key) {
+            assertEquals(recordOf(key), index.get(key));
+        }
+        assertNull(index.get(1000));
+        for (int depth : globalDepths(index)) {
+            assertTrue(depth >= 6);
+        }
+
+        // Scenario: removing every key merges the buckets back and shrinks the directories to one bucket.
+        for (long key = 0; key < 1000; key += 2) {
+            assertTrue(index.remove(key));
+        }
+        assertFalse(index.remove(0));
+        for (long key = 0; key < 1000; ++key) {
+            assertEquals(key % 2 == 0 ? null : recordOf(key), index.get(key));
+        }
+        for (long key = 1; key < 1000; key += 2) {
+            assertTrue(index.remove(key));
+        }
+        for (int depth : globalDepths(index)) {
+            assertEquals(0, depth);
+        }
+
+        // Scenario: the index is opened again from its header page.
+        assertTrue(index.insert(5, recordOf(5)));
+        assertEquals(recordOf(5), new ExtendibleHashIndex(bpm, index.getHeaderPageId()).get(5));
+    }
+
+    @Test
+    public void testFullDirectory() {
+        // one directory of at most 2 buckets of 2 entries, the keys run out of room after 4 entries at most
+        ExtendibleHashIndex index = new ExtendibleHashIndex(bpm, 0, 1, 2);
+        int inserted = 0;
+        for (long key = 0; key < 10; ++key) {
+            if (index.insert(key, recordOf(key))) {
+                inserted++;
+            }
+        }
+        assertTrue(inserted >= 2 && inserted <= 4);
+        assertEquals(1, globalDepths(index)[0]);
+    }
+
+    @Test
+    public void testConcurrentInsertsLookupsAndRemoves() throws InterruptedException {
+        ExtendibleHashIndex index = new ExtendibleHashIndex(bpm, 2, 9, 32);
+        int numOfThreads = 8;
+        int keysPerThread = 2000;
+        AtomicInteger misses = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        // Scenario: every thread inserts its own keys and looks them up, then removes the odd ones,
+        // the other threads split and merge the same buckets meanwhile.
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numOfThreads; ++t) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < keysPerThread; ++i) {
+                        long key = (long) i * numOfThreads + thread;
+                        if (!index.insert(key, recordOf(key)) || !recordOf(key).equals(index.get(key))) {
+                            misses.incrementAndGet();
+                        }
+                    }
+                    for (int i = 0; i < keysPerThread; ++i) {
+                        long key = (long) i * numOfThreads + thread;
+                        if (key % 2 == 1 && !index.remove(key)) {
+                            misses.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+        assertEquals(0, misses.get());
+        for (long key = 0; key < (long) numOfThreads * keysPerThread; ++key) {
+            assertEquals(key % 2 == 0 ? recordOf(key) : null, index.get(key));
+        }
+    }
+}
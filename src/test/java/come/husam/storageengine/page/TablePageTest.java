@@ -0,0 +1,103 @@
+package come.husam.storageengine.page;
+
+import com.husam.common.DatabaseConfig;
+import com.husam.storageengine.page.TablePage;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TablePageTest {
+    private TablePage page;
+
+    @Before
+    public void setUp() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(DatabaseConfig.getInstance().getPageSize()).order(ByteOrder.LITTLE_ENDIAN);
+        this.page = new TablePage(buffer);
+        page.init();
+    }
+
+    private static ByteBuffer tuple(int length, int value) {
+        ByteBuffer tuple = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (tuple.remaining() >= Integer.BYTES) {
+            tuple.putInt(value);
+        }
+        return tuple.clear();
+    }
+
+    @Test
+    public void testInsertGetDelete() {
+        // Scenario: tuples get consecutive slots and read back as slices of the page.
+        assertEquals(DatabaseConfig.getInstance().getInvalidPageId(), page.getNextPageId());
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(i, page.insertTuple(tuple(16, i)));
+        }
+        assertEquals(10, page.getTupleCount());
+        ByteBuffer slice = page.getTuple(3);
+        assertEquals(16, slice.remaining());
+        assertEquals(3, slice.getInt(12));
+
+        // Scenario: a slice writes through to the page, nothing is copied.
+        slice.putInt(0, 42);
+        assertEquals(42, page.getTuple(3).getInt(0));
+
+        // Scenario: a deleted slot is reused by the next insert.
+        assertTrue(page.deleteTuple(3));
+        assertFalse(page.deleteTuple(3));
+        assertNull(page.getTuple(3));
+        assertEquals(3, page.insertTuple(tuple(8, 7)));
+        assertEquals(8, page.getTuple(3).remaining());
+        assertEquals(10, page.getSlotCount());
+
+        // Scenario: deleting the last slots shrinks the slot directory.
+        assertTrue(page.deleteTuple(9));
+        assertTrue(page.deleteTuple(8));
+        assertEquals(8, page.getSlotCount());
+        assertNull(page.getTuple(9));
+    }
+
+    @Test
+    public void testCompactionKeepsSlots() {
+        // Scenario: fill the page, then free every other tuple, the holes are garbage between the tuples.
+        int count = 0;
+        while (page.insertTuple(tuple(100, count)) != TablePage.INVALID_SLOT) {
+            count++;
+        }
+        assertTrue(count > 1);
+        for (int slot = 0; slot < count; slot += 2) {
+            assertTrue(page.deleteTuple(slot));
+        }
+
+        // Scenario: a tuple bigger than any hole fits after the page compacts itself, the live tuples keep their slots.
+        int slot = page.insertTuple(tuple(150, -1));
+        assertTrue(slot != TablePage.INVALID_SLOT);
+        assertEquals(-1, page.getTuple(slot).getInt(0));
+        for (int i = 1; i < count; i += 2) {
+            assertEquals(i, page.getTuple(i).getInt(96));
+        }
+
+        // Scenario: an update that grows moves the tuple, one that shrinks stays in place.
+        assertTrue(page.updateTuple(1, tuple(120, 5)));
+        assertEquals(5, page.getTuple(1).getInt(116));
+        assertTrue(page.updateTuple(1, tuple(4, 6)));
+        assertEquals(6, page.getTuple(1).getInt(0));
+        assertFalse(page.updateTuple(1, tuple(TablePage.maxTupleSize(), 0)));
+        assertEquals(6, page.getTuple(1).getInt(0));
+    }
+
+    @Test
+    public void testMaxTuple() {
+        int slot = page.insertTuple(tuple(TablePage.maxTupleSize(), 9));
+        assertEquals(0, slot);
+        assertEquals(0, page.getFreeSpace());
+        assertEquals(TablePage.INVALID_SLOT, page.insertTuple(tuple(1, 0)));
+        assertTrue(page.deleteTuple(slot));
+        assertEquals(TablePage.maxTupleSize(), page.getFreeSpace());
+    }
+}
@@ -0,0 +1,94 @@
+package come.husam.storageengine.table;
+
+import com.husam.cachemanager.BufferPoolManager;
+import com.husam.cachemanager.BufferPoolManagerImpl;
+import com.husam.storageengine.diskmanager.DiskManager;
+import com.husam.storageengine.table.RecordId;
+import com.husam.storageengine.table.TableHeap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TableHeapTest {
+    private static final String DB_FILE_NAME = "test_table_heap.db";
+    private static final int BUFFER_POOL_SIZE = 16;
+    private DiskManager diskManager;
+    private BufferPoolManager bpm;
+
+    @Before
+    public void setUp() {
+        this.diskManager = DiskManager.open(DB_FILE_NAME);
+        this.bpm = new BufferPoolManagerImpl(BUFFER_POOL_SIZE, diskManager);
+    }
+
+    @After
+    public void tearDown() {
+        bpm.shutDown();
+        diskManager.shutDown();
+        new File(DB_FILE_NAME).delete();
+    }
+
+    private static ByteBuffer row(int id) {
+        ByteBuffer row = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        row.putInt(0, id);
+        row.putLong(8, id * 10L);
+        return row;
+    }
+
+    @Test
+    public void testInsertScanAndReopen() {
+        // Scenario: more rows than the pool can hold, the heap grows by extents and the pages get evicted.
+        TableHeap heap = new TableHeap(bpm);
+        List<RecordId> ids = new ArrayList<>();
+        for (int i = 0; i < 2000; ++i) {
+            RecordId id = heap.insertTuple(row(i));
+            assertNotNull(id);
+            ids.add(id);
+        }
+        assertEquals(Integer.valueOf(1234), heap.readTuple(ids.get(1234), tuple -> tuple.getInt(0)));
+
+        // Scenario: update in place, delete, and a scan that only sees the live rows.
+        assertTrue(heap.updateTuple(ids.get(7), row(-7)));
+        assertTrue(heap.deleteTuple(ids.get(8)));
+        assertFalse(heap.deleteTuple(ids.get(8)));
+        assertNull(heap.getTuple(ids.get(8)));
+        assertEquals(-70L, heap.getTuple(ids.get(7)).getLong(8));
+        AtomicLong rows = new AtomicLong();
+        AtomicLong sum = new AtomicLong();
+        heap.scan((pageId, slot, tuple) -> {
+            rows.incrementAndGet();
+            sum.addAndGet(tuple.getInt(0));
+        });
+        assertEquals(1999, rows.get());
+        assertEquals(1999L * 2000 / 2 - 7 - 8 - 7, sum.get());
+
+        // Scenario: the heap is opened again from its first page after a restart, inserts carry on at its end.
+        int firstPageId = heap.getFirstPageId();
+        RecordId last = ids.get(ids.size() - 1);
+        bpm.flushAllPages();
+        bpm.shutDown();
+        diskManager.shutDown();
+        this.diskManager = DiskManager.open(DB_FILE_NAME);
+        this.bpm = new BufferPoolManagerImpl(BUFFER_POOL_SIZE, diskManager);
+        TableHeap reopened = new TableHeap(bpm, firstPageId);
+        assertEquals(Integer.valueOf(1999), reopened.readTuple(last, tuple -> tuple.getInt(0)));
+        RecordId next = reopened.insertTuple(row(2000));
+        assertEquals(last.getPageId(), next.getPageId());
+        rows.set(0);
+        reopened.scan((pageId, slot, tuple) -> rows.incrementAndGet());
+        assertEquals(2000, rows.get());
+    }
+}